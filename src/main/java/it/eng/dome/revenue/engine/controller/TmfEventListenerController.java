@@ -0,0 +1,46 @@
+package it.eng.dome.revenue.engine.controller;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import io.swagger.v3.oas.annotations.tags.Tag;
+import it.eng.dome.revenue.engine.service.cached.CacheInvalidationService;
+
+/**
+ * Callback of the TMF event hubs (CustomerBill, Product, Organization, ProductOffering), e.g.
+ * {@code POST /revenue/listener/customerBillStateChangeEvent}. Each event evicts the cached data it affects.
+ */
+@RestController
+@RequestMapping("/revenue/listener")
+@Tag(name = "Revenue Engine TMF Listener Controller", description = "TMF notification listener to keep the revenue-engine caches fresh")
+public class TmfEventListenerController {
+
+	protected final Logger logger = LoggerFactory.getLogger(TmfEventListenerController.class);
+
+	@Autowired
+	private CacheInvalidationService cacheInvalidationService;
+
+	@PostMapping("/{eventName}")
+	public ResponseEntity<Void> onEvent(@PathVariable String eventName, @RequestBody JsonNode event) {
+		try {
+			cacheInvalidationService.handle(eventName, event);
+			return ResponseEntity.status(HttpStatus.CREATED).build();
+		} catch (IllegalArgumentException e) {
+			logger.warn("Ignoring TMF event {}: {}", eventName, e.getMessage());
+			return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
+		} catch (Exception e) {
+			logger.error("Failed to apply TMF event {}: {}", eventName, e.getMessage(), e);
+			return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+		}
+	}
+}
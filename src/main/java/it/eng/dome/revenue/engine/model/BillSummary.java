@@ -0,0 +1,165 @@
+package it.eng.dome.revenue.engine.model;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import it.eng.dome.tmforum.tmf678.v4.model.CustomerBill;
+import it.eng.dome.tmforum.tmf678.v4.model.Money;
+import it.eng.dome.tmforum.tmf678.v4.model.RelatedParty;
+
+/**
+ * Compact, immutable view of a TMF678 CustomerBill, holding only what is needed by the revenue metrics.
+ */
+public class BillSummary {
+
+    /**
+     * A related party of the bill.
+     */
+    public static class Party {
+
+        private final String id;
+        private final String role;
+
+        public Party(String id, String role) {
+            this.id = id;
+            this.role = role;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getRole() {
+            return role;
+        }
+    }
+
+    private final String id;
+
+    private final OffsetDateTime billDate;
+
+    private final OffsetDateTime lastUpdate;
+
+    private final Double taxExcludedAmount;
+
+    private final Double taxIncludedAmount;
+
+    private final String currency;
+
+    private final List<Party> parties;
+
+    public BillSummary(String id, OffsetDateTime billDate, OffsetDateTime lastUpdate, Double taxExcludedAmount,
+            Double taxIncludedAmount, String currency, List<Party> parties) {
+        this.id = id;
+        this.billDate = billDate;
+        this.lastUpdate = lastUpdate;
+        this.taxExcludedAmount = taxExcludedAmount;
+        this.taxIncludedAmount = taxIncludedAmount;
+        this.currency = currency;
+        this.parties = parties != null ? Collections.unmodifiableList(parties) : Collections.emptyList();
+    }
+
+    public static BillSummary of(CustomerBill cb) {
+        List<Party> parties = new ArrayList<>();
+        if (cb.getRelatedParty() != null) {
+            for (RelatedParty rp : cb.getRelatedParty()) {
+                if (rp != null && rp.getId() != null) {
+                    parties.add(new Party(rp.getId(), rp.getRole()));
+                }
+            }
+        }
+        String currency = null;
+        if (cb.getTaxIncludedAmount() != null) {
+            currency = cb.getTaxIncludedAmount().getUnit();
+        } else if (cb.getTaxExcludedAmount() != null) {
+            currency = cb.getTaxExcludedAmount().getUnit();
+        }
+        return new BillSummary(cb.getId(), cb.getBillDate(), cb.getLastUpdate(), valueOf(cb.getTaxExcludedAmount()),
+                valueOf(cb.getTaxIncludedAmount()), currency, parties);
+    }
+
+    private static Double valueOf(Money money) {
+        if (money == null || money.getValue() == null) {
+            return null;
+        }
+        return money.getValue().doubleValue();
+    }
+
+    /**
+     * Same semantic of RelatedPartyUtils.customerBillHasPartyWithRole.
+     */
+    public boolean hasPartyWithRole(String partyId, Role role) {
+        for (Party p : parties) {
+            if (partyId != null && partyId.equalsIgnoreCase(p.getId()) && role != null
+                    && role.getValue().equalsIgnoreCase(p.getRole())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Same semantic of RelatedPartyUtils.partyIdWithRole.
+     */
+    public String partyIdWithRole(Role role) {
+        for (Party p : parties) {
+            if (role.getValue().equalsIgnoreCase(p.getRole())) {
+                return p.getId();
+            }
+        }
+        return null;
+    }
+
+    public List<String> partyIdsWithRole(Role role) {
+        List<String> out = new ArrayList<>();
+        for (Party p : parties) {
+            if (role.getValue().equalsIgnoreCase(p.getRole())) {
+                out.add(p.getId());
+            }
+        }
+        return out;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public OffsetDateTime getBillDate() {
+        return billDate;
+    }
+
+    public OffsetDateTime getLastUpdate() {
+        return lastUpdate;
+    }
+
+    public Double getTaxExcludedAmount() {
+        return taxExcludedAmount;
+    }
+
+    public Double getTaxIncludedAmount() {
+        return taxIncludedAmount;
+    }
+
+    public String getCurrency() {
+        return currency;
+    }
+
+    public List<Party> getParties() {
+        return parties;
+    }
+
+    public String getSellerId() {
+        return this.partyIdWithRole(Role.SELLER);
+    }
+
+    public String getBuyerId() {
+        return this.partyIdWithRole(Role.BUYER);
+    }
+
+    public String getMarketplaceId() {
+        return this.partyIdWithRole(Role.REFERENCE_MARKETPLACE);
+    }
+
+}
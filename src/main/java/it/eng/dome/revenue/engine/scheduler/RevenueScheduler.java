@@ -9,6 +9,7 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import it.eng.dome.revenue.engine.service.TmfPersistenceService;
+import it.eng.dome.revenue.engine.tmf.TmfTrafficClass;
 
 @Component
 public class RevenueScheduler {
@@ -40,7 +41,8 @@ public class RevenueScheduler {
 
         try {
             logger.info("RevenueScheduler execution started");
-            tmfPersistenceService.persistAllRevenueBills();
+            // background TMF traffic: it must not take the capacity of interactive requests
+            TmfTrafficClass.BACKGROUND.call(tmfPersistenceService::persistAllRevenueBills);
             logger.info("RevenueScheduler execution completed");
         } catch (Exception e) {
             logger.error("Error during RevenueScheduler execution", e);
@@ -0,0 +1,553 @@
+package it.eng.dome.revenue.engine.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import it.eng.dome.revenue.engine.exception.BadTmfDataException;
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.model.BillSummary;
+import it.eng.dome.revenue.engine.model.Role;
+import it.eng.dome.revenue.engine.tmf.TmfProjection;
+import it.eng.dome.revenue.engine.tmf.TmfTrafficClass;
+import it.eng.dome.revenue.engine.utils.CacheDuration;
+import it.eng.dome.tmforum.tmf678.v4.model.CustomerBill;
+import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
+
+/**
+ * In-memory index of the TMF678 customer bills, used to answer the metric queries without calling TMF.
+ * <p>
+ * The index holds a {@link BillSummary} for each bill, grouped by related party (id and role) and sorted by
+ * bill date, so that a query for a party in a period is a binary search plus a range scan.
+ * It is loaded in background on first use, and until loaded {@link #isAvailable()} is false and the metrics are
+ * computed from TMF. It is then refreshed in background when older than {@code caching.bill-index.refresh}
+ * (incrementally, with the bills updated or dated since the previous refresh, minus {@code caching.bill-index.overlap})
+ * and fully reloaded when older than {@code caching.bill-index.full-refresh}; the previous index is served meanwhile,
+ * and when a refresh fails (e.g. TMF unavailable) until the next refresh.
+ * The changes notified by TMF events are queued and applied in batches by the same background thread, re-sorting
+ * only the bills of the parties involved.
+ * The period bounds are exclusive, as in the billDate.gt/billDate.lt filters used towards TMF.
+ * </p>
+ */
+@Service
+public class CustomerBillIndex implements InitializingBean, DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(CustomerBillIndex.class);
+
+    private static final int BATCH_SIZE = 100;
+
+    private static final Comparator<BillSummary> BY_BILL_DATE =
+            Comparator.comparing(BillSummary::getBillDate, OffsetDateTime.timeLineOrder());
+
+    // the not-cached retriever: bills fetched for the index must not fill the TMF caches
+    @Autowired
+    private TmfDataRetriever tmfDataRetriever;
+
+    @Autowired
+    private CacheDuration cacheDuration;
+
+    /*
+     * Immutable state of the index, replaced as a whole on each refresh.
+     */
+    private static class Snapshot {
+        final Map<String, BillSummary> byId;
+        final Map<String, BillSummary[]> byParty;
+        // newest lastUpdate read from TMF (not from events): the incremental refreshes start from it
+        final OffsetDateTime maxLastUpdate;
+        // start of the last successful load: the incremental refreshes also read the bills dated since then
+        final long syncedAt;
+        // time of the last (even failed) refresh, for the refresh interval
+        final long loadedAt;
+        final long fullLoadedAt;
+
+        Snapshot(Map<String, BillSummary> byId, OffsetDateTime maxLastUpdate, long syncedAt, long loadedAt, long fullLoadedAt) {
+            this(byId, groupByParty(byId.values()), maxLastUpdate, syncedAt, loadedAt, fullLoadedAt);
+        }
+
+        private Snapshot(Map<String, BillSummary> byId, Map<String, BillSummary[]> byParty, OffsetDateTime maxLastUpdate,
+                long syncedAt, long loadedAt, long fullLoadedAt) {
+            this.byId = byId;
+            this.byParty = byParty;
+            this.maxLastUpdate = maxLastUpdate;
+            this.syncedAt = syncedAt;
+            this.loadedAt = loadedAt;
+            this.fullLoadedAt = fullLoadedAt;
+        }
+
+        /*
+         * The same snapshot with the given bills replaced (null to remove them), e.g. after TMF events: only the
+         * parties of the old and new bills are grouped again. A change applied from an event must not postpone the
+         * next refresh nor make it skip the changes older than the event.
+         */
+        Snapshot with(Map<String, BillSummary> changes) {
+            Map<String, BillSummary> bills = new HashMap<>(byId);
+            Map<String, List<BillSummary>> affected = new HashMap<>();
+            for (Map.Entry<String, BillSummary> change : changes.entrySet()) {
+                BillSummary old = change.getValue() != null ? bills.put(change.getKey(), change.getValue()) : bills.remove(change.getKey());
+                for (BillSummary bill : new BillSummary[] { old, change.getValue() }) {
+                    if (bill != null) {
+                        for (BillSummary.Party p : bill.getParties()) {
+                            affected.putIfAbsent(partyKey(p.getId(), p.getRole()), new ArrayList<>());
+                        }
+                    }
+                }
+            }
+
+            // the bills of the affected parties: the unchanged ones plus the new versions of the changed ones
+            for (Map.Entry<String, List<BillSummary>> e : affected.entrySet()) {
+                for (BillSummary bill : byParty.getOrDefault(e.getKey(), new BillSummary[0])) {
+                    if (!changes.containsKey(bill.getId())) {
+                        e.getValue().add(bill);
+                    }
+                }
+            }
+            for (BillSummary bill : changes.values()) {
+                if (bill != null) {
+                    for (BillSummary.Party p : bill.getParties()) {
+                        List<BillSummary> group = affected.get(partyKey(p.getId(), p.getRole()));
+                        if (!group.contains(bill)) {
+                            group.add(bill);
+                        }
+                    }
+                }
+            }
+
+            Map<String, BillSummary[]> parties = new HashMap<>(byParty);
+            for (Map.Entry<String, List<BillSummary>> e : affected.entrySet()) {
+                if (e.getValue().isEmpty()) {
+                    parties.remove(e.getKey());
+                } else {
+                    parties.put(e.getKey(), e.getValue().stream().sorted(BY_BILL_DATE).toArray(BillSummary[]::new));
+                }
+            }
+            return new Snapshot(bills, parties, maxLastUpdate, syncedAt, loadedAt, fullLoadedAt);
+        }
+
+        private static Map<String, BillSummary[]> groupByParty(Collection<BillSummary> bills) {
+            Map<String, List<BillSummary>> groups = new HashMap<>();
+            for (BillSummary bill : bills) {
+                for (BillSummary.Party p : bill.getParties()) {
+                    groups.computeIfAbsent(partyKey(p.getId(), p.getRole()), k -> new ArrayList<>()).add(bill);
+                }
+            }
+
+            Map<String, BillSummary[]> byParty = new HashMap<>();
+            for (Map.Entry<String, List<BillSummary>> e : groups.entrySet()) {
+                BillSummary[] sorted = e.getValue().stream().distinct().sorted(BY_BILL_DATE).toArray(BillSummary[]::new);
+                byParty.put(e.getKey(), sorted);
+            }
+            return byParty;
+        }
+    }
+
+    // marks a bill to read again from TMF, in the queue of the changes
+    private static final BillSummary REFRESH = new BillSummary(null, null, null, null, null, null, null);
+
+    private volatile Snapshot snapshot;
+
+    // set when the next refresh must be a full reload
+    private volatile boolean reloadRequested;
+
+    // a refresh is queued or running
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    // changes notified by events, by bill id (REFRESH to read the bill from TMF, null to remove it), not applied yet
+    private final Map<String, BillSummary> pendingChanges = new LinkedHashMap<>();
+
+    // the pending changes are queued or being applied
+    private final AtomicBoolean applying = new AtomicBoolean();
+
+    private ExecutorService refreshExecutor;
+
+    @Override
+    public void afterPropertiesSet() {
+        this.refreshExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "bill-index-refresh");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @Override
+    public void destroy() {
+        if (refreshExecutor != null) {
+            refreshExecutor.shutdownNow();
+        }
+    }
+
+    public boolean isEnabled() {
+        return cacheDuration.getBillIndex() != null && cacheDuration.getBillIndex().isEnabled();
+    }
+
+    /**
+     * Whether the index can answer the queries, i.e. it is enabled and loaded. If enabled, but not loaded yet,
+     * the load is started in background.
+     */
+    public boolean isAvailable() {
+        if (!this.isEnabled()) {
+            return false;
+        }
+        Snapshot current = this.snapshot;
+        if (current == null || this.isExpired(current.loadedAt, cacheDuration.getBillIndex().getRefresh())) {
+            this.refreshAsync();
+        }
+        return current != null;
+    }
+
+    /**
+     * Loads the index on the calling thread, if not loaded yet or expired (e.g. for the warm-up).
+     *
+     * @return the number of indexed bills
+     */
+    public int load() throws ExternalServiceException {
+        return this.refresh().byId.size();
+    }
+
+    /**
+     * Finds the bills in the period where the given party has the given role.
+     * Same result of TmfDataRetriever.retrieveCustomerBills(participantId, participantRole, timePeriod).
+     *
+     * @throws ExternalServiceException if the index is not loaded (see {@link #isAvailable()})
+     */
+    public List<BillSummary> findBills(String partyId, Role role, TimePeriod timePeriod) throws ExternalServiceException {
+        if (partyId == null || role == null) {
+            return Collections.emptyList();
+        }
+        return this.scan(this.getSnapshot(), partyId, role, timePeriod);
+    }
+
+    /**
+     * Finds the bills in the period issued by the seller and, if given, addressed to the buyer.
+     * Same result of TmfDataRetriever.retrieveCustomerBills(sellerId, buyerId, timePeriod).
+     *
+     * @throws ExternalServiceException if the index is not loaded (see {@link #isAvailable()})
+     */
+    public List<BillSummary> findBills(String sellerId, String buyerId, TimePeriod timePeriod) throws ExternalServiceException {
+        Snapshot current = this.getSnapshot();
+        if (sellerId != null) {
+            List<BillSummary> bills = this.scan(current, sellerId, Role.SELLER, timePeriod);
+            if (buyerId != null) {
+                bills.removeIf(bill -> !bill.hasPartyWithRole(buyerId, Role.BUYER));
+            }
+            return bills;
+        }
+        if (buyerId != null) {
+            return this.scan(current, buyerId, Role.BUYER, timePeriod);
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * Forces a full reload, in background. The current index keeps being served meanwhile.
+     */
+    public void invalidate() {
+        this.reloadRequested = true;
+        this.refreshAsync();
+    }
+
+    /**
+     * @return the indexed bill with the given id, null if not indexed (or the index is not loaded)
+     */
+    public BillSummary get(String customerBillId) {
+        Snapshot current = this.snapshot;
+        return current != null && customerBillId != null ? current.byId.get(customerBillId) : null;
+    }
+
+    /**
+     * Adds or replaces a bill in the index, e.g. on a TMF change event. Applied in background, shortly after.
+     * Does nothing if the index is not loaded.
+     */
+    public void update(BillSummary bill) {
+        if (bill.getBillDate() == null) {
+            // never matches a period query
+            this.enqueue(bill.getId(), null);
+        } else {
+            this.enqueue(bill.getId(), bill);
+        }
+    }
+
+    /**
+     * Reads again a bill from TMF, e.g. on a TMF change event without the whole bill. Applied in background, shortly
+     * after. Does nothing if the index is not loaded.
+     */
+    public void refreshBill(String customerBillId) {
+        this.enqueue(customerBillId, REFRESH);
+    }
+
+    /**
+     * Removes a bill from the index, e.g. on a TMF delete event. Applied in background, shortly after.
+     * Does nothing if the index is not loaded.
+     */
+    public void remove(String customerBillId) {
+        this.enqueue(customerBillId, null);
+    }
+
+    public int size() {
+        Snapshot current = this.snapshot;
+        return current != null ? current.byId.size() : 0;
+    }
+
+    private List<BillSummary> scan(Snapshot current, String partyId, Role role, TimePeriod timePeriod) {
+        List<BillSummary> out = new ArrayList<>();
+        BillSummary[] bills = current.byParty.get(partyKey(partyId, role.getValue()));
+        if (bills == null) {
+            return out;
+        }
+
+        OffsetDateTime start = timePeriod != null ? timePeriod.getStartDateTime() : null;
+        OffsetDateTime end = timePeriod != null ? timePeriod.getEndDateTime() : null;
+
+        for (int i = (start != null ? firstAfter(bills, start) : 0); i < bills.length; i++) {
+            if (end != null && !bills[i].getBillDate().isBefore(end)) {
+                break;
+            }
+            out.add(bills[i]);
+        }
+        return out;
+    }
+
+    // index of the first bill with billDate strictly after the given date
+    private static int firstAfter(BillSummary[] bills, OffsetDateTime date) {
+        int low = 0;
+        int high = bills.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bills[mid].getBillDate().isAfter(date)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private static String partyKey(String partyId, String role) {
+        return (role != null ? role.toLowerCase(Locale.ROOT) : "") + "|" + partyId.toLowerCase(Locale.ROOT);
+    }
+
+    /*
+     * The current index, never waiting for a load: a refresh is started in background if it is expired.
+     */
+    private Snapshot getSnapshot() throws ExternalServiceException {
+        Snapshot current = this.snapshot;
+        if (current == null || this.isExpired(current.loadedAt, cacheDuration.getBillIndex().getRefresh())) {
+            this.refreshAsync();
+        }
+        if (current == null) {
+            throw new ExternalServiceException("Customer bill index not loaded yet");
+        }
+        return current;
+    }
+
+    private void enqueue(String customerBillId, BillSummary change) {
+        if (customerBillId == null || this.snapshot == null) {
+            return;
+        }
+        synchronized (pendingChanges) {
+            pendingChanges.put(customerBillId, change);
+        }
+        this.applyAsync();
+    }
+
+    private void applyAsync() {
+        if (refreshExecutor == null || !applying.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> TmfTrafficClass.BACKGROUND.run(() -> {
+                try {
+                    this.applyPendingChanges();
+                } catch (RuntimeException e) {
+                    logger.error("Customer bill index update failed: {}", e.getMessage(), e);
+                } finally {
+                    applying.set(false);
+                }
+                synchronized (pendingChanges) {
+                    if (pendingChanges.isEmpty()) {
+                        return;
+                    }
+                }
+                this.applyAsync();
+            }));
+        } catch (RejectedExecutionException e) {
+            applying.set(false);
+        }
+    }
+
+    /*
+     * Applies the changes notified so far to the index, at once.
+     */
+    private synchronized void applyPendingChanges() {
+        Map<String, BillSummary> changes;
+        synchronized (pendingChanges) {
+            changes = new LinkedHashMap<>(pendingChanges);
+            pendingChanges.clear();
+        }
+        Snapshot current = this.snapshot;
+        if (current == null || changes.isEmpty()) {
+            return;
+        }
+        for (Map.Entry<String, BillSummary> change : changes.entrySet()) {
+            if (change.getValue() == REFRESH) {
+                change.setValue(this.read(change.getKey()));
+            }
+        }
+        changes.entrySet().removeIf(change -> change.getValue() == REFRESH);
+        this.snapshot = current.with(changes);
+        logger.debug("Customer bill index updated with {} changed bills", changes.size());
+    }
+
+    /*
+     * The bill read from TMF, null if not indexable, REFRESH if TMF failed (the next refresh will pick it).
+     */
+    private BillSummary read(String customerBillId) {
+        try {
+            CustomerBill cb = tmfDataRetriever.getCustomerBill(customerBillId);
+            BillSummary bill = cb != null ? BillSummary.of(cb) : null;
+            return bill != null && bill.getId() != null && bill.getBillDate() != null ? bill : null;
+        } catch (BadTmfDataException | ExternalServiceException e) {
+            logger.debug("Cannot read CustomerBill {} for the index: {}", customerBillId, e.getMessage());
+            return REFRESH;
+        }
+    }
+
+    private void refreshAsync() {
+        if (refreshExecutor == null || !refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refreshExecutor.execute(() -> TmfTrafficClass.BACKGROUND.run(() -> {
+                try {
+                    this.refresh();
+                } catch (ExternalServiceException e) {
+                    logger.warn("Customer bill index load failed: {}", e.getMessage());
+                } catch (RuntimeException e) {
+                    logger.error("Customer bill index refresh failed: {}", e.getMessage(), e);
+                } finally {
+                    refreshing.set(false);
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            refreshing.set(false);
+        }
+    }
+
+    /*
+     * Loads or refreshes the index, if needed.
+     */
+    private synchronized Snapshot refresh() throws ExternalServiceException {
+        Snapshot current = this.snapshot;
+        try {
+            if (current == null || this.reloadRequested || this.isExpired(current.fullLoadedAt, cacheDuration.getBillIndex().getFullRefresh())) {
+                this.reloadRequested = false;
+                current = this.fullLoad();
+            } else if (this.isExpired(current.loadedAt, cacheDuration.getBillIndex().getRefresh())) {
+                current = this.incrementalLoad(current);
+            }
+        } catch (ExternalServiceException e) {
+            if (current == null) {
+                throw e;
+            }
+            // TMF unavailable: keep serving the stale index, retrying after the refresh interval
+            logger.warn("Customer bill index refresh failed, serving the index loaded {} s ago: {}",
+                    (System.currentTimeMillis() - current.loadedAt) / 1000, e.getMessage());
+            current = new Snapshot(current.byId, current.maxLastUpdate, current.syncedAt, System.currentTimeMillis(), current.fullLoadedAt);
+        }
+        this.snapshot = current;
+        return current;
+    }
+
+    private boolean isExpired(long timestamp, Duration maxAge) {
+        return maxAge == null || System.currentTimeMillis() - timestamp > maxAge.toMillis();
+    }
+
+    private Snapshot fullLoad() throws ExternalServiceException {
+        long start = System.currentTimeMillis();
+        Map<String, BillSummary> byId = new HashMap<>();
+        OffsetDateTime[] maxLastUpdate = new OffsetDateTime[1];
+        tmfDataRetriever.fetchCustomerBills(TmfProjection.BILL_METRICS.getFields(), null, BATCH_SIZE, cb -> {
+            BillSummary bill = BillSummary.of(cb);
+            maxLastUpdate[0] = latest(maxLastUpdate[0], bill.getLastUpdate());
+            this.add(byId, bill);
+        });
+        long now = System.currentTimeMillis();
+        Snapshot loaded = new Snapshot(byId, maxLastUpdate[0], start, now, now);
+        logger.info("Customer bill index loaded with {} bills in {} ms", byId.size(), now - start);
+        return loaded;
+    }
+
+    /*
+     * Reads again the bills updated since the newest lastUpdate, and those dated since the previous refresh (bills
+     * without lastUpdate), both minus the overlap: bills stored late (slow writers, clock skew, lastUpdate set by
+     * the client) are not missed. The bills read again just replace the indexed ones.
+     */
+    private Snapshot incrementalLoad(Snapshot current) throws ExternalServiceException {
+        long start = System.currentTimeMillis();
+        Duration overlap = this.getOverlap();
+
+        List<BillSummary> updated = new ArrayList<>();
+        if (current.maxLastUpdate != null) {
+            Map<String, String> filter = new HashMap<>();
+            filter.put("lastUpdate.gt", current.maxLastUpdate.minus(overlap).toString());
+            tmfDataRetriever.fetchCustomerBills(TmfProjection.BILL_METRICS.getFields(), filter, BATCH_SIZE, cb -> updated.add(BillSummary.of(cb)));
+        }
+        Map<String, String> filter = new HashMap<>();
+        filter.put("billDate.gt", OffsetDateTime.ofInstant(Instant.ofEpochMilli(current.syncedAt), ZoneOffset.UTC).minus(overlap).toString());
+        tmfDataRetriever.fetchCustomerBills(TmfProjection.BILL_METRICS.getFields(), filter, BATCH_SIZE, cb -> updated.add(BillSummary.of(cb)));
+
+        Map<String, BillSummary> byId = new HashMap<>(current.byId);
+        int before = byId.size();
+        OffsetDateTime maxLastUpdate = current.maxLastUpdate;
+        for (BillSummary bill : updated) {
+            maxLastUpdate = latest(maxLastUpdate, bill.getLastUpdate());
+            if (bill.getId() != null && bill.getBillDate() == null) {
+                byId.remove(bill.getId());
+            } else {
+                this.add(byId, bill);
+            }
+        }
+        logger.debug("Customer bill index refreshed: {} bills read, {} new", updated.size(), byId.size() - before);
+        return new Snapshot(byId, maxLastUpdate, start, System.currentTimeMillis(), current.fullLoadedAt);
+    }
+
+    private Duration getOverlap() {
+        Duration overlap = cacheDuration.getBillIndex().getOverlap();
+        return overlap != null ? overlap : Duration.ZERO;
+    }
+
+    private static OffsetDateTime latest(OffsetDateTime a, OffsetDateTime b) {
+        if (a == null) {
+            return b;
+        }
+        return b != null && b.isAfter(a) ? b : a;
+    }
+
+    private void add(Map<String, BillSummary> byId, BillSummary bill) {
+        // bills without billDate never match a period query
+        if (bill.getId() != null && bill.getBillDate() != null) {
+            byId.put(bill.getId(), bill);
+        }
+    }
+
+}
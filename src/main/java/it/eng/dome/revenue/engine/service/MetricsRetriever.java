@@ -3,6 +3,9 @@ package it.eng.dome.revenue.engine.service;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
 
 import it.eng.dome.revenue.engine.model.ComputeMetric;
 import org.slf4j.Logger;
@@ -14,8 +17,11 @@ import org.springframework.stereotype.Component;
 
 import it.eng.dome.revenue.engine.exception.BadTmfDataException;
 import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.model.BillSummary;
 import it.eng.dome.revenue.engine.model.Role;
 import it.eng.dome.revenue.engine.service.cached.TmfCachedDataRetriever;
+import it.eng.dome.revenue.engine.tmf.TmfAsyncExecutor;
+import it.eng.dome.revenue.engine.tmf.TmfProjection;
 import it.eng.dome.revenue.engine.utils.ProductOfferingUtils;
 import it.eng.dome.revenue.engine.utils.RelatedPartyUtils;
 import it.eng.dome.tmforum.tmf620.v4.model.ProductOffering;
@@ -32,6 +38,12 @@ public class MetricsRetriever {
     @Autowired
     private TmfCachedDataRetriever tmfDataRetriever;
 
+    @Autowired
+    private CustomerBillIndex customerBillIndex;
+
+    @Autowired
+    private TmfAsyncExecutor asyncExecutor;
+
     public MetricsRetriever() {
     }
 
@@ -55,13 +67,13 @@ public class MetricsRetriever {
 
         try {
             // retrieve all seller billed invoices in the period
-            List<CustomerBill> bills = tmfDataRetriever.retrieveCustomerBills(sellerId, buyerId, timePeriod);
+            List<BillSummary> bills = this.findBills(sellerId, buyerId, timePeriod);
 
             // sum taxExcludedAmount.value
             double totalAmountNoTaxes = 0.0;
-            for (CustomerBill bill : bills) {
-                if (bill.getTaxExcludedAmount() != null && bill.getTaxExcludedAmount().getValue() != null) {
-                    totalAmountNoTaxes += bill.getTaxExcludedAmount().getValue();
+            for (BillSummary bill : bills) {
+                if (bill.getTaxExcludedAmount() != null) {
+                    totalAmountNoTaxes += bill.getTaxExcludedAmount();
                 } else {
                     logger.debug("Bill {} contains no amount. Skipping it for the revenue computation", bill.getId());
                 }
@@ -74,6 +86,37 @@ public class MetricsRetriever {
         }
     }
 
+    /**
+     * Same as {@link #computeBillsNoTaxes(String, String, TimePeriod)}, run asynchronously when the bills are read from TMF,
+     * so that the totals of several sellers can be computed together.
+     */
+    private CompletableFuture<Double> computeBillsNoTaxesAsync(String sellerId, String buyerId, TimePeriod timePeriod) {
+        if (customerBillIndex.isAvailable()) {
+            // in memory: nothing to overlap
+            try {
+                return CompletableFuture.completedFuture(this.computeBillsNoTaxes(sellerId, buyerId, timePeriod));
+            } catch (ExternalServiceException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        }
+        return asyncExecutor.supply(() -> this.computeBillsNoTaxes(sellerId, buyerId, timePeriod));
+    }
+
+    /**
+     * Retrieves the bills between a seller and an optional buyer in a given period,
+     * from the customer bill index if enabled, otherwise from TMF.
+     */
+    private List<BillSummary> findBills(String sellerId, String buyerId, TimePeriod timePeriod) throws ExternalServiceException {
+        if (customerBillIndex.isAvailable()) {
+            return customerBillIndex.findBills(sellerId, buyerId, timePeriod);
+        }
+        List<BillSummary> bills = new ArrayList<>();
+        for (CustomerBill cb : tmfDataRetriever.retrieveCustomerBills(sellerId, buyerId, timePeriod, TmfProjection.BILL_METRICS)) {
+            bills.add(BillSummary.of(cb));
+        }
+        return bills;
+    }
+
     // TODO: test me
     /**
      * Retrieve the product offerings from the given seller (with role Seller) available in the given time period (validFor.startDate)
@@ -195,9 +238,13 @@ public class MetricsRetriever {
                 return totalTransactionVolume;
             }
 
-            // iterate over each referred provider
+            // compute the volumes of all the referred providers at once
+            List<CompletableFuture<Double>> volumes = new ArrayList<>();
             for (Organization org : referred) {
-                totalTransactionVolume += this.computeBillsNoTaxes(org.getId(), null, timePeriod);
+                volumes.add(this.computeBillsNoTaxesAsync(org.getId(), null, timePeriod));
+            }
+            for (CompletableFuture<Double> volume : volumes) {
+                totalTransactionVolume += TmfAsyncExecutor.join(volume);
             }
             logger.info("Total transaction volume for referred providers: {}", totalTransactionVolume);
             return totalTransactionVolume;	    
@@ -232,9 +279,13 @@ public class MetricsRetriever {
                 return maxTransactionVolume;
             }
 
-            // iterate over each referred provider
+            // compute the volumes of all the referred providers at once
+            List<CompletableFuture<Double>> volumes = new ArrayList<>();
             for (Organization org : referred) {
-                maxTransactionVolume = Math.max(maxTransactionVolume, this.computeBillsNoTaxes(org.getId(), null, timePeriod));
+                volumes.add(this.computeBillsNoTaxesAsync(org.getId(), null, timePeriod));
+            }
+            for (CompletableFuture<Double> volume : volumes) {
+                maxTransactionVolume = Math.max(maxTransactionVolume, TmfAsyncExecutor.join(volume));
             }
             return maxTransactionVolume;
         } catch (Exception e) {
@@ -325,7 +376,15 @@ public class MetricsRetriever {
      * @throws BadTmfDataException if marketplaceId is invalid
      */
     private List<Organization> getActiveSellersBehindMarketplace(String marketplaceId, TimePeriod timePeriod) throws ExternalServiceException, BadTmfDataException {
-            return this.tmfDataRetriever.listActiveSellersBehindFederatedMarketplace(marketplaceId, timePeriod);
+        if (customerBillIndex.isAvailable()) {
+            // sellers of the bills referencing the marketplace
+            Set<String> sellersIds = new TreeSet<>();
+            for (BillSummary bill : customerBillIndex.findBills(marketplaceId, Role.REFERENCE_MARKETPLACE, timePeriod)) {
+                sellersIds.addAll(bill.partyIdsWithRole(Role.SELLER));
+            }
+            return this.tmfDataRetriever.getOrganizations(sellersIds);
+        }
+        return this.tmfDataRetriever.listActiveSellersBehindFederatedMarketplace(marketplaceId, timePeriod);
     }
 
     /**
@@ -338,6 +397,16 @@ public class MetricsRetriever {
      * @throws BadTmfDataException if marketplaceId is invalid
      */
     private List<Organization> listBilledSellersBehindMarketplace(String marketplaceId, TimePeriod timePeriod) throws ExternalServiceException, BadTmfDataException {
+        if (customerBillIndex.isAvailable()) {
+            // buyers of the bills issued by the marketplace (i.e. recipients of revenue invoices)
+            Set<String> sellersIds = new TreeSet<>();
+            for (BillSummary bill : customerBillIndex.findBills(marketplaceId, Role.SELLER, timePeriod)) {
+                String billedSellerId = bill.getBuyerId();
+                if (billedSellerId != null)
+                    sellersIds.add(billedSellerId);
+            }
+            return this.tmfDataRetriever.getOrganizations(sellersIds);
+        }
         return this.tmfDataRetriever.listBilledSellersBehindMarketplace(marketplaceId, timePeriod);
     }
 
@@ -31,6 +31,7 @@ import it.eng.dome.revenue.engine.model.Plan;
 import it.eng.dome.revenue.engine.model.PlanResolver;
 import it.eng.dome.revenue.engine.model.Subscription;
 import it.eng.dome.revenue.engine.service.cached.TmfCachedDataRetriever;
+import it.eng.dome.revenue.engine.service.compute.PlanExpressions;
 import it.eng.dome.revenue.engine.service.validation.PlanValidationReport;
 import it.eng.dome.revenue.engine.service.validation.PlanValidator;
 import it.eng.dome.revenue.engine.utils.IdUtils;
@@ -165,6 +166,7 @@ public class PlanService implements InitializingBean {
             Plan plan = this.loadPlanFromLink(link);
             if (plan == null) throw new BadRevenuePlanException(new Plan(), "Plan could not be loaded from link: " + link);
             this.overwritingPlanByProductOffering(plan, po, pop);
+            PlanExpressions.parseAll(plan.getPrice());
             return plan;
         } catch (IOException e) {
             throw new BadRevenuePlanException(new Plan(), "Failed to load Plan from link=" + link, e);
@@ -230,6 +232,7 @@ public class PlanService implements InitializingBean {
                 Plan plan = loadPlanFromLink(link);
                 if (plan == null) throw new BadRevenuePlanException(new Plan(), "Plan not found at link: " + link); 
                 this.overwritingPlanByProductOffering(plan, po, pop);
+                PlanExpressions.parseAll(plan.getPrice());
                 plans.add(plan);
             } catch (IOException e) {
                 throw new BadRevenuePlanException(new Plan(), "Failed to load Plan from link in ProductOfferingPrice id=" + popRef.getId(), e);
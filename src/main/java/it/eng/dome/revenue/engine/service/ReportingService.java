@@ -7,8 +7,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
@@ -32,6 +34,7 @@ import it.eng.dome.revenue.engine.service.cached.CachedPlanService;
 import it.eng.dome.revenue.engine.service.cached.CachedStatementsService;
 import it.eng.dome.revenue.engine.service.cached.CachedSubscriptionService;
 import it.eng.dome.revenue.engine.service.cached.TmfCachedDataRetriever;
+import it.eng.dome.revenue.engine.tmf.TmfAsyncExecutor;
 import it.eng.dome.revenue.engine.utils.RelatedPartyUtils;
 import it.eng.dome.tmforum.tmf632.v4.model.Organization;
 import it.eng.dome.tmforum.tmf637.v4.model.Characteristic;
@@ -81,21 +84,19 @@ public class ReportingService implements InitializingBean {
 	        LocalDate periodStart = today.minusYears(1);
 	        LocalDate periodEnd = today;
 	
+	        // read the TMF data of all the subscriptions at once
+	        List<CompletableFuture<ProviderData>> providers = new ArrayList<>();
 	        for (Subscription sub : subscriptions) {
+	            providers.add(this.getProviderDataAsync(sub));
+	        }
+
+	        for (int i = 0; i < subscriptions.size(); i++) {
+	            Subscription sub = subscriptions.get(i);
 	            try {
-	                Product product = tmfDataRetriever.getProduct(sub.getId(), null);
-	                String buyerId = product.getRelatedParty().stream()
-	                        .filter(rp -> Role.BUYER.getValue().equalsIgnoreCase(rp.getRole()))
-	                        .map(rp -> rp.getId())
-	                        .findFirst().orElse("Unknown Subscriber");
-	                
-	                List<CustomerBill> bills = tmfDataRetriever.retrieveCustomerBills(
-	                        buyerId,
-	                        Role.BUYER,
-	                        new TimePeriod()
-	                );
-	
-	                bills = bills.stream()
+	                ProviderData provider = TmfAsyncExecutor.join(providers.get(i));
+	                Product product = provider.product;
+
+	                List<CustomerBill> bills = provider.bills.stream()
 	                        .filter(cb -> cb.getCategory() != null && 
 	                                cb.getCategory().toLowerCase().contains("created by the revenue engine"))
 	                        .filter(cb -> cb.getBillDate() != null &&
@@ -108,7 +109,7 @@ public class ReportingService implements InitializingBean {
 	                        .mapToDouble(cb -> cb.getTaxIncludedAmount().getValue())
 	                        .sum();
 	
-	                String name = tmfDataRetriever.getOrganization(buyerId).getTradingName();
+	                String name = provider.buyer.getTradingName();
 	
 	                if (isFederated(product)) {
 	                    federatedProviders.add(new Report(name, EUR_CURRENCY + format(yearlyTotal)));
@@ -173,6 +174,41 @@ public class ReportingService implements InitializingBean {
 	}
 
 
+    /*
+     * The product of a subscription, with the bills and the organization of its buyer.
+     */
+    private static class ProviderData {
+        final Product product;
+        final List<CustomerBill> bills;
+        final Organization buyer;
+
+        ProviderData(Product product, List<CustomerBill> bills, Organization buyer) {
+            this.product = product;
+            this.bills = bills;
+            this.buyer = buyer;
+        }
+    }
+
+    /*
+     * Reads the product of the subscription, then the bills and the organization of its buyer together.
+     */
+    private CompletableFuture<ProviderData> getProviderDataAsync(Subscription sub) {
+        return tmfDataRetriever.getProductAsync(sub.getId(), null).thenCompose(product -> {
+            if (product == null) {
+                return CompletableFuture.failedFuture(new BadTmfDataException("Product", sub.getId(), "Product not found"));
+            }
+            String buyerId = RelatedPartyUtils.partyIdWithRole(product, Role.BUYER);
+            if (buyerId == null) {
+                // no bills nor organization to read
+                return CompletableFuture.failedFuture(new BadTmfDataException("Product", sub.getId(), "Product has no Buyer related party"));
+            }
+
+            CompletableFuture<List<CustomerBill>> bills = tmfDataRetriever.retrieveCustomerBillsAsync(buyerId, Role.BUYER, new TimePeriod());
+            CompletableFuture<Organization> buyer = tmfDataRetriever.getOrganizationAsync(buyerId);
+            return bills.thenCombine(buyer, (b, o) -> new ProviderData(product, b, o));
+        });
+    }
+
     public List<Report> buildTopAndTotalBoxes(Report totalRevenueReport) {
         try {
             if (totalRevenueReport.getItems() == null || totalRevenueReport.getItems().isEmpty()) {
@@ -238,24 +274,32 @@ public class ReportingService implements InitializingBean {
             int nrSingle = singleProviders.size();
             int nrFederated = federatedProviders.size();
 
-            Map<String, Integer> activeSellersPerFederated = new HashMap<>();
+            // read the sellers and the organization of all the marketplaces at once
+            Map<String, CompletableFuture<List<Organization>>> sellersPerMarketplace = new LinkedHashMap<>();
+            Map<String, CompletableFuture<Organization>> marketplaces = new HashMap<>();
             for (Product p : federatedProviders) {
                 String marketplaceId = getMarketplaceId(p);
                 if (marketplaceId == null) continue;
-                if (!activeSellersPerFederated.containsKey(marketplaceId)) {
+                if (!sellersPerMarketplace.containsKey(marketplaceId)) {
                     OffsetDateTime start = subscriptionService.getActiveSubscriptionByRelatedPartyId(marketplaceId).getStartDate();
                     OffsetDateTime end = OffsetDateTime.now();
                     TimePeriod tp = new TimePeriod();
                     tp.setStartDateTime(start);
                     tp.setEndDateTime(end);
 
-                    int nrSellers = tmfDataRetriever.listActiveSellersBehindFederatedMarketplace(marketplaceId, tp).size();
-                    Organization org = tmfDataRetriever.getOrganization(marketplaceId);
-                    String orgName = org != null ? org.getTradingName() : "Unknown";
-                    activeSellersPerFederated.put(orgName, nrSellers);
+                    sellersPerMarketplace.put(marketplaceId, tmfDataRetriever.listActiveSellersBehindFederatedMarketplaceAsync(marketplaceId, tp));
+                    marketplaces.put(marketplaceId, tmfDataRetriever.getOrganizationAsync(marketplaceId));
                 }
             }
 
+            Map<String, Integer> activeSellersPerFederated = new HashMap<>();
+            for (Map.Entry<String, CompletableFuture<List<Organization>>> entry : sellersPerMarketplace.entrySet()) {
+                int nrSellers = TmfAsyncExecutor.join(entry.getValue()).size();
+                Organization org = TmfAsyncExecutor.join(marketplaces.get(entry.getKey()));
+                String orgName = org != null ? org.getTradingName() : "Unknown";
+                activeSellersPerFederated.put(orgName, nrSellers);
+            }
+
             List<Report> items = new ArrayList<>();
             items.add(new Report("Cloud Service Providers", String.valueOf(nrSingle)));
             items.add(new Report("Federated Marketplaces", String.valueOf(nrFederated)));
@@ -281,9 +325,8 @@ public class ReportingService implements InitializingBean {
             if (relatedPartyId == null || relatedPartyId.isEmpty()) {
                 throw new BadTmfDataException("Organization", relatedPartyId, "Related Party ID cannot be null or empty");
             }
-            if (tmfDataRetriever.getOrganization(relatedPartyId) == null) {
-                throw new NotFoundException("Organization not found: " + relatedPartyId);
-            }
+            // the organization is read while scanning the products
+            CompletableFuture<Organization> organization = tmfDataRetriever.getOrganizationAsync(relatedPartyId);
 
             // Flag to track if the related party is a Dome Operator
             AtomicBoolean isDomeOp = new AtomicBoolean(false);
@@ -299,6 +342,10 @@ public class ReportingService implements InitializingBean {
                 }
             });
 
+            if (TmfAsyncExecutor.join(organization) == null) {
+                throw new NotFoundException("Organization not found: " + relatedPartyId);
+            }
+
             if (isDomeOp.get()) {
                 return handleDomeOperator();
             } else {
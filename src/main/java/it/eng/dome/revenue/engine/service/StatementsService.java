@@ -9,20 +9,32 @@ import it.eng.dome.revenue.engine.model.comparator.RevenueStatementTimeComparato
 import it.eng.dome.revenue.engine.service.cached.CachedPlanService;
 import it.eng.dome.revenue.engine.service.cached.CachedSubscriptionService;
 import it.eng.dome.revenue.engine.service.compute.RevenueStatementBuilder;
+import it.eng.dome.revenue.engine.tmf.TmfTrafficClass;
 import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Service
-public class StatementsService implements InitializingBean {
+public class StatementsService implements InitializingBean, DisposableBean {
 
 	private final Logger logger = LoggerFactory.getLogger(StatementsService.class);
 
@@ -32,7 +44,44 @@ public class StatementsService implements InitializingBean {
     @Autowired
     private CachedPlanService planService;
 
-    public void afterPropertiesSet() throws Exception {}
+    // charge periods of a subscription computed at the same time (1 to compute them serially)
+    @Value("${statements.periods.parallelism:4}")
+    private int periodsParallelism;
+
+    // pool shared by all the subscriptions, null if the periods are computed serially
+    private ExecutorService periodsExecutor;
+
+    // set on the pool threads, to compute serially the statements requested from a statement computation
+    private static final ThreadLocal<Boolean> IN_POOL = new ThreadLocal<>();
+
+    public void afterPropertiesSet() throws Exception {
+        if (periodsParallelism <= 1) {
+            logger.info("Charge periods of the statements computed serially");
+            return;
+        }
+        AtomicInteger threadCount = new AtomicInteger();
+        // bounded queue: when saturated, the caller computes the period itself
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(periodsParallelism, periodsParallelism, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(periodsParallelism), r -> {
+            Thread t = new Thread(r, "statements-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }, (r, executor) -> {
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Statements executor is shut down");
+            }
+            r.run();
+        });
+        pool.allowCoreThreadTimeOut(true);
+        this.periodsExecutor = pool;
+        logger.info("Charge periods of the statements computed on {} threads", periodsParallelism);
+    }
+
+    @Override
+    public void destroy() {
+        if (periodsExecutor != null) {
+            periodsExecutor.shutdownNow();
+        }
+    }
 
     public StatementsService() {}
 
@@ -117,19 +166,12 @@ public class StatementsService implements InitializingBean {
 
         try {
             RevenueStatementBuilder rsb = new RevenueStatementBuilder(sub);
-            for (TimePeriod chargePeriod : sub.getChargePeriods()) {
-                logger.debug("\n***************************** BILLING CYCLE ***************************\n {} \n************************************************************************", chargePeriod);
-                try {
-                    RevenueStatement statement = rsb.buildStatement(chargePeriod);
-                    if (statement != null) {
-                        statement.clusterizeItems();
-                        statements.add(statement);
-                    }
-                } catch (Exception ex) {
-                    logger.warn("Failed to compute statement for period {} in subscription {}: {}", chargePeriod, subscriptionId, ex.getMessage(), ex);
-                    // Continue processing other periods
+            for (RevenueStatement statement : this.buildStatements(rsb, new ArrayList<>(sub.getChargePeriods()), subscriptionId)) {
+                if (statement != null) {
+                    statements.add(statement);
                 }
             }
+            logger.info("Metric values for subscription {}: {} computed, {} reused", subscriptionId, rsb.getMetricsMemo().getMisses(), rsb.getMetricsMemo().getHits());
         } catch (Exception ex) {
             logger.error("Unexpected error while computing statements for subscription {}: {}", subscriptionId, ex.getMessage(), ex);
             throw new ExternalServiceException("Error while computing statements for subscription: " + subscriptionId, ex);
@@ -141,4 +183,63 @@ public class StatementsService implements InitializingBean {
         return new ArrayList<>(statements);
     }
 
+    /*
+     * Builds the statement of each charge period, at the same time if a pool is configured.
+     * The statements are in the order of the periods, null for the periods that failed or have no statement.
+     */
+    private List<RevenueStatement> buildStatements(RevenueStatementBuilder rsb, List<TimePeriod> chargePeriods, String subscriptionId) throws InterruptedException {
+        List<RevenueStatement> built = new ArrayList<>(chargePeriods.size());
+        if (periodsExecutor == null || chargePeriods.size() < 2 || Boolean.TRUE.equals(IN_POOL.get())) {
+            for (TimePeriod chargePeriod : chargePeriods) {
+                built.add(this.buildStatement(rsb, chargePeriod, subscriptionId));
+            }
+            return built;
+        }
+
+        // the periods are computed in the class (interactive or background) of the caller;
+        // buildStatement never throws, a failed period is null
+        TmfTrafficClass traffic = TmfTrafficClass.current();
+        RevenueStatement[] statements = new RevenueStatement[chargePeriods.size()];
+        CountDownLatch done = new CountDownLatch(chargePeriods.size());
+        List<Future<?>> futures = new ArrayList<>(chargePeriods.size());
+        try {
+            for (int i = 0; i < chargePeriods.size(); i++) {
+                int index = i;
+                TimePeriod chargePeriod = chargePeriods.get(i);
+                futures.add(periodsExecutor.submit(() -> {
+                    IN_POOL.set(Boolean.TRUE);
+                    try {
+                        traffic.run(() -> statements[index] = this.buildStatement(rsb, chargePeriod, subscriptionId));
+                    } finally {
+                        IN_POOL.remove();
+                        done.countDown();
+                    }
+                }));
+            }
+            done.await();
+        } finally {
+            // only left running if interrupted
+            for (Future<?> future : futures) {
+                future.cancel(true);
+            }
+        }
+        built.addAll(Arrays.asList(statements));
+        return built;
+    }
+
+    private RevenueStatement buildStatement(RevenueStatementBuilder rsb, TimePeriod chargePeriod, String subscriptionId) {
+        logger.debug("\n***************************** BILLING CYCLE ***************************\n {} \n************************************************************************", chargePeriod);
+        try {
+            RevenueStatement statement = rsb.buildStatement(chargePeriod);
+            if (statement != null) {
+                statement.clusterizeItems();
+            }
+            return statement;
+        } catch (Exception ex) {
+            logger.warn("Failed to compute statement for period {} in subscription {}: {}", chargePeriod, subscriptionId, ex.getMessage(), ex);
+            // Continue processing other periods
+            return null;
+        }
+    }
+
 }
@@ -1,10 +1,16 @@
 package it.eng.dome.revenue.engine.service;
 
 import it.eng.dome.brokerage.api.*;
-import it.eng.dome.brokerage.api.fetch.FetchUtils;
 import it.eng.dome.revenue.engine.exception.BadTmfDataException;
 import it.eng.dome.revenue.engine.exception.ExternalServiceException;
 import it.eng.dome.revenue.engine.model.Role;
+import it.eng.dome.revenue.engine.tmf.TmfAsyncExecutor;
+import it.eng.dome.revenue.engine.tmf.TmfHedger;
+import it.eng.dome.revenue.engine.tmf.TmfPageFetcher;
+import it.eng.dome.revenue.engine.tmf.TmfPageFetcher.TmfApi;
+import it.eng.dome.revenue.engine.tmf.TmfProjection;
+import it.eng.dome.revenue.engine.tmf.TmfStreamingListReader;
+import it.eng.dome.revenue.engine.tmf.TmfStreamingListReader.ElementParser;
 import it.eng.dome.revenue.engine.utils.RelatedPartyUtils;
 import it.eng.dome.tmforum.tmf620.v4.model.ProductOffering;
 import it.eng.dome.tmforum.tmf620.v4.model.ProductOfferingPrice;
@@ -17,10 +23,13 @@ import it.eng.dome.tmforum.tmf678.v4.model.CustomerBill;
 import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 @Service
 public class TmfDataRetriever {
@@ -34,6 +43,31 @@ public class TmfDataRetriever {
     private ProductInventoryApis productInventoryApis;
     private AppliedCustomerBillRateApis appliedCustomerBillRateApis;
 
+    // max number of ids in a single TMF632 'id' list filter
+    private static final int ORGANIZATION_ID_BATCH_SIZE = 50;
+
+    // max number of ids in a single TMF637 'productOffering.id' list filter
+    private static final int PRODUCT_OFFERING_ID_BATCH_SIZE = 20;
+
+    // whether TMF637 applies the 'productOffering.id' list filter: null until a query tells
+    private volatile Boolean offeringIdListSupported;
+
+    // fetches TMF lists with several pages in flight
+    @Autowired
+    private TmfPageFetcher pageFetcher;
+
+    // reads large lists element by element
+    @Autowired
+    private TmfStreamingListReader streamingListReader;
+
+    // runs the *Async variants
+    @Autowired
+    private TmfAsyncExecutor asyncExecutor;
+
+    // hedges the slow point lookups
+    @Autowired
+    private TmfHedger tmfHedger;
+
     public TmfDataRetriever(ProductCatalogManagementApis productCatalogManagementApis,
                             CustomerBillApis customerBillApis,
                             APIPartyApis apiPartyApis,
@@ -90,13 +124,13 @@ public class TmfDataRetriever {
 
     public void fetchCustomerBills(String fields, Map<String, String> filter, int batchSize, Consumer<CustomerBill> consumer) throws ExternalServiceException {
         try {
-            FetchUtils.fetchByBatch(
-                    (FetchUtils.ListedFetcher<CustomerBill>) (f, flt, size, offset) ->
-                            customerBillApis.listCustomerBills(f, flt, size, offset),
+            pageFetcher.fetchByBatch(
+                    TmfApi.TMF678,
+                    customerBillApis::listCustomerBills,
                     fields,
                     filter,
                     batchSize,
-                    batch -> batch.forEach(consumer)
+                    consumer
             );
         } catch (Exception e) {
             logger.error("Failed to fetch CustomerBills by batch", e);
@@ -104,6 +138,26 @@ public class TmfDataRetriever {
         }
     }
 
+    /**
+     * Streams the customer bills one at a time, parsing each page incrementally instead of loading it whole:
+     * meant for full scans that read a few attributes (see TmfStreamingListReader).
+     * @param fields optional fields to fetch
+     * @param filter optional map of query filters
+     * @param batchSize max items per page
+     * @param parser the parser of each bill, e.g. TmfStreamingListReader.tree() for a projected bill
+     * @param consumer consumer of each bill, returns false to stop the scan
+     * @throws ExternalServiceException
+     */
+    public <T> void streamCustomerBills(String fields, Map<String, String> filter, int batchSize, ElementParser<T> parser,
+            Predicate<? super T> consumer) throws ExternalServiceException {
+        try {
+            streamingListReader.streamCustomerBills(fields, filter, batchSize, parser, consumer);
+        } catch (Exception e) {
+            logger.error("Failed to stream CustomerBills", e);
+            throw new ExternalServiceException("Failed to stream CustomerBills", e);
+        }
+    }
+
     // ======== TMF ACBRs ========
     /**
      * 	Retrieves AppliedCustomerBillingRates (ACBRs) from the TMF API by Customer Bill ID.
@@ -125,12 +179,13 @@ public class TmfDataRetriever {
             Map<String, String> filter = new HashMap<>();
             filter.put("bill.id", customerBillId);
             //FIXME: fix retrieve of large ACBR lists
-            List<AppliedCustomerBillingRate> acbrs = FetchUtils.streamAll(
+            List<AppliedCustomerBillingRate> acbrs = pageFetcher.fetchAll(
+                    TmfApi.TMF678,
                     appliedCustomerBillRateApis::listAppliedCustomerBillingRates,    // method reference
                     null,                       		   // fields
                     filter,            					   // filter
                     5                         	       // pageSize
-            ).toList();
+            );
 
             if (acbrs == null || acbrs.isEmpty()) {
                 logger.info("No AppliedCustomerBillingRate found for Customer Bill with id {}.", customerBillId);
@@ -153,6 +208,13 @@ public class TmfDataRetriever {
      * @throws ExternalServiceException If an error occurs during retrieval.
      */
     public List<CustomerBill> retrieveCustomerBills(String sellerId, String buyerId, TimePeriod timePeriod) throws ExternalServiceException {
+        return this.retrieveCustomerBills(sellerId, buyerId, timePeriod, TmfProjection.FULL);
+    }
+
+    /**
+     * Same as {@link #retrieveCustomerBills(String, String, TimePeriod)}, requesting to TMF only the attributes of the given projection.
+     */
+    public List<CustomerBill> retrieveCustomerBills(String sellerId, String buyerId, TimePeriod timePeriod, TmfProjection projection) throws ExternalServiceException {
         try {
             logger.debug("Retrieving Customer Bills from TMF API between {} and {}", timePeriod.getStartDateTime(), timePeriod.getEndDateTime());
 
@@ -174,12 +236,13 @@ public class TmfDataRetriever {
             }
 
             //FIXME: fix retrieve of large CustomerBill lists
-            List<CustomerBill> out = FetchUtils.streamAll(
+            List<CustomerBill> out = pageFetcher.fetchAll(
+                    TmfApi.TMF678,
                     customerBillApis::listCustomerBills,    // method reference
-                    null,                       		   // fields
+                    projection.getFields(),                 // fields
                     filter,            					   // filter
                     100                         	   // pageSize
-            ).toList();
+            );
 
             List<CustomerBill> filtered = new ArrayList<>();
             if (sellerId != null) {
@@ -231,12 +294,13 @@ public class TmfDataRetriever {
             }
 
             //FIXME: fix retrieve of large CustomerBill lists
-            List<CustomerBill> out = FetchUtils.streamAll(
+            List<CustomerBill> out = pageFetcher.fetchAll(
+                    TmfApi.TMF678,
                     customerBillApis::listCustomerBills,    // method reference
                     null,                       		   // fields
                     filter,            					   // filter
                     100                         	   // pageSize
-            ).toList();
+            );
             out = RelatedPartyUtils.retainCustomerBillsWithParty(out, participantId, participantRole);
 
             logger.debug("Found {} Customer Bills in the specified period after role/id filter", out.size());
@@ -314,12 +378,13 @@ public class TmfDataRetriever {
             filter.put("partyCharacteristic.name", "referredBy");
 
             //FIXME: fix retrieve of large Organization lists
-            List<Organization> orgs = FetchUtils.streamAll(
+            List<Organization> orgs = pageFetcher.fetchAll(
+                    TmfApi.TMF632,
                     apiPartyApis::listOrganizations,   // method reference
                     null,                       	  // fields
                     filter,            				 // filter
                     100                             // pageSize
-            ).toList();
+            );
 
             for (Organization o : orgs) {
                 if (o.getPartyCharacteristic() != null && o.getPartyCharacteristic().stream()
@@ -383,12 +448,13 @@ public class TmfDataRetriever {
             throws ExternalServiceException {
         logger.info("Retrieving all organizations from TMF API");
         try {
-            List<Organization> allOrgs = FetchUtils.streamAll(
+            List<Organization> allOrgs = pageFetcher.fetchAll(
+                    TmfApi.TMF632,
                     apiPartyApis::listOrganizations,   // method reference
                     null,                       	  // fields
                     null,            				 // filter
                     20                             // pageSize
-            ).toList();
+            );
             logger.info("Retrieved {} organizations from TMF API", allOrgs.size());
             return allOrgs;
         } catch (Exception e) {
@@ -404,7 +470,7 @@ public class TmfDataRetriever {
         }
 
         try {
-            return this.apiPartyApis.getOrganization(organizationId, null);
+            return tmfHedger.call("TMF632.getOrganization", () -> this.apiPartyApis.getOrganization(organizationId, null));
         } catch (it.eng.dome.tmforum.tmf632.v4.ApiException e) {
             // 404 not found
             if (e.getCode() == 404) {
@@ -421,6 +487,71 @@ public class TmfDataRetriever {
         }
     }
 
+    /**
+     * Retrieves the organizations with the given IDs, querying TMF632 with batches of IDs
+     * instead of one request per organization. The IDs missing from a batch result are then
+     * retrieved one by one.
+     * @param organizationIds
+     * @return the organizations found, in the iteration order of the IDs (IDs not found are skipped)
+     * @throws ExternalServiceException
+     */
+    public List<Organization> getOrganizations(Collection<String> organizationIds)
+            throws ExternalServiceException {
+        return this.getOrganizations(organizationIds, TmfProjection.FULL);
+    }
+
+    /**
+     * Same as {@link #getOrganizations(Collection)}, requesting to TMF only the attributes of the given projection.
+     */
+    public List<Organization> getOrganizations(Collection<String> organizationIds, TmfProjection projection)
+            throws ExternalServiceException {
+        Map<String, Organization> found = new HashMap<>();
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(organizationIds));
+        try {
+            for (int from = 0; from < ids.size(); from += ORGANIZATION_ID_BATCH_SIZE) {
+                List<String> batch = ids.subList(from, Math.min(from + ORGANIZATION_ID_BATCH_SIZE, ids.size()));
+                logger.debug("Retrieving {} organisations by id", batch.size());
+
+                Map<String, String> filter = new HashMap<>();
+                filter.put("id", String.join(",", batch));
+                List<Organization> orgs = pageFetcher.fetchAll(
+                        TmfApi.TMF632,
+                        apiPartyApis::listOrganizations,   // method reference
+                        projection.getFields(),           // fields
+                        filter,            				 // filter
+                        ORGANIZATION_ID_BATCH_SIZE      // pageSize
+                );
+                for (Organization org : orgs) {
+                    // the id filter is a server-side hint: keep only the requested ones
+                    if (org != null && batch.contains(org.getId())) {
+                        found.put(org.getId(), org);
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logger.error("Failed to retrieve organizations {}", ids, e);
+            throw new ExternalServiceException("Failed to retrieve organizations by ID", e);
+        }
+
+        List<Organization> out = new ArrayList<>();
+        for (String id : ids) {
+            Organization org = found.get(id);
+            if (org == null && id != null) {
+                // not in the batch result (e.g. id list filter not supported): look it up by id
+                logger.debug("Organization {} not in the batch result, retrieving it by id", id);
+                try {
+                    org = this.getOrganization(id);
+                } catch (BadTmfDataException e) {
+                    throw new ExternalServiceException("Failed to retrieve organization " + id, e);
+                }
+            }
+            if (org != null) {
+                out.add(org);
+            }
+        }
+        return out;
+    }
+
     // ======== ORGANIZATIONS BEHIND MARKETPLACES ========
     
     /**
@@ -454,20 +585,10 @@ public class TmfDataRetriever {
                 }
             }
 
-            List<Organization> activeSellers = new ArrayList<>();
-            for (String s : sellersIds) {
-                logger.debug("Retrieving organisation with id: {}", s);
-                try {
-                    Organization org = this.getOrganization(s);
-                    if (org != null) {
-                        logger.debug("{} {} {}", org.getTradingName(), org.getName(), org.getId());
-                        activeSellers.add(org);
-                    }
-                } catch (Exception e) {
-                    logger.error("unable to retrieve organisation with id {} appearing as seller", s);
-                    logger.error("", e);
-                    throw e;
-                }
+            logger.debug("Retrieving {} organisations appearing as seller", sellersIds.size());
+            List<Organization> activeSellers = this.getOrganizations(sellersIds);
+            for (Organization org : activeSellers) {
+                logger.debug("{} {} {}", org.getTradingName(), org.getName(), org.getId());
             }
 
             return activeSellers;
@@ -507,14 +628,10 @@ public class TmfDataRetriever {
         }
 
         // now retrieve the organizations
-        List<Organization> billedSellers = new ArrayList<>();
-        for (String s : sellersIds) {
-            logger.debug("Retrieving organisation with id: {}", s);
-            Organization org = this.getOrganization(s);
-            if (org != null) {
-                logger.debug("{} {} {}", org.getTradingName(), org.getName(), org.getId());
-                billedSellers.add(org);
-            }
+        logger.debug("Retrieving {} organisations billed by marketplace", sellersIds.size());
+        List<Organization> billedSellers = this.getOrganizations(sellersIds);
+        for (Organization org : billedSellers) {
+            logger.debug("{} {} {}", org.getTradingName(), org.getName(), org.getId());
         }
         return billedSellers;
     }
@@ -569,7 +686,7 @@ public class TmfDataRetriever {
         }
 
         try {
-            Product prod = this.productInventoryApis.getProduct(productId, fields);
+            Product prod = tmfHedger.call("TMF637.getProduct", () -> this.productInventoryApis.getProduct(productId, fields));
             if (prod == null) {
                 logger.info("No product found for product with id {}: ", productId);
                 return null;
@@ -583,6 +700,9 @@ public class TmfDataRetriever {
 
     /**
      * 	Fetches active products in batches from the TMF API and processes them using the provided consumer.
+     * 	The products of up to 20 plan offerings are requested with a single (paged) query. Only when such a query
+     * 	returns no product at all, the offerings are queried one by one; if these find products, the id list
+     * 	filter is not supported by TMF and the next offerings are queried one by one directly.
      * @param batchSize
      * @param consumer
      * @throws ExternalServiceException
@@ -592,35 +712,73 @@ public class TmfDataRetriever {
     public void fetchActiveProducts(int batchSize, Consumer<Product> consumer )
             throws ExternalServiceException {
         try {
-            // Batch on ProductOffering category "DOME OPERATOR Plan"
-            this.fetchProductOfferings(null, Map.of("category.name", "DOME OPERATOR Plan"), batchSize, po -> {
-                try {
-                    Map<String, String> filter = Map.of("productOffering.id", po.getId());
-
-                    // Batch of Products filtered by ProductOffering.id
-                    this.fetchProducts(null, filter, batchSize, product -> {
-                        try {
-                            // only active products
-                            // FIXME: but be careful with last invoices... sub might not be active
-                            // TODO: CHECK IF EXIST IN TMF A STATUS THAT IS RECENTLY TERMINATED
-                            if (product.getStatus() != null && "active".equalsIgnoreCase(product.getStatus().getValue())) {
-                                consumer.accept(product);
-                            }
-                        } catch (Exception e) {
-                            logger.warn("Failed to process product {}: {}", product.getId(), e.getMessage(), e);
+            // ProductOfferings in category "DOME OPERATOR Plan" (only their ids are needed)
+            List<String> offeringIds = new ArrayList<>();
+            this.fetchProductOfferings(TmfProjection.ID_ONLY.getFields(), Map.of("category.name", "DOME OPERATOR Plan"), batchSize,
+                    po -> offeringIds.add(po.getId()));
+
+            // Products of many offerings at once, instead of a query per offering
+            for (int from = 0; from < offeringIds.size(); from += PRODUCT_OFFERING_ID_BATCH_SIZE) {
+                List<String> batch = offeringIds.subList(from, Math.min(from + PRODUCT_OFFERING_ID_BATCH_SIZE, offeringIds.size()));
+                Set<String> batchIds = new HashSet<>(batch);
+                Set<String> seenIds = new HashSet<>();
+
+                if (batch.size() == 1 || !Boolean.FALSE.equals(offeringIdListSupported)) {
+                    Map<String, String> filter = new HashMap<>();
+                    filter.put("productOffering.id", String.join(",", batch));
+                    filter.put("status", "active");
+                    this.fetchActiveProducts(filter, batchIds, seenIds, batchSize, consumer);
+                    if (batch.size() == 1 || !seenIds.isEmpty()) {
+                        if (batch.size() > 1) {
+                            offeringIdListSupported = true;
                         }
-                    });
+                        continue;
+                    }
+                    if (Boolean.TRUE.equals(offeringIdListSupported)) {
+                        continue; // no active products in these offerings
+                    }
+                }
 
-                } catch (Exception e) {
-                    logger.warn("Failed to process ProductOffering {}: {}", po.getId(), e.getMessage(), e);
+                // the id list filter may not be supported: query the offerings one by one
+                logger.debug("No active products of {} ProductOfferings in the batch result, querying them one by one", batch.size());
+                for (String offeringId : batch) {
+                    Map<String, String> single = new HashMap<>();
+                    single.put("productOffering.id", offeringId);
+                    single.put("status", "active");
+                    this.fetchActiveProducts(single, Set.of(offeringId), seenIds, batchSize, consumer);
                 }
-            });
+                if (!seenIds.isEmpty() && offeringIdListSupported == null) {
+                    logger.info("TMF637 does not apply the productOffering.id list filter: querying the offerings one by one");
+                    offeringIdListSupported = false;
+                }
+            }
         } catch (Exception e) {
             logger.error("Failed to fetch subscription products", e);
             throw new ExternalServiceException("Failed to fetch subscription products", e);
         }
     }
 
+    /*
+     * Fetches the active products of the given offerings, noting the offerings found.
+     */
+    private void fetchActiveProducts(Map<String, String> filter, Set<String> offeringIds, Set<String> seenIds, int batchSize, Consumer<Product> consumer)
+            throws ExternalServiceException {
+        this.fetchProducts(null, filter, batchSize, product -> {
+            try {
+                // only active products of the requested offerings (the filters are server-side hints)
+                // FIXME: but be careful with last invoices... sub might not be active
+                // TODO: CHECK IF EXIST IN TMF A STATUS THAT IS RECENTLY TERMINATED
+                if (product.getStatus() != null && "active".equalsIgnoreCase(product.getStatus().getValue())
+                        && product.getProductOffering() != null && offeringIds.contains(product.getProductOffering().getId())) {
+                    seenIds.add(product.getProductOffering().getId());
+                    consumer.accept(product);
+                }
+            } catch (Exception e) {
+                logger.warn("Failed to process product {}: {}", product.getId(), e.getMessage(), e);
+            }
+        });
+    }
+
     /**
      * 
      * Fetches products in batches from the TMF API based on the provided fields and filter.
@@ -633,13 +791,13 @@ public class TmfDataRetriever {
     public void fetchProducts(String fields, Map<String, String> filter, int batchSize, Consumer<Product> consumer)
             throws ExternalServiceException {
         try {
-            FetchUtils.fetchByBatch(
-                    (FetchUtils.ListedFetcher<Product>) (f, flt, size, offset) ->
-                            productInventoryApis.listProducts(f, flt, size, offset),
+            pageFetcher.fetchByBatch(
+                    TmfApi.TMF637,
+                    productInventoryApis::listProducts,
                     fields,
                     filter,
                     batchSize,
-                    batch -> batch.forEach(consumer)
+                    consumer
             );
         } catch (Exception e) {
             throw new ExternalServiceException("Failed to fetch Products by batch", e);
@@ -666,7 +824,7 @@ public class TmfDataRetriever {
         }
 
         try {
-            return this.productCatalogManagementApis.getProductOffering(poId, fields);
+            return tmfHedger.call("TMF620.getProductOffering", () -> this.productCatalogManagementApis.getProductOffering(poId, fields));
         } catch (Exception e) {
             logger.error("Failed to retrieve product offering {}", poId, e);
             throw new ExternalServiceException("Failed to retrieve product offering with ID: " + poId, e);
@@ -684,13 +842,13 @@ public class TmfDataRetriever {
     public void fetchProductOfferings(String fields, Map<String, String> filter, int batchSize, Consumer<ProductOffering> consumer)
             throws ExternalServiceException {
         try {
-            FetchUtils.fetchByBatch(
-                    (FetchUtils.ListedFetcher<ProductOffering>) (f, flt, size, offset) ->
-                            productCatalogManagementApis.listProductOfferings(f, flt, size, offset),
+            pageFetcher.fetchByBatch(
+                    TmfApi.TMF620,
+                    productCatalogManagementApis::listProductOfferings,
                     fields,
                     filter,
                     batchSize,
-                    batch -> batch.forEach(consumer)
+                    consumer
             );
         } catch (Exception e) {
             throw new ExternalServiceException("Failed to fetch ProductOfferings by batch", e);
@@ -714,7 +872,7 @@ public class TmfDataRetriever {
         }
 
         try {
-            return this.productCatalogManagementApis.getProductOfferingPrice(popId, fields);
+            return tmfHedger.call("TMF620.getProductOfferingPrice", () -> this.productCatalogManagementApis.getProductOfferingPrice(popId, fields));
         } catch (Exception e) {
             logger.error("Failed to retrieve product offering price {}", popId, e);
             throw new ExternalServiceException("Failed to retrieve product offering price with ID: " + popId, e);
@@ -739,4 +897,52 @@ public class TmfDataRetriever {
         }
     }
 
-}
\ No newline at end of file
+    // ======== ASYNC ========
+    // Non-blocking variants of the reads above, run on the TmfAsyncExecutor: they call the (possibly cached) blocking methods
+    // of this instance, and complete exceptionally with their exceptions. Use TmfAsyncExecutor.join to wait for the result.
+
+    public CompletableFuture<CustomerBill> getCustomerBillAsync(String customerBillId) {
+        return asyncExecutor.supply(() -> this.getCustomerBill(customerBillId));
+    }
+
+    public CompletableFuture<List<CustomerBill>> retrieveCustomerBillsAsync(String sellerId, String buyerId, TimePeriod timePeriod) {
+        return asyncExecutor.supply(() -> this.retrieveCustomerBills(sellerId, buyerId, timePeriod));
+    }
+
+    public CompletableFuture<List<CustomerBill>> retrieveCustomerBillsAsync(String sellerId, String buyerId, TimePeriod timePeriod, TmfProjection projection) {
+        return asyncExecutor.supply(() -> this.retrieveCustomerBills(sellerId, buyerId, timePeriod, projection));
+    }
+
+    protected CompletableFuture<List<CustomerBill>> retrieveCustomerBillsAsync(String participantId, Role participantRole, TimePeriod timePeriod) {
+        return asyncExecutor.supply(() -> this.retrieveCustomerBills(participantId, participantRole, timePeriod));
+    }
+
+    public CompletableFuture<Organization> getOrganizationAsync(String organizationId) {
+        return asyncExecutor.supply(() -> this.getOrganization(organizationId));
+    }
+
+    public CompletableFuture<List<Organization>> getOrganizationsAsync(Collection<String> organizationIds, TmfProjection projection) {
+        return asyncExecutor.supply(() -> this.getOrganizations(organizationIds, projection));
+    }
+
+    public CompletableFuture<List<Organization>> listReferralsProvidersAsync(String referrerOrganizationId) {
+        return asyncExecutor.supply(() -> this.listReferralsProviders(referrerOrganizationId));
+    }
+
+    public CompletableFuture<List<Organization>> listActiveSellersBehindFederatedMarketplaceAsync(String federatedMarketplaceId, TimePeriod timePeriod) {
+        return asyncExecutor.supply(() -> this.listActiveSellersBehindFederatedMarketplace(federatedMarketplaceId, timePeriod));
+    }
+
+    public CompletableFuture<BillingAccountRef> retrieveBillingAccountByProductIdAsync(String productId) {
+        return asyncExecutor.supply(() -> this.retrieveBillingAccountByProductId(productId));
+    }
+
+    public CompletableFuture<Product> getProductAsync(String productId, String fields) {
+        return asyncExecutor.supply(() -> this.getProduct(productId, fields));
+    }
+
+    public CompletableFuture<ProductOffering> getProductOfferingAsync(String poId, String fields) {
+        return asyncExecutor.supply(() -> this.getProductOffering(poId, fields));
+    }
+
+}
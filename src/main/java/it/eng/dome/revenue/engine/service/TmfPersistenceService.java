@@ -8,7 +8,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -16,6 +15,8 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+
 import it.eng.dome.brokerage.api.APIPartyApis;
 import it.eng.dome.brokerage.api.AppliedCustomerBillRateApis;
 import it.eng.dome.brokerage.api.CustomerBillApis;
@@ -26,6 +27,7 @@ import it.eng.dome.revenue.engine.model.Role;
 import it.eng.dome.revenue.engine.model.Subscription;
 import it.eng.dome.revenue.engine.service.cached.CachedSubscriptionService;
 import it.eng.dome.revenue.engine.service.cached.TmfCachedDataRetriever;
+import it.eng.dome.revenue.engine.tmf.TmfStreamingListReader;
 import it.eng.dome.revenue.engine.utils.RelatedPartyUtils;
 import it.eng.dome.tmforum.tmf678.v4.model.AppliedCustomerBillingRate;
 import it.eng.dome.tmforum.tmf678.v4.model.AppliedCustomerBillingRateCreate;
@@ -56,6 +58,9 @@ public class TmfPersistenceService {
     // Tolerance for float comparison (to handle floating point precision issues)
     private static final float AMOUNT_TOLERANCE = 0.001f;
 
+    // CustomerBill attributes compared by the duplicate check
+    private static final String DUPLICATE_CHECK_FIELDS = "id,billingPeriod,taxExcludedAmount,relatedParty";
+
     @Autowired 
     private BillsService billService;
     
@@ -286,10 +291,10 @@ public class TmfPersistenceService {
 
         // Check if already exists in TMF (deduplication)
         logger.info("Checking for duplicates in TMF...");
-        CustomerBill existingCustomerBill = findDuplicateInTMF(cb, revenueBillId);
+        String existingCustomerBillId = findDuplicateInTMF(cb, revenueBillId);
         
-        if (existingCustomerBill != null) {
-            logger.info("DUPLICATE FOUND: Local CB matches existing TMF CB with id {}", existingCustomerBill.getId());
+        if (existingCustomerBillId != null) {
+            logger.info("DUPLICATE FOUND: Local CB matches existing TMF CB with id {}", existingCustomerBillId);
             return null;
         }
         
@@ -362,10 +367,10 @@ public class TmfPersistenceService {
      *
      * @param cb the local CustomerBill to check
      * @param revenueBillId the associated revenue bill ID for product comparison
-     * @return the matched CustomerBill from TMF, or null if no duplicate found
+     * @return the id of the matched CustomerBill in TMF, or null if no duplicate found
      * @throws Exception if any API call fails
      */
-    private CustomerBill findDuplicateInTMF(CustomerBill cb, String revenueBillId) throws Exception {
+    private String findDuplicateInTMF(CustomerBill cb, String revenueBillId) throws Exception {
         logger.info("=== findDuplicateInTMF for RevenueBill {} ===", revenueBillId);
 
         // Extract local comparison values
@@ -381,24 +386,24 @@ public class TmfPersistenceService {
         logger.info("  - Amount: {}", localData.amount);
         logger.info("  - BuyerId: {}", localData.buyerId);
 
-        // Search for duplicate in TMF
-        final CustomerBill[] found = {null};
-        final AtomicBoolean stop = new AtomicBoolean(false);
+        // Search for duplicate in TMF: stream the candidates with only the compared attributes, read from
+        // the JSON tree of each one, and stop at the first match
+        final String[] found = {null};
 
         try {
-            tmfDataRetriever.fetchCustomerBills(null, null, 50, candidate -> {
-                if (stop.get()) return; // Early exit if already found
-
+            tmfDataRetriever.streamCustomerBills(DUPLICATE_CHECK_FIELDS, null, 50, TmfStreamingListReader.tree(), candidate -> {
+                String candidateId = candidate.path("id").asText(null);
                 try {
                     boolean isMatch = checkCandidateMatch(candidate, localData);
                     if (isMatch) {
-                        found[0] = candidate;
-                        stop.set(true);
-                        logger.info(">>> DUPLICATE MATCH FOUND: TMF CB id={}", candidate.getId());
+                        found[0] = candidateId;
+                        logger.info(">>> DUPLICATE MATCH FOUND: TMF CB id={}", candidateId);
+                        return false;
                     }
                 } catch (Exception e) {
-                    logger.warn("Error checking candidate CB {}: {}", candidate.getId(), e.getMessage());
+                    logger.warn("Error checking candidate CB {}: {}", candidateId, e.getMessage());
                 }
+                return true;
             });
 
         } catch (Exception e) {
@@ -466,25 +471,27 @@ public class TmfPersistenceService {
      * Checks if a candidate CustomerBill from TMF matches the local CB data.
      * All conditions must match for it to be considered a duplicate.
      */
-    private boolean checkCandidateMatch(CustomerBill candidate, LocalCbData localData) throws Exception {
-        logger.debug("Checking candidate CB: {}", candidate.getId());
+    private boolean checkCandidateMatch(JsonNode candidate, LocalCbData localData) throws Exception {
+        String candidateId = candidate.path("id").asText(null);
+        logger.debug("Checking candidate CB: {}", candidateId);
 
         // STEP 1: Check billing period
-        if (candidate.getBillingPeriod() == null) {
+        JsonNode billingPeriod = candidate.path("billingPeriod");
+        if (!billingPeriod.isObject()) {
             logger.debug("  [SKIP] Candidate has null billingPeriod");
             return false;
         }
         
-        OffsetDateTime candStart = candidate.getBillingPeriod().getStartDateTime();
-        OffsetDateTime candEnd = candidate.getBillingPeriod().getEndDateTime();
+        String start = billingPeriod.path("startDateTime").asText(null);
+        String end = billingPeriod.path("endDateTime").asText(null);
         
-        if (candStart == null || candEnd == null) {
+        if (start == null || end == null) {
             logger.debug("  [SKIP] Candidate has incomplete billingPeriod");
             return false;
         }
         
-        candStart = candStart.truncatedTo(ChronoUnit.SECONDS);
-        candEnd = candEnd.truncatedTo(ChronoUnit.SECONDS);
+        OffsetDateTime candStart = OffsetDateTime.parse(start).truncatedTo(ChronoUnit.SECONDS);
+        OffsetDateTime candEnd = OffsetDateTime.parse(end).truncatedTo(ChronoUnit.SECONDS);
         
         boolean periodMatch = localData.startDateTime.equals(candStart) && localData.endDateTime.equals(candEnd);
         logger.debug("  Period: local=[{} - {}] vs candidate=[{} - {}] => match={}", 
@@ -496,9 +503,8 @@ public class TmfPersistenceService {
         }
 
         // STEP 2: Check amount (taxExcludedAmount) - using Float
-        Float candAmount = candidate.getTaxExcludedAmount() != null 
-            ? candidate.getTaxExcludedAmount().getValue() 
-            : null;
+        JsonNode candValue = candidate.path("taxExcludedAmount").path("value");
+        Float candAmount = candValue.isNumber() ? candValue.floatValue() : null;
         
         boolean amountMatch = floatsEqual(localData.amount, candAmount);
         logger.debug("  Amount: local={} vs candidate={} => match={}", localData.amount, candAmount, amountMatch);
@@ -509,7 +515,7 @@ public class TmfPersistenceService {
         }
 
         // STEP 3: Check product ID (requires API call, so check after quick filters)
-        List<AppliedCustomerBillingRate> candAcbrs = tmfDataRetriever.getACBRsByCustomerBillId(candidate.getId());
+        List<AppliedCustomerBillingRate> candAcbrs = tmfDataRetriever.getACBRsByCustomerBillId(candidateId);
         String candProductId = null;
         if (!candAcbrs.isEmpty() && candAcbrs.get(0).getProduct() != null) {
             candProductId = candAcbrs.get(0).getProduct().getId();
@@ -524,7 +530,13 @@ public class TmfPersistenceService {
         }
 
         // STEP 4: Check buyer (related party with BUYER role)
-        String candBuyerId = getRelatedPartyIdByRole(candidate.getRelatedParty(), Role.BUYER);
+        String candBuyerId = null;
+        for (JsonNode rp : candidate.path("relatedParty")) {
+            if (Role.BUYER.getValue().equalsIgnoreCase(rp.path("role").asText())) {
+                candBuyerId = rp.path("id").asText(null);
+                break;
+            }
+        }
         boolean buyerMatch = Objects.equals(localData.buyerId, candBuyerId);
         logger.debug("  BuyerId: local={} vs candidate={} => match={}", localData.buyerId, candBuyerId, buyerMatch);
         
@@ -785,8 +797,9 @@ public class TmfPersistenceService {
         Map<String, String> filter = new HashMap<>();
         filter.put("category", WATERMARK);
 
-        tmfDataRetriever.fetchCustomerBills(null, filter, 50, cb -> {
-            String billNo = cb.getBillNo();
+        // only the billNo of each bill is read
+        tmfDataRetriever.streamCustomerBills("billNo", filter, 50, TmfStreamingListReader.tree(), cb -> {
+            String billNo = cb.path("billNo").asText(null);
             if (billNo != null && billNo.startsWith(prefix)) {
                 try {
                     int n = Integer.parseInt(billNo.substring(prefix.length()));
@@ -795,6 +808,7 @@ public class TmfPersistenceService {
                     logger.warn("Invalid billNo format: {}", billNo);
                 }
             }
+            return true;
         });
 
         return String.format("INV-%d-%04d", year, max[0] + 1);
@@ -0,0 +1,168 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import it.eng.dome.revenue.engine.model.BillSummary;
+import it.eng.dome.revenue.engine.service.CustomerBillIndex;
+import it.eng.dome.tmforum.tmf678.v4.model.CustomerBill;
+
+/**
+ * Applies the TMF notifications (hub callbacks) to the caches, so that a changed resource is served fresh
+ * without waiting for the cache TTLs.
+ * <p>
+ * Handles the create, change (attribute value or state) and delete events of CustomerBill, Product,
+ * Organization and ProductOffering: the cached TMF data of the resource is evicted, together with the
+ * revenue statements and reports computed from it. The customer bill index is updated in place.
+ * The related parties of an event are not enough to find what a changed bill affected (they may be missing,
+ * partial, or differ from the previous ones): those of the indexed and cached bill are evicted too.
+ * </p>
+ */
+@Service
+public class CacheInvalidationService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheInvalidationService.class);
+
+    /**
+     * The resources whose events are handled. ProductOffering precedes Product, as event types are matched by prefix.
+     */
+    public enum Resource {
+        CUSTOMER_BILL("CustomerBill", "customerBill"),
+        PRODUCT_OFFERING("ProductOffering", "productOffering"),
+        PRODUCT("Product", "product"),
+        ORGANIZATION("Organization", "organization");
+
+        private final String typePrefix;
+        private final String eventField;
+
+        Resource(String typePrefix, String eventField) {
+            this.typePrefix = typePrefix;
+            this.eventField = eventField;
+        }
+
+        static Resource of(String eventType) {
+            for (Resource r : values()) {
+                if (eventType.regionMatches(true, 0, r.typePrefix, 0, r.typePrefix.length())) {
+                    return r;
+                }
+            }
+            return null;
+        }
+    }
+
+    @Autowired
+    private TmfCachedDataRetriever tmfDataRetriever;
+
+    @Autowired
+    private CachedStatementsService statementsService;
+
+    @Autowired
+    private CachedReportingService reportingService;
+
+    @Autowired
+    private CachedSubscriptionService subscriptionService;
+
+    @Autowired
+    private CachedPlanService planService;
+
+    @Autowired
+    private CustomerBillIndex customerBillIndex;
+
+    /**
+     * Applies a TMF event to the caches.
+     *
+     * @param eventType the event type (e.g. CustomerBillStateChangeEvent), used if the event has no eventType
+     * @param event     the event, as posted by the TMF hub: {@code {"eventType": ..., "event": {"customerBill": {...}}}}
+     * @return the resource of the event
+     * @throws IllegalArgumentException if the event is not a supported TMF event
+     */
+    public Resource handle(String eventType, JsonNode event) {
+        if (event == null) {
+            throw new IllegalArgumentException("Missing event");
+        }
+        String type = event.hasNonNull("eventType") ? event.get("eventType").asText() : eventType;
+        if (type == null) {
+            throw new IllegalArgumentException("Missing eventType");
+        }
+        Resource resource = Resource.of(type);
+        if (resource == null) {
+            throw new IllegalArgumentException("Unsupported eventType " + type);
+        }
+        JsonNode entity = event.path("event").path(resource.eventField);
+        String id = entity.path("id").asText(null);
+        if (id == null || id.isBlank()) {
+            throw new IllegalArgumentException("Missing " + resource.eventField + ".id in " + type);
+        }
+        boolean deleted = type.toLowerCase(Locale.ROOT).contains("delete");
+        Set<String> partyIds = relatedPartyIds(entity);
+
+        switch (resource) {
+            case CUSTOMER_BILL:
+                BillSummary indexed = customerBillIndex.get(id);
+                if (indexed != null) {
+                    indexed.getParties().forEach(p -> partyIds.add(p.getId()));
+                }
+                boolean created = type.toLowerCase(Locale.ROOT).contains("create");
+                this.updateBillIndex(id, entity, deleted);
+                partyIds.addAll(tmfDataRetriever.evictCustomerBill(id, partyIds, created || indexed != null));
+                partyIds.forEach(reportingService::evictReport);
+                statementsService.evictStatementsOfParties(partyIds);
+                break;
+            case PRODUCT:
+                tmfDataRetriever.evictProduct(id);
+                subscriptionService.evictSubscription(id);
+                statementsService.evictStatements(id);
+                partyIds.forEach(reportingService::evictReport);
+                break;
+            case ORGANIZATION:
+                tmfDataRetriever.evictOrganization(id);
+                reportingService.evictReport(id);
+                break;
+            case PRODUCT_OFFERING:
+                tmfDataRetriever.evictProductOffering(id);
+                planService.evictPlansOfOffering(id);
+                statementsService.evictStatementsOfOffering(id);
+                break;
+        }
+        logger.info("Applied {} for {} {} to the caches", type, resource.typePrefix, id);
+        return resource;
+    }
+
+    private void updateBillIndex(String id, JsonNode entity, boolean deleted) {
+        if (deleted) {
+            customerBillIndex.remove(id);
+            return;
+        }
+        // a partial payload (e.g. only the changed attributes) must not replace the indexed bill
+        boolean complete = entity.has("billDate") && entity.has("relatedParty")
+                && (entity.has("taxIncludedAmount") || entity.has("taxExcludedAmount"));
+        if (complete) {
+            try {
+                customerBillIndex.update(BillSummary.of(CustomerBill.fromJson(entity.toString())));
+                return;
+            } catch (Exception e) {
+                logger.debug("Cannot read CustomerBill {} from the event: {}", id, e.getMessage());
+            }
+        }
+        customerBillIndex.refreshBill(id);
+    }
+
+    private static Set<String> relatedPartyIds(JsonNode entity) {
+        Set<String> ids = new LinkedHashSet<>();
+        for (JsonNode rp : entity.path("relatedParty")) {
+            String id = rp.path("id").asText(null);
+            if (id != null && !id.isBlank()) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,169 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+import org.ehcache.core.statistics.CacheStatistics;
+import org.ehcache.core.statistics.TierStatistics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Publishes the {@link CacheService} caches as Micrometer meters, tagged with the cache name:
+ * <ul>
+ * <li>{@code cache.gets} (result hit/miss), {@code cache.hit.ratio}, {@code cache.puts}, {@code cache.evictions}
+ * and {@code cache.size} (entries), from the Ehcache statistics;</li>
+ * <li>{@code cache.load}, the time spent loading the values (with histogram);</li>
+ * <li>{@code cache.negative.hits}, the reads answered as not found by the negative cache (not counted in {@code cache.gets});</li>
+ * <li>{@code cache.stale.served}, the reads answered with the last value (or bill periods) because TMF was unavailable;</li>
+ * <li>{@code cache.tier.*}, the occupancy of each tier (heap, off-heap, disk).</li>
+ * </ul>
+ */
+@Component
+public class CacheMetrics {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheMetrics.class);
+
+    @Autowired
+    private CacheService cacheService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // caches already bound to the registry
+    private final Set<String> boundCaches = ConcurrentHashMap.newKeySet();
+
+    // coalescing caches whose negative hits are already bound to the registry
+    private final Set<String> boundNegativeCaches = ConcurrentHashMap.newKeySet();
+
+    // coalescing and period caches whose stale fallbacks are already bound to the registry
+    private final Set<String> boundStaleCaches = ConcurrentHashMap.newKeySet();
+
+    private final Map<String, Timer> loadTimers = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void bindLoadTimers() {
+        cacheService.setLoadRecorder((cacheName, nanos) ->
+                loadTimers.computeIfAbsent(cacheName, this::loadTimer).record(nanos, TimeUnit.NANOSECONDS));
+    }
+
+    /**
+     * Registers the meters of the caches created so far (caches are created while the services are initialized).
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void bindCaches() {
+        for (String cacheName : cacheService.getCacheNames()) {
+            if (boundCaches.add(cacheName)) {
+                this.bindCache(cacheName);
+            }
+        }
+        for (CoalescingCache<?, ?> cache : cacheService.getCoalescingCaches()) {
+            if (cache.isNegativeCachingEnabled() && boundNegativeCaches.add(cache.getName())) {
+                FunctionCounter.builder("cache.negative.hits", cache, CoalescingCache::getNegativeHits)
+                        .description("Number of cache reads answered as not found by the negative cache")
+                        .tag("cache", cache.getName())
+                        .register(meterRegistry);
+            }
+            if (cache.isStaleFallbackEnabled() && boundStaleCaches.add(cache.getName())) {
+                this.staleCounter(cache.getName(), cache, CoalescingCache::getStaleServed);
+            }
+        }
+        for (PeriodCache<?> cache : cacheService.getPeriodCaches()) {
+            if (cache.isStaleFallbackEnabled() && boundStaleCaches.add(cache.getName())) {
+                this.staleCounter(cache.getName(), cache, PeriodCache::getStaleServed);
+            }
+        }
+        logger.info("Cache metrics registered for {} caches", boundCaches.size());
+    }
+
+    private <T> void staleCounter(String cacheName, T cache, ToDoubleFunction<T> staleServed) {
+        FunctionCounter.builder("cache.stale.served", cache, staleServed)
+                .description("Number of cache reads answered with stale data because TMF was unavailable")
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+    }
+
+    private void bindCache(String cacheName) {
+        this.statsCounter("cache.gets", "Number of cache reads that found a value", cacheName, "hit", CacheStatistics::getCacheHits);
+        this.statsCounter("cache.gets", "Number of cache reads that found no value", cacheName, "miss", CacheStatistics::getCacheMisses);
+        this.statsCounter("cache.puts", "Number of values put in the cache", cacheName, null, CacheStatistics::getCachePuts);
+        this.statsCounter("cache.evictions", "Number of values evicted from the cache", cacheName, null, CacheStatistics::getCacheEvictions);
+        this.statsGauge("cache.hit.ratio", "Ratio of the cache reads that found a value", cacheName,
+                stats -> stats.getCacheGets() > 0 ? stats.getCacheHitPercentage() / 100 : Double.NaN);
+        // the lowest tier holds all the entries
+        this.statsGauge("cache.size", "Number of entries in the cache", cacheName,
+                stats -> stats.getTierStatistics().values().stream().mapToLong(TierStatistics::getMappings).max().orElse(0));
+        loadTimers.computeIfAbsent(cacheName, this::loadTimer);
+
+        for (String tier : cacheService.getTierStatistics(cacheName).keySet()) {
+            this.tierGauge("cache.tier.mappings", "Number of entries in the cache tier", null,
+                    cacheName, tier, TierStatistics::getMappings);
+            this.tierGauge("cache.tier.occupied", "Bytes used by the entries in the cache tier", BaseUnits.BYTES,
+                    cacheName, tier, TierStatistics::getOccupiedByteSize);
+            this.tierGauge("cache.tier.allocated", "Bytes allocated to the cache tier", BaseUnits.BYTES,
+                    cacheName, tier, TierStatistics::getAllocatedByteSize);
+        }
+    }
+
+    private Timer loadTimer(String cacheName) {
+        return Timer.builder("cache.load")
+                .description("Time spent loading the values missing from the cache")
+                .tag("cache", cacheName)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private void statsCounter(String name, String description, String cacheName, String result,
+            ToLongFunction<CacheStatistics> value) {
+        FunctionCounter.Builder<CacheService> builder = FunctionCounter.builder(name, cacheService, cs -> {
+                    CacheStatistics stats = cs.getCacheStatistics(cacheName);
+                    return stats != null ? value.applyAsLong(stats) : Double.NaN;
+                })
+                .description(description)
+                .tag("cache", cacheName);
+        if (result != null) {
+            builder = builder.tag("result", result);
+        }
+        builder.register(meterRegistry);
+    }
+
+    private void statsGauge(String name, String description, String cacheName, ToDoubleFunction<CacheStatistics> value) {
+        Gauge.builder(name, cacheService, cs -> {
+                    CacheStatistics stats = cs.getCacheStatistics(cacheName);
+                    return stats != null ? value.applyAsDouble(stats) : Double.NaN;
+                })
+                .description(description)
+                .tag("cache", cacheName)
+                .register(meterRegistry);
+    }
+
+    private void tierGauge(String name, String description, String unit, String cacheName, String tier,
+            ToLongFunction<TierStatistics> value) {
+        Gauge.builder(name, cacheService, cs -> {
+                    Map<String, TierStatistics> tiers = cs.getTierStatistics(cacheName);
+                    TierStatistics stats = tiers.get(tier);
+                    return stats != null ? value.applyAsLong(stats) : Double.NaN;
+                })
+                .description(description)
+                .baseUnit(unit)
+                .tag("cache", cacheName)
+                .tag("tier", tier)
+                .register(meterRegistry);
+    }
+}
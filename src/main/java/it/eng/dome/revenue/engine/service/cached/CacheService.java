@@ -1,35 +1,113 @@
 package it.eng.dome.revenue.engine.service.cached;
 
+import java.io.File;
+import java.io.Serializable;
 import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 import org.ehcache.Cache;
 import org.ehcache.CacheManager;
 import org.ehcache.config.CacheConfiguration;
 import org.ehcache.config.builders.CacheConfigurationBuilder;
 import org.ehcache.config.builders.CacheManagerBuilder;
-import org.ehcache.config.builders.ExpiryPolicyBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.core.spi.service.StatisticsService;
+import org.ehcache.core.statistics.CacheStatistics;
+import org.ehcache.core.statistics.TierStatistics;
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.service.ServiceDependencies;
+import org.ehcache.spi.service.ServiceProvider;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
+import it.eng.dome.revenue.engine.tmf.TmfTrafficClass;
+import it.eng.dome.revenue.engine.utils.CacheDuration;
+import it.eng.dome.revenue.engine.utils.CacheDuration.CacheSizing;
+import jakarta.annotation.PreDestroy;
+
 /**
  * Generic cache service using Ehcache for local caching of any data type.
  * Supports configurable TTL and multiple independent caches.
+ * Each cache is sized according to {@code caching.sizing}: the heap tier by entries, with optional
+ * off-heap and disk tiers sized by bytes (for the caches with a serializer of the values).
  */
 @Service
 public class CacheService {
 
+    /**
+     * Receives the duration of the loads of the values cached, e.g. to publish it as a metric.
+     */
+    @FunctionalInterface
+    public interface LoadRecorder {
+        void record(String cacheName, long nanos);
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheService.class);
+
+    private static final long DEFAULT_HEAP_ENTRIES = 500;
+
     private final CacheManager cacheManager;
 
+    private final StatisticsProbe statisticsProbe = new StatisticsProbe();
+
+    private final CacheDuration cacheDuration;
+
     // Map to store any typed cache by name
     private final Map<String, Cache<?, ?>> cacheMap = new ConcurrentHashMap<>();
 
+    // Map to store the expiry policy of each cache by name
+    private final Map<String, RestorableExpiry<?, ?>> expiryMap = new ConcurrentHashMap<>();
+
+    // Map to store the get-or-load wrappers by cache name
+    private final Map<String, CoalescingCache<?, ?>> coalescingCacheMap = new ConcurrentHashMap<>();
+
+    // Map to store the period caches by cache name
+    private final Map<String, PeriodCache<?>> periodCacheMap = new ConcurrentHashMap<>();
+
+    // Executor of the background refreshes, shared by all the caches with a refresh policy
+    private final ThreadPoolExecutor refreshExecutor;
+
+    private volatile LoadRecorder loadRecorder;
+
     /**
      * Initializes the internal Ehcache CacheManager.
      */
-    public CacheService() {
-        this.cacheManager = CacheManagerBuilder.newCacheManagerBuilder().build(true);
+    public CacheService(CacheDuration cacheDuration) {
+        this.cacheDuration = cacheDuration;
+
+        CacheManagerBuilder<CacheManager> builder = CacheManagerBuilder.newCacheManagerBuilder().using(statisticsProbe);
+        if (this.isDiskEnabled()) {
+            logger.info("Cache disk tiers stored in {}", cacheDuration.getDiskPath());
+            this.cacheManager = builder.with(CacheManagerBuilder.persistence(new File(cacheDuration.getDiskPath()))).build(true);
+        } else {
+            this.cacheManager = builder.build(true);
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(4, 4, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(200), r -> {
+            // refreshes are background TMF traffic (see TmfCallGuard)
+            Thread t = new Thread(() -> TmfTrafficClass.BACKGROUND.run(r), "cache-refresh-" + threadCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.refreshExecutor.allowCoreThreadTimeOut(true);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
     }
 
 
@@ -45,14 +123,293 @@ public class CacheService {
      * @return the typed cache instance
      */
     
-    @SuppressWarnings("unchecked")
     public <K, V> Cache<K, V> getOrCreateCache(String cacheName, Class<K> keyClass, Class<V> valueClass, Duration ttl) {
+        return this.getOrCreateCache(cacheName, keyClass, valueClass, ttl, null);
+    }
+
+    /**
+     * Returns an existing or newly created typed cache, sized according to {@code caching.sizing}.
+     * The off-heap and disk tiers are used only if the values can be serialized: with the given serializer,
+     * or with the Java serialization if the value class is {@link Serializable}.
+     *
+     * @param cacheName       the name of the cache
+     * @param keyClass        the class of the key
+     * @param valueClass      the class of the value
+     * @param ttl             the time-to-live for each entry
+     * @param valueSerializer the serializer of the values, null for none
+     * @param <K>             the type of cache key
+     * @param <V>             the type of cache value
+     * @return the typed cache instance
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> Cache<K, V> getOrCreateCache(String cacheName, Class<K> keyClass, Class<V> valueClass, Duration ttl,
+            Serializer<V> valueSerializer) {
         return (Cache<K, V>) cacheMap.computeIfAbsent(cacheName, name -> {
-            CacheConfiguration<K, V> config = CacheConfigurationBuilder
-                    .newCacheConfigurationBuilder(keyClass, valueClass, ResourcePoolsBuilder.heap(500))
-                    .withExpiry(ExpiryPolicyBuilder.timeToLiveExpiration(ttl))
-                    .build();
+            boolean serializable = valueSerializer != null || Serializable.class.isAssignableFrom(valueClass);
+            RestorableExpiry<K, V> expiry = new RestorableExpiry<>(ttl);
+            expiryMap.put(name, expiry);
+            CacheConfigurationBuilder<K, V> builder = CacheConfigurationBuilder
+                    .newCacheConfigurationBuilder(keyClass, valueClass, this.buildResourcePools(name, serializable))
+                    .withExpiry(expiry);
+            if (valueSerializer != null) {
+                builder = builder.withValueSerializer(valueSerializer);
+            }
+            CacheConfiguration<K, V> config = builder.build();
             return cacheManager.createCache(name, config);
         });
     }
+
+    private ResourcePoolsBuilder buildResourcePools(String cacheName, boolean serializable) {
+        CacheSizing sizing = cacheDuration != null ? cacheDuration.getSizing(cacheName) : null;
+        if (sizing == null) {
+            return ResourcePoolsBuilder.heap(DEFAULT_HEAP_ENTRIES);
+        }
+
+        ResourcePoolsBuilder pools = ResourcePoolsBuilder.heap(sizing.getHeapEntries() != null ? sizing.getHeapEntries() : DEFAULT_HEAP_ENTRIES);
+
+        if ((sizing.getOffheap() != null || sizing.getDisk() != null) && !serializable) {
+            logger.warn("Cache '{}' values cannot be serialized: off-heap and disk tiers ignored", cacheName);
+            return pools;
+        }
+        if (sizing.getOffheap() != null) {
+            pools = pools.offheap(sizing.getOffheap().toBytes(), MemoryUnit.B);
+        }
+        if (sizing.getDisk() != null) {
+            if (this.isDiskEnabled()) {
+                pools = pools.disk(sizing.getDisk().toBytes(), MemoryUnit.B, false);
+            } else {
+                logger.warn("Cache '{}' has a disk tier but no 'caching.disk-path' is set: disk tier ignored", cacheName);
+            }
+        }
+        logger.debug("Set cache size for '{}' to: {}", cacheName, sizing);
+        return pools;
+    }
+
+    private boolean isDiskEnabled() {
+        return cacheDuration != null && cacheDuration.getDiskPath() != null && !cacheDuration.getDiskPath().isBlank();
+    }
+
+    /**
+     * Returns the occupancy of each tier (heap, off-heap, disk) of the given cache.
+     *
+     * @param cacheName the name of the cache
+     * @return the statistics by tier name, empty if the cache does not exist
+     */
+    public Map<String, TierStatistics> getTierStatistics(String cacheName) {
+        if (!cacheMap.containsKey(cacheName)) {
+            return Collections.emptyMap();
+        }
+        return new LinkedHashMap<>(statisticsProbe.getStatisticsService().getCacheStatistics(cacheName).getTierStatistics());
+    }
+
+    /**
+     * Returns the hit, miss, put and eviction counters of the given cache.
+     *
+     * @param cacheName the name of the cache
+     * @return the statistics, null if the cache does not exist
+     */
+    public CacheStatistics getCacheStatistics(String cacheName) {
+        return cacheMap.containsKey(cacheName) ? statisticsProbe.getStatisticsService().getCacheStatistics(cacheName) : null;
+    }
+
+    public void setLoadRecorder(LoadRecorder loadRecorder) {
+        this.loadRecorder = loadRecorder;
+    }
+
+    /**
+     * Records the duration of a load of a value into the given cache.
+     *
+     * @param cacheName the name of the cache
+     * @param nanos     the load duration in nanoseconds
+     */
+    public void recordLoad(String cacheName, long nanos) {
+        LoadRecorder recorder = this.loadRecorder;
+        if (recorder != null) {
+            recorder.record(cacheName, nanos);
+        }
+    }
+
+    /**
+     * @return the names of all the caches created so far
+     */
+    public Collection<String> getCacheNames() {
+        return Collections.unmodifiableCollection(cacheMap.keySet());
+    }
+
+    /**
+     * Returns an existing or newly created typed cache, wrapped to coalesce concurrent loads of the same key.
+     *
+     * @param cacheName   the name of the cache
+     * @param keyClass    the class of the key
+     * @param valueClass  the class of the value
+     * @param ttl         the time-to-live for each entry
+     * @param <K>         the type of cache key
+     * @param <V>         the type of cache value
+     * @return the coalescing cache instance
+     */
+    public <K, V> CoalescingCache<K, V> getOrCreateCoalescingCache(String cacheName, Class<K> keyClass, Class<V> valueClass, Duration ttl) {
+        return this.getOrCreateCoalescingCache(cacheName, keyClass, valueClass, ttl, null);
+    }
+
+    /**
+     * Returns an existing or newly created typed cache, wrapped to coalesce concurrent loads of the same key
+     * and to refresh its entries in background according to the given policy.
+     *
+     * @param cacheName     the name of the cache
+     * @param keyClass      the class of the key
+     * @param valueClass    the class of the value
+     * @param ttl           the time-to-live for each entry (hard TTL)
+     * @param refreshPolicy the soft TTL and refresh-ahead policy, null for none
+     * @param <K>           the type of cache key
+     * @param <V>           the type of cache value
+     * @return the coalescing cache instance
+     */
+    public <K, V> CoalescingCache<K, V> getOrCreateCoalescingCache(String cacheName, Class<K> keyClass, Class<V> valueClass, Duration ttl,
+            RefreshPolicy refreshPolicy) {
+        return this.getOrCreateCoalescingCache(cacheName, keyClass, valueClass, ttl, refreshPolicy, null);
+    }
+
+    /**
+     * Same as {@link #getOrCreateCoalescingCache(String, Class, Class, Duration, RefreshPolicy)}, with the serializer
+     * of the values required by the off-heap and disk tiers and by the snapshots (String keys only).
+     */
+    @SuppressWarnings("unchecked")
+    public <K, V> CoalescingCache<K, V> getOrCreateCoalescingCache(String cacheName, Class<K> keyClass, Class<V> valueClass, Duration ttl,
+            RefreshPolicy refreshPolicy, Serializer<V> valueSerializer) {
+        return (CoalescingCache<K, V>) coalescingCacheMap.computeIfAbsent(cacheName, name -> {
+            CoalescingCache<K, V> coalescingCache = new CoalescingCache<>(name,
+                    this.getOrCreateCache(name, keyClass, valueClass, ttl, valueSerializer), refreshPolicy, refreshExecutor);
+            coalescingCache.setLoadTimeRecorder(nanos -> this.recordLoad(name, nanos));
+            if (valueSerializer != null && keyClass == String.class) {
+                coalescingCache.enableSnapshots(valueSerializer, (RestorableExpiry<K, V>) expiryMap.get(name));
+            }
+            return coalescingCache;
+        });
+    }
+
+    /**
+     * Enables the negative caching of a coalescing cache: the keys not found are remembered for the given TTL,
+     * in a companion cache named {@code <cacheName>Negative}.
+     *
+     * @param coalescingCache the coalescing cache
+     * @param negativeTtl     the time-to-live of the not-found keys, null to leave negative caching disabled
+     * @param <K>             the type of cache key
+     * @param <V>             the type of cache value
+     * @return the same coalescing cache
+     */
+    public <K, V> CoalescingCache<K, V> enableNegativeCaching(CoalescingCache<K, V> coalescingCache, Duration negativeTtl) {
+        if (negativeTtl != null && !coalescingCache.isNegativeCachingEnabled()) {
+            Class<K> keyClass = coalescingCache.getCache().getRuntimeConfiguration().getKeyType();
+            coalescingCache.enableNegativeCaching(this.getOrCreateCache(coalescingCache.getName() + "Negative",
+                    keyClass, CoalescingCache.NotFound.class, negativeTtl));
+        }
+        return coalescingCache;
+    }
+
+    /**
+     * Enables the stale fallback of a coalescing cache: the last value loaded for each key is kept for the stale
+     * TTL in a companion cache, and served when TMF is unavailable.
+     *
+     * @param coalescingCache the coalescing cache
+     * @param staleTtl        how long the last values are kept, null to leave the cache unchanged
+     * @return the same coalescing cache
+     */
+    public <K, V> CoalescingCache<K, V> enableStaleFallback(CoalescingCache<K, V> coalescingCache, Duration staleTtl) {
+        if (staleTtl != null && !coalescingCache.isStaleFallbackEnabled()) {
+            Class<K> keyClass = coalescingCache.getCache().getRuntimeConfiguration().getKeyType();
+            Class<V> valueClass = coalescingCache.getCache().getRuntimeConfiguration().getValueType();
+            coalescingCache.enableStaleFallback(this.getOrCreateCache(coalescingCache.getName() + "Stale",
+                    keyClass, valueClass, staleTtl));
+        }
+        return coalescingCache;
+    }
+
+    /**
+     * Enables the stale fallback of a period cache: the segments are kept for the stale TTL in a companion cache,
+     * and serve the queries they cover when TMF is unavailable.
+     *
+     * @param periodCache the period cache
+     * @param staleTtl    how long the segments are kept, null to leave the cache unchanged
+     * @return the same period cache
+     */
+    @SuppressWarnings("unchecked")
+    public <V> PeriodCache<V> enableStaleFallback(PeriodCache<V> periodCache, Duration staleTtl) {
+        if (staleTtl != null && !periodCache.isStaleFallbackEnabled()) {
+            periodCache.enableStaleFallback(this.getOrCreateCache(periodCache.getName() + "Stale", String.class,
+                    (Class<PeriodCache.Coverage<V>>) (Class<?>) PeriodCache.Coverage.class, staleTtl), staleTtl);
+        }
+        return periodCache;
+    }
+
+    /**
+     * Returns an existing or newly created cache of query results by period (see {@link PeriodCache}).
+     *
+     * @param cacheName the name of the cache
+     * @param ttl       the time-to-live of each cached period
+     * @param dateOf    the date of an item, compared with the query periods
+     * @param idOf      the identifier of an item, to merge the items of overlapping periods
+     * @param <V>       the type of the items
+     * @return the period cache instance
+     */
+    public <V> PeriodCache<V> getOrCreatePeriodCache(String cacheName, Duration ttl, Function<V, OffsetDateTime> dateOf,
+            Function<V, String> idOf) {
+        return this.getOrCreatePeriodCache(cacheName, ttl, dateOf, idOf, null);
+    }
+
+    /**
+     * Returns an existing or newly created cache of query results by period (see {@link PeriodCache}), whose stale
+     * segments are reloaded in background by the shared refresh executor.
+     *
+     * @param cacheName     the name of the cache
+     * @param ttl           the time-to-live of each cached period
+     * @param dateOf        the date of an item, compared with the query periods
+     * @param idOf          the identifier of an item, to merge the items of overlapping periods
+     * @param refreshPolicy the stale-while-revalidate policy, null for none
+     * @param <V>           the type of the items
+     * @return the period cache instance
+     */
+    @SuppressWarnings("unchecked")
+    public <V> PeriodCache<V> getOrCreatePeriodCache(String cacheName, Duration ttl, Function<V, OffsetDateTime> dateOf,
+            Function<V, String> idOf, RefreshPolicy refreshPolicy) {
+        return (PeriodCache<V>) periodCacheMap.computeIfAbsent(cacheName, name -> new PeriodCache<>(name,
+                this.getOrCreateCache(name, String.class, (Class<PeriodCache.Coverage<V>>) (Class<?>) PeriodCache.Coverage.class, ttl),
+                ttl, dateOf, idOf, this::recordLoad, refreshPolicy, refreshExecutor));
+    }
+
+    /*
+     * Ehcache service depending on the statistics service, only to get it from the cache manager.
+     */
+    @ServiceDependencies(StatisticsService.class)
+    private static final class StatisticsProbe implements org.ehcache.spi.service.Service {
+
+        private volatile StatisticsService statisticsService;
+
+        @Override
+        public void start(ServiceProvider<org.ehcache.spi.service.Service> serviceProvider) {
+            this.statisticsService = serviceProvider.getService(StatisticsService.class);
+        }
+
+        @Override
+        public void stop() {
+            // nothing to release
+        }
+
+        StatisticsService getStatisticsService() {
+            return statisticsService;
+        }
+    }
+
+    /**
+     * @return all the coalescing caches created so far, e.g. to report their load counters
+     */
+    public Collection<CoalescingCache<?, ?>> getCoalescingCaches() {
+        return Collections.unmodifiableCollection(coalescingCacheMap.values());
+    }
+
+    /**
+     * @return the period caches created so far
+     */
+    public Collection<PeriodCache<?>> getPeriodCaches() {
+        return Collections.unmodifiableCollection(periodCacheMap.values());
+    }
 }
@@ -0,0 +1,153 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import it.eng.dome.revenue.engine.utils.CacheDuration;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Checkpoints the TMF caches to local snapshot files, periodically and on shutdown, and restores them on startup,
+ * so that a restarted engine serves from cache instead of rebuilding its working set from TMF.
+ * <p>
+ * Each cache is written to {@code <caching.snapshot.path>/<cacheName>.snap} (gzip), replaced atomically.
+ * Entries are restored with their original load time: the expired ones are dropped, the others expire
+ * (and become stale) at the same time they would have without the restart.
+ * </p>
+ */
+@Service
+public class CacheSnapshotService implements SmartInitializingSingleton {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheSnapshotService.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final String SUFFIX = ".snap";
+
+    @Autowired
+    private CacheService cacheService;
+
+    @Autowired
+    private CacheDuration cacheDuration;
+
+    public boolean isEnabled() {
+        return cacheDuration.getSnapshot() != null && cacheDuration.getSnapshot().isEnabled();
+    }
+
+    /**
+     * Restores the caches once all of them have been created, before the application starts serving.
+     */
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!this.isEnabled()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        int total = 0;
+        for (CoalescingCache<?, ?> cache : cacheService.getCoalescingCaches()) {
+            if (cache.isSnapshotEnabled()) {
+                total += this.restore(cache);
+            }
+        }
+        logger.info("Restored {} cache entries from {} in {} ms", total, this.getDirectory(), System.currentTimeMillis() - start);
+    }
+
+    @Scheduled(fixedDelayString = "${caching.snapshot.interval:PT10M}", initialDelayString = "${caching.snapshot.interval:PT10M}")
+    public void scheduledCheckpoint() {
+        if (this.isEnabled()) {
+            this.checkpoint();
+        }
+    }
+
+    @PreDestroy
+    public void shutdownCheckpoint() {
+        if (this.isEnabled()) {
+            this.checkpoint();
+        }
+    }
+
+    /**
+     * Writes a snapshot of each cache that supports it.
+     */
+    public synchronized void checkpoint() {
+        long start = System.currentTimeMillis();
+        int total = 0;
+        try {
+            Files.createDirectories(this.getDirectory());
+        } catch (IOException e) {
+            logger.error("Cannot create the cache snapshot directory {}: {}", this.getDirectory(), e.getMessage());
+            return;
+        }
+        for (CoalescingCache<?, ?> cache : cacheService.getCoalescingCaches()) {
+            if (cache.isSnapshotEnabled()) {
+                total += this.write(cache);
+            }
+        }
+        logger.info("Checkpointed {} cache entries to {} in {} ms", total, this.getDirectory(), System.currentTimeMillis() - start);
+    }
+
+    private int write(CoalescingCache<?, ?> cache) {
+        Path file = this.getDirectory().resolve(cache.getName() + SUFFIX);
+        Path tmp = this.getDirectory().resolve(cache.getName() + SUFFIX + ".tmp");
+        try {
+            int count;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(tmp))))) {
+                out.writeInt(FORMAT_VERSION);
+                count = cache.writeSnapshot(out);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.debug("Cache '{}' checkpointed with {} entries", cache.getName(), count);
+            return count;
+        } catch (Exception e) {
+            logger.warn("Cannot checkpoint cache '{}' to {}: {}", cache.getName(), file, e.getMessage());
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // best effort
+            }
+            return 0;
+        }
+    }
+
+    private int restore(CoalescingCache<?, ?> cache) {
+        Path file = this.getDirectory().resolve(cache.getName() + SUFFIX);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file))))) {
+            int version = in.readInt();
+            if (version != FORMAT_VERSION) {
+                logger.warn("Ignoring snapshot {} with format version {}", file, version);
+                return 0;
+            }
+            int count = cache.readSnapshot(in);
+            logger.debug("Cache '{}' restored with {} entries", cache.getName(), count);
+            return count;
+        } catch (NoSuchFileException e) {
+            logger.debug("No snapshot for cache '{}'", cache.getName());
+            return 0;
+        } catch (Exception e) {
+            // a partial restore is fine: missing entries are loaded from TMF on demand
+            logger.warn("Cannot restore cache '{}' from {}: {}", cache.getName(), file, e.getMessage());
+            return 0;
+        }
+    }
+
+    private Path getDirectory() {
+        return Paths.get(cacheDuration.getSnapshot().getPath());
+    }
+}
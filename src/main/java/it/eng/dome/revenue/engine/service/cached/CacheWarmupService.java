@@ -0,0 +1,192 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+
+import it.eng.dome.revenue.engine.model.Role;
+import it.eng.dome.revenue.engine.model.Subscription;
+import it.eng.dome.revenue.engine.service.CustomerBillIndex;
+import it.eng.dome.revenue.engine.tmf.TmfAsyncExecutor;
+import it.eng.dome.revenue.engine.tmf.TmfTrafficClass;
+import it.eng.dome.revenue.engine.utils.CacheDuration;
+import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
+
+/**
+ * Warms up the caches after startup, so that the first requests do not pay for cold TMF caches: organizations,
+ * active subscriptions and their plans, the customer bills of the current and previous month of the subscribers
+ * (or the bill index, when enabled) and, optionally, the statements of the subscriptions.
+ * <p>
+ * The warm-up runs in background, as {@link TmfTrafficClass#BACKGROUND} traffic, once the application is ready;
+ * until it ends (or {@code caching.warmup.max-duration} elapses) the readiness probe reports WARMING
+ * (see {@link WarmupHealthIndicator}). A failing step is logged and skipped.
+ * </p>
+ */
+@Service
+public class CacheWarmupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CacheWarmupService.class);
+
+    public enum State {
+        DISABLED, PENDING, WARMING, DONE
+    }
+
+    @Autowired
+    private CacheDuration cacheDuration;
+
+    @Autowired
+    private TmfCachedDataRetriever tmfDataRetriever;
+
+    @Autowired
+    private CachedSubscriptionService subscriptionService;
+
+    @Autowired
+    private CachedPlanService planService;
+
+    @Autowired
+    private CachedStatementsService statementsService;
+
+    @Autowired
+    private CustomerBillIndex customerBillIndex;
+
+    @Autowired
+    private TmfAsyncExecutor asyncExecutor;
+
+    private volatile State state = State.PENDING;
+
+    private volatile long startedAt;
+
+    public boolean isEnabled() {
+        return cacheDuration.getWarmup() != null && cacheDuration.getWarmup().isEnabled();
+    }
+
+    public State getState() {
+        return this.isEnabled() ? state : State.DISABLED;
+    }
+
+    /**
+     * @return true if the application can serve: warm-up disabled, done, or running for longer than its max duration
+     */
+    public boolean isWarm() {
+        State current = this.getState();
+        if (current == State.DISABLED || current == State.DONE) {
+            return true;
+        }
+        Duration maxDuration = cacheDuration.getWarmup().getMaxDuration();
+        return current == State.WARMING && maxDuration != null && System.currentTimeMillis() - startedAt > maxDuration.toMillis();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (!this.isEnabled()) {
+            return;
+        }
+        // a background job: its TMF calls must not take the bulkheads of the interactive requests
+        Thread thread = new Thread(() -> TmfTrafficClass.BACKGROUND.run(this::warmUp), "cache-warmup");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /*
+     * Runs the warm-up steps, in order: later steps reuse what the earlier ones loaded.
+     */
+    void warmUp() {
+        startedAt = System.currentTimeMillis();
+        state = State.WARMING;
+        logger.info("Cache warm-up started");
+
+        this.step("organizations", () -> tmfDataRetriever.getOrganizations().size());
+
+        List<Subscription> subscriptions = new ArrayList<>();
+        this.step("active subscriptions", () -> {
+            subscriptions.addAll(subscriptionService.getAllSubscriptions());
+            return subscriptions.size();
+        });
+
+        this.step("plans", () -> {
+            Set<String> planIds = new LinkedHashSet<>();
+            for (Subscription sub : subscriptions) {
+                if (sub.getPlan() != null && sub.getPlan().getId() != null) {
+                    planIds.add(sub.getPlan().getId());
+                }
+            }
+            for (String planId : planIds) {
+                planService.getPlanById(planId);
+            }
+            return planIds.size();
+        });
+
+        if (customerBillIndex.isEnabled()) {
+            this.step("customer bill index", () -> customerBillIndex.load());
+        } else {
+            this.step("customer bills", () -> this.loadRecentBills(subscriptions));
+        }
+
+        if (cacheDuration.getWarmup().isStatements()) {
+            this.step("statements", () -> {
+                for (Subscription sub : subscriptions) {
+                    statementsService.getStatementsForSubscription(sub.getId());
+                }
+                return subscriptions.size();
+            });
+        }
+
+        state = State.DONE;
+        logger.info("Cache warm-up completed in {} ms", System.currentTimeMillis() - startedAt);
+    }
+
+    /*
+     * Loads the bills of the previous and current month of each subscriber, as seller and as buyer.
+     */
+    private int loadRecentBills(List<Subscription> subscriptions) throws Exception {
+        OffsetDateTime monthStart = OffsetDateTime.now(ZoneOffset.UTC).truncatedTo(ChronoUnit.DAYS).withDayOfMonth(1);
+        TimePeriod period = new TimePeriod();
+        period.setStartDateTime(monthStart.minusMonths(1));
+        period.setEndDateTime(monthStart.plusMonths(1));
+
+        Set<String> partyIds = new LinkedHashSet<>();
+        for (Subscription sub : subscriptions) {
+            if (sub.getSubscriberId() != null) {
+                partyIds.add(sub.getSubscriberId());
+            }
+        }
+        List<CompletableFuture<?>> loads = new ArrayList<>();
+        for (String partyId : partyIds) {
+            for (Role role : List.of(Role.SELLER, Role.BUYER)) {
+                loads.add(asyncExecutor.supply(() -> tmfDataRetriever.retrieveCustomerBills(partyId, role, period)));
+            }
+        }
+        for (CompletableFuture<?> load : loads) {
+            TmfAsyncExecutor.join(load);
+        }
+        return partyIds.size();
+    }
+
+    @FunctionalInterface
+    private interface Step {
+        int run() throws Exception;
+    }
+
+    private void step(String name, Step step) {
+        long start = System.currentTimeMillis();
+        try {
+            int count = step.run();
+            logger.info("Warm-up of {}: {} loaded in {} ms", name, count, System.currentTimeMillis() - start);
+        } catch (Exception e) {
+            logger.warn("Warm-up of {} failed after {} ms: {}", name, System.currentTimeMillis() - start, e.getMessage());
+        }
+    }
+}
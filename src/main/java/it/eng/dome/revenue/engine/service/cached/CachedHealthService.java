@@ -60,12 +60,15 @@ public class CachedHealthService extends HealthService {
 	@Override
 	public Health getHealth() {
 		String key = "health";
-		if (!HEALTH_CACHE_ENABLED || !this.healthCache.containsKey(key)) {
+		Health h = HEALTH_CACHE_ENABLED ? this.healthCache.get(key) : null;
+		if (h == null) {
 			logger.debug("Cache MISS for " + key);
-			Health h = super.getHealth();
+			long start = System.nanoTime();
+			h = super.getHealth();
+			cacheService.recordLoad("healthCache", System.nanoTime() - start);
 			this.healthCache.put(key, h);
 		}
-		return this.healthCache.get(key);
+		return h;
 
 	}
 
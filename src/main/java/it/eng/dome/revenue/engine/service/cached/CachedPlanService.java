@@ -1,6 +1,7 @@
 package it.eng.dome.revenue.engine.service.cached;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.ehcache.Cache;
@@ -73,34 +74,58 @@ public class CachedPlanService extends PlanService {
     @Override
     public List<Plan> getAllPlans() throws BadTmfDataException, BadRevenuePlanException, ExternalServiceException {
         String key = "all-plans";
-        if (!REVENUE_CACHE_ENABLED || !this.planSetCache.containsKey(key)) {
+        List<Plan> plans = REVENUE_CACHE_ENABLED ? this.planSetCache.get(key) : null;
+        if (plans == null) {
             logger.debug("Cache MISS for " + key);
-            List<Plan> plans = super.getAllPlans();
+            long start = System.nanoTime();
+            plans = super.getAllPlans();
+            cacheService.recordLoad("planSetCache", System.nanoTime() - start);
             this.planSetCache.put(key, plans);
             logger.info("Caching {} plans", plans.size());
         }
-        return this.planSetCache.get(key);
+        return plans;
     }
 
     @Override
     public Plan getPlanById(String planId) throws BadTmfDataException, BadRevenuePlanException, ExternalServiceException {
         String key = planId;
-        if (!REVENUE_CACHE_ENABLED || !this.planCache.containsKey(key)) {
+        Plan plan = REVENUE_CACHE_ENABLED ? this.planCache.get(key) : null;
+        if (plan == null) {
             logger.debug("Cache MISS for " + key);
-            Plan plan = super.getPlanById(planId);
+            long start = System.nanoTime();
+            plan = super.getPlanById(planId);
+            cacheService.recordLoad("planCache", System.nanoTime() - start);
             this.planCache.put(key, plan);
         } 
-        return this.planCache.get(key);
+        return plan;
     }
 
     @Override
     public Plan findPlan(String offeringId, String offeringPriceId) throws BadTmfDataException, BadRevenuePlanException, ExternalServiceException {
         String key = offeringId+offeringPriceId;
-        if (!REVENUE_CACHE_ENABLED || !this.planCache.containsKey(key)) {
+        Plan plan = REVENUE_CACHE_ENABLED ? this.planCache.get(key) : null;
+        if (plan == null) {
             logger.debug("Cache MISS for " + key);
-            Plan plan = super.findPlan(offeringId, offeringPriceId);
+            long start = System.nanoTime();
+            plan = super.findPlan(offeringId, offeringPriceId);
+            cacheService.recordLoad("planCache", System.nanoTime() - start);
             this.planCache.put(key, plan);
         } 
-        return this.planCache.get(key);
+        return plan;
+    }
+
+    /**
+     * Evicts the cached plans of the product offering and the plan list.
+     */
+    public void evictPlansOfOffering(String offeringId) {
+        List<String> keys = new ArrayList<>();
+        this.planCache.forEach(entry -> {
+            // cached by plan id and by offering id + offering price id
+            if (entry.getKey().startsWith(offeringId) || offeringId.equals(entry.getValue().getOfferingId())) {
+                keys.add(entry.getKey());
+            }
+        });
+        keys.forEach(this.planCache::remove);
+        this.planSetCache.clear();
     }
 }
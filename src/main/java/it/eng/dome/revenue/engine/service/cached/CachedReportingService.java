@@ -59,12 +59,22 @@ public class CachedReportingService extends ReportingService {
     @Override
     public List<Report> getDashboardReport(String partyId) throws BadTmfDataException, BadRevenuePlanException, ExternalServiceException  {
         String key = partyId;
-        if (!REVENUE_CACHE_ENABLED || !this.reportCache.containsKey(key)) {
+        List<Report> plans = REVENUE_CACHE_ENABLED ? this.reportCache.get(key) : null;
+        if (plans == null) {
             logger.debug("Cache MISS for " + key);
-            List<Report> plans = super.getDashboardReport(partyId);
+            long start = System.nanoTime();
+            plans = super.getDashboardReport(partyId);
+            cacheService.recordLoad("reportCache", System.nanoTime() - start);
             this.reportCache.put(key, plans);
         }
-        return this.reportCache.get(key);
+        return plans;
+    }
+
+    /**
+     * Evicts the cached dashboard report of the party.
+     */
+    public void evictReport(String partyId) {
+        this.reportCache.remove(partyId);
     }
 
 }
@@ -1,7 +1,10 @@
 package it.eng.dome.revenue.engine.service.cached;
 
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Predicate;
 
 import org.ehcache.Cache;
 import org.slf4j.Logger;
@@ -14,6 +17,7 @@ import it.eng.dome.revenue.engine.exception.BadRevenuePlanException;
 import it.eng.dome.revenue.engine.exception.BadTmfDataException;
 import it.eng.dome.revenue.engine.exception.ExternalServiceException;
 import it.eng.dome.revenue.engine.model.RevenueStatement;
+import it.eng.dome.revenue.engine.model.Subscription;
 import it.eng.dome.revenue.engine.service.StatementsService;
 import it.eng.dome.revenue.engine.utils.CacheDuration;
 
@@ -63,12 +67,56 @@ public class CachedStatementsService extends StatementsService {
     @Override
     public List<RevenueStatement> getStatementsForSubscription(String subscriptionId) throws BadTmfDataException, BadRevenuePlanException, ExternalServiceException {
         String key = subscriptionId;
-        if (!REVENUE_CACHE_ENABLED || !this.statementsCache.containsKey(key)) {
+        List<RevenueStatement> statements = REVENUE_CACHE_ENABLED ? this.statementsCache.get(key) : null;
+        if (statements == null) {
             logger.debug("Cache MISS for subscription " + key);
-            List<RevenueStatement> statements = super.getStatementsForSubscription(subscriptionId);
+            long start = System.nanoTime();
+            statements = super.getStatementsForSubscription(subscriptionId);
+            cacheService.recordLoad("statementsCache", System.nanoTime() - start);
             this.statementsCache.put(key, statements);
         }
-        return this.statementsCache.get(key);
+        return statements;
+    }
+
+    /**
+     * Evicts the cached statements of the subscription.
+     */
+    public void evictStatements(String subscriptionId) {
+        this.statementsCache.remove(subscriptionId);
+    }
+
+    /**
+     * Evicts the cached statements of the subscriptions with any of the given related parties.
+     *
+     * @return the number of subscriptions whose statements were evicted
+     */
+    public int evictStatementsOfParties(Collection<String> partyIds) {
+        return this.evictStatementsIf(subscription -> subscription.getRelatedParties() != null
+                && subscription.getRelatedParties().stream().anyMatch(rp -> rp != null && partyIds.contains(rp.getId())));
+    }
+
+    /**
+     * Evicts the cached statements of the subscriptions to a plan of the given product offering.
+     *
+     * @return the number of subscriptions whose statements were evicted
+     */
+    public int evictStatementsOfOffering(String offeringId) {
+        return this.evictStatementsIf(subscription -> subscription.getPlan() != null
+                && offeringId.equals(subscription.getPlan().getOfferingId()));
+    }
+
+    private int evictStatementsIf(Predicate<Subscription> predicate) {
+        List<String> keys = new ArrayList<>();
+        this.statementsCache.forEach(entry -> {
+            for (RevenueStatement statement : entry.getValue()) {
+                if (statement.getSubscription() != null && predicate.test(statement.getSubscription())) {
+                    keys.add(entry.getKey());
+                    break;
+                }
+            }
+        });
+        keys.forEach(this.statementsCache::remove);
+        return keys.size();
     }
 
 }
@@ -1,6 +1,7 @@
 package it.eng.dome.revenue.engine.service.cached;
 
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.ehcache.Cache;
@@ -74,65 +75,92 @@ private void initCaches() {
     @Override
     public List<Subscription> getAllSubscriptions() throws ExternalServiceException, BadTmfDataException {
         String key = "all-active-subscriptions";
-        if (!REVENUE_CACHE_ENABLED || !this.subscriptionsCache.containsKey(key)) {
+        List<Subscription> subscriptions = REVENUE_CACHE_ENABLED ? this.subscriptionsCache.get(key) : null;
+        if (subscriptions == null) {
             logger.debug("Cache MISS for " + key);
 
-            List<Subscription> subscriptions = super.getAllSubscriptions();
+            long start = System.nanoTime();
+            subscriptions = super.getAllSubscriptions();
+            cacheService.recordLoad("subscriptionsCache", System.nanoTime() - start);
             if (subscriptions != null && !subscriptions.isEmpty()) {
                 this.subscriptionsCache.put(key, subscriptions);
             } else {
                 logger.debug("No subscriptions found for {} — not caching null or empty list", key);
             }
         }
-        return this.subscriptionsCache.get(key);
+        return subscriptions;
     }
 
     @Override
     public Subscription getSubscriptionByProductId(String productId) throws BadTmfDataException, ExternalServiceException {
     	String key = productId;
-		if (!REVENUE_CACHE_ENABLED || !this.subscriptionsCache.containsKey(key)) {
+		Subscription subscription = REVENUE_CACHE_ENABLED ? this.subscriptionCache.get(key) : null;
+		if (subscription == null) {
 			logger.debug("Cache MISS for " + key);
 
-            Subscription subscription = super.getSubscriptionByProductId(productId);
+            long start = System.nanoTime();
+            subscription = super.getSubscriptionByProductId(productId);
+            cacheService.recordLoad("subscriptionCache", System.nanoTime() - start);
             if (subscription != null) {
                 this.subscriptionCache.put(key, subscription);
             } else {
                 logger.debug("No subscription found for productId {} — not caching null value", key);
             }
         }
-		return this.subscriptionCache.get(key);
+		return subscription;
     }
     
     @Override
     public Subscription getActiveSubscriptionByRelatedPartyId(String relatedPartyId) throws ExternalServiceException, BadTmfDataException {
 		String key = relatedPartyId;
-		if (!REVENUE_CACHE_ENABLED || !this.subscriptionCache.containsKey(key)) {
+		Subscription subscription = REVENUE_CACHE_ENABLED ? this.subscriptionCache.get(key) : null;
+		if (subscription == null) {
 			logger.debug("Cache MISS for " + key);
 
-            Subscription subscription = super.getActiveSubscriptionByRelatedPartyId(relatedPartyId);
+            long start = System.nanoTime();
+            subscription = super.getActiveSubscriptionByRelatedPartyId(relatedPartyId);
+            cacheService.recordLoad("subscriptionCache", System.nanoTime() - start);
             if (subscription != null) {
                 this.subscriptionCache.put(key, subscription);
             } else {
                 logger.debug("No active subscription found for {} — not caching null value", key);
             }
         }
-		return this.subscriptionCache.get(key);
+		return subscription;
 	}
 
     @Override
     public List<Subscription> getSubscriptionsByRelatedPartyId(String id, Role role) throws ExternalServiceException, BadTmfDataException{
     	String key = id + role.getValue();
-		if (!REVENUE_CACHE_ENABLED || !this.subscriptionsCache.containsKey(key)) {		
+		List<Subscription> subscriptions = REVENUE_CACHE_ENABLED ? this.subscriptionsCache.get(key) : null;
+		if (subscriptions == null) {
 			logger.debug("Cache MISS for " + key);
 
-            List<Subscription> subscriptions = super.getSubscriptionsByRelatedPartyId(id, role);
+            long start = System.nanoTime();
+            subscriptions = super.getSubscriptionsByRelatedPartyId(id, role);
+            cacheService.recordLoad("subscriptionsCache", System.nanoTime() - start);
             if (subscriptions != null && !subscriptions.isEmpty()) {
                 this.subscriptionsCache.put(key, subscriptions);
             } else {
                 logger.debug("No subscriptions found for {} and role {} — not caching null or empty list", id, role);
             }
         }
-		return this.subscriptionsCache.get(key);
+		return subscriptions;
 	}
 
+    /**
+     * Evicts the cached subscription (i.e. product) and the subscription lists.
+     */
+    public void evictSubscription(String productId) {
+        List<String> keys = new ArrayList<>();
+        this.subscriptionCache.forEach(entry -> {
+            // cached by product id and by related party id
+            if (productId.equals(entry.getKey()) || productId.equals(entry.getValue().getId())) {
+                keys.add(entry.getKey());
+            }
+        });
+        keys.forEach(this.subscriptionCache::remove);
+        this.subscriptionsCache.clear();
+    }
+
 }
@@ -0,0 +1,737 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+import org.ehcache.Cache;
+import org.ehcache.event.EventFiring;
+import org.ehcache.event.EventOrdering;
+import org.ehcache.event.EventType;
+import org.ehcache.spi.serialization.Serializer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.eng.dome.revenue.engine.exception.BadTmfDataException;
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.tmf.TmfUnavailableException;
+
+/**
+ * Wraps an Ehcache cache with an atomic get-or-load operation.
+ * Concurrent misses on the same key are coalesced into a single in-flight load,
+ * whose result (or failure) is shared by all the waiting callers.
+ * <p>
+ * With a {@link RefreshPolicy}, entries older than the soft TTL are still served but reloaded
+ * on a background executor (stale-while-revalidate), and frequently read entries are reloaded
+ * in background before reaching it (refresh-ahead).
+ * </p>
+ * <p>
+ * With a negative cache, the keys whose load found nothing are remembered (with a shorter TTL) and
+ * answered with null without calling the loader again.
+ * </p>
+ * <p>
+ * With a stale cache, the last value loaded for each key is kept (with a longer TTL) after it expires, and served
+ * when its load fails because TMF is unavailable ({@link TmfUnavailableException}: circuit open, limits full).
+ * </p>
+ * <p>
+ * A load (or background refresh) running while its key is invalidated returns its result to the callers, but
+ * does not cache it: it may have been read before the change that caused the invalidation.
+ * </p>
+ * <p>
+ * Caches with String keys and a value serializer can be written to a snapshot and restored from it,
+ * keeping the original expiry time of each entry (see {@link CacheSnapshotService}).
+ * </p>
+ *
+ * @param <K> the type of cache key
+ * @param <V> the type of cache value
+ */
+public class CoalescingCache<K, V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(CoalescingCache.class);
+
+    /**
+     * Loads the value for a key when it is not available in the cache.
+     * A null result is returned to the callers and, if negative caching is enabled,
+     * remembered as not found (see {@link #enableNegativeCaching(Cache)}).
+     */
+    @FunctionalInterface
+    public interface Loader<V> {
+        V load() throws BadTmfDataException, ExternalServiceException;
+    }
+
+    /**
+     * Loads in bulk the values for the keys not available in the cache.
+     * Keys missing from the returned map (or mapped to null) are not cached.
+     */
+    @FunctionalInterface
+    public interface BulkLoader<K, V> {
+        Map<K, V> loadAll(Set<K> keys) throws BadTmfDataException, ExternalServiceException;
+    }
+
+    /**
+     * Sentinel cached for the keys whose load found nothing.
+     */
+    public enum NotFound {
+        INSTANCE
+    }
+
+    /*
+     * Load time and reads of a cached value, used by the refresh policy and the snapshots.
+     */
+    private static class EntryStats {
+        final long loadedAt;
+        final LongAdder reads = new LongAdder();
+
+        EntryStats() {
+            this(System.currentTimeMillis());
+        }
+
+        EntryStats(long loadedAt) {
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    private final String name;
+    private final Cache<K, V> cache;
+    private final RefreshPolicy refreshPolicy;
+    private final Executor refreshExecutor;
+
+    // set only for the caches that can be written to a snapshot
+    private Serializer<V> valueSerializer;
+    private RestorableExpiry<K, V> expiry;
+
+    // keys not found, null if negative caching is disabled
+    private Cache<K, NotFound> negativeCache;
+
+    // last value loaded for each key, served when TMF is unavailable
+    private Cache<K, V> staleCache;
+
+    // receives the duration (nanos) of each successful load
+    private LongConsumer loadTimeRecorder = nanos -> { };
+
+    // loads currently running, by key
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    // invalidations by stripe of keys, and of all the keys: a load caches its result only if neither changed since it started
+    private static final int GENERATION_STRIPES = 1024;
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+    private final AtomicLong allGeneration = new AtomicLong();
+
+    // keys whose background refresh is queued or running
+    private final Set<K> refreshQueued = ConcurrentHashMap.newKeySet();
+
+    // stats of the cached values
+    private final ConcurrentMap<K, EntryStats> entryStats = new ConcurrentHashMap<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder staleServed = new LongAdder();
+
+    public CoalescingCache(String name, Cache<K, V> cache) {
+        this(name, cache, null, null);
+    }
+
+    public CoalescingCache(String name, Cache<K, V> cache, RefreshPolicy refreshPolicy, Executor refreshExecutor) {
+        this.name = name;
+        this.cache = cache;
+        this.refreshPolicy = refreshExecutor != null ? refreshPolicy : null;
+        this.refreshExecutor = refreshExecutor;
+
+        // forget the stats of the values leaving the cache
+        cache.getRuntimeConfiguration().registerCacheEventListener(
+                event -> entryStats.remove(event.getKey()),
+                EventOrdering.UNORDERED, EventFiring.ASYNCHRONOUS,
+                EnumSet.of(EventType.EXPIRED, EventType.EVICTED, EventType.REMOVED));
+    }
+
+    /*
+     * Enables the snapshots of this cache: the serializer writes the values, the expiry
+     * restores them with their remaining TTL.
+     */
+    void enableSnapshots(Serializer<V> valueSerializer, RestorableExpiry<K, V> expiry) {
+        this.valueSerializer = valueSerializer;
+        this.expiry = expiry;
+    }
+
+    void enableNegativeCaching(Cache<K, NotFound> negativeCache) {
+        this.negativeCache = negativeCache;
+    }
+
+    void enableStaleFallback(Cache<K, V> staleCache) {
+        this.staleCache = staleCache;
+    }
+
+    void setLoadTimeRecorder(LongConsumer loadTimeRecorder) {
+        this.loadTimeRecorder = loadTimeRecorder;
+    }
+
+    /**
+     * Returns the cached value for the key or, on a miss, loads it. If a load for the
+     * same key is already running, waits for it instead of starting a new one.
+     *
+     * @param key        the cache key
+     * @param readCache  false to bypass the cached value (e.g. when caching is disabled)
+     * @param loader     the loader invoked on a miss
+     * @return the cached or loaded value, possibly null
+     * @throws BadTmfDataException      if the loader fails with bad TMF data
+     * @throws ExternalServiceException if the loader fails contacting TMF
+     */
+    public V getOrLoad(K key, boolean readCache, Loader<V> loader) throws BadTmfDataException, ExternalServiceException {
+        if (readCache) {
+            if (this.isNegative(key)) {
+                logger.debug("Cache NEGATIVE HIT for {} in '{}'", key, name);
+                return null;
+            }
+            V value = cache.get(key);
+            if (value != null) {
+                hits.increment();
+                if (refreshPolicy != null) {
+                    this.refreshIfNeeded(key, loader);
+                }
+                return value;
+            }
+        }
+        misses.increment();
+
+        CompletableFuture<V> load = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(key, load);
+        if (running != null) {
+            coalesced.increment();
+            logger.debug("Cache MISS for {} in '{}': joining in-flight load", key, name);
+            return await(key, running);
+        }
+
+        logger.debug("Cache MISS for {} in '{}'", key, name);
+        return this.load(key, load, loader);
+    }
+
+    /*
+     * Runs the loader for a load registered in flight, completing it with the result.
+     */
+    private V load(K key, CompletableFuture<V> load, Loader<V> loader) throws BadTmfDataException, ExternalServiceException {
+        loads.increment();
+        long generation = this.generation(key);
+        try {
+            long start = System.nanoTime();
+            V value = loader.load();
+            loadTimeRecorder.accept(System.nanoTime() - start);
+            if (value != null) {
+                this.put(key, value, generation);
+            } else {
+                this.putNegative(key, generation);
+            }
+            load.complete(value);
+            return value;
+        } catch (Throwable t) {
+            failures.increment();
+            V stale = this.staleFallback(key, t);
+            if (stale != null) {
+                load.complete(stale);
+                return stale;
+            }
+            load.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(key, load);
+        }
+    }
+
+    /*
+     * Caches a loaded value, unless the key was invalidated since the load started (generation): the invalidations
+     * bump the generation before removing the values, so a value put meanwhile is either removed by the
+     * invalidation or by the check following the put.
+     */
+    private void put(K key, V value, long generation) {
+        if (this.generation(key) != generation) {
+            return;
+        }
+        cache.put(key, value);
+        entryStats.put(key, new EntryStats());
+        if (negativeCache != null) {
+            negativeCache.remove(key);
+        }
+        if (staleCache != null) {
+            staleCache.put(key, value);
+        }
+        if (this.generation(key) != generation) {
+            cache.remove(key, value);
+            if (staleCache != null) {
+                staleCache.remove(key, value);
+            }
+        }
+    }
+
+    private void putNegative(K key, long generation) {
+        if (staleCache != null) {
+            // not found any more: nothing to fall back to
+            staleCache.remove(key);
+        }
+        if (negativeCache != null && this.generation(key) == generation) {
+            // e.g. deleted meanwhile: stop serving the old value
+            cache.remove(key);
+            negativeCache.put(key, NotFound.INSTANCE);
+            if (this.generation(key) != generation) {
+                negativeCache.remove(key, NotFound.INSTANCE);
+            }
+        }
+    }
+
+    // changes on every invalidation of the key (or of a key of the same stripe) and of all the keys
+    private long generation(K key) {
+        return generations.get(stripe(key)) + allGeneration.get();
+    }
+
+    private static int stripe(Object key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (GENERATION_STRIPES - 1);
+    }
+
+    /*
+     * The last value of the key, if the load failed because TMF is unavailable.
+     */
+    private V staleFallback(K key, Throwable failure) {
+        if (staleCache == null || !TmfUnavailableException.isCauseOf(failure)) {
+            return null;
+        }
+        V stale = staleCache.get(key);
+        if (stale != null) {
+            staleServed.increment();
+            logger.warn("TMF unavailable, serving the last value of {} in cache '{}': {}", key, name, failure.getMessage());
+        }
+        return stale;
+    }
+
+    /*
+     * The last values of all the keys, if the load failed because TMF is unavailable: a partial result would
+     * silently drop the other keys.
+     */
+    private Map<K, V> staleFallback(Set<K> keys, Throwable failure) {
+        if (staleCache == null || !TmfUnavailableException.isCauseOf(failure)) {
+            return null;
+        }
+        Map<K, V> stale = new HashMap<>();
+        for (Map.Entry<K, V> entry : staleCache.getAll(keys).entrySet()) {
+            if (entry.getValue() == null) {
+                return null;
+            }
+            stale.put(entry.getKey(), entry.getValue());
+        }
+        staleServed.add(stale.size());
+        logger.warn("TMF unavailable, serving the last values of {} keys in cache '{}': {}", stale.size(), name, failure.getMessage());
+        return stale;
+    }
+
+    private boolean isNegative(K key) {
+        if (negativeCache != null && negativeCache.get(key) != null) {
+            negativeHits.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /*
+     * Applies the refresh policy to a cache hit, reloading the value in background if stale or hot.
+     */
+    private void refreshIfNeeded(K key, Loader<V> loader) {
+        EntryStats stats = entryStats.get(key);
+        if (stats == null) {
+            // value cached by someone else: start measuring its age now
+            entryStats.putIfAbsent(key, new EntryStats());
+            return;
+        }
+        stats.reads.increment();
+
+        long age = System.currentTimeMillis() - stats.loadedAt;
+        if (refreshPolicy.isStale(age)) {
+            staleHits.increment();
+            this.refreshAsync(key, loader, "stale");
+        } else if (refreshPolicy.isRefreshAhead(age, stats.reads.sum())) {
+            this.refreshAsync(key, loader, "refresh-ahead");
+        }
+    }
+
+    private void refreshAsync(K key, Loader<V> loader, String reason) {
+        if (inFlight.containsKey(key) || !refreshQueued.add(key)) {
+            return; // already loading
+        }
+
+        logger.debug("Cache REFRESH ({}) for {} in '{}'", reason, key, name);
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    // registered only now, so that a miss never joins a refresh that is not running
+                    CompletableFuture<V> load = new CompletableFuture<>();
+                    if (inFlight.putIfAbsent(key, load) != null) {
+                        return; // loaded meanwhile by a miss
+                    }
+                    this.load(key, load, loader);
+                    refreshes.increment();
+                } catch (Throwable t) {
+                    // keep serving the stale value until the hard TTL
+                    logger.warn("Background refresh of {} in cache '{}' failed: {}", key, name, t.getMessage());
+                } finally {
+                    refreshQueued.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Background refresh of {} in cache '{}' rejected, refresh executor busy", key, name);
+            refreshQueued.remove(key);
+        }
+    }
+
+    /**
+     * Returns the values for the keys, reading the cached ones with a single bulk get and
+     * loading all the missing ones with a single call to the bulk loader. The keys not
+     * returned by the loader are skipped, and not remembered as not found.
+     *
+     * @param keys       the cache keys
+     * @param readCache  false to bypass the cached values (e.g. when caching is disabled)
+     * @param loader     the loader invoked with the missing keys
+     * @return the values found, in the iteration order of the keys
+     * @throws BadTmfDataException      if the loader fails with bad TMF data
+     * @throws ExternalServiceException if the loader fails contacting TMF
+     */
+    public Map<K, V> getAllOrLoad(Set<K> keys, boolean readCache, BulkLoader<K, V> loader) throws BadTmfDataException, ExternalServiceException {
+        Map<K, V> found = new HashMap<>();
+        Set<K> missing = new LinkedHashSet<>(keys);
+        if (readCache) {
+            if (negativeCache != null) {
+                for (Map.Entry<K, NotFound> entry : negativeCache.getAll(keys).entrySet()) {
+                    if (entry.getValue() != null) {
+                        missing.remove(entry.getKey());
+                        negativeHits.increment();
+                    }
+                }
+            }
+            for (Map.Entry<K, V> entry : cache.getAll(missing).entrySet()) {
+                if (entry.getValue() != null) {
+                    found.put(entry.getKey(), entry.getValue());
+                }
+            }
+            hits.add(found.size());
+        }
+
+        missing.removeAll(found.keySet());
+        if (!missing.isEmpty()) {
+            misses.add(missing.size());
+            loads.increment();
+            logger.debug("Cache MISS for {} keys in '{}'", missing.size(), name);
+            Map<K, Long> started = new HashMap<>();
+            missing.forEach(key -> started.put(key, this.generation(key)));
+            try {
+                long start = System.nanoTime();
+                Map<K, V> loaded = loader.loadAll(missing);
+                loadTimeRecorder.accept(System.nanoTime() - start);
+                if (loaded != null) {
+                    Map<K, V> toCache = new HashMap<>();
+                    // keys missing from a bulk result are not negatively cached: the bulk query is less
+                    // reliable than a lookup by key, and the next request tries them again
+                    for (K key : missing) {
+                        V value = loaded.get(key);
+                        if (value != null) {
+                            toCache.put(key, value);
+                        }
+                    }
+                    toCache.forEach((key, value) -> this.put(key, value, started.get(key)));
+                    found.putAll(toCache);
+                }
+            } catch (Throwable t) {
+                failures.increment();
+                Map<K, V> stale = this.staleFallback(missing, t);
+                if (stale == null) {
+                    throw t;
+                }
+                found.putAll(stale);
+            }
+        }
+
+        Map<K, V> out = new LinkedHashMap<>();
+        for (K key : keys) {
+            V value = found.get(key);
+            if (value != null) {
+                out.put(key, value);
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Removes the cached value (or not-found marker) of the key, e.g. when notified that it changed.
+     * A load of the key already in flight still returns its result to its callers, but does not cache it.
+     */
+    public void invalidate(K key) {
+        generations.incrementAndGet(stripe(key));
+        cache.remove(key);
+        if (negativeCache != null) {
+            negativeCache.remove(key);
+        }
+        if (staleCache != null) {
+            staleCache.remove(key);
+        }
+    }
+
+    /**
+     * Removes the cached values (and not-found markers) of the keys matching the predicate.
+     *
+     * @return the number of cached values removed
+     */
+    public int invalidateIf(Predicate<K> predicate) {
+        allGeneration.incrementAndGet();
+        Set<K> keys = new LinkedHashSet<>();
+        cache.forEach(entry -> {
+            if (predicate.test(entry.getKey())) {
+                keys.add(entry.getKey());
+            }
+        });
+        cache.removeAll(keys);
+        if (negativeCache != null) {
+            Set<K> negativeKeys = new LinkedHashSet<>();
+            negativeCache.forEach(entry -> {
+                if (predicate.test(entry.getKey())) {
+                    negativeKeys.add(entry.getKey());
+                }
+            });
+            negativeCache.removeAll(negativeKeys);
+        }
+        if (staleCache != null) {
+            Set<K> staleKeys = new LinkedHashSet<>();
+            staleCache.forEach(entry -> {
+                if (predicate.test(entry.getKey())) {
+                    staleKeys.add(entry.getKey());
+                }
+            });
+            staleCache.removeAll(staleKeys);
+        }
+        return keys.size();
+    }
+
+    /**
+     * Removes all the cached values and not-found markers.
+     */
+    public void invalidateAll() {
+        allGeneration.incrementAndGet();
+        cache.clear();
+        if (negativeCache != null) {
+            negativeCache.clear();
+        }
+        if (staleCache != null) {
+            staleCache.clear();
+        }
+    }
+
+    /**
+     * @return true if this cache can be written to a snapshot
+     */
+    public boolean isSnapshotEnabled() {
+        return valueSerializer != null && expiry != null;
+    }
+
+    /**
+     * Writes the live entries of the cache, each with its load time and value, ending with a zero-length key.
+     * Entries whose load time is unknown (cached bypassing this wrapper) are skipped.
+     *
+     * @param out the snapshot stream
+     * @return the number of entries written
+     * @throws IOException if the stream cannot be written
+     */
+    public int writeSnapshot(DataOutputStream out) throws IOException {
+        int count = 0;
+        for (Cache.Entry<K, V> entry : cache) {
+            EntryStats stats = entryStats.get(entry.getKey());
+            if (stats == null || !(entry.getKey() instanceof String key) || key.isEmpty()) {
+                continue;
+            }
+            ByteBuffer value = valueSerializer.serialize(entry.getValue());
+            writeBytes(out, key.getBytes(StandardCharsets.UTF_8));
+            out.writeLong(stats.loadedAt);
+            byte[] bytes = new byte[value.remaining()];
+            value.get(bytes);
+            writeBytes(out, bytes);
+            count++;
+        }
+        writeBytes(out, new byte[0]);
+        return count;
+    }
+
+    /**
+     * Reads the entries written by {@link #writeSnapshot(DataOutputStream)}, caching the ones not expired yet
+     * with their original load time, so that both the TTL and the soft TTL are preserved.
+     * Keys already cached are not overwritten.
+     *
+     * @param in the snapshot stream
+     * @return the number of entries restored
+     * @throws IOException if the stream cannot be read
+     */
+    @SuppressWarnings("unchecked")
+    public int readSnapshot(DataInputStream in) throws IOException {
+        long ttl = expiry.getTtl().toMillis();
+        int count = 0;
+        for (byte[] keyBytes = readBytes(in); keyBytes.length > 0; keyBytes = readBytes(in)) {
+            K key = (K) new String(keyBytes, StandardCharsets.UTF_8);
+            long loadedAt = in.readLong();
+            byte[] valueBytes = readBytes(in);
+
+            long remaining = loadedAt + ttl - System.currentTimeMillis();
+            if (remaining <= 0) {
+                continue;
+            }
+            V value;
+            try {
+                value = valueSerializer.read(ByteBuffer.wrap(valueBytes));
+            } catch (ClassNotFoundException e) {
+                throw new IOException("Cannot read the value of " + key + " in cache " + name, e);
+            }
+            expiry.expireIn(key, Duration.ofMillis(remaining));
+            if (cache.putIfAbsent(key, value) == null) {
+                entryStats.put(key, new EntryStats(loadedAt));
+                count++;
+            } else {
+                expiry.clear(key);
+            }
+        }
+        return count;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private V await(K key, CompletableFuture<V> running) throws BadTmfDataException, ExternalServiceException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExternalServiceException("Interrupted while waiting for the load of " + key + " in cache " + name, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof BadTmfDataException bad) {
+                throw bad;
+            }
+            if (cause instanceof ExternalServiceException ext) {
+                throw ext;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw new ExternalServiceException("Failed to load " + key + " in cache " + name, cause);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Cache<K, V> getCache() {
+        return cache;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    /**
+     * @return the number of misses served by joining a load already in flight
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    /**
+     * @return the number of hits served with a value older than the soft TTL
+     */
+    public long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    /**
+     * @return the number of values reloaded in background
+     */
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    /**
+     * @return the number of reads answered as not found by the negative cache
+     */
+    public long getNegativeHits() {
+        return negativeHits.sum();
+    }
+
+    public boolean isNegativeCachingEnabled() {
+        return negativeCache != null;
+    }
+
+    /**
+     * @return the number of values served from the stale cache because TMF was unavailable
+     */
+    public long getStaleServed() {
+        return staleServed.sum();
+    }
+
+    public boolean isStaleFallbackEnabled() {
+        return staleCache != null;
+    }
+
+    public RefreshPolicy getRefreshPolicy() {
+        return refreshPolicy;
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s[hits=%d, negativeHits=%d, misses=%d, loads=%d, coalesced=%d, failures=%d, staleHits=%d, refreshes=%d, staleServed=%d]",
+                name, getHits(), getNegativeHits(), getMisses(), getLoads(), getCoalesced(), getFailures(), getStaleHits(), getRefreshes(),
+                getStaleServed());
+    }
+}
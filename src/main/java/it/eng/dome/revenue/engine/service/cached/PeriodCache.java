@@ -0,0 +1,614 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+
+import org.ehcache.Cache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.tmf.TmfUnavailableException;
+
+/**
+ * Caches the results of queries by period (e.g. the customer bills of a party with billDate.gt/billDate.lt),
+ * so that a query can be answered by filtering the results of any cached period that contains it.
+ * <p>
+ * For each key the cache holds the covered periods (segments) with their items. A query covered by the segments
+ * is answered from them; otherwise only the uncovered gaps are loaded, each one as a new segment. As the period
+ * bounds are exclusive, each gap is loaded slightly overlapping its neighbour segments, so that there is no
+ * uncovered boundary. Overlapping segments loaded at about the same time are merged into one; segments of
+ * different ages are kept apart, so that each one expires after the TTL from its own load.
+ * </p>
+ * <p>
+ * As in {@link CoalescingCache}, concurrent queries loading the same gap share a single in-flight load, and with a
+ * {@link RefreshPolicy} the segments older than the soft TTL are still served, but reloaded on a background
+ * executor (refresh-ahead by number of reads is not applied to segments). Unlike it, the segments are not
+ * included in the snapshots.
+ * </p>
+ * <p>
+ * With a stale cache, the segments are kept (with a longer TTL) after they expire, and a query whose load fails
+ * because TMF is unavailable ({@link TmfUnavailableException}) is answered from them if they cover its period.
+ * </p>
+ * <p>
+ * The segments and the invalidations are changed under the same lock, and a segment whose load started before
+ * the last invalidation of its key is not cached: it may have been read before the change that caused it.
+ * </p>
+ *
+ * @param <V> the type of the cached items
+ */
+public class PeriodCache<V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(PeriodCache.class);
+
+    // max overlap of a gap load with its neighbour segments
+    private static final Duration MAX_OVERLAP = Duration.ofSeconds(1);
+
+    // overlapping segments are merged only if loaded within this fraction of the TTL
+    private static final double MERGE_MAX_AGE_RATIO = 0.25;
+
+    /**
+     * Loads the items of a period, with exclusive bounds (null for unbounded).
+     */
+    @FunctionalInterface
+    public interface PeriodLoader<V> {
+        List<V> load(OffsetDateTime start, OffsetDateTime end) throws ExternalServiceException;
+    }
+
+    /*
+     * Items of a period (start, end), sorted by date.
+     */
+    static final class Segment<V> {
+        final OffsetDateTime start;
+        final OffsetDateTime end;
+        final List<V> items;
+        final long loadedAt;
+
+        Segment(OffsetDateTime start, OffsetDateTime end, List<V> items, long loadedAt) {
+            this.start = start;
+            this.end = end;
+            this.items = items;
+            this.loadedAt = loadedAt;
+        }
+
+        boolean overlaps(OffsetDateTime from, OffsetDateTime to) {
+            return start.isBefore(to) && end.isAfter(from);
+        }
+
+        boolean contains(OffsetDateTime from, OffsetDateTime to) {
+            return !start.isAfter(from) && !end.isBefore(to);
+        }
+
+        boolean contains(Segment<V> other) {
+            return this.contains(other.start, other.end);
+        }
+
+        // an instant inside the segment, close to its start
+        OffsetDateTime insideStart() {
+            return start.plus(overlap());
+        }
+
+        // an instant inside the segment, close to its end
+        OffsetDateTime insideEnd() {
+            return end.minus(overlap());
+        }
+
+        private Duration overlap() {
+            Duration half = Duration.between(start, end).dividedBy(2);
+            return half.compareTo(MAX_OVERLAP) < 0 ? half : MAX_OVERLAP;
+        }
+    }
+
+    /*
+     * The segments cached for a key, sorted by start. Immutable, replaced on each change.
+     */
+    static final class Coverage<V> {
+        final List<Segment<V>> segments;
+
+        Coverage(List<Segment<V>> segments) {
+            this.segments = segments;
+        }
+    }
+
+    private final String name;
+    private final Cache<String, Coverage<V>> cache;
+    private final Duration ttl;
+    private final Function<V, OffsetDateTime> dateOf;
+    private final Function<V, String> idOf;
+    private final Comparator<V> byDate;
+    private final CacheService.LoadRecorder loadRecorder;
+    private final RefreshPolicy refreshPolicy;
+    private final Executor refreshExecutor;
+
+    // the loads running, by key and period: concurrent queries of the same gap share one load
+    private final ConcurrentMap<String, CompletableFuture<Segment<V>>> inFlight = new ConcurrentHashMap<>();
+
+    // segments (key and period) whose background refresh is queued or running
+    private final Set<String> refreshQueued = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder staleHits = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+    private final LongAdder staleServed = new LongAdder();
+
+    // segments kept after their expiry, served when TMF is unavailable
+    private Cache<String, Coverage<V>> staleCache;
+    private Duration staleTtl;
+
+    // current time (millis) of the segment ages
+    private LongSupplier clock = System::currentTimeMillis;
+
+    // time of the last invalidation of each key (kept for a TTL), and of all the keys
+    private final Map<String, Long> invalidatedAt = new HashMap<>();
+    private long allInvalidatedAt = Long.MIN_VALUE;
+
+    PeriodCache(String name, Cache<String, Coverage<V>> cache, Duration ttl, Function<V, OffsetDateTime> dateOf,
+            Function<V, String> idOf, CacheService.LoadRecorder loadRecorder, RefreshPolicy refreshPolicy, Executor refreshExecutor) {
+        this.name = name;
+        this.cache = cache;
+        this.ttl = ttl;
+        this.dateOf = dateOf;
+        this.idOf = idOf;
+        this.byDate = Comparator.comparing(dateOf, Comparator.nullsLast(OffsetDateTime.timeLineOrder()));
+        this.loadRecorder = loadRecorder;
+        this.refreshPolicy = refreshExecutor != null ? refreshPolicy : null;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /**
+     * Returns the items of the period, from the cached segments of the key, loading only the gaps not covered yet.
+     *
+     * @param key       the cache key (e.g. party and role), not including the period
+     * @param start     the exclusive start of the period, null for unbounded
+     * @param end       the exclusive end of the period, null for unbounded
+     * @param readCache false to bypass the cached segments (e.g. when caching is disabled)
+     * @param loader    the loader of a period
+     * @return the items with a date in the period, sorted by date
+     * @throws ExternalServiceException if the loader fails
+     */
+    public List<V> getOrLoad(String key, OffsetDateTime start, OffsetDateTime end, boolean readCache, PeriodLoader<V> loader)
+            throws ExternalServiceException {
+        try {
+            return this.read(key, start, end, readCache, loader);
+        } catch (ExternalServiceException | RuntimeException e) {
+            List<V> stale = this.staleFallback(key, start, end, e);
+            if (stale == null) {
+                throw e;
+            }
+            return stale;
+        }
+    }
+
+    private List<V> read(String key, OffsetDateTime start, OffsetDateTime end, boolean readCache, PeriodLoader<V> loader)
+            throws ExternalServiceException {
+        OffsetDateTime from = start != null ? start : OffsetDateTime.MIN;
+        OffsetDateTime to = end != null ? end : OffsetDateTime.MAX;
+        if (!readCache || !from.isBefore(to)) {
+            return this.load(loader, from, to);
+        }
+        if (start == null && end == null) {
+            // items without a date are returned only by unbounded loads: never build this result from segments,
+            // callers wanting it cached keep the whole list apart (see TmfCachedDataRetriever)
+            return this.loadSegment(key, loader, from, to).items;
+        }
+
+        long now = clock.getAsLong();
+        List<Segment<V>> overlapping = new ArrayList<>();
+        Coverage<V> coverage = cache.get(key);
+        if (coverage != null) {
+            for (Segment<V> s : coverage.segments) {
+                if (!this.isExpired(s, now) && s.overlaps(from, to)) {
+                    overlapping.add(s);
+                    this.refreshIfStale(key, s, loader, now);
+                }
+            }
+        }
+
+        // the gaps between the overlapping segments (sorted by start), each loaded as a new segment
+        List<Segment<V>> loaded = new ArrayList<>();
+        OffsetDateTime reach = from;
+        Segment<V> last = null;
+        for (Segment<V> s : overlapping) {
+            boolean gap = last == null ? s.start.isAfter(from) : !s.start.isBefore(reach);
+            if (gap) {
+                loaded.add(this.loadSegment(key, loader, last != null ? last.insideEnd() : from, s.insideStart()));
+            }
+            if (last == null || s.end.isAfter(reach)) {
+                reach = s.end;
+                last = s;
+            }
+        }
+        if (last == null) {
+            loaded.add(this.loadSegment(key, loader, from, to));
+        } else if (reach.isBefore(to)) {
+            loaded.add(this.loadSegment(key, loader, last.insideEnd(), to));
+        }
+
+        if (loaded.isEmpty()) {
+            logger.debug("Cache HIT for {} in '{}' between {} and {}: {} segments", key, name, start, end, overlapping.size());
+        } else {
+            logger.debug("Cache MISS for {} in '{}' between {} and {}: {} segments reused, {} gaps loaded", key, name, start, end,
+                    overlapping.size(), loaded.size());
+        }
+
+        if (overlapping.size() == 1 && loaded.isEmpty()) {
+            return this.filter(overlapping.get(0).items, from, to);
+        }
+        List<Segment<V>> all = new ArrayList<>(overlapping);
+        all.addAll(loaded);
+        return this.filter(this.items(all), from, to);
+    }
+
+    /*
+     * The items of the segments, sorted by date: the ones of the newer segments win.
+     */
+    private List<V> items(List<Segment<V>> segments) {
+        List<Segment<V>> byAge = new ArrayList<>(segments);
+        byAge.sort(Comparator.comparingLong(segment -> segment.loadedAt));
+        Map<String, V> items = new LinkedHashMap<>();
+        for (Segment<V> segment : byAge) {
+            segment.items.forEach(item -> items.put(idOf.apply(item), item));
+        }
+        return this.sorted(items.values());
+    }
+
+    /*
+     * The items of the period from the stale segments, if the load failed because TMF is unavailable and the
+     * stale segments cover the whole period.
+     */
+    private List<V> staleFallback(String key, OffsetDateTime start, OffsetDateTime end, Exception failure) {
+        if (staleCache == null || !TmfUnavailableException.isCauseOf(failure)) {
+            return null;
+        }
+        Coverage<V> coverage = staleCache.get(key);
+        if (coverage == null) {
+            return null;
+        }
+        OffsetDateTime from = start != null ? start : OffsetDateTime.MIN;
+        OffsetDateTime to = end != null ? end : OffsetDateTime.MAX;
+        long now = clock.getAsLong();
+        List<Segment<V>> usable = new ArrayList<>();
+        OffsetDateTime reach = null;
+        for (Segment<V> s : coverage.segments) {
+            if (now - s.loadedAt >= staleTtl.toMillis() || !s.overlaps(from, to)) {
+                continue;
+            }
+            if (reach == null ? s.start.isAfter(from) : !s.start.isBefore(reach)) {
+                return null; // gap
+            }
+            if (reach == null || s.end.isAfter(reach)) {
+                reach = s.end;
+            }
+            usable.add(s);
+        }
+        if (reach == null || reach.isBefore(to)) {
+            return null;
+        }
+        staleServed.increment();
+        logger.warn("TMF unavailable, serving {} stale segments of {} in '{}' between {} and {}: {}", usable.size(), key, name,
+                start, end, failure.getMessage());
+        List<V> items = this.items(usable);
+        // items without a date are returned only by unbounded loads
+        return start == null && end == null ? items : this.filter(items, from, to);
+    }
+
+    /**
+     * Drops the cached segments of the key, and the ones of the loads of the key still running.
+     */
+    public synchronized void invalidate(String key) {
+        this.markInvalidated(key);
+        cache.remove(key);
+        if (staleCache != null) {
+            staleCache.remove(key);
+        }
+    }
+
+    /**
+     * Drops the cached segments of the keys matching the predicate, and the ones of the loads of those keys
+     * still running.
+     *
+     * @return the number of keys dropped
+     */
+    public synchronized int invalidateIf(Predicate<String> predicate) {
+        List<String> keys = new ArrayList<>();
+        cache.forEach(entry -> {
+            if (predicate.test(entry.getKey())) {
+                keys.add(entry.getKey());
+            }
+        });
+        keys.forEach(key -> {
+            this.markInvalidated(key);
+            cache.remove(key);
+        });
+        if (staleCache != null) {
+            List<String> staleKeys = new ArrayList<>();
+            staleCache.forEach(entry -> {
+                if (predicate.test(entry.getKey())) {
+                    staleKeys.add(entry.getKey());
+                }
+            });
+            staleKeys.forEach(staleCache::remove);
+        }
+        return keys.size();
+    }
+
+    /**
+     * Drops all the cached segments, and the ones of the loads still running.
+     */
+    public synchronized void invalidateAll() {
+        allInvalidatedAt = clock.getAsLong();
+        invalidatedAt.clear();
+        cache.clear();
+        if (staleCache != null) {
+            staleCache.clear();
+        }
+    }
+
+    private void markInvalidated(String key) {
+        long now = clock.getAsLong();
+        // older invalidations are irrelevant: the segments loaded before them are expired anyway
+        invalidatedAt.values().removeIf(at -> now - at > ttl.toMillis());
+        invalidatedAt.put(key, now);
+    }
+
+    private boolean isInvalidated(String key, Segment<V> segment) {
+        Long at = invalidatedAt.get(key);
+        return segment.loadedAt <= allInvalidatedAt || (at != null && segment.loadedAt <= at);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public long getStaleHits() {
+        return staleHits.sum();
+    }
+
+    public long getRefreshes() {
+        return refreshes.sum();
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+
+    void setClock(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    void enableStaleFallback(Cache<String, Coverage<V>> staleCache, Duration staleTtl) {
+        this.staleTtl = staleTtl;
+        this.staleCache = staleCache;
+    }
+
+    public boolean isStaleFallbackEnabled() {
+        return staleCache != null;
+    }
+
+    /**
+     * @return the number of queries answered from the stale segments because TMF was unavailable
+     */
+    public long getStaleServed() {
+        return staleServed.sum();
+    }
+
+    /*
+     * Adds a segment to the current coverage of the key (including the segments added meanwhile by concurrent
+     * queries): it is merged with the overlapping segments loaded at about the same time, and replaces the ones
+     * it contains.
+     */
+    private synchronized void insert(String key, Segment<V> segment) {
+        if (this.isInvalidated(key, segment)) {
+            logger.debug("Not caching the segment of {} in '{}' between {} and {}: invalidated while loading", key, name,
+                    segment.start, segment.end);
+            return;
+        }
+        long now = clock.getAsLong();
+        Coverage<V> coverage = cache.get(key);
+
+        List<Segment<V>> segments = new ArrayList<>();
+        Segment<V> inserted = segment;
+        if (coverage != null) {
+            for (Segment<V> s : coverage.segments) {
+                if (this.isExpired(s, now) || inserted.contains(s) && inserted.loadedAt >= s.loadedAt) {
+                    continue; // replaced by newer items (e.g. a refresh)
+                }
+                if (s.overlaps(inserted.start, inserted.end) && this.isMergeable(inserted, s)) {
+                    inserted = this.merge(s, inserted);
+                } else {
+                    segments.add(s);
+                }
+            }
+        }
+        segments.add(inserted);
+        segments.sort(Comparator.comparing(s -> s.start, OffsetDateTime.timeLineOrder()));
+        cache.put(key, new Coverage<>(Collections.unmodifiableList(segments)));
+
+        if (staleCache != null) {
+            // the live segments, and the expired ones not replaced yet
+            List<Segment<V>> stale = new ArrayList<>(segments);
+            Coverage<V> previous = staleCache.get(key);
+            if (previous != null) {
+                for (Segment<V> s : previous.segments) {
+                    if (this.isExpired(s, now) && now - s.loadedAt < staleTtl.toMillis() && !segment.contains(s)) {
+                        stale.add(s);
+                    }
+                }
+            }
+            stale.sort(Comparator.comparing(s -> s.start, OffsetDateTime.timeLineOrder()));
+            staleCache.put(key, new Coverage<>(Collections.unmodifiableList(stale)));
+        }
+    }
+
+    private boolean isMergeable(Segment<V> a, Segment<V> b) {
+        return Math.abs(a.loadedAt - b.loadedAt) <= ttl.toMillis() * MERGE_MAX_AGE_RATIO;
+    }
+
+    /*
+     * The union of the segments: the items of the newer one win, the age is the one of the older one.
+     */
+    private Segment<V> merge(Segment<V> older, Segment<V> newer) {
+        if (older.loadedAt > newer.loadedAt) {
+            return this.merge(newer, older);
+        }
+        Map<String, V> items = new LinkedHashMap<>();
+        for (V item : older.items) {
+            items.put(idOf.apply(item), item);
+        }
+        for (V item : newer.items) {
+            items.put(idOf.apply(item), item);
+        }
+        OffsetDateTime start = older.start.isBefore(newer.start) ? older.start : newer.start;
+        OffsetDateTime end = older.end.isAfter(newer.end) ? older.end : newer.end;
+        return new Segment<>(start, end, this.sorted(items.values()), older.loadedAt);
+    }
+
+    /*
+     * Loads a period as a new segment of the key and caches it, or joins the load of the same period in flight.
+     */
+    private Segment<V> loadSegment(String key, PeriodLoader<V> loader, OffsetDateTime from, OffsetDateTime to)
+            throws ExternalServiceException {
+        String flightKey = flightKey(key, from, to);
+        CompletableFuture<Segment<V>> load = new CompletableFuture<>();
+        CompletableFuture<Segment<V>> running = inFlight.putIfAbsent(flightKey, load);
+        if (running != null) {
+            coalesced.increment();
+            logger.debug("Cache MISS for {} in '{}' between {} and {}: joining in-flight load", key, name, from, to);
+            return this.await(flightKey, running);
+        }
+        return this.loadSegment(key, flightKey, load, loader, from, to);
+    }
+
+    /*
+     * Runs the loader for a load registered in flight, completing it with the segment.
+     */
+    private Segment<V> loadSegment(String key, String flightKey, CompletableFuture<Segment<V>> load, PeriodLoader<V> loader,
+            OffsetDateTime from, OffsetDateTime to) throws ExternalServiceException {
+        try {
+            // the age starts before the load, so that an invalidation meanwhile drops it
+            long loadedAt = clock.getAsLong();
+            Segment<V> segment = new Segment<>(from, to, this.sorted(this.load(loader, from, to)), loadedAt);
+            this.insert(key, segment);
+            load.complete(segment);
+            return segment;
+        } catch (Throwable t) {
+            load.completeExceptionally(t);
+            throw t;
+        } finally {
+            inFlight.remove(flightKey, load);
+        }
+    }
+
+    private Segment<V> await(String flightKey, CompletableFuture<Segment<V>> running) throws ExternalServiceException {
+        try {
+            return running.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ExternalServiceException("Interrupted while waiting for the load of " + flightKey + " in cache " + name, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof ExternalServiceException ext) {
+                throw ext;
+            }
+            if (cause instanceof RuntimeException re) {
+                throw re;
+            }
+            if (cause instanceof Error err) {
+                throw err;
+            }
+            throw new ExternalServiceException("Failed to load " + flightKey + " in cache " + name, cause);
+        }
+    }
+
+    /*
+     * Applies the refresh policy to a segment read, reloading it in background if older than the soft TTL.
+     */
+    private void refreshIfStale(String key, Segment<V> segment, PeriodLoader<V> loader, long now) {
+        if (refreshPolicy == null || !refreshPolicy.isStale(now - segment.loadedAt)) {
+            return;
+        }
+        staleHits.increment();
+        String flightKey = flightKey(key, segment.start, segment.end);
+        if (inFlight.containsKey(flightKey) || !refreshQueued.add(flightKey)) {
+            return; // already loading
+        }
+
+        logger.debug("Cache REFRESH (stale) for {} in '{}' between {} and {}", key, name, segment.start, segment.end);
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    // registered only now, so that a query never joins a refresh that is not running
+                    CompletableFuture<Segment<V>> load = new CompletableFuture<>();
+                    if (inFlight.putIfAbsent(flightKey, load) != null) {
+                        return; // loaded meanwhile by a query
+                    }
+                    this.loadSegment(key, flightKey, load, loader, segment.start, segment.end);
+                    refreshes.increment();
+                } catch (Throwable t) {
+                    // keep serving the stale segment until the hard TTL
+                    logger.warn("Background refresh of {} in cache '{}' failed: {}", key, name, t.getMessage());
+                } finally {
+                    refreshQueued.remove(flightKey);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("Background refresh of {} in cache '{}' rejected, refresh executor busy", key, name);
+            refreshQueued.remove(flightKey);
+        }
+    }
+
+    private static String flightKey(String key, OffsetDateTime from, OffsetDateTime to) {
+        return key + "|" + from + "|" + to;
+    }
+
+    private List<V> load(PeriodLoader<V> loader, OffsetDateTime from, OffsetDateTime to) throws ExternalServiceException {
+        long start = System.nanoTime();
+        List<V> loaded = loader.load(OffsetDateTime.MIN.equals(from) ? null : from, OffsetDateTime.MAX.equals(to) ? null : to);
+        loadRecorder.record(name, System.nanoTime() - start);
+        return loaded != null ? loaded : new ArrayList<>();
+    }
+
+    private List<V> filter(List<V> items, OffsetDateTime from, OffsetDateTime to) {
+        List<V> out = new ArrayList<>();
+        for (V item : items) {
+            OffsetDateTime date = dateOf.apply(item);
+            if (date != null && date.isAfter(from) && date.isBefore(to)) {
+                out.add(item);
+            }
+        }
+        return out;
+    }
+
+    private List<V> sorted(Iterable<V> items) {
+        List<V> list = new ArrayList<>();
+        items.forEach(list::add);
+        list.sort(byDate);
+        return Collections.unmodifiableList(list);
+    }
+
+    private boolean isExpired(Segment<V> segment, long now) {
+        return now - segment.loadedAt >= ttl.toMillis();
+    }
+}
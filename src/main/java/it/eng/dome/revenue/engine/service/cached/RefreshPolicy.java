@@ -0,0 +1,57 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import java.time.Duration;
+
+/**
+ * Stale-while-revalidate and refresh-ahead policy of a {@link CoalescingCache}.
+ * <p>
+ * The cache TTL is the hard limit: after it the entry is gone and the next caller loads it synchronously.
+ * After the soft TTL the entry is still served, but stale, and reloaded on a background executor.
+ * Entries read at least {@code refreshAheadHits} times are reloaded in background even earlier,
+ * as soon as their age reaches {@code refreshAheadRatio} of the soft TTL.
+ * </p>
+ */
+public class RefreshPolicy {
+
+    private final Duration softTtl;
+    private final double refreshAheadRatio;
+    private final int refreshAheadHits;
+
+    public RefreshPolicy(Duration softTtl, double refreshAheadRatio, int refreshAheadHits) {
+        this.softTtl = softTtl;
+        this.refreshAheadRatio = refreshAheadRatio;
+        this.refreshAheadHits = refreshAheadHits;
+    }
+
+    public Duration getSoftTtl() {
+        return softTtl;
+    }
+
+    public double getRefreshAheadRatio() {
+        return refreshAheadRatio;
+    }
+
+    public int getRefreshAheadHits() {
+        return refreshAheadHits;
+    }
+
+    /**
+     * @return true if an entry with the given age (millis) must be served as stale and reloaded
+     */
+    public boolean isStale(long ageMillis) {
+        return ageMillis >= softTtl.toMillis();
+    }
+
+    /**
+     * @return true if an entry with the given age (millis) and reads must be reloaded ahead of its soft TTL
+     */
+    public boolean isRefreshAhead(long ageMillis, long reads) {
+        return refreshAheadRatio > 0 && refreshAheadRatio < 1 && reads >= refreshAheadHits
+                && ageMillis >= (long) (softTtl.toMillis() * refreshAheadRatio);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("soft=%s, refreshAhead=%.2f after %d hits", softTtl, refreshAheadRatio, refreshAheadHits);
+    }
+}
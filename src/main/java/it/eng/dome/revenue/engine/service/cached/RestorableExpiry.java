@@ -0,0 +1,62 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import org.ehcache.expiry.ExpiryPolicy;
+
+/**
+ * Time-to-live expiry policy that lets a single put use a shorter TTL, e.g. to restore an entry
+ * from a snapshot with its original expiry time.
+ *
+ * @param <K> the type of cache key
+ * @param <V> the type of cache value
+ */
+public class RestorableExpiry<K, V> implements ExpiryPolicy<K, V> {
+
+    private final Duration ttl;
+
+    // TTLs of the next put, by key
+    private final ConcurrentMap<K, Duration> pending = new ConcurrentHashMap<>();
+
+    public RestorableExpiry(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    /**
+     * Sets the TTL of the next put of the given key, instead of the cache TTL.
+     */
+    public void expireIn(K key, Duration remaining) {
+        pending.put(key, remaining);
+    }
+
+    /**
+     * Drops the TTL set for the given key, if not used.
+     */
+    public void clear(K key) {
+        pending.remove(key);
+    }
+
+    @Override
+    public Duration getExpiryForCreation(K key, V value) {
+        Duration remaining = pending.remove(key);
+        return remaining != null ? remaining : ttl;
+    }
+
+    @Override
+    public Duration getExpiryForAccess(K key, Supplier<? extends V> value) {
+        return null; // unchanged
+    }
+
+    @Override
+    public Duration getExpiryForUpdate(K key, Supplier<? extends V> oldValue, V newValue) {
+        Duration remaining = pending.remove(key);
+        return remaining != null ? remaining : ttl;
+    }
+}
@@ -1,12 +1,16 @@
 package it.eng.dome.revenue.engine.service.cached;
 
 import java.time.Duration;
+import java.time.OffsetDateTime;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 
-import org.ehcache.Cache;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -22,6 +26,7 @@ import it.eng.dome.revenue.engine.exception.BadTmfDataException;
 import it.eng.dome.revenue.engine.exception.ExternalServiceException;
 import it.eng.dome.revenue.engine.model.Role;
 import it.eng.dome.revenue.engine.service.TmfDataRetriever;
+import it.eng.dome.revenue.engine.tmf.TmfProjection;
 import it.eng.dome.revenue.engine.utils.CacheDuration;
 import it.eng.dome.tmforum.tmf620.v4.model.ProductOffering;
 import it.eng.dome.tmforum.tmf620.v4.model.ProductOfferingPrice;
@@ -54,17 +59,19 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
 	@Autowired
 	CacheDuration cacheDuration;
 
-    private Cache<String, BillingAccountRef> billingAccountCache;
-    private Cache<String, CustomerBill> customerBillCache;
-    private Cache<String, Organization> organizationCache;
-    private Cache<String, List<Organization>> organizationsCache;
-    private Cache<String, Product> productCache;
-    private Cache<String, ProductOffering> productOfferingCache;
-    private Cache<String, ProductOfferingPrice> productOfferingPriceCache;
-    private Cache<String, List<AppliedCustomerBillingRate>> acbrCache;
-    private Cache<String, List<CustomerBill>> customerBillListCache;
-    private Cache<String, List<Product>> productListCache;
-    private Cache<String, List<ProductOffering>> productOfferingListCache;
+    private CoalescingCache<String, BillingAccountRef> billingAccountCache;
+    private CoalescingCache<String, CustomerBill> customerBillCache;
+    private CoalescingCache<String, Organization> organizationCache;
+    private CoalescingCache<String, List<Organization>> organizationsCache;
+    private CoalescingCache<String, Product> productCache;
+    private CoalescingCache<String, ProductOffering> productOfferingCache;
+    private CoalescingCache<String, ProductOfferingPrice> productOfferingPriceCache;
+    private CoalescingCache<String, List<AppliedCustomerBillingRate>> acbrCache;
+    private CoalescingCache<String, List<CustomerBill>> customerBillListCache;
+    private CoalescingCache<String, List<Product>> productListCache;
+    private CoalescingCache<String, List<ProductOffering>> productOfferingListCache;
+    // customer bills of a party by billDate period, answering sub-periods of the cached ones
+    private PeriodCache<CustomerBill> customerBillPeriodCache;
 
 
 
@@ -74,194 +81,285 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
         // --- TMF Data Retriever caches ---
         Duration billingAccountDuration = cacheDuration.getTmf().get("billingAccount");
         logger.debug("Set cache duration for 'billingAccountCache' to: {}", billingAccountDuration);
-        billingAccountCache = cacheService.getOrCreateCache(
+        billingAccountCache = cacheService.getOrCreateCoalescingCache(
                 "billingAccountCache",
                 String.class,
                 BillingAccountRef.class,
-                billingAccountDuration
+                billingAccountDuration,
+                this.refreshPolicy("billingAccount"),
+                new TmfJsonSerializer<>(BillingAccountRef::toJson, BillingAccountRef::fromJson)
         );
 
         Duration customerBillDuration = cacheDuration.getTmf().get("customerBill");
         logger.debug("Set cache duration for 'customerBillCache' to: {}", customerBillDuration);
-        customerBillCache = cacheService.getOrCreateCache(
+        customerBillCache = cacheService.getOrCreateCoalescingCache(
                 "customerBillCache",
                 String.class,
                 CustomerBill.class,
-                customerBillDuration
+                customerBillDuration,
+                this.refreshPolicy("customerBill"),
+                new TmfJsonSerializer<>(CustomerBill::toJson, CustomerBill::fromJson)
         );
 
         Duration productDuration = cacheDuration.getTmf().get("product");
         logger.debug("Set cache duration for 'productCache' to: {}", productDuration);
-        productCache = cacheService.getOrCreateCache(
+        productCache = cacheService.getOrCreateCoalescingCache(
                 "productCache",
                 String.class,
                 Product.class,
-                productDuration
+                productDuration,
+                this.refreshPolicy("product"),
+                new TmfJsonSerializer<>(Product::toJson, Product::fromJson)
         );
 
         Duration productOfferingDuration = cacheDuration.getTmf().get("productOffering");
         logger.debug("Set cache duration for 'productOfferingCache' to: {}", productOfferingDuration);
-        productOfferingCache = cacheService.getOrCreateCache(
+        productOfferingCache = cacheService.getOrCreateCoalescingCache(
                 "productOfferingCache",
                 String.class,
                 ProductOffering.class,
-                productOfferingDuration
+                productOfferingDuration,
+                this.refreshPolicy("productOffering"),
+                new TmfJsonSerializer<>(ProductOffering::toJson, ProductOffering::fromJson)
         );
 
         Duration productOfferingPriceDuration = cacheDuration.getTmf().get("productOfferingPrice");
         logger.debug("Set cache duration for 'productOfferingPriceCache' to: {}", productOfferingPriceDuration);
-        productOfferingPriceCache = cacheService.getOrCreateCache(
+        productOfferingPriceCache = cacheService.getOrCreateCoalescingCache(
                 "productOfferingPriceCache",
                 String.class,
                 ProductOfferingPrice.class,
-                productOfferingPriceDuration
+                productOfferingPriceDuration,
+                this.refreshPolicy("productOfferingPrice"),
+                new TmfJsonSerializer<>(ProductOfferingPrice::toJson, ProductOfferingPrice::fromJson)
         );
 
         Duration organizationDuration = cacheDuration.getTmf().get("organization");
         logger.debug("Set cache duration for 'organizationCache' to: {}", organizationDuration);
-        organizationCache = cacheService.getOrCreateCache(
+        organizationCache = cacheService.getOrCreateCoalescingCache(
                 "organizationCache",
                 String.class,
                 Organization.class,
-                organizationDuration
+                organizationDuration,
+                this.refreshPolicy("organization"),
+                new TmfJsonSerializer<>(Organization::toJson, Organization::fromJson)
         );
 
         logger.debug("Set cache duration for 'organizationsCache' to: {}", organizationDuration);
-        organizationsCache = cacheService.getOrCreateCache(
+        organizationsCache = cacheService.getOrCreateCoalescingCache(
                 "organizationsCache",
                 String.class,
                 (Class<List<Organization>>)(Class<?>)List.class,
-                organizationDuration
+                organizationDuration,
+                this.refreshPolicy("organization"),
+                TmfJsonSerializer.listOf(Organization::toJson, Organization::fromJson)
         );
 
         Duration acbrDuration = cacheDuration.getTmf().get("appliedCustomerBillingRate");
         logger.debug("Set cache duration for 'acbrCache' to: {}", acbrDuration);
-        acbrCache = cacheService.getOrCreateCache(
+        acbrCache = cacheService.getOrCreateCoalescingCache(
                 "acbrCache",
                 String.class,
                 (Class<List<AppliedCustomerBillingRate>>)(Class<?>)List.class,
-                acbrDuration
+                acbrDuration,
+                this.refreshPolicy("appliedCustomerBillingRate"),
+                TmfJsonSerializer.listOf(AppliedCustomerBillingRate::toJson, AppliedCustomerBillingRate::fromJson)
         );
 
         // --- TMF List Service caches ---
         Duration productListDuration = cacheDuration.getTmf().get("list-product");
         logger.debug("Set cache duration for 'productListCache' to: {}", productListDuration);
-        productListCache = cacheService.getOrCreateCache(
+        productListCache = cacheService.getOrCreateCoalescingCache(
                 "productListCache",
                 String.class,
                 (Class<List<Product>>)(Class<?>)List.class,
-                productListDuration
+                productListDuration,
+                this.refreshPolicy("list-product"),
+                TmfJsonSerializer.listOf(Product::toJson, Product::fromJson)
         );
 
         Duration productOfferingListDuration = cacheDuration.getTmf().get("list-productOffering");
         logger.debug("Set cache duration for 'productOfferingListCache' to: {}", productOfferingListDuration);
-        productOfferingListCache = cacheService.getOrCreateCache(
+        productOfferingListCache = cacheService.getOrCreateCoalescingCache(
                 "productOfferingListCache",
                 String.class,
                 (Class<List<ProductOffering>>)(Class<?>)List.class,
-                productOfferingListDuration
+                productOfferingListDuration,
+                this.refreshPolicy("list-productOffering"),
+                TmfJsonSerializer.listOf(ProductOffering::toJson, ProductOffering::fromJson)
         );
 
         Duration customerBillListDuration = cacheDuration.getTmf().get("list-customerBill");
         logger.debug("Set cache duration for 'customerBillListCache' to: {}", customerBillListDuration);
-        customerBillListCache = cacheService.getOrCreateCache(
+        customerBillListCache = cacheService.getOrCreateCoalescingCache(
                 "customerBillListCache",
                 String.class,
                 (Class<List<CustomerBill>>)(Class<?>)List.class,
-                customerBillListDuration
+                customerBillListDuration,
+                this.refreshPolicy("list-customerBill"),
+                TmfJsonSerializer.listOf(CustomerBill::toJson, CustomerBill::fromJson)
         );
+
+        logger.debug("Set cache duration for 'customerBillPeriodCache' to: {}", customerBillListDuration);
+        customerBillPeriodCache = cacheService.getOrCreatePeriodCache(
+                "customerBillPeriodCache",
+                customerBillListDuration,
+                CustomerBill::getBillDate,
+                CustomerBill::getId,
+                this.refreshPolicy("list-customerBill")
+        );
+
+        // --- negative caching of the lookups by id ---
+        this.negativeCaching(billingAccountCache, "billingAccount");
+        this.negativeCaching(customerBillCache, "customerBill");
+        this.negativeCaching(organizationCache, "organization");
+        this.negativeCaching(productCache, "product");
+        this.negativeCaching(productOfferingCache, "productOffering");
+        this.negativeCaching(productOfferingPriceCache, "productOfferingPrice");
+
+        // --- last values served when TMF is unavailable ---
+        this.staleFallback(billingAccountCache, "billingAccount");
+        this.staleFallback(customerBillCache, "customerBill");
+        this.staleFallback(productCache, "product");
+        this.staleFallback(acbrCache, "appliedCustomerBillingRate");
+        this.staleFallback(customerBillListCache, "list-customerBill");
+        Duration billPeriodStaleDuration = cacheDuration.getTmf().getStale("list-customerBill");
+        if (billPeriodStaleDuration != null) {
+            logger.debug("Set stale cache duration for '{}' to: {}", customerBillPeriodCache.getName(), billPeriodStaleDuration);
+            cacheService.enableStaleFallback(customerBillPeriodCache, billPeriodStaleDuration);
+        }
+    }
+
+    /*
+     * Enables the negative caching of a TMF cache, if a negative duration is configured for it.
+     */
+    private void negativeCaching(CoalescingCache<String, ?> cache, String key) {
+        Duration negativeDuration = cacheDuration.getTmf().getNegative(key);
+        if (negativeDuration != null) {
+            logger.debug("Set negative cache duration for '{}' to: {}", cache.getName(), negativeDuration);
+            cacheService.enableNegativeCaching(cache, negativeDuration);
+        }
+    }
+
+    /*
+     * Enables the stale fallback of a TMF cache, if a stale duration is configured for it.
+     */
+    private void staleFallback(CoalescingCache<String, ?> cache, String key) {
+        Duration staleDuration = cacheDuration.getTmf().getStale(key);
+        if (staleDuration != null) {
+            logger.debug("Set stale cache duration for '{}' to: {}", cache.getName(), staleDuration);
+            cacheService.enableStaleFallback(cache, staleDuration);
+        }
+    }
+
+    /*
+     * Soft TTL and refresh-ahead policy of a TMF cache, if a soft duration is configured for it.
+     */
+    private RefreshPolicy refreshPolicy(String key) {
+        Duration softDuration = cacheDuration.getTmf().getSoft(key);
+        if (softDuration == null) {
+            return null;
+        }
+        CacheDuration.RefreshAhead refreshAhead = cacheDuration.getTmf().getRefreshAhead();
+        RefreshPolicy policy = refreshAhead != null
+                ? new RefreshPolicy(softDuration, refreshAhead.getRatio(), refreshAhead.getMinHits())
+                : new RefreshPolicy(softDuration, 0, 0);
+        logger.debug("Set refresh policy for '{}' to: {}", key, policy);
+        return policy;
     }
 
     public List<CustomerBill> retrieveCustomerBills(String participantId, Role participantRole, TimePeriod timePeriod) throws ExternalServiceException {
-        String key = "all-bills-";
-        if(participantId!=null)
-			key  += participantId;
-        if(participantRole!=null)
-			key  += participantRole.getValue();
-		if(timePeriod!=null)
-			key  += timePeriod.toString();
-        if (!TMF_CACHE_ENABLED || !this.customerBillListCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            List<CustomerBill> bills = super.retrieveCustomerBills(participantId, participantRole, timePeriod);
-            if (bills != null) {
-                this.customerBillListCache.put(key, bills);
-            } else {
-                logger.warn("CustomerBills not found for {}", key);
-                return null;
-            }
+        String key = billListKey("all-bills", participantId, participantRole != null ? participantRole.getValue() : null, "");
+        if (timePeriod == null) {
+            throw new ExternalServiceException("Failed to retrieve bills for participant ID: " + participantId + ", no time period");
         }
-        return this.customerBillListCache.get(key);        
+        if (isUnbounded(timePeriod)) {
+            return this.getOrLoad(customerBillListCache, key,
+                    () -> super.retrieveCustomerBills(participantId, participantRole, timePeriod));
+        }
+        return this.customerBillPeriodCache.getOrLoad(key, timePeriod.getStartDateTime(), timePeriod.getEndDateTime(), TMF_CACHE_ENABLED,
+                (start, end) -> super.retrieveCustomerBills(participantId, participantRole, timePeriod(start, end)));
     }
 
 
     @Override
     public List<CustomerBill> retrieveCustomerBills(String sellerId, String buyerId, TimePeriod timePeriod) throws ExternalServiceException {
-        String key = "all-customer-bills";
-        if(sellerId!=null)
-			key  += sellerId;
-        if(buyerId!=null)
-			key  += buyerId;
-		if(timePeriod!=null)
-			key  += timePeriod.toString();
-        if (!TMF_CACHE_ENABLED || !this.customerBillListCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            List<CustomerBill> bills = super.retrieveCustomerBills(sellerId, buyerId, timePeriod);
-            if (bills != null) {
-                this.customerBillListCache.put(key, bills);
-            } else {
-                logger.warn("CustomerBills not found for {}", key);
-                return null;
-            }
+        return this.retrieveCustomerBills(sellerId, buyerId, timePeriod, TmfProjection.FULL);
+    }
+
+    @Override
+    public List<CustomerBill> retrieveCustomerBills(String sellerId, String buyerId, TimePeriod timePeriod, TmfProjection projection) throws ExternalServiceException {
+        String key = billListKey("all-customer-bills", sellerId, buyerId, projection.getKeySuffix());
+        if (timePeriod == null) {
+            throw new ExternalServiceException("Failed to retrieve bills for seller ID: " + sellerId + ", no time period");
         }
-        return this.customerBillListCache.get(key);
+        if (isUnbounded(timePeriod)) {
+            return this.getOrLoad(customerBillListCache, key,
+                    () -> super.retrieveCustomerBills(sellerId, buyerId, timePeriod, projection));
+        }
+        return this.customerBillPeriodCache.getOrLoad(key, timePeriod.getStartDateTime(), timePeriod.getEndDateTime(), TMF_CACHE_ENABLED,
+                (start, end) -> super.retrieveCustomerBills(sellerId, buyerId, timePeriod(start, end), projection));
+    }
+
+    /*
+     * Key of the bill lists of a party: "<kind>|<party>|<party or role><suffix>", so that the parties can be matched
+     * exactly when a bill changes (see isBillListOf).
+     */
+    static String billListKey(String kind, String party, String other, String suffix) {
+        return kind + "|" + (party != null ? party : "") + "|" + (other != null ? other : "") + suffix;
+    }
+
+    /*
+     * All the bills of a party, including those without a billDate: cached as a whole list, since the period cache
+     * can only rebuild bounded periods from its segments. Evicted with the other bill lists on any bill change.
+     */
+    private static boolean isUnbounded(TimePeriod timePeriod) {
+        return timePeriod.getStartDateTime() == null && timePeriod.getEndDateTime() == null;
+    }
+
+    static boolean isBillListOf(String key, Set<String> partyIds) {
+        String[] segments = key.split("\\|", 4);
+        return segments.length >= 3 && (partyIds.contains(segments[1]) || partyIds.contains(segments[2]));
+    }
+
+    private static TimePeriod timePeriod(OffsetDateTime start, OffsetDateTime end) {
+        TimePeriod tp = new TimePeriod();
+        tp.setStartDateTime(start);
+        tp.setEndDateTime(end);
+        return tp;
     }
 
     @Override
     public BillingAccountRef retrieveBillingAccountByProductId(String productId) throws BadTmfDataException, ExternalServiceException {
         String key = productId;
-        if (!TMF_CACHE_ENABLED || !this.billingAccountCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            BillingAccountRef billingAccountRef = super.retrieveBillingAccountByProductId(productId);
-            if (billingAccountRef != null) {
-                this.billingAccountCache.put(key, billingAccountRef);
-            } else {
-                logger.warn("BillingAccountRef not found for productId {}", productId);
-                return null;
-            }
+        BillingAccountRef billingAccountRef = this.billingAccountCache.getOrLoad(key, TMF_CACHE_ENABLED,
+                () -> super.retrieveBillingAccountByProductId(productId));
+        if (billingAccountRef == null) {
+            logger.warn("BillingAccountRef not found for productId {}", productId);
         }
-        return this.billingAccountCache.get(key);
+        return billingAccountRef;
     }
 
     @Override
     public List<AppliedCustomerBillingRate> getACBRsByCustomerBillId(String customerBillId) throws BadTmfDataException, ExternalServiceException {
         String key = customerBillId;
-        if (!TMF_CACHE_ENABLED || !this.acbrCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            List<AppliedCustomerBillingRate> acbrs = super.getACBRsByCustomerBillId(customerBillId);
-            if (acbrs != null) {
-                this.acbrCache.put(key, acbrs);
-            } else {
-                logger.warn("AppliedCustomerBillingRates not found for customerBillId {}", customerBillId);
-                return null;
-            }
+        List<AppliedCustomerBillingRate> acbrs = this.acbrCache.getOrLoad(key, TMF_CACHE_ENABLED,
+                () -> super.getACBRsByCustomerBillId(customerBillId));
+        if (acbrs == null) {
+            logger.warn("AppliedCustomerBillingRates not found for customerBillId {}", customerBillId);
         }
-        return this.acbrCache.get(key);
+        return acbrs;
     }
 
     @Override
     public CustomerBill getCustomerBill(String customerBillId) throws BadTmfDataException, ExternalServiceException {
         String key = customerBillId;
-        if (!TMF_CACHE_ENABLED || !this.customerBillCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            CustomerBill cb = super.getCustomerBill(customerBillId);
-            if (cb != null) {
-                this.customerBillCache.put(key, cb);
-            } else {
-                logger.warn("CustomerBill not found for id {}", customerBillId);
-                return null;
-            }
+        CustomerBill cb = this.customerBillCache.getOrLoad(key, TMF_CACHE_ENABLED,
+                () -> super.getCustomerBill(customerBillId));
+        if (cb == null) {
+            logger.warn("CustomerBill not found for id {}", customerBillId);
         }
-        return this.customerBillCache.get(key);
+        return cb;
     }
 
     @Override
@@ -278,9 +376,7 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
         keyBuilder.append("|batch=").append(batchSize);
         String key = keyBuilder.toString();
 
-        if (!TMF_CACHE_ENABLED || !customerBillListCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-
+        List<CustomerBill> cachedList = this.getOrLoad(customerBillListCache, key, () -> {
             List<CustomerBill> localList = new ArrayList<>();
             Consumer<CustomerBill> localConsumer = localList::add;
 
@@ -290,13 +386,9 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
                 logger.error("Failed to fetch CustomerBills by batch", e);
                 throw new ExternalServiceException("Failed to fetch CustomerBills by batch", e);
             }
+            return localList;
+        });
 
-            customerBillListCache.put(key, localList);
-        } else {
-            logger.debug("Cache HIT for {}", key);
-        }
-
-        List<CustomerBill> cachedList = customerBillListCache.get(key);
         if (cachedList != null) {
             cachedList.forEach(consumer);
         } else {
@@ -329,17 +421,12 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
     public Product getProduct(String productId, String fields) throws BadTmfDataException, ExternalServiceException {
         String key = productId;
         // CHECKME: why fields not in the key?
-        if (!TMF_CACHE_ENABLED || !this.productCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            Product prod = super.getProduct(productId, fields);
-            if (prod != null) {
-                this.productCache.put(key, prod);
-            } else {
-                logger.warn("Product not found for id {}", productId);
-                return null;
-            }
+        Product prod = this.productCache.getOrLoad(key, TMF_CACHE_ENABLED,
+                () -> super.getProduct(productId, fields));
+        if (prod == null) {
+            logger.warn("Product not found for id {}", productId);
         }
-        return this.productCache.get(key);
+        return prod;
     }
 
     @Override
@@ -348,9 +435,7 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
 
         String key = "active-products|batch=" + batchSize;
 
-        if (!TMF_CACHE_ENABLED || !productListCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-
+        List<Product> cachedList = this.getOrLoad(productListCache, key, () -> {
             List<Product> localList = new ArrayList<>();
             Consumer<Product> localConsumer = localList::add;
             try {
@@ -359,12 +444,9 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
                 logger.error("Failed to fetch active products from TMF", e);
                 throw new ExternalServiceException("Failed to fetch active products from TMF", e);
             }
-            productListCache.put(key, localList);
-        } else {
-            logger.debug("Cache HIT for {}", key);
-        }
+            return localList;
+        });
 
-        List<Product> cachedList = productListCache.get(key);
         if (cachedList != null) {
             cachedList.forEach(consumer);
         } else {
@@ -430,17 +512,12 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
     public ProductOffering getProductOffering(String poId, String fields) throws BadTmfDataException, ExternalServiceException {
         String key = poId;
         // CHECKME: why fields not in the key?
-        if (!TMF_CACHE_ENABLED || !this.productOfferingCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            ProductOffering po = super.getProductOffering(poId, fields);
-            if (po != null) {
-                this.productOfferingCache.put(key, po);
-            } else {
-                logger.warn("ProductOffering not found for id {}", poId);
-                return null;
-            }
+        ProductOffering po = this.productOfferingCache.getOrLoad(key, TMF_CACHE_ENABLED,
+                () -> super.getProductOffering(poId, fields));
+        if (po == null) {
+            logger.warn("ProductOffering not found for id {}", poId);
         }
-        return this.productOfferingCache.get(key);
+        return po;
     }
 
     @Override
@@ -454,9 +531,7 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
         }
         String key = keyBuilder.toString();
 
-        if (!TMF_CACHE_ENABLED || !productOfferingListCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-
+        List<ProductOffering> cachedList = this.getOrLoad(productOfferingListCache, key, () -> {
             List<ProductOffering> localList = new ArrayList<>();
             Consumer<ProductOffering> localConsumer = localList::add;
 
@@ -465,13 +540,9 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
             } catch (Exception e) {
                 throw new ExternalServiceException("Failed to fetch ProductOfferings by batch", e);
             }
+            return localList;
+        });
 
-            productOfferingListCache.put(key, localList);
-        } else {
-            logger.debug("Cache HIT for {}", key);
-        }
-
-        List<ProductOffering> cachedList = productOfferingListCache.get(key);
         if (cachedList != null) {
             cachedList.forEach(consumer);
         } else {
@@ -502,48 +573,56 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
     @Override
     public ProductOfferingPrice getProductOfferingPrice(String popId, String fields) throws BadTmfDataException, ExternalServiceException {
         String key = popId;
-        if (!TMF_CACHE_ENABLED || !this.productOfferingPriceCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            ProductOfferingPrice pop = super.getProductOfferingPrice(popId, fields);
-            if (pop != null) {
-                this.productOfferingPriceCache.put(key, pop);
-            } else {
-                logger.warn("ProductOfferingPrice not found for id {}", popId);
-                return null;
-            }
+        ProductOfferingPrice pop = this.productOfferingPriceCache.getOrLoad(key, TMF_CACHE_ENABLED,
+                () -> super.getProductOfferingPrice(popId, fields));
+        if (pop == null) {
+            logger.warn("ProductOfferingPrice not found for id {}", popId);
         }
-        return this.productOfferingPriceCache.get(key);
+        return pop;
     }
 
     @Override
     public Organization getOrganization(String organizationId) throws BadTmfDataException, ExternalServiceException{
         String key = organizationId;
-        if (!TMF_CACHE_ENABLED || !this.organizationCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            Organization org = super.getOrganization(organizationId);
-            if (org != null) {
-                this.organizationCache.put(key, org);
-            } else {
-                logger.warn("Organization not found for id {}", organizationId);
-                return null;
-            }
+        Organization org = this.organizationCache.getOrLoad(key, TMF_CACHE_ENABLED,
+                () -> super.getOrganization(organizationId));
+        if (org == null) {
+            logger.warn("Organization not found for id {}", organizationId);
         }
-        return this.organizationCache.get(key);
+        return org;
     }
 
     @Override
     public List<Organization> getOrganizations() throws ExternalServiceException {
         String key = "all-organizations";
-        if (!TMF_CACHE_ENABLED || !this.organizationsCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            List<Organization> orgs = super.getOrganizations();
-            if (orgs != null) {
-                this.organizationsCache.put(key, orgs);
-            } else {
-                return null;
-            }
+        return this.getOrLoad(this.organizationsCache, key, () -> super.getOrganizations());
+    }
+
+    @Override
+    public List<Organization> getOrganizations(Collection<String> organizationIds) throws ExternalServiceException {
+        return this.getOrganizations(organizationIds, TmfProjection.FULL);
+    }
+
+    @Override
+    public List<Organization> getOrganizations(Collection<String> organizationIds, TmfProjection projection) throws ExternalServiceException {
+        // projected organizations are cached apart from the full ones, keyed by id and projection
+        String suffix = projection.getKeySuffix();
+        Set<String> keys = new LinkedHashSet<>();
+        for (String id : organizationIds) {
+            keys.add(id + suffix);
         }
-        return this.organizationsCache.get(key);
+        Map<String, Organization> orgs = this.getAllOrLoad(this.organizationCache, keys, missing -> {
+            List<String> ids = new ArrayList<>();
+            for (String key : missing) {
+                ids.add(key.substring(0, key.length() - suffix.length()));
+            }
+            Map<String, Organization> loaded = new HashMap<>();
+            for (Organization org : super.getOrganizations(ids, projection)) {
+                loaded.put(org.getId() + suffix, org);
+            }
+            return loaded;
+        });
+        return new ArrayList<>(orgs.values());
     }
 
     @Override
@@ -552,16 +631,8 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
         key += federatedMarketplaceId;
 		if(timePeriod!=null)
 			key  += timePeriod.toString();
-        if (!TMF_CACHE_ENABLED || !this.organizationsCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            List<Organization> orgs = super.listActiveSellersBehindFederatedMarketplace(federatedMarketplaceId, timePeriod);
-            if (orgs != null) {
-                this.organizationsCache.put(key, orgs);
-            } else {
-                return null;
-            }
-        }
-        return this.organizationsCache.get(key);
+        return this.organizationsCache.getOrLoad(key, TMF_CACHE_ENABLED,
+                () -> super.listActiveSellersBehindFederatedMarketplace(federatedMarketplaceId, timePeriod));
     }
 
     @Override
@@ -570,18 +641,97 @@ public class TmfCachedDataRetriever extends TmfDataRetriever {
         key += federatedMarketplaceId;
 		if(timePeriod!=null)
 			key  += timePeriod.toString();
-        if (!TMF_CACHE_ENABLED || !this.organizationsCache.containsKey(key)) {
-            logger.debug("Cache MISS for {}", key);
-            List<Organization> orgs = super.listBilledSellersBehindMarketplace(federatedMarketplaceId, timePeriod);
-            if (orgs != null) {
-                this.organizationsCache.put(key, orgs);
-            } else {
-                return null;
-            }
-        }
-        return this.organizationsCache.get(key);
+        return this.organizationsCache.getOrLoad(key, TMF_CACHE_ENABLED,
+                () -> super.listBilledSellersBehindMarketplace(federatedMarketplaceId, timePeriod));
     }    
 
+    // ======== INVALIDATION ========
+
+    /**
+     * Evicts the cached data affected by a change of a customer bill: the bill, its ACBRs,
+     * the bill lists of its related parties and the bill lists by filter.
+     * The related parties of the cached bill, if any, are evicted too.
+     *
+     * @param customerBillId the id of the bill
+     * @param partyIds       the ids of the related parties of the bill, as notified
+     * @param partiesKnown   false if the parties the bill had before the change may be unknown: then, unless the
+     *                       bill is cached, all the bill lists are evicted
+     * @return the ids of the parties whose bill lists were evicted, including those of the cached bill
+     */
+    public Set<String> evictCustomerBill(String customerBillId, Collection<String> partyIds, boolean partiesKnown) {
+        Set<String> parties = new LinkedHashSet<>(partyIds);
+        CustomerBill cached = this.customerBillCache.getCache().get(customerBillId);
+        if (cached != null && cached.getRelatedParty() != null) {
+            cached.getRelatedParty().stream()
+                    .filter(rp -> rp != null && rp.getId() != null)
+                    .forEach(rp -> parties.add(rp.getId()));
+        }
+        boolean all = parties.isEmpty() || (!partiesKnown && cached == null);
+
+        this.customerBillCache.invalidate(customerBillId);
+        this.acbrCache.invalidate(customerBillId);
+        this.customerBillListCache.invalidateAll();
+        if (all) {
+            this.customerBillPeriodCache.invalidateAll();
+            logger.debug("Evicted CustomerBill {} and all the bill lists", customerBillId);
+        } else {
+            int evicted = this.customerBillPeriodCache.invalidateIf(key -> isBillListOf(key, parties));
+            logger.debug("Evicted CustomerBill {} and {} bill lists of its parties", customerBillId, evicted);
+        }
+        return parties;
+    }
+
+    /**
+     * Evicts the cached data affected by a change of a product: the product, its billing account and the product lists.
+     */
+    public void evictProduct(String productId) {
+        this.productCache.invalidate(productId);
+        this.billingAccountCache.invalidate(productId);
+        this.productListCache.invalidateAll();
+        logger.debug("Evicted Product {}", productId);
+    }
+
+    /**
+     * Evicts the cached data affected by a change of an organization: the organization (full or projected)
+     * and the organization lists.
+     */
+    public void evictOrganization(String organizationId) {
+        this.organizationCache.invalidateIf(key -> key.equals(organizationId) || key.startsWith(organizationId + "|"));
+        this.organizationsCache.invalidateAll();
+        logger.debug("Evicted Organization {}", organizationId);
+    }
+
+    /**
+     * Evicts the cached data affected by a change of a product offering: the offering and the offering lists.
+     */
+    public void evictProductOffering(String productOfferingId) {
+        this.productOfferingCache.invalidate(productOfferingId);
+        this.productOfferingListCache.invalidateAll();
+        logger.debug("Evicted ProductOffering {}", productOfferingId);
+    }
+
+    /**
+     * Get-or-load for the methods that can only fail with an {@link ExternalServiceException}.
+     */
+    private <V> V getOrLoad(CoalescingCache<String, V> cache, String key, CoalescingCache.Loader<V> loader) throws ExternalServiceException {
+        try {
+            return cache.getOrLoad(key, TMF_CACHE_ENABLED, loader);
+        } catch (BadTmfDataException e) {
+            throw new ExternalServiceException("Failed to load " + key + " in cache " + cache.getName(), e);
+        }
+    }
+
+    /**
+     * Bulk get-or-load for the methods that can only fail with an {@link ExternalServiceException}.
+     */
+    private <V> Map<String, V> getAllOrLoad(CoalescingCache<String, V> cache, Set<String> keys, CoalescingCache.BulkLoader<String, V> loader) throws ExternalServiceException {
+        try {
+            return cache.getAllOrLoad(keys, TMF_CACHE_ENABLED, loader);
+        } catch (BadTmfDataException e) {
+            throw new ExternalServiceException("Failed to load " + keys.size() + " keys in cache " + cache.getName(), e);
+        }
+    }
+
     /*
     public Organization getReferrerProvider(String referralOrganizationId) throws Exception {
         String key = referralOrganizationId;
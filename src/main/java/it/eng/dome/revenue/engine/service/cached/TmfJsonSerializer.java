@@ -0,0 +1,117 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.SerializerException;
+
+/**
+ * Ehcache serializer of TMF models, based on the JSON methods generated in the TMF SDK
+ * ({@code toJson()} and the static {@code fromJson(String)}).
+ * It is required to store TMF values in the off-heap and disk tiers.
+ * <p>
+ * Lists are serialized as the number of items followed by each item, length-prefixed.
+ * </p>
+ *
+ * @param <T> the type of the serialized value
+ */
+public class TmfJsonSerializer<T> implements Serializer<T> {
+
+    @FunctionalInterface
+    public interface ToJson<T> {
+        String toJson(T value);
+    }
+
+    @FunctionalInterface
+    public interface FromJson<T> {
+        T fromJson(String json) throws Exception;
+    }
+
+    private final ToJson<T> toJson;
+    private final FromJson<T> fromJson;
+
+    public TmfJsonSerializer(ToJson<T> toJson, FromJson<T> fromJson) {
+        this.toJson = toJson;
+        this.fromJson = fromJson;
+    }
+
+    /**
+     * Returns a serializer of lists of TMF models.
+     *
+     * @param toJson   the toJson method of the item class
+     * @param fromJson the fromJson method of the item class
+     * @param <E>      the type of the list items
+     * @return the list serializer
+     */
+    public static <E> Serializer<List<E>> listOf(ToJson<E> toJson, FromJson<E> fromJson) {
+        return new Serializer<>() {
+
+            @Override
+            public ByteBuffer serialize(List<E> list) throws SerializerException {
+                List<byte[]> items = new ArrayList<>(list.size());
+                int size = Integer.BYTES;
+                for (E item : list) {
+                    byte[] bytes = encode(toJson, item);
+                    items.add(bytes);
+                    size += Integer.BYTES + bytes.length;
+                }
+                ByteBuffer buffer = ByteBuffer.allocate(size);
+                buffer.putInt(items.size());
+                for (byte[] bytes : items) {
+                    buffer.putInt(bytes.length);
+                    buffer.put(bytes);
+                }
+                return buffer.flip();
+            }
+
+            @Override
+            public List<E> read(ByteBuffer binary) throws SerializerException {
+                int count = binary.getInt();
+                List<E> list = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    byte[] bytes = new byte[binary.getInt()];
+                    binary.get(bytes);
+                    list.add(decode(fromJson, bytes));
+                }
+                return list;
+            }
+
+            @Override
+            public boolean equals(List<E> list, ByteBuffer binary) throws SerializerException {
+                return list.equals(this.read(binary));
+            }
+        };
+    }
+
+    @Override
+    public ByteBuffer serialize(T value) throws SerializerException {
+        return ByteBuffer.wrap(encode(toJson, value));
+    }
+
+    @Override
+    public T read(ByteBuffer binary) throws SerializerException {
+        byte[] bytes = new byte[binary.remaining()];
+        binary.get(bytes);
+        return decode(fromJson, bytes);
+    }
+
+    @Override
+    public boolean equals(T value, ByteBuffer binary) throws SerializerException {
+        return value.equals(this.read(binary));
+    }
+
+    private static <T> byte[] encode(ToJson<T> toJson, T value) {
+        return toJson.toJson(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static <T> T decode(FromJson<T> fromJson, byte[] bytes) {
+        try {
+            return fromJson.fromJson(new String(bytes, StandardCharsets.UTF_8));
+        } catch (Exception e) {
+            throw new SerializerException("Unable to deserialize TMF cache entry", e);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.stereotype.Component;
+
+/**
+ * The {@code warmup} health contributor, part of the readiness group: WARMING (HTTP 503) while the caches
+ * are warming up, so that no traffic is routed to the instance until its caches are loaded.
+ */
+@Component
+public class WarmupHealthIndicator implements HealthIndicator {
+
+    public static final Status WARMING = new Status("WARMING", "Caches warming up");
+
+    @Autowired
+    private CacheWarmupService warmupService;
+
+    @Override
+    public Health health() {
+        Health.Builder builder = warmupService.isWarm() ? Health.up() : Health.status(WARMING);
+        return builder.withDetail("state", warmupService.getState()).build();
+    }
+}
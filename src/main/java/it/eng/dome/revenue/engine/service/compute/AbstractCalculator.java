@@ -9,9 +9,6 @@ import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.expression.Expression;
-import org.springframework.expression.ExpressionParser;
-import org.springframework.expression.spel.standard.SpelExpressionParser;
 
 import it.eng.dome.revenue.engine.exception.BadTmfDataException;
 import it.eng.dome.revenue.engine.exception.ExternalServiceException;
@@ -22,7 +19,6 @@ import it.eng.dome.revenue.engine.model.Range;
 import it.eng.dome.revenue.engine.model.RevenueItem;
 import it.eng.dome.revenue.engine.model.Subscription;
 import it.eng.dome.revenue.engine.model.SubscriptionTimeHelper;
-import it.eng.dome.revenue.engine.service.MetricsRetriever;
 import it.eng.dome.revenue.engine.service.TmfDataRetriever;
 import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
 
@@ -32,7 +28,11 @@ public abstract class AbstractCalculator implements Calculator {
 
 	protected PlanItem item;
 
-	MetricsRetriever metricsRetriever;
+	// the compiled node of the item, shared by all the computations of the plan
+	protected PlanGraph.Node node;
+
+	// the metric values of the whole computation, shared with the other calculators
+	MetricsMemo metrics;
 
 	TmfDataRetriever tmfDataRetriever;
 
@@ -40,14 +40,19 @@ public abstract class AbstractCalculator implements Calculator {
 
 	private Map<String, String> calculatorContext;
 
-	public AbstractCalculator(Subscription subscription, PlanItem item) {
+	public AbstractCalculator(Subscription subscription, PlanGraph.Node node) {
         this.subscription = subscription;
-        this.item = item;
+        this.node = node;
+        this.item = node.getItem();
 		this.calculatorContext = new HashMap<>();
     }
 
-	public void setMetricsRetriever(MetricsRetriever mr) {
-		this.metricsRetriever = mr;
+	public void setMetricsMemo(MetricsMemo metrics) {
+		this.metrics = metrics;
+	}
+
+	public MetricsMemo getMetricsMemo() {
+		return this.metrics;
 	}
 
 	public void setTmfDataRetriever(TmfDataRetriever tdr) {
@@ -64,7 +69,7 @@ public abstract class AbstractCalculator implements Calculator {
 		logger.debug("preconditions OK");
 
 		logger.debug("checking computability...");
-		if(!this.checkComputability(/*timePeriod*/)) {
+		if(!this.node.isComputable()) {
 			return null;
 		}
 		logger.debug("computability OK");
@@ -90,7 +95,7 @@ public abstract class AbstractCalculator implements Calculator {
 
 //		if(this.item instanceof Price) {
 			// TODO: if this works here, remove the setting done in atomic calculators
-			outRevenueItem.setChargeTime(new SubscriptionTimeHelper(this.getSubscription()).getChargeTime(timePeriod, this.item.getReferencePrice()));
+			outRevenueItem.setChargeTime(new SubscriptionTimeHelper(this.getSubscription()).getChargeTime(timePeriod, this.node.getReferencePrice()));
 //		}
 
 		// zero the item, if needed
@@ -216,14 +221,9 @@ public abstract class AbstractCalculator implements Calculator {
 		logger.debug("This item '{}' period matches the statements period {}.", this.item.getName(), timePeriod);
 
 
-		if(item.getIgnore()!=null && !item.getIgnore().trim().isEmpty()) {
-			ExpressionParser parser = new SpelExpressionParser();
-			Expression exp = parser.parseExpression(this.item.getIgnore());  
-			boolean b = (Boolean) exp.getValue();
-			if(b) {
-		        logger.info("Ignoring price/discount {} based on ignore flag {}", this.item.getName(), this.item.getIgnore());
-				return false;
-			}
+		if(this.node.isIgnored()) {
+	        logger.info("Ignoring price/discount {} based on ignore flag {}", this.item.getName(), this.item.getIgnore());
+			return false;
 		}
 
 		// check the item is not to ignore
@@ -277,7 +277,7 @@ public abstract class AbstractCalculator implements Calculator {
 		// now also check the 'validPeriod' property. Resolve it and check if the period is affected.
 		// FIXME: same considerations as above
 		if(this.item.getValidPeriod()!=null) {
-		    TimePeriod validPeriod = sth.getCustomPeriod(null, this.item.getReferencePrice(), this.item.getValidPeriod().getValue());
+		    TimePeriod validPeriod = sth.getCustomPeriod(null, this.node.getReferencePrice(), this.item.getValidPeriod().getValue());
 			if(validPeriod!=null) {
 				logger.debug("For this price/discount, only considering the period {} - {}", validPeriod.getStartDateTime(), validPeriod.getEndDateTime());
 //				if(validPeriod.getEndDateTime().isBefore(timePeriod.getStartDateTime())) {
@@ -393,49 +393,6 @@ public abstract class AbstractCalculator implements Calculator {
 
 	}
 
-    /**
-     * Make sure that properties for computation are correctly set and are available
-     * @param tp
-     * @return
-     */
-    private boolean checkComputability(/*TimePeriod timePeriod*/) {
-
-		if(this.item.getIsBundle())
-			return true;
-
-		int count =  0;
-		count += (this.item.getPercent()!=null ? 1 : 0);
-		count += (this.item.getAmount()!=null ? 1 : 0);
-		count += (this.item.getUnitAmount()!=null ? 1 : 0);
-		// for atomic items, make sure an amount or a percent are set
-		if(count==0) {
-			logger.warn("Neither percent nor amount, nor unitAmount defined!");
-			return false;
-		}
-		// make sure exactly one of (amount, percent, unitAmount) is set
-		if(count>1) {
-			logger.warn("More than one property among (percent, amount, unitAmount) are set");
-			return false;
-		}
-
-		// make sure a computationBase is set if a percent or unitAmount are used
-		if ((this.item.getPercent()!=null || this.item.getUnitAmount()!=null) && (this.item.getComputationMetric() == null || this.item.getComputationMetric().isEmpty())) {
-			logger.warn("A percent is set, but no computation base defined!");
-			return false;
-		}
-
-		// also a reference period for the computation base is needed
-		if ((this.item.getPercent()!=null || this.item.getUnitAmount()!=null) && !"parent-price".equals(this.item.getComputationMetric()) && (
-				this.item.getComputationMeticReferencePeriod() == null 
-				|| this.item.getComputationMeticReferencePeriod().getValue() == null
-				|| this.item.getComputationMeticReferencePeriod().getValue().isEmpty())) {
-			logger.warn("A percent or unitAmount are set, but no computation base reference period is defined!");
-			return false;
-		}
-
-		return true;
-	}
-
     private TimePeriod getChargeTimePeriod(OffsetDateTime time) {
 
 		if (this.item == null) {
@@ -446,7 +403,7 @@ public abstract class AbstractCalculator implements Calculator {
 		SubscriptionTimeHelper sth = new SubscriptionTimeHelper(this.getSubscription());
 		TimePeriod tp = null;
 
-		Price referencePrice = this.item.getReferencePrice();
+		Price referencePrice = this.node.getReferencePrice();
 		logger.debug("referencePrice is {}", referencePrice.getName());
 		logger.debug("referencePrice.type is {}", referencePrice.getType());
 		if (referencePrice.getType() != null) {
@@ -496,7 +453,7 @@ public abstract class AbstractCalculator implements Calculator {
 			return null;
 		}
 		SubscriptionTimeHelper helper = new SubscriptionTimeHelper(this.getSubscription());
-		TimePeriod computationPeriod = helper.getCustomPeriod(time, this.item.getReferencePrice(), computationPeriodKeyword);
+		TimePeriod computationPeriod = helper.getCustomPeriod(time, this.node.getReferencePrice(), computationPeriodKeyword);
 		return computationPeriod;
 	}
 
@@ -510,7 +467,7 @@ public abstract class AbstractCalculator implements Calculator {
 			return null;
 		}
 		SubscriptionTimeHelper helper = new SubscriptionTimeHelper(this.getSubscription());
-		TimePeriod activatingPeriod = helper.getCustomPeriod(time, this.item.getReferencePrice(), activatingPeriodKeyword);
+		TimePeriod activatingPeriod = helper.getCustomPeriod(time, this.node.getReferencePrice(), activatingPeriodKeyword);
 		return activatingPeriod;
 	}
 
@@ -590,7 +547,7 @@ public abstract class AbstractCalculator implements Calculator {
 		TimePeriod applicabilityTimePeriod = this.getActivatingMetricReferencePeriod(tp.getStartDateTime());
 
 		if(applicabilityTimePeriod!=null) {
-			Double activatingMetricValue = this.metricsRetriever.computeValueForKey(this.item.getActivatingMetric(), subscriberId, null, applicabilityTimePeriod);
+			Double activatingMetricValue = this.metrics.computeValueForKey(this.item.getActivatingMetric(), subscriberId, null, applicabilityTimePeriod);
 			return activatingMetricValue;
 		} else {
 			logger.debug("There's no applicableTimePeriod for {}. No applicableValue can be computed", this.item.getName());
@@ -626,7 +583,7 @@ public abstract class AbstractCalculator implements Calculator {
             }
             logger.debug("Using custom period for {}: {} - {}, based on reference: {}", this.item.getComputationMeticReferencePeriod(), computationPeriod.getStartDateTime(), computationPeriod.getEndDateTime());
 			String buyerId = this.getCalculatorContext().get("buyerId");
-            Double computationBase = this.metricsRetriever.computeValueForKey(this.item.getComputationMetric(), sellerId, buyerId, computationPeriod);
+            Double computationBase = this.metrics.computeValueForKey(this.item.getComputationMetric(), sellerId, buyerId, computationPeriod);
             if(computationBase==null) {
                 logger.debug("Computation value is null");
                 return null;
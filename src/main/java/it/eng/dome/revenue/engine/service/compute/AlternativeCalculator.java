@@ -1,12 +1,10 @@
 package it.eng.dome.revenue.engine.service.compute;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import it.eng.dome.revenue.engine.exception.BadTmfDataException;
 import it.eng.dome.revenue.engine.exception.ExternalServiceException;
-import it.eng.dome.revenue.engine.model.PlanItem;
 import it.eng.dome.revenue.engine.model.Price;
 import it.eng.dome.revenue.engine.model.RevenueItem;
 import it.eng.dome.revenue.engine.model.Subscription;
@@ -16,13 +14,12 @@ public class AlternativeCalculator extends AbstractCalculator {
 
     private boolean higher;
 
-    public AlternativeCalculator(Subscription sub, PlanItem bundle, Boolean higher) {
+    public AlternativeCalculator(Subscription sub, PlanGraph.Node bundle, Boolean higher) {
         super(sub, bundle);
         this.higher = higher;        
     }
 
     public RevenueItem doCompute(TimePeriod timePeriod, Map<String, Double> computeContext) throws BadTmfDataException, ExternalServiceException {
-		List<PlanItem> childItems = this.item.getBundleItems();
 		RevenueItem selectedItem = null;
 
 		// compute the computationbase, so that the context contains it
@@ -31,7 +28,7 @@ public class AlternativeCalculator extends AbstractCalculator {
             sellerId = this.getCalculatorContext().get("sellerId");
 		this.getComputationBase(sellerId, timePeriod, computeContext);
 
-		for (PlanItem item : childItems) {
+		for (PlanGraph.Node item : this.node.getBundleItems()) {
 			Calculator childCalc = CalculatorFactory.getCalculatorFor(this.getSubscription(), item, this);
 			RevenueItem current = childCalc.compute(timePeriod, computeContext);
 			if (current == null)
@@ -52,11 +49,10 @@ public class AlternativeCalculator extends AbstractCalculator {
 		// FIXME: what if the alternative bundle is a price? It might also have a Discount which needs to be included
 		// Quick and dirty workaround below
 		if(this.item instanceof Price) {
-			Price p = (Price)this.item;
-			if(p.getDiscount()!=null) {
+			if(this.node.getDiscount()!=null) {
 				Map<String, Double> discountContext = new HashMap<>();
 				discountContext.put("parent-price", selectedItem.getOverallValue());
-				Calculator discountCalculator = CalculatorFactory.getCalculatorFor(this.getSubscription(), p.getDiscount(), this);
+				Calculator discountCalculator = CalculatorFactory.getCalculatorFor(this.getSubscription(), this.node.getDiscount(), this);
 				RevenueItem discountRevenueItem = discountCalculator.compute(timePeriod, discountContext);
 				if(discountRevenueItem!=null) {
 					wrapper.addRevenueItem(discountRevenueItem);
@@ -7,7 +7,6 @@ import org.slf4j.LoggerFactory;
 
 import it.eng.dome.revenue.engine.exception.BadTmfDataException;
 import it.eng.dome.revenue.engine.exception.ExternalServiceException;
-import it.eng.dome.revenue.engine.model.Discount;
 import it.eng.dome.revenue.engine.model.RevenueItem;
 import it.eng.dome.revenue.engine.model.Subscription;
 import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
@@ -16,7 +15,7 @@ public class AtomicDiscountCalculator extends AbstractCalculator {
 
 	private static final Logger logger = LoggerFactory.getLogger(AtomicDiscountCalculator.class);
 
-    public AtomicDiscountCalculator(Subscription sub, Discount discount) {
+    public AtomicDiscountCalculator(Subscription sub, PlanGraph.Node discount) {
         super(sub, discount);
     }
 
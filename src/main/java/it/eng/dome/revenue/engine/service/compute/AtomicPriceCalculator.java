@@ -8,7 +8,6 @@ import org.slf4j.LoggerFactory;
 
 import it.eng.dome.revenue.engine.exception.BadTmfDataException;
 import it.eng.dome.revenue.engine.exception.ExternalServiceException;
-import it.eng.dome.revenue.engine.model.Price;
 import it.eng.dome.revenue.engine.model.RevenueItem;
 import it.eng.dome.revenue.engine.model.Subscription;
 import it.eng.dome.revenue.engine.model.SubscriptionTimeHelper;
@@ -18,7 +17,7 @@ public class AtomicPriceCalculator extends AbstractCalculator {
 
 	private static final Logger logger = LoggerFactory.getLogger(AtomicPriceCalculator.class);
 
-    public AtomicPriceCalculator(Subscription sub, Price price) {
+    public AtomicPriceCalculator(Subscription sub, PlanGraph.Node price) {
         super(sub, price);
     }
 
@@ -39,7 +38,7 @@ public class AtomicPriceCalculator extends AbstractCalculator {
 		context4discount.put("parent-price", outRevenueItem.getOverallValue());
 
 		// then, add discount if any
-		if (((Price)this.item).getDiscount() != null) {
+		if (this.node.getDiscount() != null) {
 			RevenueItem discountItem = this.computeDiscountRevenueItem(timePeriod, context4discount);
 			if(discountItem!=null) {
 				outRevenueItem.addRevenueItem(discountItem);
@@ -56,7 +55,7 @@ public class AtomicPriceCalculator extends AbstractCalculator {
 	 * @return List of RevenueItems representing discounts
 	 */
 	private RevenueItem computeDiscountRevenueItem(TimePeriod timePeriod, Map<String, Double> computationContext) throws BadTmfDataException, ExternalServiceException {
-		Calculator dc = CalculatorFactory.getCalculatorFor(this.getSubscription(), ((Price)this.item).getDiscount(), this);
+		Calculator dc = CalculatorFactory.getCalculatorFor(this.getSubscription(), this.node.getDiscount(), this);
         return dc.compute(timePeriod, computationContext); //discountItem
 	}
 
@@ -78,7 +77,7 @@ public class AtomicPriceCalculator extends AbstractCalculator {
 		}
 
 		RevenueItem outItem = new RevenueItem(this.item.getName(), priceValue, "EUR");
-		outItem.setChargeTime(new SubscriptionTimeHelper(this.getSubscription()).getChargeTime(timePeriod, this.item.getReferencePrice()));
+		outItem.setChargeTime(new SubscriptionTimeHelper(this.getSubscription()).getChargeTime(timePeriod, this.node.getReferencePrice()));
 		if(this.item.getType()!=null)
 			outItem.setType(this.item.getType().toString());
 
@@ -22,6 +22,7 @@ public class CalculatorFactory implements InitializingBean{
 
     private static MetricsRetriever staticMR;
     private static TmfCachedDataRetriever staticTDR;
+    private static ForEachExecutor staticFEE;
 
     @Autowired
     private MetricsRetriever mr;
@@ -29,56 +30,71 @@ public class CalculatorFactory implements InitializingBean{
     @Autowired
     private TmfCachedDataRetriever tdr;
 
-    public static Calculator getCalculatorFor(Subscription subscription, PlanItem item, Calculator parentCalculator) {
+    @Autowired
+    private ForEachExecutor fee;
+
+    public static Calculator getCalculatorFor(Subscription subscription, PlanGraph.Node node, Calculator parentCalculator) {
         logger.debug("*************** Calculator FACTORY **************");
         Calculator c;
-        if(item.getIsBundle()) {
-            c = getBundleCalculatorFor(subscription, item);
+        if(node.getItem().getIsBundle()) {
+            c = getBundleCalculatorFor(subscription, node);
         } else {
-            c = getAtomicCalculatorFor(subscription, item);
+            c = getAtomicCalculatorFor(subscription, node);
         }
         if(c!=null) {
-            c.setMetricsRetriever(CalculatorFactory.staticMR);
             c.setTmfDataRetriever(CalculatorFactory.staticTDR);
             if(parentCalculator!=null) {
+                c.setMetricsMemo(parentCalculator.getMetricsMemo());
                 c.setCalculatorContext(new HashMap<>(parentCalculator.getCalculatorContext()));
             } else {
+                c.setMetricsMemo(newMetricsMemo());
                 c.setCalculatorContext(new HashMap<>());
             }
         }
         return c;
     }
 
-    private static Calculator getBundleCalculatorFor(Subscription subscription, PlanItem item) {
+    /**
+     * A new (empty) memo of metric values, to share among the calculators of a computation.
+     */
+    public static MetricsMemo newMetricsMemo() {
+        return new MetricsMemo(CalculatorFactory.staticMR);
+    }
+
+    private static Calculator getBundleCalculatorFor(Subscription subscription, PlanGraph.Node node) {
+        PlanItem item = node.getItem();
         if(item==null || !item.getIsBundle() || item.getBundleOp()==null)
             return null;
         switch(item.getBundleOp()) {
     		case CUMULATIVE:
                 logger.debug("creating CUMULATIVE calculator for {}", item.getName());
-                return new CumulativeCalculator(subscription, item);
+                return new CumulativeCalculator(subscription, node);
             case ALTERNATIVE_HIGHER:
                 logger.debug("creating ALTERNATIVE_HIGHER calculator for {}", item.getName());
-                return new AlternativeCalculator(subscription, item, item instanceof Price);
+                return new AlternativeCalculator(subscription, node, item instanceof Price);
             case ALTERNATIVE_LOWER:
                 logger.debug("creating ALTERNATIVE_LOWER calculator for {}", item.getName());
-                return new AlternativeCalculator(subscription, item, !(item instanceof Price));
+                return new AlternativeCalculator(subscription, node, !(item instanceof Price));
             case FOREACH:
                 logger.debug("creating FOREACH calculator for {}", item.getName());
-                return  new ForEachCalculator(subscription, item);
+                ForEachCalculator fc = new ForEachCalculator(subscription, node);
+                fc.setForEachExecutor(CalculatorFactory.staticFEE);
+                return fc;
             default:
                 throw new IllegalArgumentException("Unknown bundle operation: " + item.getBundleOp());
         }
     }
 
-    private static Calculator getAtomicCalculatorFor(Subscription subscription, PlanItem item) {
+    private static Calculator getAtomicCalculatorFor(Subscription subscription, PlanGraph.Node node) {
+        PlanItem item = node.getItem();
         if(item==null || item.getIsBundle())
             return null;
         if(item instanceof Price) {
             logger.debug("creating AtomicPriceCalculator for {}", item.getName());
-            return new AtomicPriceCalculator(subscription, (Price)item);
+            return new AtomicPriceCalculator(subscription, node);
         } else if(item instanceof Discount) {
             logger.debug("creating AtomicDiscountCalculator for {}", item.getName());
-            return new AtomicDiscountCalculator(subscription, (Discount)item);
+            return new AtomicDiscountCalculator(subscription, node);
         } else {
             throw new IllegalArgumentException("Can't instantiate a calculator for: " + item.getName());
         }
@@ -88,6 +104,7 @@ public class CalculatorFactory implements InitializingBean{
     public void afterPropertiesSet() throws Exception {
         CalculatorFactory.staticMR = this.mr;
         CalculatorFactory.staticTDR = this.tdr;
+        CalculatorFactory.staticFEE = this.fee;
     }
 
 }
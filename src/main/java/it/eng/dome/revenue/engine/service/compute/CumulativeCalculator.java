@@ -1,13 +1,11 @@
 package it.eng.dome.revenue.engine.service.compute;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 import it.eng.dome.revenue.engine.exception.BadTmfDataException;
 import it.eng.dome.revenue.engine.exception.ExternalServiceException;
 import it.eng.dome.revenue.engine.model.Discount;
-import it.eng.dome.revenue.engine.model.PlanItem;
 import it.eng.dome.revenue.engine.model.Price;
 import it.eng.dome.revenue.engine.model.RevenueItem;
 import it.eng.dome.revenue.engine.model.Subscription;
@@ -15,14 +13,12 @@ import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
 
 public class CumulativeCalculator extends AbstractCalculator {
 
-    public CumulativeCalculator(Subscription subscription, PlanItem item) {
-        super(subscription, item);
+    public CumulativeCalculator(Subscription subscription, PlanGraph.Node node) {
+        super(subscription, node);
     }
 
     public RevenueItem doCompute(TimePeriod timePeriod, Map<String, Double> computeContext) throws BadTmfDataException, ExternalServiceException {
 
-		List<PlanItem> bundleItems = this.item.getBundleItems();
-
 		RevenueItem cumulativeRevenueItem = new RevenueItem(this.item.getName(), this.item.getCurrency());		
 		if(this.item.getType()!=null)
 			cumulativeRevenueItem.setType(this.item.getType().toString());
@@ -34,8 +30,8 @@ public class CumulativeCalculator extends AbstractCalculator {
 		this.getComputationBase(sellerId, timePeriod, computeContext);
 
 		// first process child prices
-		for (PlanItem price : bundleItems) {
-			if(!(price instanceof Price))
+		for (PlanGraph.Node price : this.node.getBundleItems()) {
+			if(!(price.getItem() instanceof Price))
 				continue;
 			Calculator childCalculator = CalculatorFactory.getCalculatorFor(this.getSubscription(), price, this);
 			RevenueItem childRevenueItem = childCalculator.compute(timePeriod, computeContext);
@@ -46,11 +42,10 @@ public class CumulativeCalculator extends AbstractCalculator {
 
 		// then process the item itself (either a cumulative price...
 		if(this.item instanceof Price) {
-			Price price = (Price)this.item;
-			if(price.getDiscount()!=null) {
+			if(this.node.getDiscount()!=null) {
 				Map<String, Double> discountContext = new HashMap<>();
 				discountContext.put("parent-price", cumulativeRevenueItem.getOverallValue());
-				Calculator discountCalculator = CalculatorFactory.getCalculatorFor(this.getSubscription(), price.getDiscount(), this);
+				Calculator discountCalculator = CalculatorFactory.getCalculatorFor(this.getSubscription(), this.node.getDiscount(), this);
 				RevenueItem discountRevenueItem = discountCalculator.compute(timePeriod, discountContext);
 				if(discountRevenueItem!=null) {
 					cumulativeRevenueItem.addRevenueItem(discountRevenueItem);
@@ -60,7 +55,7 @@ public class CumulativeCalculator extends AbstractCalculator {
 		
 		// ... or a cumulative discount.
 	    if (this.item instanceof Discount) {
-	        for (PlanItem subItem : this.item.getBundleItems()) {
+	        for (PlanGraph.Node subItem : this.node.getBundleItems()) {
                 Calculator childCalc = CalculatorFactory.getCalculatorFor(this.getSubscription(), subItem, this);
                 RevenueItem childRev = childCalc.compute(timePeriod, computeContext);
                 if (childRev != null)
@@ -1,5 +1,7 @@
 package it.eng.dome.revenue.engine.service.compute;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -8,9 +10,9 @@ import org.slf4j.LoggerFactory;
 
 import it.eng.dome.revenue.engine.exception.BadTmfDataException;
 import it.eng.dome.revenue.engine.exception.ExternalServiceException;
-import it.eng.dome.revenue.engine.model.PlanItem;
 import it.eng.dome.revenue.engine.model.RevenueItem;
 import it.eng.dome.revenue.engine.model.Subscription;
+import it.eng.dome.revenue.engine.tmf.TmfProjection;
 import it.eng.dome.tmforum.tmf632.v4.model.Organization;
 import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
 
@@ -18,10 +20,16 @@ public class ForEachCalculator extends AbstractCalculator {
 
     private static final Logger logger = LoggerFactory.getLogger(ForEachCalculator.class);
 
-    public ForEachCalculator(Subscription subscription, PlanItem bundle) {
+    private ForEachExecutor forEachExecutor;
+
+    public ForEachCalculator(Subscription subscription, PlanGraph.Node bundle) {
         super(subscription, bundle);
     }
 
+    public void setForEachExecutor(ForEachExecutor forEachExecutor) {
+        this.forEachExecutor = forEachExecutor;
+    }
+
     public RevenueItem doCompute(TimePeriod timePeriod, Map<String, Double> computeContext) throws ExternalServiceException, BadTmfDataException {
 
 		// prepare the output
@@ -37,17 +45,19 @@ public class ForEachCalculator extends AbstractCalculator {
 		// now process them
 		if("activeSellersBehindMarketplace".equalsIgnoreCase(iterateOver)) {
 			// retrieve the possible values
-			List<String> activeSellerIds = this.metricsRetriever.getDistinctValuesForKey(iterateOver, this.getSubscription().getSubscriberId(), timePeriod);
+			List<String> activeSellerIds = this.metrics.getDistinctValuesForKey(iterateOver, this.getSubscription().getSubscriberId(), timePeriod);
 
 			logger.debug("Found {} sellers + marketplace {} in period {}", activeSellerIds.size(), this.getSubscription().getSubscriberId(), timePeriod);
+			Map<String, String> labels = this.getLabels(activeSellerIds);
 
 			// foreach 'iterator' property, build a sub-revenueItem with all child prices computed with the 'iterator' property.
-			for(String activeSellerId: activeSellerIds) {
+			List<List<RevenueItem>> sellersItems = this.forEach(activeSellerIds, activeSellerId -> {
 
-				String label = this.getLabel(activeSellerId);
+				String label = labels.get(activeSellerId);
 				logger.debug("looking for transactions of seller {} in period {}", label, timePeriod);
 
-				for (PlanItem childItem : this.item.getBundleItems()) {
+				List<RevenueItem> sellerItems = new ArrayList<>();
+				for (PlanGraph.Node childItem : this.node.getBundleItems()) {
 
 					Calculator childCalc = CalculatorFactory.getCalculatorFor(this.getSubscription(), childItem, this);
 					// update the context, to force the calculator to consider the sub-seller, instead of the subscriber
@@ -57,26 +67,30 @@ public class ForEachCalculator extends AbstractCalculator {
 
 					RevenueItem childRevenueItem = childCalc.compute(timePeriod, computeContext);
 					if (childRevenueItem != null) {
-						outputItem.addRevenueItem(childRevenueItem);
+						sellerItems.add(childRevenueItem);
 					}
 				}
-			}
+				return sellerItems;
+			});
+			this.addAll(outputItem, sellersItems);
 		}
 		else if("billedSellersBehindMarketplace".equalsIgnoreCase(iterateOver)) {
 			// iterate over bills issued by a federarted marketplace to its own members
 			String federatedMarketplaceId = this.getSubscription().getSubscriberId();
 			String federatedMarketplaceLabel = this.getLabel(federatedMarketplaceId);
 
-			List<String> billedSellersBehindMarketplace = this.metricsRetriever.getDistinctValuesForKey(iterateOver, federatedMarketplaceId, timePeriod);
+			List<String> billedSellersBehindMarketplace = this.metrics.getDistinctValuesForKey(iterateOver, federatedMarketplaceId, timePeriod);
 			logger.debug("Found {} sellers {} in period {}", billedSellersBehindMarketplace.size(), federatedMarketplaceLabel, timePeriod);
+			Map<String, String> labels = this.getLabels(billedSellersBehindMarketplace);
 
 			// foreach 'iterator' property, build a sub-revenueItem with all child prices computed with the 'iterator' property.
-			for(String billedSellerId: billedSellersBehindMarketplace) {
+			List<List<RevenueItem>> sellersItems = this.forEach(billedSellersBehindMarketplace, billedSellerId -> {
 
-				String billedSellerLabel = this.getLabel(billedSellerId);
+				String billedSellerLabel = labels.get(billedSellerId);
 				logger.debug("looking for revenue bills issued by federated marketplace '{}' to seller '{}'' in period {}", federatedMarketplaceLabel, billedSellerLabel, timePeriod);
 
-				for (PlanItem childItem : this.item.getBundleItems()) {
+				List<RevenueItem> sellerItems = new ArrayList<>();
+				for (PlanGraph.Node childItem : this.node.getBundleItems()) {
 
 					Calculator childCalc = CalculatorFactory.getCalculatorFor(this.getSubscription(), childItem, this);
 
@@ -88,11 +102,13 @@ public class ForEachCalculator extends AbstractCalculator {
 
 					RevenueItem childRevenueItem = childCalc.compute(timePeriod, computeContext);
 					if (childRevenueItem != null) {
-						outputItem.addRevenueItem(childRevenueItem);
+						sellerItems.add(childRevenueItem);
 					}
 					
 				}
-			}
+				return sellerItems;
+			});
+			this.addAll(outputItem, sellersItems);
 		}
 		else {
 			logger.error("Metric {} is not supported.", iterateOver);
@@ -103,21 +119,66 @@ public class ForEachCalculator extends AbstractCalculator {
 
 	}
 
+	/*
+	 * Runs the iteration for each value, in parallel if a ForEachExecutor is set. Results are in the order of the values.
+	 */
+	private <T, R> List<R> forEach(List<T> values, ForEachExecutor.Iteration<T, R> iteration) throws BadTmfDataException, ExternalServiceException {
+		if (this.forEachExecutor != null) {
+			return this.forEachExecutor.invokeAll(values, iteration);
+		}
+		List<R> results = new ArrayList<>(values.size());
+		for (T value : values) {
+			results.add(iteration.apply(value));
+		}
+		return results;
+	}
+
+	private void addAll(RevenueItem outputItem, List<List<RevenueItem>> itemsLists) {
+		for (List<RevenueItem> items : itemsLists) {
+			for (RevenueItem revenueItem : items) {
+				outputItem.addRevenueItem(revenueItem);
+			}
+		}
+	}
+
 	private String getLabel(String id) throws BadTmfDataException, ExternalServiceException {
 		if(id.startsWith("urn:ngsi-ld:organization")) {
-			String orgLabel = "";
-			Organization seller = this.tmfDataRetriever.getOrganization(id);
-			if(seller!=null) {
-				if(seller.getName()!=null)
-					orgLabel = seller.getName();
-				if(seller.getTradingName()!=null)
-					orgLabel = seller.getTradingName();
-			}
-			return orgLabel.trim();
+			return this.getLabel(this.tmfDataRetriever.getOrganization(id));
 		}
 		else {
 			return id;
 		}
 	}
 
+	/*
+	 * Same as getLabel, but retrieves all the organizations with a single bulk lookup.
+	 */
+	private Map<String, String> getLabels(List<String> ids) throws ExternalServiceException {
+		Map<String, String> labels = new HashMap<>();
+		List<String> orgIds = new ArrayList<>();
+		for (String id : ids) {
+			if (id.startsWith("urn:ngsi-ld:organization")) {
+				orgIds.add(id);
+				labels.put(id, "");
+			} else {
+				labels.put(id, id);
+			}
+		}
+		for (Organization org : this.tmfDataRetriever.getOrganizations(orgIds, TmfProjection.ORGANIZATION_LABEL)) {
+			labels.put(org.getId(), this.getLabel(org));
+		}
+		return labels;
+	}
+
+	private String getLabel(Organization seller) {
+		String orgLabel = "";
+		if(seller!=null) {
+			if(seller.getName()!=null)
+				orgLabel = seller.getName();
+			if(seller.getTradingName()!=null)
+				orgLabel = seller.getTradingName();
+		}
+		return orgLabel.trim();
+	}
+
 }
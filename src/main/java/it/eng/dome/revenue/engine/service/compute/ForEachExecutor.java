@@ -0,0 +1,172 @@
+package it.eng.dome.revenue.engine.service.compute;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.eng.dome.revenue.engine.exception.BadTmfDataException;
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.tmf.TmfAsyncExecutor;
+import it.eng.dome.revenue.engine.tmf.TmfTrafficClass;
+
+/**
+ * Runs the iterations of the foreach bundles (e.g. one per seller behind a federated marketplace) in parallel, on a
+ * pool of {@code statements.foreach.parallelism} threads shared by all the statement computations. When the pool and
+ * its queue are full, the caller runs the iteration itself.
+ * <p>
+ * The results are returned in the order of the iterated values, whatever the completion order. Iterations of nested
+ * foreach bundles run serially on the thread of their outer iteration, so that they never wait for the pool they are
+ * running on. Published meters: {@code revenue.foreach.parallelism}, {@code revenue.foreach.active} (iterations
+ * running) and {@code revenue.foreach.iterations} (by mode, parallel or serial).
+ * </p>
+ */
+@Component(value = "forEachExecutor")
+public class ForEachExecutor implements InitializingBean, DisposableBean {
+
+	private static final Logger logger = LoggerFactory.getLogger(ForEachExecutor.class);
+
+	// set on the pool threads, to run nested iterations serially
+	private static final ThreadLocal<Boolean> IN_POOL = new ThreadLocal<>();
+
+	/**
+	 * An iteration over a value.
+	 */
+	@FunctionalInterface
+	public interface Iteration<T, R> {
+		R apply(T value) throws BadTmfDataException, ExternalServiceException;
+	}
+
+	@Value("${statements.foreach.parallelism:8}")
+	private int parallelism;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private ExecutorService executor;
+
+	private final AtomicInteger active = new AtomicInteger();
+
+	private Counter parallelIterations;
+
+	private Counter serialIterations;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if (meterRegistry != null) {
+			Gauge.builder("revenue.foreach.parallelism", this, e -> Math.max(1, e.parallelism))
+					.description("Max foreach iterations running in parallel")
+					.register(meterRegistry);
+			Gauge.builder("revenue.foreach.active", active, AtomicInteger::get)
+					.description("Foreach iterations running in parallel")
+					.register(meterRegistry);
+			this.parallelIterations = Counter.builder("revenue.foreach.iterations").tag("mode", "parallel").register(meterRegistry);
+			this.serialIterations = Counter.builder("revenue.foreach.iterations").tag("mode", "serial").register(meterRegistry);
+		}
+		if (parallelism <= 1) {
+			logger.info("Foreach iterations computed serially");
+			return;
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		// bounded queue: when saturated, the caller runs the iteration itself
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(parallelism, parallelism, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(parallelism), r -> {
+			Thread t = new Thread(r, "foreach-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}, (r, executor) -> {
+			if (executor.isShutdown()) {
+				throw new RejectedExecutionException("Foreach executor is shut down");
+			}
+			r.run();
+		});
+		pool.allowCoreThreadTimeOut(true);
+		this.executor = pool;
+		logger.info("Foreach iterations computed on {} threads", parallelism);
+	}
+
+	@Override
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs the iteration over all the values.
+	 *
+	 * @return the results of the iterations, in the order of the values
+	 * @throws BadTmfDataException if an iteration failed with it (the first one, in the order of the values)
+	 * @throws ExternalServiceException if an iteration failed with it (the first one, in the order of the values)
+	 */
+	public <T, R> List<R> invokeAll(List<T> values, Iteration<T, R> iteration) throws BadTmfDataException, ExternalServiceException {
+		List<R> results = new ArrayList<>(values.size());
+		if (executor == null || values.size() < 2 || Boolean.TRUE.equals(IN_POOL.get())) {
+			for (T value : values) {
+				results.add(iteration.apply(value));
+				increment(serialIterations);
+			}
+			return results;
+		}
+
+		// the iterations run in the class (interactive or background) of the caller
+		TmfTrafficClass traffic = TmfTrafficClass.current();
+		AtomicBoolean failed = new AtomicBoolean();
+		List<CompletableFuture<R>> futures = new ArrayList<>(values.size());
+		for (T value : values) {
+			CompletableFuture<R> future = new CompletableFuture<>();
+			futures.add(future);
+			try {
+				executor.execute(() -> {
+					if (failed.get()) {
+						// the result is lost anyway
+						future.complete(null);
+						return;
+					}
+					IN_POOL.set(Boolean.TRUE);
+					active.incrementAndGet();
+					try {
+						future.complete(traffic.call(() -> iteration.apply(value)));
+					} catch (Throwable e) {
+						failed.set(true);
+						future.completeExceptionally(e);
+					} finally {
+						active.decrementAndGet();
+						IN_POOL.remove();
+						increment(parallelIterations);
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				failed.set(true);
+				future.completeExceptionally(new ExternalServiceException("Foreach executor is shut down", e));
+			}
+		}
+
+		for (CompletableFuture<R> future : futures) {
+			results.add(TmfAsyncExecutor.join(future));
+		}
+		return results;
+	}
+
+	private static void increment(Counter counter) {
+		if (counter != null) {
+			counter.increment();
+		}
+	}
+}
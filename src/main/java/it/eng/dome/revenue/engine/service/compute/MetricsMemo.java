@@ -0,0 +1,111 @@
+package it.eng.dome.revenue.engine.service.compute;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import it.eng.dome.revenue.engine.exception.BadTmfDataException;
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.service.MetricsRetriever;
+import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
+
+/**
+ * The metric values computed while building the statements of a subscription, shared by all its calculators.
+ * <p>
+ * Each (metric, seller, buyer, period) is computed once through the {@link MetricsRetriever}, and then reused by
+ * the other items (e.g. sibling tiers of an alternative bundle, or the children of a foreach bundle) and periods.
+ * Concurrent requests of the same value wait for the first computation; failed computations are not kept.
+ * </p>
+ */
+public class MetricsMemo {
+
+	private final MetricsRetriever metricsRetriever;
+
+	private final Map<List<Object>, FutureTask<Double>> values = new ConcurrentHashMap<>();
+
+	private final Map<List<Object>, FutureTask<List<String>>> distinctValues = new ConcurrentHashMap<>();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	@FunctionalInterface
+	private interface MetricCall<T> {
+		T call() throws BadTmfDataException, ExternalServiceException;
+	}
+
+	public MetricsMemo(MetricsRetriever metricsRetriever) {
+		this.metricsRetriever = metricsRetriever;
+	}
+
+	/**
+	 * @see MetricsRetriever#computeValueForKey(String, String, String, TimePeriod)
+	 */
+	public Double computeValueForKey(String key, String sellerId, String buyerId, TimePeriod timePeriod) throws BadTmfDataException, ExternalServiceException {
+		List<Object> memoKey = Arrays.asList(key, sellerId, buyerId, timePeriod.getStartDateTime(), timePeriod.getEndDateTime());
+		return this.memoize(values, memoKey, () -> metricsRetriever.computeValueForKey(key, sellerId, buyerId, timePeriod));
+	}
+
+	/**
+	 * @see MetricsRetriever#getDistinctValuesForKey(String, String, TimePeriod)
+	 */
+	public List<String> getDistinctValuesForKey(String key, String subscriberId, TimePeriod timePeriod) throws BadTmfDataException, ExternalServiceException {
+		List<Object> memoKey = Arrays.asList(key, subscriberId, timePeriod.getStartDateTime(), timePeriod.getEndDateTime());
+		return this.memoize(distinctValues, memoKey, () -> metricsRetriever.getDistinctValuesForKey(key, subscriberId, timePeriod));
+	}
+
+	/**
+	 * @return the number of values reused
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of values computed
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	private <T> T memoize(Map<List<Object>, FutureTask<T>> memo, List<Object> memoKey, MetricCall<T> call) throws BadTmfDataException, ExternalServiceException {
+		FutureTask<T> task = memo.get(memoKey);
+		if (task == null) {
+			FutureTask<T> created = new FutureTask<>(call::call);
+			task = memo.putIfAbsent(memoKey, created);
+			if (task == null) {
+				task = created;
+				misses.incrementAndGet();
+				created.run();
+			} else {
+				hits.incrementAndGet();
+			}
+		} else {
+			hits.incrementAndGet();
+		}
+
+		try {
+			return task.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ExternalServiceException("Interrupted while computing the metric " + memoKey.get(0), e);
+		} catch (ExecutionException e) {
+			memo.remove(memoKey, task);
+			Throwable cause = e.getCause();
+			if (cause instanceof BadTmfDataException) {
+				throw (BadTmfDataException) cause;
+			}
+			if (cause instanceof ExternalServiceException) {
+				throw (ExternalServiceException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new ExternalServiceException("Failed to compute the metric " + memoKey.get(0), cause);
+		}
+	}
+}
@@ -0,0 +1,98 @@
+package it.eng.dome.revenue.engine.service.compute;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.SimpleEvaluationContext;
+
+import it.eng.dome.revenue.engine.model.PlanItem;
+
+/**
+ * The SpEL expressions of the plans (e.g. the 'ignore' flags of the plan items), parsed once and shared.
+ * <p>
+ * Expressions are cached by text and compiled to bytecode after their first evaluation (SpEL MIXED compiler mode),
+ * so evaluating them costs a map lookup plus a compiled call. They are evaluated in a read-only context, with the
+ * plan item as root object: plans cannot reach types, beans or methods through their expressions.
+ * </p>
+ */
+public final class PlanExpressions {
+
+	private static final Logger logger = LoggerFactory.getLogger(PlanExpressions.class);
+
+	// plenty for the distinct expressions of all the plans and their resolutions
+	private static final int MAX_CACHED = 4096;
+
+	private static final SpelExpressionParser PARSER = new SpelExpressionParser(
+			new SpelParserConfiguration(SpelCompilerMode.MIXED, PlanExpressions.class.getClassLoader()));
+
+	private static final Map<String, Expression> CACHE = new ConcurrentHashMap<>();
+
+	// shared, never modified: the root object is given at each evaluation
+	private static final EvaluationContext CONTEXT = SimpleEvaluationContext.forReadOnlyDataBinding().build();
+
+	private PlanExpressions() {
+	}
+
+	/**
+	 * Parses (once) the expression.
+	 *
+	 * @throws org.springframework.expression.ParseException if the expression is not valid
+	 */
+	public static Expression parse(String expression) {
+		Expression parsed = CACHE.get(expression);
+		if (parsed == null) {
+			if (CACHE.size() >= MAX_CACHED) {
+				CACHE.clear();
+			}
+			parsed = CACHE.computeIfAbsent(expression, PARSER::parseExpression);
+		}
+		return parsed;
+	}
+
+	/**
+	 * Evaluates a boolean expression of the item.
+	 *
+	 * @return true if the expression evaluates to true
+	 */
+	public static boolean isTrue(String expression, PlanItem item) {
+		return isTrue(parse(expression), item);
+	}
+
+	/**
+	 * Evaluates an already parsed boolean expression of the item.
+	 *
+	 * @return true if the expression evaluates to true
+	 */
+	public static boolean isTrue(Expression expression, PlanItem item) {
+		return Boolean.TRUE.equals(expression.getValue(CONTEXT, item, Boolean.class));
+	}
+
+	/**
+	 * Parses the expressions of the item and of all its children (e.g. when the plan is loaded), so that the
+	 * invalid ones are reported early and the valid ones are ready for the computations.
+	 */
+	public static void parseAll(PlanItem item) {
+		if (item == null) {
+			return;
+		}
+		String ignore = item.getIgnore();
+		// expressions with placeholders are parsed once resolved for a subscription (see PlanResolver)
+		if (ignore != null && !ignore.trim().isEmpty() && !ignore.contains("${")) {
+			try {
+				parse(ignore);
+			} catch (RuntimeException e) {
+				logger.warn("Invalid ignore expression '{}' in plan item {}: {}", ignore, item.getName(), e.getMessage());
+			}
+		}
+		for (PlanItem child : item.getChildItems()) {
+			parseAll(child);
+		}
+	}
+}
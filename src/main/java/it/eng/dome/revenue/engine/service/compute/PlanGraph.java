@@ -0,0 +1,175 @@
+package it.eng.dome.revenue.engine.service.compute;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.expression.Expression;
+
+import it.eng.dome.revenue.engine.model.PlanItem;
+import it.eng.dome.revenue.engine.model.Price;
+
+/**
+ * The execution graph of a (resolved) plan: the tree of its prices and discounts, compiled once and then used to
+ * compute all the charge periods of the subscription.
+ * <p>
+ * Each node holds what does not depend on the period: its children, its reference price, the outcome of the
+ * computability checks (done, and logged, once) and its parsed 'ignore' expression. The graph is immutable, so it can
+ * be shared between threads; the per-computation state (subscription, contexts) stays in the calculators.
+ * </p>
+ */
+public final class PlanGraph {
+
+	private static final Logger logger = LoggerFactory.getLogger(PlanGraph.class);
+
+	private final Node root;
+
+	private PlanGraph(Node root) {
+		this.root = root;
+	}
+
+	/**
+	 * Compiles the graph of the item (usually the price of a resolved plan) and of all its children.
+	 */
+	public static PlanGraph compile(PlanItem item) {
+		return new PlanGraph(item != null ? new Node(item) : null);
+	}
+
+	public Node getRoot() {
+		return root;
+	}
+
+	public static final class Node {
+
+		private final PlanItem item;
+
+		private final Price referencePrice;
+
+		private final List<Node> bundleItems;
+
+		private final Node discount;
+
+		private final boolean computable;
+
+		private final String ignoreText;
+
+		private final Expression ignore;
+
+		private Node(PlanItem item) {
+			this.item = item;
+			this.referencePrice = item.getReferencePrice();
+
+			List<Node> children = new ArrayList<>();
+			for (PlanItem child : item.getBundleItems()) {
+				children.add(new Node(child));
+			}
+			this.bundleItems = Collections.unmodifiableList(children);
+			this.discount = (item instanceof Price && ((Price) item).getDiscount() != null) ? new Node(((Price) item).getDiscount()) : null;
+
+			this.computable = checkComputability(item);
+
+			String text = item.getIgnore();
+			Expression parsed = null;
+			if (text != null && !text.trim().isEmpty()) {
+				try {
+					parsed = PlanExpressions.parse(text);
+				} catch (RuntimeException e) {
+					// reported (again) when evaluated, i.e. only if the item is actually computed
+					logger.warn("Invalid ignore expression '{}' in plan item {}: {}", text, item.getName(), e.getMessage());
+				}
+			} else {
+				text = null;
+			}
+			this.ignoreText = text;
+			this.ignore = parsed;
+		}
+
+		public PlanItem getItem() {
+			return item;
+		}
+
+		/**
+		 * The closest ancestor reference price.
+		 */
+		public Price getReferencePrice() {
+			return referencePrice;
+		}
+
+		/**
+		 * The nodes of the bundled prices (or discounts), in plan order.
+		 */
+		public List<Node> getBundleItems() {
+			return bundleItems;
+		}
+
+		/**
+		 * The node of the discount of a price, if any.
+		 */
+		public Node getDiscount() {
+			return discount;
+		}
+
+		/**
+		 * @return true if the properties needed for the computation are set consistently
+		 */
+		public boolean isComputable() {
+			return computable;
+		}
+
+		/**
+		 * Evaluates the 'ignore' expression of the item.
+		 *
+		 * @return true if the item is to be ignored
+		 */
+		public boolean isIgnored() {
+			if (ignoreText == null) {
+				return false;
+			}
+			if (ignore == null) {
+				// not parseable: let the evaluation report the error
+				return PlanExpressions.isTrue(ignoreText, item);
+			}
+			return PlanExpressions.isTrue(ignore, item);
+		}
+
+		private static boolean checkComputability(PlanItem item) {
+
+			if (item.getIsBundle())
+				return true;
+
+			int count = 0;
+			count += (item.getPercent() != null ? 1 : 0);
+			count += (item.getAmount() != null ? 1 : 0);
+			count += (item.getUnitAmount() != null ? 1 : 0);
+			// for atomic items, make sure an amount or a percent are set
+			if (count == 0) {
+				logger.warn("Neither percent nor amount, nor unitAmount defined for {}!", item.getName());
+				return false;
+			}
+			// make sure exactly one of (amount, percent, unitAmount) is set
+			if (count > 1) {
+				logger.warn("More than one property among (percent, amount, unitAmount) are set for {}", item.getName());
+				return false;
+			}
+
+			// make sure a computationBase is set if a percent or unitAmount are used
+			if ((item.getPercent() != null || item.getUnitAmount() != null) && (item.getComputationMetric() == null || item.getComputationMetric().isEmpty())) {
+				logger.warn("A percent is set for {}, but no computation base defined!", item.getName());
+				return false;
+			}
+
+			// also a reference period for the computation base is needed
+			if ((item.getPercent() != null || item.getUnitAmount() != null) && !"parent-price".equals(item.getComputationMetric()) && (
+					item.getComputationMeticReferencePeriod() == null
+					|| item.getComputationMeticReferencePeriod().getValue() == null
+					|| item.getComputationMeticReferencePeriod().getValue().isEmpty())) {
+				logger.warn("A percent or unitAmount are set for {}, but no computation base reference period is defined!", item.getName());
+				return false;
+			}
+
+			return true;
+		}
+	}
+}
@@ -17,8 +17,16 @@ public class RevenueStatementBuilder {
 
     private Subscription subscription;
 
+    // the plan price compiled once, and reused for all the periods of the subscription
+    private Price compiledPrice;
+    private PlanGraph graph;
+
+    // the metric values, shared by the calculators of all the periods
+    private final MetricsMemo metricsMemo;
+
     public RevenueStatementBuilder(Subscription sub) {
         this.subscription = sub;
+        this.metricsMemo = CalculatorFactory.newMetricsMemo();
     }
 
 	public RevenueStatement buildStatement(TimePeriod timePeriod) {
@@ -32,7 +40,8 @@ public class RevenueStatementBuilder {
 		try {
 			RevenueStatement statement = new RevenueStatement(this.subscription, timePeriod);
 			Price price = this.subscription.getPlan().getPrice();
-			Calculator calc = CalculatorFactory.getCalculatorFor(this.subscription, price, null);
+			Calculator calc = CalculatorFactory.getCalculatorFor(this.subscription, this.getGraph(price).getRoot(), null);
+			calc.setMetricsMemo(this.metricsMemo);
 			RevenueItem revenueItem = calc.compute(timePeriod, new HashMap<>());
 			if (revenueItem != null) {
 				statement.addRevenueItem(revenueItem);
@@ -47,5 +56,18 @@ public class RevenueStatementBuilder {
 		return null;
 
 	}
-	
+
+	public MetricsMemo getMetricsMemo() {
+		return this.metricsMemo;
+	}
+
+	private synchronized PlanGraph getGraph(Price price) {
+		// the subscription might have been given another (e.g. re-resolved) plan
+		if (this.graph == null || this.compiledPrice != price) {
+			this.graph = PlanGraph.compile(price);
+			this.compiledPrice = price;
+		}
+		return this.graph;
+	}
+
 }
@@ -4,6 +4,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.beans.factory.config.ConfigurableBeanFactory;
 import org.springframework.context.annotation.Scope;
@@ -12,6 +13,7 @@ import org.springframework.util.Assert;
 
 
 import it.eng.dome.brokerage.billing.utils.UrlPathUtils;
+import it.eng.dome.revenue.engine.tmf.TmfPageFetcher.TmfApi;
 
 @Component(value = "tmfApiFactory")
 @Scope(value = ConfigurableBeanFactory.SCOPE_SINGLETON)
@@ -37,6 +39,10 @@ public final class TmfApiFactory implements InitializingBean {
         
     @Value("${tmforumapi.read_timeout}")
     public int readTimeout;
+
+    // pooled HTTP transport shared by all the TMF clients
+    @Autowired
+    private TmfHttpTransport httpTransport;
     
     @Value( "${tmforumapi.tmf620_product_catalog_management_path}" )
 	private String tmf620ProductCatalogManagementPath;
@@ -69,7 +75,7 @@ public final class TmfApiFactory implements InitializingBean {
 	public it.eng.dome.tmforum.tmf620.v4.ApiClient getTMF620ProductCatalogManagementApiClient() {	
 		if (apiClientTmf620 == null) {
 			apiClientTmf620  = it.eng.dome.tmforum.tmf620.v4.Configuration.getDefaultApiClient();
-			apiClientTmf620.setReadTimeout(readTimeout * 1000);
+			apiClientTmf620.setHttpClient(httpTransport.configure(apiClientTmf620.getHttpClient(), TmfApi.TMF620, readTimeout));
 			
 			String basePath = tmfEndpoint;
 			if (!tmfEnvoy) { // no envoy specific path
@@ -86,7 +92,7 @@ public final class TmfApiFactory implements InitializingBean {
 	public it.eng.dome.tmforum.tmf629.v4.ApiClient getTMF629CustomerManagementApiClient() {	
 		if (apiClientTmf629 == null) {
 			apiClientTmf629  = it.eng.dome.tmforum.tmf629.v4.Configuration.getDefaultApiClient();
-			apiClientTmf629.setReadTimeout(readTimeout * 1000);
+			apiClientTmf629.setHttpClient(httpTransport.configure(apiClientTmf629.getHttpClient(), TmfApi.TMF629, readTimeout));
 			
 			String basePath = tmfEndpoint;
 			if (!tmfEnvoy) { // no envoy specific path
@@ -103,7 +109,7 @@ public final class TmfApiFactory implements InitializingBean {
 	public it.eng.dome.tmforum.tmf632.v4.ApiClient getTMF632PartyManagementApiClient() {	
 		if (apiClientTmf632 == null) {
 			apiClientTmf632  = it.eng.dome.tmforum.tmf632.v4.Configuration.getDefaultApiClient();
-			apiClientTmf632.setReadTimeout(readTimeout * 1000);
+			apiClientTmf632.setHttpClient(httpTransport.configure(apiClientTmf632.getHttpClient(), TmfApi.TMF632, readTimeout));
 			
 			String basePath = tmfEndpoint;
 			if (!tmfEnvoy) { // no envoy specific path
@@ -120,7 +126,7 @@ public final class TmfApiFactory implements InitializingBean {
 	public it.eng.dome.tmforum.tmf637.v4.ApiClient getTMF637ProductInventoryApiClient() {	
 		if (apiClientTmf637 == null) {
 			apiClientTmf637  = it.eng.dome.tmforum.tmf637.v4.Configuration.getDefaultApiClient();
-			apiClientTmf637.setReadTimeout(readTimeout * 1000);
+			apiClientTmf637.setHttpClient(httpTransport.configure(apiClientTmf637.getHttpClient(), TmfApi.TMF637, readTimeout));
 			
 			String basePath = tmfEndpoint;
 			if (!tmfEnvoy) { // no envoy specific path
@@ -137,7 +143,7 @@ public final class TmfApiFactory implements InitializingBean {
 	public it.eng.dome.tmforum.tmf651.v4.ApiClient getTMF651AgreementManagementApiClient() {	
 		if (apiClientTmf651 == null) {
 			apiClientTmf651  = it.eng.dome.tmforum.tmf651.v4.Configuration.getDefaultApiClient();
-			apiClientTmf651.setReadTimeout(readTimeout * 1000);
+			apiClientTmf651.setHttpClient(httpTransport.configure(apiClientTmf651.getHttpClient(), TmfApi.TMF651, readTimeout));
 			
 			String basePath = tmfEndpoint;
 			if (!tmfEnvoy) { // no envoy specific path
@@ -154,7 +160,7 @@ public final class TmfApiFactory implements InitializingBean {
 	public it.eng.dome.tmforum.tmf678.v4.ApiClient getTMF678CustomerBillApiClient() {
 		if (apiClientTmf678 == null) { 
 			apiClientTmf678 = it.eng.dome.tmforum.tmf678.v4.Configuration.getDefaultApiClient();
-			apiClientTmf678.setReadTimeout(readTimeout * 1000);
+			apiClientTmf678.setHttpClient(httpTransport.configure(apiClientTmf678.getHttpClient(), TmfApi.TMF678, readTimeout));
 			
 			String basePath = tmfEndpoint;
 			if (!tmfEnvoy) { // no envoy specific path
@@ -0,0 +1,163 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import it.eng.dome.revenue.engine.exception.BadTmfDataException;
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+
+/**
+ * Runs the asynchronous TMF reads (the {@code *Async} methods of the TmfDataRetriever), so that independent reads
+ * can be issued together and joined, waiting for the slowest one instead of the sum of all.
+ * <p>
+ * At most {@code tmforumapi.async.max_concurrency} reads run at the same time. Each read runs on a virtual thread
+ * when the runtime supports them (Java 21+) and {@code tmforumapi.async.virtual_threads} is on, otherwise on a
+ * bounded pool of platform threads. Reads must not block on other asynchronous reads (use thenCompose instead),
+ * as on the platform pool this could exhaust the threads.
+ * </p>
+ */
+@Component(value = "tmfAsyncExecutor")
+public class TmfAsyncExecutor implements InitializingBean, DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(TmfAsyncExecutor.class);
+
+	/**
+	 * A blocking TMF read.
+	 */
+	@FunctionalInterface
+	public interface TmfCall<T> {
+		T call() throws Exception;
+	}
+
+	@Value("${tmforumapi.async.max_concurrency:16}")
+	private int maxConcurrency;
+
+	@Value("${tmforumapi.async.virtual_threads:true}")
+	private boolean virtualThreads;
+
+	private ExecutorService executor;
+
+	// caps the reads running at once on virtual threads (null on the bounded platform pool)
+	private Semaphore permits;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		int size = Math.max(1, maxConcurrency);
+		this.executor = virtualThreads ? newVirtualThreadExecutor() : null;
+		if (this.executor != null) {
+			this.permits = new Semaphore(size, true);
+			log.info("TMF async reads on virtual threads, max concurrency {}", size);
+			return;
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread t = new Thread(r, "tmf-async-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		pool.allowCoreThreadTimeOut(true);
+		this.executor = pool;
+		log.info("TMF async reads on {} platform threads", size);
+	}
+
+	@Override
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Runs the read asynchronously.
+	 *
+	 * @param call the read
+	 * @return the future result of the read, completed exceptionally with the exception thrown by the read
+	 */
+	public <T> CompletableFuture<T> supply(TmfCall<T> call) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		// the call runs in the class (interactive or background) of the caller
+		TmfTrafficClass traffic = TmfTrafficClass.current();
+		try {
+			executor.execute(() -> {
+				try {
+					if (permits != null) {
+						permits.acquire();
+					}
+					try {
+						future.complete(traffic.call(call::call));
+					} finally {
+						if (permits != null) {
+							permits.release();
+						}
+					}
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(new ExternalServiceException("TMF async executor is shut down", e));
+		}
+		return future;
+	}
+
+	/**
+	 * Waits for the result of an asynchronous read, rethrowing the exception thrown by the read.
+	 *
+	 * @param future the future result of the read
+	 * @return the result of the read
+	 * @throws ExternalServiceException if the read failed with it, or with another checked exception
+	 * @throws BadTmfDataException if the read failed with it
+	 */
+	public static <T> T join(CompletableFuture<T> future) throws ExternalServiceException, BadTmfDataException {
+		try {
+			return future.join();
+		} catch (CompletionException | CancellationException e) {
+			Throwable cause = e.getCause() != null ? e.getCause() : e;
+			if (cause instanceof ExternalServiceException) {
+				throw (ExternalServiceException) cause;
+			}
+			if (cause instanceof BadTmfDataException) {
+				throw (BadTmfDataException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new ExternalServiceException("TMF async read failed: " + cause.getMessage(), cause);
+		}
+	}
+
+	/*
+	 * Executors.newVirtualThreadPerTaskExecutor() when available: looked up by reflection, as the engine is built for Java 17.
+	 */
+	private static ExecutorService newVirtualThreadExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (NoSuchMethodException e) {
+			log.debug("Virtual threads not available in Java {}", Runtime.version().feature());
+		} catch (Exception e) {
+			// e.g. preview feature not enabled
+			log.debug("Virtual threads not available: {}", e.getCause() != null ? e.getCause() : e);
+		}
+		return null;
+	}
+
+}
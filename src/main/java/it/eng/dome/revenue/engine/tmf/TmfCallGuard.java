@@ -0,0 +1,453 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import it.eng.dome.revenue.engine.tmf.TmfPageFetcher.TmfApi;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Protects the engine from a slow or failing TMF: every TMF call goes through the guard of its TMF API
+ * (an interceptor of the {@link TmfHttpTransport}), which applies, in order:
+ * <ul>
+ * <li>a circuit breaker: when too many of the recent calls failed or were slower than {@code slow_call_ms}, the calls
+ * fail fast for {@code open_ms}, then a few trial calls decide whether to close it again;</li>
+ * <li>a bulkhead per {@link TmfTrafficClass}, so that background work cannot take the capacity of interactive requests;</li>
+ * <li>an adaptive concurrency limit, lowered when the latency grows beyond {@code latency_tolerance} times its usual
+ * value (or calls fail) and slowly raised while the calls are fast and the limit is in use.</li>
+ * </ul>
+ * Interactive calls waiting more than {@code max_wait_ms} for the bulkhead or the limit are rejected; background calls
+ * queue up to {@code background_max_wait_ms} (0, the default, for no limit), since they have no user waiting and a
+ * rejection would lose their work (e.g. a bill not generated). Rejected and short-circuited
+ * calls fail with {@link TmfUnavailableException}, on which the caches with a stale fallback serve the last values
+ * they loaded ({@code caching.tmf.stale-duration}); they are published as {@code tmf.calls.rejected} and
+ * {@code tmf.calls.short_circuited}.
+ */
+@Component(value = "tmfCallGuard")
+public class TmfCallGuard implements InitializingBean {
+
+	private static final Logger log = LoggerFactory.getLogger(TmfCallGuard.class);
+
+	@Value("${tmforumapi.guard.enabled:true}")
+	private boolean enabled;
+
+	@Value("${tmforumapi.guard.max_wait_ms:1000}")
+	private long maxWaitMillis;
+
+	// 0 to wait with no limit
+	@Value("${tmforumapi.guard.background_max_wait_ms:0}")
+	private long backgroundMaxWaitMillis;
+
+	@Value("${tmforumapi.guard.limit.initial:16}")
+	private int initialLimit;
+
+	@Value("${tmforumapi.guard.limit.min:2}")
+	private int minLimit;
+
+	@Value("${tmforumapi.guard.limit.max:64}")
+	private int maxLimit;
+
+	@Value("${tmforumapi.guard.limit.latency_tolerance:2.0}")
+	private double latencyTolerance;
+
+	@Value("${tmforumapi.guard.circuit.window:20}")
+	private int circuitWindow;
+
+	@Value("${tmforumapi.guard.circuit.min_calls:10}")
+	private int circuitMinCalls;
+
+	@Value("${tmforumapi.guard.circuit.failure_rate:0.5}")
+	private double circuitFailureRate;
+
+	@Value("${tmforumapi.guard.circuit.slow_call_ms:10000}")
+	private long slowCallMillis;
+
+	@Value("${tmforumapi.guard.circuit.open_ms:30000}")
+	private long openMillis;
+
+	@Value("${tmforumapi.guard.circuit.half_open_calls:3}")
+	private int halfOpenCalls;
+
+	@Value("${tmforumapi.guard.bulkhead.interactive:48}")
+	private int interactiveBulkhead;
+
+	@Value("${tmforumapi.guard.bulkhead.background:8}")
+	private int backgroundBulkhead;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private final Map<TmfApi, ApiGuard> guards = new EnumMap<>(TmfApi.class);
+
+	private final Map<TmfTrafficClass, Semaphore> bulkheads = new EnumMap<>(TmfTrafficClass.class);
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		bulkheads.put(TmfTrafficClass.INTERACTIVE, new Semaphore(Math.max(1, interactiveBulkhead), true));
+		bulkheads.put(TmfTrafficClass.BACKGROUND, new Semaphore(Math.max(1, backgroundBulkhead), true));
+		for (TmfApi api : TmfApi.values()) {
+			ApiGuard guard = new ApiGuard(api);
+			guards.put(api, guard);
+			if (meterRegistry != null) {
+				this.bindMetrics(guard);
+			}
+		}
+		log.info("TMF call guard {}: limit {} [{}-{}], circuit {}/{} calls failed or slower than {} ms, bulkheads {}, max wait {} ms (background {})",
+				enabled ? "enabled" : "disabled", initialLimit, minLimit, maxLimit, circuitFailureRate, circuitWindow, slowCallMillis,
+				Map.of(TmfTrafficClass.INTERACTIVE, interactiveBulkhead, TmfTrafficClass.BACKGROUND, backgroundBulkhead),
+				maxWaitMillis, backgroundMaxWaitMillis > 0 ? backgroundMaxWaitMillis + " ms" : "no limit");
+	}
+
+	/**
+	 * @return the interceptor guarding the calls to the given TMF API
+	 */
+	public Interceptor interceptor(TmfApi api) {
+		ApiGuard guard = guards.get(api);
+		return chain -> enabled ? guard.intercept(chain) : chain.proceed(chain.request());
+	}
+
+	/**
+	 * @return true if the circuit of the given TMF API is open, i.e. its calls currently fail fast
+	 */
+	public boolean isOpen(TmfApi api) {
+		return guards.get(api).circuit.isOpen(System.currentTimeMillis());
+	}
+
+	private void bindMetrics(ApiGuard guard) {
+		String api = guard.api.name().toLowerCase(Locale.ROOT);
+		FunctionCounter.builder("tmf.calls.rejected", guard, g -> g.rejectedByLimit.sum())
+				.description("TMF calls rejected without calling TMF")
+				.tag("api", api).tag("reason", "limit")
+				.register(meterRegistry);
+		FunctionCounter.builder("tmf.calls.rejected", guard, g -> g.rejectedByBulkhead.sum())
+				.description("TMF calls rejected without calling TMF")
+				.tag("api", api).tag("reason", "bulkhead")
+				.register(meterRegistry);
+		FunctionCounter.builder("tmf.calls.short_circuited", guard, g -> g.shortCircuited.sum())
+				.description("TMF calls failed fast by the open circuit breaker")
+				.tag("api", api)
+				.register(meterRegistry);
+		Gauge.builder("tmf.calls.limit", guard, g -> g.limit.getLimit())
+				.description("Adaptive concurrency limit of the TMF calls")
+				.tag("api", api)
+				.register(meterRegistry);
+		Gauge.builder("tmf.calls.in_flight", guard, g -> g.limit.getInFlight())
+				.description("TMF calls in flight")
+				.tag("api", api)
+				.register(meterRegistry);
+		Gauge.builder("tmf.circuit.state", guard, g -> g.circuit.getState().ordinal())
+				.description("Circuit breaker state of the TMF calls (0 closed, 1 open, 2 half open)")
+				.tag("api", api)
+				.register(meterRegistry);
+	}
+
+	/*
+	 * Circuit breaker, concurrency limit and counters of a TMF API.
+	 */
+	private final class ApiGuard {
+		final TmfApi api;
+		final CircuitBreaker circuit;
+		final AdaptiveLimit limit;
+		final LongAdder rejectedByLimit = new LongAdder();
+		final LongAdder rejectedByBulkhead = new LongAdder();
+		final LongAdder shortCircuited = new LongAdder();
+
+		ApiGuard(TmfApi api) {
+			this.api = api;
+			this.circuit = new CircuitBreaker(api.name(), circuitWindow, circuitMinCalls, circuitFailureRate, openMillis, halfOpenCalls);
+			this.limit = new AdaptiveLimit(initialLimit, minLimit, maxLimit, latencyTolerance);
+		}
+
+		Response intercept(Interceptor.Chain chain) throws IOException {
+			if (circuit.isOpen(System.currentTimeMillis())) {
+				shortCircuited.increment();
+				throw new TmfUnavailableException(api + " circuit open, call not attempted");
+			}
+			TmfTrafficClass traffic = TmfTrafficClass.current();
+			Semaphore bulkhead = bulkheads.get(traffic);
+			long maxWait = this.maxWait(traffic);
+			try {
+				if (maxWait <= 0) {
+					bulkhead.acquire();
+				} else if (!bulkhead.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) {
+					rejectedByBulkhead.increment();
+					throw new TmfUnavailableException(api + " call rejected, " + traffic + " bulkhead full");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for the " + traffic + " bulkhead");
+			}
+			try {
+				return this.limited(chain, maxWait);
+			} finally {
+				bulkhead.release();
+			}
+		}
+
+		// max wait for the bulkhead and the limit, 0 for no limit
+		private long maxWait(TmfTrafficClass traffic) {
+			return traffic == TmfTrafficClass.BACKGROUND ? backgroundMaxWaitMillis : Math.max(1, maxWaitMillis);
+		}
+
+		private Response limited(Interceptor.Chain chain, long maxWait) throws IOException {
+			try {
+				if (!limit.acquire(maxWait)) {
+					rejectedByLimit.increment();
+					throw new TmfUnavailableException(api + " call rejected, concurrency limit " + limit.getLimit() + " reached");
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for the " + api + " concurrency limit");
+			}
+			if (!circuit.tryAcquire(System.currentTimeMillis())) {
+				limit.release(0, true, false);
+				shortCircuited.increment();
+				throw new TmfUnavailableException(api + " circuit half open, call not attempted");
+			}
+
+			long start = System.nanoTime();
+			LocalWait wait = new LocalWait();
+			boolean success = false;
+			boolean attempted = true;
+			try {
+				Response response = chain.proceed(chain.request().newBuilder().tag(LocalWait.class, wait).build());
+				success = response.code() < 500;
+				return response;
+			} catch (TmfUnavailableException e) {
+				// rejected downstream (e.g. no connection to the host available): not a TMF outcome
+				attempted = false;
+				throw e;
+			} catch (IOException e) {
+				// cancelled by the caller (e.g. a hedged lookup answered by the other request): not a TMF outcome
+				attempted = !chain.call().isCanceled();
+				throw e;
+			} finally {
+				long rtt = Math.max(0, System.nanoTime() - start - wait.nanos);
+				limit.release(rtt, success, attempted);
+				if (attempted) {
+					circuit.onResult(success && TimeUnit.NANOSECONDS.toMillis(rtt) < slowCallMillis, System.currentTimeMillis());
+				} else {
+					circuit.onSkipped();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Time spent by a guarded call waiting for local resources (e.g. a connection to the host) after the guard:
+	 * the interceptors that wait add it to the request tag, and it is left out of the TMF latency.
+	 */
+	static final class LocalWait {
+		private volatile long nanos;
+
+		void add(long waitNanos) {
+			this.nanos += waitNanos;
+		}
+	}
+
+	/*
+	 * Count-based circuit breaker: opens when the failure rate of the last calls reaches the threshold,
+	 * then, after the open duration, lets a few trial calls through and closes if all of them succeed.
+	 */
+	static final class CircuitBreaker {
+
+		enum State {
+			CLOSED, OPEN, HALF_OPEN
+		}
+
+		private final String name;
+		private final int minCalls;
+		private final double failureRate;
+		private final long openMillis;
+		private final int halfOpenCalls;
+
+		// outcomes of the last calls (true = failed), as a ring buffer
+		private final boolean[] failed;
+		private int next;
+		private int count;
+		private int failures;
+
+		private State state = State.CLOSED;
+		private long openedAt;
+		private int trialPermits;
+		private int trialSuccesses;
+
+		CircuitBreaker(String name, int window, int minCalls, double failureRate, long openMillis, int halfOpenCalls) {
+			this.name = name;
+			this.failed = new boolean[Math.max(1, window)];
+			this.minCalls = Math.max(1, Math.min(minCalls, failed.length));
+			this.failureRate = failureRate;
+			this.openMillis = openMillis;
+			this.halfOpenCalls = Math.max(1, halfOpenCalls);
+		}
+
+		synchronized State getState() {
+			return state;
+		}
+
+		synchronized boolean isOpen(long now) {
+			return state == State.OPEN && now - openedAt < openMillis;
+		}
+
+		synchronized boolean tryAcquire(long now) {
+			if (state == State.OPEN) {
+				if (now - openedAt < openMillis) {
+					return false;
+				}
+				state = State.HALF_OPEN;
+				trialPermits = halfOpenCalls;
+				trialSuccesses = 0;
+				log.info("Circuit of {} half open: trying {} calls", name, halfOpenCalls);
+			}
+			if (state == State.HALF_OPEN) {
+				if (trialPermits == 0) {
+					return false;
+				}
+				trialPermits--;
+			}
+			return true;
+		}
+
+		/*
+		 * A call allowed but not attempted: gives back its trial permit, if any.
+		 */
+		synchronized void onSkipped() {
+			if (state == State.HALF_OPEN) {
+				trialPermits++;
+			}
+		}
+
+		synchronized void onResult(boolean success, long now) {
+			switch (state) {
+				case HALF_OPEN:
+					if (!success) {
+						this.open(now);
+					} else if (++trialSuccesses >= halfOpenCalls) {
+						this.reset(State.CLOSED);
+						log.info("Circuit of {} closed", name);
+					}
+					break;
+				case CLOSED:
+					if (count == failed.length && failed[next]) {
+						failures--;
+					}
+					failed[next] = !success;
+					if (!success) {
+						failures++;
+					}
+					next = (next + 1) % failed.length;
+					count = Math.min(count + 1, failed.length);
+					if (count >= minCalls && failures >= failureRate * count) {
+						this.open(now);
+					}
+					break;
+				default:
+					// late result of a call started before the circuit opened
+					break;
+			}
+		}
+
+		private void open(long now) {
+			log.warn("Circuit of {} open for {} ms: {} of the last {} calls failed or were slow", name, openMillis, failures, count);
+			this.reset(State.OPEN);
+			openedAt = now;
+		}
+
+		private void reset(State newState) {
+			state = newState;
+			next = 0;
+			count = 0;
+			failures = 0;
+		}
+	}
+
+	/*
+	 * AIMD concurrency limit following the latency: decreased by 10% when a call fails or is slower than
+	 * tolerance x the usual latency, increased by about one per round of calls while the calls are fast and
+	 * at least half of the limit is in use.
+	 */
+	static final class AdaptiveLimit {
+
+		private static final double BACKOFF = 0.9;
+
+		private final int min;
+		private final int max;
+		private final double tolerance;
+
+		private double limit;
+		private int inFlight;
+
+		// usual latency (nanos): moving average, quicker to follow decreases than increases
+		private double baseline;
+
+		AdaptiveLimit(int initial, int min, int max, double tolerance) {
+			this.min = Math.max(1, min);
+			this.max = Math.max(this.min, max);
+			this.limit = Math.max(this.min, Math.min(this.max, initial));
+			this.tolerance = tolerance;
+		}
+
+		synchronized int getLimit() {
+			return (int) limit;
+		}
+
+		synchronized int getInFlight() {
+			return inFlight;
+		}
+
+		/*
+		 * Waits up to maxWaitMillis (0 for no limit) for the limit.
+		 */
+		synchronized boolean acquire(long maxWaitMillis) throws InterruptedException {
+			long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+			while (inFlight >= (int) limit) {
+				if (maxWaitMillis <= 0) {
+					this.wait();
+					continue;
+				}
+				long left = deadline - System.nanoTime();
+				if (left <= 0) {
+					return false;
+				}
+				TimeUnit.NANOSECONDS.timedWait(this, left);
+			}
+			inFlight++;
+			return true;
+		}
+
+		synchronized void release(long rttNanos, boolean success, boolean sample) {
+			inFlight--;
+			if (sample) {
+				boolean slow = baseline > 0 && rttNanos > tolerance * baseline;
+				if (!success || slow) {
+					limit = Math.max(min, limit * BACKOFF);
+				} else {
+					if (inFlight + 1 >= limit / 2) {
+						limit = Math.min(max, limit + 1 / limit);
+					}
+				}
+				if (success) {
+					baseline = baseline == 0 ? rttNanos : baseline + (rttNanos < baseline ? 0.2 : 0.02) * (rttNanos - baseline);
+				}
+			}
+			this.notifyAll();
+		}
+	}
+}
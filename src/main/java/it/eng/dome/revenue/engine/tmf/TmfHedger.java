@@ -0,0 +1,382 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import it.eng.dome.revenue.engine.tmf.TmfAsyncExecutor.TmfCall;
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Response;
+
+/**
+ * Hedges the TMF point lookups (e.g. a product by id) to cut their latency tail: when a lookup has not answered
+ * within the {@code tmforumapi.hedging.percentile} of the recent latencies of the same operation, a second
+ * identical request is issued and the first successful answer is taken.
+ * <p>
+ * The lookup runs in the calling thread; only the hedge runs on a pool of at most {@code tmforumapi.hedging.threads}
+ * threads, and is skipped when they are all busy. The losing request is cancelled: its HTTP calls, tracked by
+ * {@link #interceptor()}, are aborted, and the hedge thread is interrupted. Hedges are limited by a global budget:
+ * each lookup earns {@code budget_ratio} of a hedge (up to {@code budget_burst} saved), so the extra load stays
+ * below that ratio of the lookups. A lookup failing before the hedge delay is not hedged (no retries). Until
+ * {@code min_samples} latencies are known, and when hedging is disabled, the lookup is not hedged. Issued and won
+ * hedges are published as {@code tmf.hedge.requests} and {@code tmf.hedge.wins}.
+ * </p>
+ */
+@Component(value = "tmfHedger")
+public class TmfHedger implements InitializingBean, DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(TmfHedger.class);
+
+	// the request of a hedged lookup running in the current thread
+	private static final ThreadLocal<Attempt> CURRENT = new ThreadLocal<>();
+
+	@Value("${tmforumapi.hedging.enabled:false}")
+	private boolean enabled;
+
+	@Value("${tmforumapi.hedging.percentile:0.95}")
+	private double percentile;
+
+	@Value("${tmforumapi.hedging.min_delay_ms:50}")
+	private long minDelayMillis;
+
+	// latencies kept per operation, and the latencies needed before hedging
+	@Value("${tmforumapi.hedging.window:200}")
+	private int window;
+
+	@Value("${tmforumapi.hedging.min_samples:20}")
+	private int minSamples;
+
+	@Value("${tmforumapi.hedging.budget_ratio:0.05}")
+	private double budgetRatio;
+
+	@Value("${tmforumapi.hedging.budget_burst:10}")
+	private int budgetBurst;
+
+	// max hedges running at once
+	@Value("${tmforumapi.hedging.threads:8}")
+	private int threads;
+
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+
+	private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+	private HedgeBudget budget;
+
+	private ThreadPoolExecutor executor;
+
+	// issues the hedges when their delay expires
+	private ScheduledThreadPoolExecutor timer;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		this.budget = new HedgeBudget(budgetRatio, budgetBurst);
+		if (!enabled) {
+			log.info("TMF lookup hedging disabled");
+			return;
+		}
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executor = new ThreadPoolExecutor(0, Math.max(1, threads), 60, TimeUnit.SECONDS, new SynchronousQueue<>(), r -> {
+			Thread t = new Thread(r, "tmf-hedge-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+		this.timer = new ScheduledThreadPoolExecutor(1, r -> {
+			Thread t = new Thread(r, "tmf-hedge-timer");
+			t.setDaemon(true);
+			return t;
+		});
+		timer.setRemoveOnCancelPolicy(true);
+		log.info("TMF lookup hedging at the {} latency percentile (min {} ms), budget {} of the lookups, max {} hedges at once",
+				percentile, minDelayMillis, budgetRatio, threads);
+	}
+
+	@Override
+	public void destroy() {
+		if (timer != null) {
+			timer.shutdownNow();
+		}
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the interceptor tracking the HTTP calls of the hedged lookups, so that the losing ones can be cancelled
+	 */
+	public Interceptor interceptor() {
+		return TmfHedger::track;
+	}
+
+	private static Response track(Interceptor.Chain chain) throws IOException {
+		Attempt attempt = CURRENT.get();
+		if (attempt != null) {
+			attempt.track(chain.call());
+		}
+		return chain.proceed(chain.request());
+	}
+
+	/**
+	 * Runs a TMF point lookup, hedging it if it is slow.
+	 *
+	 * @param operation the name of the lookup (e.g. "TMF637.getProduct"), whose latencies decide the hedge delay
+	 * @param call      the lookup, which must be idempotent
+	 * @return the result of the first successful request
+	 * @throws Exception the exception thrown by the lookup (the first one, if both requests fail)
+	 */
+	public <T> T call(String operation, TmfCall<T> call) throws Exception {
+		if (!enabled) {
+			return call.call();
+		}
+		LatencyWindow latency = latencies.computeIfAbsent(operation, k -> new LatencyWindow(window));
+		budget.deposit();
+		long delay = latency.getDelay();
+		if (delay < 0) {
+			long start = System.nanoTime();
+			T result = call.call();
+			latency.record(System.nanoTime() - start, percentile, minSamples, minDelayMillis);
+			return result;
+		}
+
+		Attempts<T> attempts = new Attempts<>();
+		TmfTrafficClass traffic = TmfTrafficClass.current();
+		long start = System.nanoTime();
+		ScheduledFuture<?> hedge = timer.schedule(() -> this.hedge(operation, delay, attempts, call, traffic),
+				delay, TimeUnit.MILLISECONDS);
+		try {
+			this.run(attempts, attempts.primary, call);
+		} finally {
+			hedge.cancel(false);
+		}
+		try {
+			T result = attempts.result.get();
+			// one sample per lookup, as seen by the caller: when the hedge wins, this is the primary latency
+			// censored at that time (the slow primary latencies would otherwise never be recorded)
+			latency.record(attempts.completedAt - start, percentile, minSamples, minDelayMillis);
+			if (attempts.winner == attempts.hedge) {
+				this.count("tmf.hedge.wins", operation);
+			}
+			return result;
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw (Error) cause;
+		}
+	}
+
+	/*
+	 * Issues the hedge of a lookup still running, if the budget and the pool allow it.
+	 */
+	private <T> void hedge(String operation, long delay, Attempts<T> attempts, TmfCall<T> call, TmfTrafficClass traffic) {
+		if (attempts.result.isDone() || !budget.tryWithdraw()) {
+			return;
+		}
+		Attempt attempt = attempts.startHedge();
+		if (attempt == null) {
+			return; // completed meanwhile
+		}
+		try {
+			attempt.future = executor.submit(() -> traffic.run(() -> this.run(attempts, attempt, call)));
+			log.debug("Hedging {} after {} ms", operation, delay);
+			this.count("tmf.hedge.requests", operation);
+		} catch (RejectedExecutionException e) {
+			log.debug("Not hedging {}: all the {} hedge threads busy", operation, threads);
+			attempts.failed(attempt, null);
+		}
+	}
+
+	/*
+	 * Runs a request of a lookup in the current thread, tracking its HTTP calls.
+	 */
+	private <T> void run(Attempts<T> attempts, Attempt attempt, TmfCall<T> call) {
+		CURRENT.set(attempt);
+		try {
+			T value = call.call();
+			attempts.succeeded(attempt, value);
+		} catch (Throwable e) {
+			attempts.failed(attempt, e);
+		} finally {
+			CURRENT.remove();
+		}
+	}
+
+	private void count(String name, String operation) {
+		if (meterRegistry != null) {
+			meterRegistry.counter(name, "operation", operation).increment();
+		}
+	}
+
+	/*
+	 * A request of a lookup: its HTTP calls and, for a hedge, its task, cancelled if it loses.
+	 */
+	static final class Attempt {
+		private final List<Call> calls = new ArrayList<>();
+		private boolean cancelled;
+		volatile Future<?> future;
+
+		synchronized void track(Call call) {
+			if (cancelled) {
+				call.cancel();
+			} else {
+				calls.add(call);
+			}
+		}
+
+		void cancel() {
+			synchronized (this) {
+				cancelled = true;
+				calls.forEach(Call::cancel);
+			}
+			Future<?> task = future;
+			if (task != null) {
+				task.cancel(true);
+			}
+		}
+	}
+
+	/*
+	 * The requests of a lookup: completed by the first success, cancelling the other request, or by the first
+	 * failure once all the requests failed.
+	 */
+	private static final class Attempts<T> {
+		final CompletableFuture<T> result = new CompletableFuture<>();
+		final Attempt primary = new Attempt();
+		Attempt hedge;
+		Attempt winner;
+		// nanoTime of the first success
+		volatile long completedAt;
+		private int pending = 1;
+		private Throwable failure;
+
+		synchronized Attempt startHedge() {
+			if (result.isDone()) {
+				return null;
+			}
+			pending++;
+			hedge = new Attempt();
+			return hedge;
+		}
+
+		void succeeded(Attempt attempt, T value) {
+			Attempt loser;
+			synchronized (this) {
+				if (winner != null) {
+					return;
+				}
+				winner = attempt;
+				loser = attempt == primary ? hedge : primary;
+				completedAt = System.nanoTime();
+			}
+			result.complete(value);
+			if (loser != null) {
+				loser.cancel();
+			}
+		}
+
+		// a null error for a hedge never started
+		synchronized void failed(Attempt attempt, Throwable e) {
+			if (failure == null && e != null) {
+				failure = e;
+			}
+			if (--pending == 0 && winner == null) {
+				result.completeExceptionally(failure);
+			}
+		}
+	}
+
+	/*
+	 * The last latencies of an operation, and the hedge delay computed from them (every few samples).
+	 */
+	static final class LatencyWindow {
+
+		private static final int UPDATE_EVERY = 10;
+
+		private final long[] samples;
+		private int next;
+		private int count;
+		private int sinceUpdate;
+		private volatile long delay = -1;
+
+		LatencyWindow(int size) {
+			this.samples = new long[Math.max(1, size)];
+		}
+
+		long getDelay() {
+			return delay;
+		}
+
+		// the samples kept, oldest first once the window is full
+		synchronized long[] getSamples() {
+			long[] kept = new long[count];
+			for (int i = 0; i < count; i++) {
+				kept[i] = samples[(next - count + i + samples.length) % samples.length];
+			}
+			return kept;
+		}
+
+		synchronized void record(long nanos, double percentile, int minSamples, long minDelayMillis) {
+			samples[next] = nanos;
+			next = (next + 1) % samples.length;
+			count = Math.min(count + 1, samples.length);
+			if (count < Math.min(minSamples, samples.length) || (++sinceUpdate < UPDATE_EVERY && delay >= 0)) {
+				return;
+			}
+			sinceUpdate = 0;
+			long[] sorted = Arrays.copyOf(samples, count);
+			Arrays.sort(sorted);
+			int index = Math.min(count - 1, Math.max(0, (int) Math.ceil(percentile * count) - 1));
+			delay = Math.max(minDelayMillis, TimeUnit.NANOSECONDS.toMillis(sorted[index]));
+		}
+	}
+
+	/*
+	 * Token bucket of the hedges: each lookup adds a fraction of a hedge, each hedge takes one.
+	 */
+	static final class HedgeBudget {
+		private final double ratio;
+		private final double burst;
+		private double tokens;
+
+		HedgeBudget(double ratio, int burst) {
+			this.ratio = ratio;
+			this.burst = Math.max(1, burst);
+		}
+
+		synchronized void deposit() {
+			tokens = Math.min(burst, tokens + ratio);
+		}
+
+		synchronized boolean tryWithdraw() {
+			if (tokens < 1) {
+				return false;
+			}
+			tokens -= 1;
+			return true;
+		}
+	}
+}
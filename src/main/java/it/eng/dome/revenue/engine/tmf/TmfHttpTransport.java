@@ -0,0 +1,193 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import it.eng.dome.revenue.engine.tmf.TmfPageFetcher.TmfApi;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+/**
+ * The HTTP transport shared by all the TMF API clients: a single keep-alive connection pool, per-host connection
+ * limits, response compression and the connect/read/idle timeouts of {@code tmforumapi.http}.
+ * <p>
+ * The TMF SDK clients are OkHttp based: {@link #configure} derives each client from the SDK one (keeping its
+ * interceptors) so that all of them reuse the same pooled connections instead of each opening its own.
+ * Gzip is negotiated (and the responses decompressed) transparently by OkHttp; with compression disabled the
+ * responses are requested uncompressed. The calls of each TMF API also go through its {@link TmfCallGuard}, are
+ * tracked by the {@link TmfHedger} (to cancel the losing requests), and are answered by the {@link TmfOfflineBackend}
+ * when it is enabled.
+ * </p>
+ */
+@Component(value = "tmfHttpTransport")
+public class TmfHttpTransport implements InitializingBean, DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(TmfHttpTransport.class);
+
+	@Value("${tmforumapi.http.connect_timeout:10}")
+	private int connectTimeout;
+
+	// how long an unused connection is kept alive in the pool
+	@Value("${tmforumapi.http.idle_timeout:300}")
+	private int idleTimeout;
+
+	@Value("${tmforumapi.http.max_idle_connections:32}")
+	private int maxIdleConnections;
+
+	// max requests in flight (i.e. connections in use) towards a single host
+	@Value("${tmforumapi.http.max_connections_per_host:16}")
+	private int maxConnectionsPerHost;
+
+	@Value("${tmforumapi.http.compression:true}")
+	private boolean compression;
+
+	@Autowired
+	private TmfCallGuard callGuard;
+
+	@Autowired
+	private TmfOfflineBackend offlineBackend;
+
+	@Autowired
+	private TmfHedger hedger;
+
+	private ConnectionPool connectionPool;
+
+	private final Map<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		this.connectionPool = new ConnectionPool(Math.max(1, maxIdleConnections), Math.max(1, idleTimeout), TimeUnit.SECONDS);
+		log.info("TMF HTTP transport: connect timeout {}s, keep-alive {}s, max {} idle connections, max {} connections per host, compression {}",
+				connectTimeout, idleTimeout, maxIdleConnections, maxConnectionsPerHost, compression);
+	}
+
+	@Override
+	public void destroy() {
+		if (connectionPool != null) {
+			connectionPool.evictAll();
+		}
+	}
+
+	/**
+	 * Returns a client with the same settings and interceptors of the given one, on the shared transport.
+	 *
+	 * @param client      the client of a TMF ApiClient
+	 * @param api         the TMF API of the client
+	 * @param readTimeout the read timeout, in seconds
+	 * @return the client to set back in the ApiClient
+	 */
+	public OkHttpClient configure(OkHttpClient client, TmfApi api, int readTimeout) {
+		OkHttpClient.Builder builder = (client != null ? client.newBuilder() : new OkHttpClient.Builder())
+				.connectionPool(connectionPool)
+				.connectTimeout(connectTimeout, TimeUnit.SECONDS)
+				.readTimeout(readTimeout, TimeUnit.SECONDS)
+				.retryOnConnectionFailure(true)
+				.addInterceptor(hedger.interceptor())
+				.addInterceptor(callGuard.interceptor(api))
+				.addInterceptor(this::limitPerHost);
+		if (!compression) {
+			builder.addInterceptor(chain -> chain.proceed(chain.request().newBuilder().header("Accept-Encoding", "identity").build()));
+		}
+		if (offlineBackend.isEnabled()) {
+			// last: answers in place of TMF
+			builder.addInterceptor(offlineBackend);
+		}
+		return builder.build();
+	}
+
+	/*
+	 * Holds a permit of the request host until the response body is closed, i.e. while the connection is in use.
+	 * The wait is bounded by the read timeout (a body never closed would otherwise block the host for good), and
+	 * reported to the guard, so that it is not taken as TMF latency.
+	 */
+	private Response limitPerHost(Interceptor.Chain chain) throws IOException {
+		String host = chain.request().url().host();
+		Semaphore permits = hostPermits.computeIfAbsent(host, h -> new Semaphore(Math.max(1, maxConnectionsPerHost), true));
+		long start = System.nanoTime();
+		try {
+			if (!permits.tryAcquire(chain.readTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+				throw new TmfUnavailableException("No connection to " + host + " available within " + chain.readTimeoutMillis() + " ms");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for a connection to " + host);
+		} finally {
+			TmfCallGuard.LocalWait wait = chain.request().tag(TmfCallGuard.LocalWait.class);
+			if (wait != null) {
+				wait.add(System.nanoTime() - start);
+			}
+		}
+		Response response;
+		try {
+			response = chain.proceed(chain.request());
+		} catch (IOException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+		if (response.body() == null) {
+			permits.release();
+			return response;
+		}
+		return response.newBuilder().body(new ReleasingBody(response.body(), permits)).build();
+	}
+
+	/*
+	 * Response body releasing the host permit (once) when closed.
+	 */
+	private static final class ReleasingBody extends ResponseBody {
+		private final ResponseBody delegate;
+		private final BufferedSource source;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		ReleasingBody(ResponseBody delegate, Semaphore permits) {
+			this.delegate = delegate;
+			this.source = Okio.buffer(new ForwardingSource(delegate.source()) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						if (released.compareAndSet(false, true)) {
+							permits.release();
+						}
+					}
+				}
+			});
+		}
+
+		@Override
+		public MediaType contentType() {
+			return delegate.contentType();
+		}
+
+		@Override
+		public long contentLength() {
+			return delegate.contentLength();
+		}
+
+		@Override
+		public BufferedSource source() {
+			return source;
+		}
+	}
+}
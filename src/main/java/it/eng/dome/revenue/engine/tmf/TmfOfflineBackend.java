@@ -0,0 +1,271 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import okhttp3.HttpUrl;
+import okhttp3.Interceptor;
+import okhttp3.MediaType;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+
+/**
+ * Serves all the TMF calls from an in-memory dataset ({@link TmfOfflineStore}) instead of TMF, to run the whole
+ * engine (statements, bills, persistence) reproducibly and without network, e.g. for profiling and load tests.
+ * <p>
+ * When {@code tmforumapi.offline.enabled}, the {@link TmfHttpTransport} answers every TMF request through this
+ * interceptor, so the TMF clients, caches and services work unchanged. The dataset is loaded at startup from the
+ * JSON files under {@code tmforumapi.offline.path} ({@code <resource>.json} or {@code <resource>/*.json}, each with
+ * an entity or an array of entities) and completed with the synthetic data of {@code tmforumapi.offline.synthetic}.
+ * Reads support the fields, offset, limit and filter parameters; creations, updates and deletions change the dataset
+ * (in memory only). An optional latency simulates the TMF response time.
+ * </p>
+ */
+@Component(value = "tmfOfflineBackend")
+public class TmfOfflineBackend implements InitializingBean, Interceptor {
+
+	private static final Logger log = LoggerFactory.getLogger(TmfOfflineBackend.class);
+
+	private static final MediaType JSON = MediaType.get("application/json");
+
+	private static final Set<String> QUERY_PARAMETERS = Set.of("fields", "offset", "limit", "sort");
+
+	// names of the folders of data/catalogue that are not TMF resource names
+	private static final Map<String, String> ALIASES = Map.of(
+			"offering", "productOffering",
+			"price", "productOfferingPrice",
+			"specification", "productSpecification",
+			"service", "serviceSpecification",
+			"bill", "customerBill");
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	@Value("${tmforumapi.offline.enabled:false}")
+	private boolean enabled;
+
+	// location of the JSON files (e.g. file:./dataset or classpath:data/catalogue), none if empty
+	@Value("${tmforumapi.offline.path:}")
+	private String path;
+
+	@Value("${tmforumapi.offline.latency_ms:0}")
+	private long latencyMillis;
+
+	@Value("${tmforumapi.offline.synthetic.organizations:0}")
+	private int syntheticOrganizations;
+
+	@Value("${tmforumapi.offline.synthetic.subscriptions:0}")
+	private int syntheticSubscriptions;
+
+	@Value("${tmforumapi.offline.synthetic.bills_per_subscription:12}")
+	private int syntheticBillsPerSubscription;
+
+	@Value("${tmforumapi.offline.synthetic.seed:42}")
+	private long syntheticSeed;
+
+	@Value("${tmforumapi.offline.synthetic.plan_start:2025-01-01T00:00:00Z}")
+	private String syntheticPlanStart;
+
+	@Value("${tmforumapi.offline.synthetic.plan_link:https://raw.githubusercontent.com/DOME-Marketplace/revenue-engine/main/src/main/resources/data/plans/2025-basic.json}")
+	private String syntheticPlanLink;
+
+	private final TmfOfflineStore store = new TmfOfflineStore();
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		if (!enabled) {
+			return;
+		}
+		long start = System.currentTimeMillis();
+		if (path != null && !path.isBlank()) {
+			this.load(path);
+		}
+		if (syntheticOrganizations > 0) {
+			new TmfSyntheticDataGenerator(store, syntheticSeed).generate(syntheticOrganizations, syntheticSubscriptions,
+					syntheticBillsPerSubscription, OffsetDateTime.parse(syntheticPlanStart), syntheticPlanLink);
+		}
+		log.warn("TMF OFFLINE: all the TMF calls are served from the in-memory dataset {} (loaded in {} ms)",
+				store.getSizes(), System.currentTimeMillis() - start);
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public TmfOfflineStore getStore() {
+		return store;
+	}
+
+	/**
+	 * Loads the JSON files under the location into the dataset.
+	 */
+	public void load(String location) throws IOException {
+		PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
+		String base = resolver.getResource(location).getURL().toString().replaceAll("/+$", "");
+		for (Resource file : resolver.getResources(location.replaceAll("/+$", "") + "/**/*.json")) {
+			String url = file.getURL().toString();
+			String relative = url.startsWith(base) ? url.substring(base.length() + 1) : file.getFilename();
+			String[] parts = relative.split("/");
+			String name = parts.length > 1 ? parts[parts.length - 2] : parts[0].replaceAll("\\.json$", "");
+			name = ALIASES.getOrDefault(name, name);
+			try (InputStream is = file.getInputStream()) {
+				JsonNode json = MAPPER.readTree(is);
+				int count = 0;
+				for (JsonNode entity : json.isArray() ? json : List.of(json)) {
+					if (entity.isObject()) {
+						store.put(name, (ObjectNode) entity);
+						count++;
+					}
+				}
+				log.debug("Loaded {} {} from {}", count, name, relative);
+			}
+		}
+	}
+
+	@Override
+	public Response intercept(Chain chain) throws IOException {
+		Request request = chain.request();
+		if (latencyMillis > 0) {
+			try {
+				Thread.sleep(latencyMillis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted simulating the TMF latency");
+			}
+		}
+
+		// .../v4/<resource>[/<id>]
+		List<String> segments = request.url().pathSegments();
+		int version = segments.size() - 1;
+		while (version >= 0 && !segments.get(version).matches("v\\d+")) {
+			version--;
+		}
+		if (version < 0 || version + 1 >= segments.size()) {
+			return this.respond(request, 404, error(404, "Unknown TMF resource " + request.url().encodedPath()));
+		}
+		String resource = segments.get(version + 1);
+		String id = version + 2 < segments.size() ? segments.get(version + 2) : null;
+
+		switch (request.method()) {
+			case "GET":
+				return id != null ? this.get(request, resource, id) : this.list(request, resource);
+			case "POST": {
+				ObjectNode created = store.put(resource, readBody(request));
+				return this.respond(request, 201, created);
+			}
+			case "PATCH": {
+				ObjectNode updated = id != null ? store.patch(resource, id, readBody(request)) : null;
+				return updated != null ? this.respond(request, 200, updated) : this.respond(request, 404, error(404, resource + " " + id + " not found"));
+			}
+			case "DELETE":
+				return id != null && store.remove(resource, id) ? this.respond(request, 204, null)
+						: this.respond(request, 404, error(404, resource + " " + id + " not found"));
+			default:
+				return this.respond(request, 405, error(405, request.method() + " not supported"));
+		}
+	}
+
+	private Response get(Request request, String resource, String id) {
+		ObjectNode entity = store.get(resource, id);
+		if (entity == null) {
+			return this.respond(request, 404, error(404, resource + " " + id + " not found"));
+		}
+		return this.respond(request, 200, project(entity, request.url().queryParameter("fields")));
+	}
+
+	private Response list(Request request, String resource) {
+		HttpUrl url = request.url();
+		Map<String, String> filter = new LinkedHashMap<>();
+		for (String name : url.queryParameterNames()) {
+			if (!QUERY_PARAMETERS.contains(name)) {
+				filter.put(name, url.queryParameter(name));
+			}
+		}
+		List<ObjectNode> matching = store.find(resource, filter);
+		int offset = Math.max(0, parseInt(url.queryParameter("offset"), 0));
+		int limit = Math.max(0, parseInt(url.queryParameter("limit"), matching.size()));
+		String fields = url.queryParameter("fields");
+
+		ArrayNode page = MAPPER.createArrayNode();
+		for (int i = offset; i < Math.min(matching.size(), offset + limit); i++) {
+			page.add(project(matching.get(i), fields));
+		}
+		return this.respond(request, 200, page).newBuilder()
+				.header("X-Total-Count", String.valueOf(matching.size()))
+				.header("X-Result-Count", String.valueOf(page.size()))
+				.build();
+	}
+
+	private Response respond(Request request, int code, JsonNode body) {
+		return new Response.Builder()
+				.request(request)
+				.protocol(Protocol.HTTP_1_1)
+				.code(code)
+				.message(code < 300 ? "OK" : "Error")
+				.body(ResponseBody.create(body != null ? body.toString() : "", JSON))
+				.build();
+	}
+
+	/*
+	 * The entity with only the requested attributes (plus id, href and @type), as with the TMF fields parameter.
+	 */
+	private static JsonNode project(ObjectNode entity, String fields) {
+		if (fields == null || fields.isBlank()) {
+			return entity;
+		}
+		ObjectNode projected = MAPPER.createObjectNode();
+		for (String field : ("id,href,@type," + fields).split(",")) {
+			String attribute = field.trim().split("\\.")[0];
+			if (entity.has(attribute)) {
+				projected.set(attribute, entity.get(attribute));
+			}
+		}
+		return projected;
+	}
+
+	private static ObjectNode readBody(Request request) throws IOException {
+		if (request.body() == null) {
+			return MAPPER.createObjectNode();
+		}
+		Buffer buffer = new Buffer();
+		request.body().writeTo(buffer);
+		JsonNode json = MAPPER.readTree(buffer.readUtf8());
+		if (!json.isObject()) {
+			throw new IOException("Expected a JSON object in the " + request.method() + " " + request.url().encodedPath());
+		}
+		return (ObjectNode) json;
+	}
+
+	private static ObjectNode error(int code, String reason) {
+		return MAPPER.createObjectNode().put("code", String.valueOf(code)).put("reason", reason);
+	}
+
+	private static int parseInt(String value, int defaultValue) {
+		try {
+			return value != null ? Integer.parseInt(value) : defaultValue;
+		} catch (NumberFormatException e) {
+			return defaultValue;
+		}
+	}
+}
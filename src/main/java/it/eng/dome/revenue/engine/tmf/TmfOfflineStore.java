@@ -0,0 +1,331 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * In-memory TMF dataset served by the {@link TmfOfflineBackend}: the entities of each TMF resource (e.g.
+ * "organization", "customerBill") by id, in insertion order.
+ * <p>
+ * List queries follow the TMF filtering used by the engine: {@code path=value[,value...]} matches the entities with
+ * any of the values at the (dot separated) attribute path, looking into arrays; {@code path.gt/.lt/.gte/.lte=value}
+ * compares dates, numbers or strings. The equality filters are answered through per-attribute indexes, built on first
+ * use and dropped when the resource changes.
+ * </p>
+ */
+public class TmfOfflineStore {
+
+	private static final Set<String> COMPARISONS = Set.of("gt", "lt", "gte", "lte");
+
+	private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+
+	/*
+	 * The entities of a resource, and its indexes (attribute path -> value -> entities).
+	 */
+	private static final class Resource {
+		final Map<String, ObjectNode> byId = new LinkedHashMap<>();
+		final Map<String, Map<String, List<ObjectNode>>> indexes = new HashMap<>();
+		final ReadWriteLock lock = new ReentrantReadWriteLock();
+	}
+
+	private Resource resource(String name) {
+		return resources.computeIfAbsent(name, k -> new Resource());
+	}
+
+	/**
+	 * @return the name of the resources with at least an entity, and their size
+	 */
+	public Map<String, Integer> getSizes() {
+		Map<String, Integer> sizes = new LinkedHashMap<>();
+		resources.forEach((name, resource) -> {
+			resource.lock.readLock().lock();
+			try {
+				if (!resource.byId.isEmpty()) {
+					sizes.put(name, resource.byId.size());
+				}
+			} finally {
+				resource.lock.readLock().unlock();
+			}
+		});
+		return sizes;
+	}
+
+	/**
+	 * Adds (or replaces) an entity, assigning it an id (and href) if it has none.
+	 *
+	 * @return the stored entity
+	 */
+	public ObjectNode put(String resourceName, ObjectNode entity) {
+		if (!entity.hasNonNull("id")) {
+			entity.put("id", newId(resourceName));
+		}
+		if (!entity.hasNonNull("href")) {
+			entity.put("href", entity.get("id").asText());
+		}
+		Resource resource = this.resource(resourceName);
+		resource.lock.writeLock().lock();
+		try {
+			resource.byId.put(entity.get("id").asText(), entity);
+			resource.indexes.clear();
+		} finally {
+			resource.lock.writeLock().unlock();
+		}
+		return entity;
+	}
+
+	/**
+	 * Merges the given attributes into an entity (top level attributes are replaced).
+	 *
+	 * @return the updated entity, or null if not found
+	 */
+	public ObjectNode patch(String resourceName, String id, ObjectNode changes) {
+		Resource resource = this.resource(resourceName);
+		resource.lock.writeLock().lock();
+		try {
+			ObjectNode current = resource.byId.get(id);
+			if (current == null) {
+				return null;
+			}
+			ObjectNode updated = current.deepCopy();
+			updated.setAll(changes);
+			updated.put("id", id);
+			resource.byId.put(id, updated);
+			resource.indexes.clear();
+			return updated;
+		} finally {
+			resource.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * @return true if the entity was removed
+	 */
+	public boolean remove(String resourceName, String id) {
+		Resource resource = this.resource(resourceName);
+		resource.lock.writeLock().lock();
+		try {
+			boolean removed = resource.byId.remove(id) != null;
+			if (removed) {
+				resource.indexes.clear();
+			}
+			return removed;
+		} finally {
+			resource.lock.writeLock().unlock();
+		}
+	}
+
+	public ObjectNode get(String resourceName, String id) {
+		Resource resource = this.resource(resourceName);
+		resource.lock.readLock().lock();
+		try {
+			return resource.byId.get(id);
+		} finally {
+			resource.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * @param filter the filters of the query (attribute path, with optional comparison suffix, to value)
+	 * @return all the matching entities, in insertion order
+	 */
+	public List<ObjectNode> find(String resourceName, Map<String, String> filter) {
+		Resource resource = this.resource(resourceName);
+
+		// the first equality filter selects the candidates through its index
+		String indexed = null;
+		for (String key : filter.keySet()) {
+			if (!COMPARISONS.contains(suffix(key))) {
+				indexed = key;
+				break;
+			}
+		}
+
+		Collection<ObjectNode> candidates;
+		if (indexed == null) {
+			resource.lock.readLock().lock();
+			try {
+				candidates = new ArrayList<>(resource.byId.values());
+			} finally {
+				resource.lock.readLock().unlock();
+			}
+		} else {
+			Map<String, List<ObjectNode>> index = this.index(resource, indexed);
+			String[] values = filter.get(indexed).split(",");
+			if (values.length == 1) {
+				candidates = index.getOrDefault(values[0], List.of());
+			} else {
+				// the alternatives are merged back in insertion order
+				Set<String> selected = new HashSet<>();
+				for (String value : values) {
+					for (ObjectNode entity : index.getOrDefault(value, List.of())) {
+						selected.add(entity.get("id").asText());
+					}
+				}
+				candidates = new ArrayList<>(selected.size());
+				resource.lock.readLock().lock();
+				try {
+					for (Map.Entry<String, ObjectNode> entry : resource.byId.entrySet()) {
+						if (selected.contains(entry.getKey())) {
+							candidates.add(entry.getValue());
+						}
+					}
+				} finally {
+					resource.lock.readLock().unlock();
+				}
+			}
+		}
+
+		List<ObjectNode> matching = new ArrayList<>();
+		for (ObjectNode entity : candidates) {
+			if (matches(entity, filter, indexed)) {
+				matching.add(entity);
+			}
+		}
+		return matching;
+	}
+
+	private Map<String, List<ObjectNode>> index(Resource resource, String path) {
+		resource.lock.readLock().lock();
+		try {
+			Map<String, List<ObjectNode>> index = resource.indexes.get(path);
+			if (index != null) {
+				return index;
+			}
+		} finally {
+			resource.lock.readLock().unlock();
+		}
+		resource.lock.writeLock().lock();
+		try {
+			return resource.indexes.computeIfAbsent(path, p -> {
+				Map<String, List<ObjectNode>> built = new HashMap<>();
+				for (ObjectNode entity : resource.byId.values()) {
+					for (String value : values(entity, p)) {
+						List<ObjectNode> entities = built.computeIfAbsent(value, v -> new ArrayList<>(1));
+						if (entities.isEmpty() || entities.get(entities.size() - 1) != entity) {
+							entities.add(entity);
+						}
+					}
+				}
+				return built;
+			});
+		} finally {
+			resource.lock.writeLock().unlock();
+		}
+	}
+
+	private static boolean matches(ObjectNode entity, Map<String, String> filter, String skip) {
+		for (Map.Entry<String, String> f : filter.entrySet()) {
+			if (f.getKey().equals(skip)) {
+				continue;
+			}
+			String op = suffix(f.getKey());
+			if (COMPARISONS.contains(op)) {
+				String path = f.getKey().substring(0, f.getKey().length() - op.length() - 1);
+				if (!anyCompares(values(entity, path), f.getValue(), op)) {
+					return false;
+				}
+			} else {
+				List<String> values = values(entity, f.getKey());
+				boolean found = false;
+				for (String accepted : f.getValue().split(",")) {
+					if (values.contains(accepted)) {
+						found = true;
+						break;
+					}
+				}
+				if (!found) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private static boolean anyCompares(List<String> values, String bound, String op) {
+		for (String value : values) {
+			int cmp = compare(value, bound);
+			boolean ok = switch (op) {
+				case "gt" -> cmp > 0;
+				case "gte" -> cmp >= 0;
+				case "lt" -> cmp < 0;
+				default -> cmp <= 0;
+			};
+			if (ok) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static int compare(String value, String bound) {
+		try {
+			return OffsetDateTime.parse(value).compareTo(OffsetDateTime.parse(bound));
+		} catch (DateTimeParseException e) {
+			// not dates
+		}
+		try {
+			return new BigDecimal(value).compareTo(new BigDecimal(bound));
+		} catch (NumberFormatException e) {
+			return value.compareTo(bound);
+		}
+	}
+
+	/*
+	 * The scalar values at the attribute path, looking into the arrays along the path.
+	 */
+	static List<String> values(JsonNode node, String path) {
+		List<String> out = new ArrayList<>();
+		collect(node, path.split("\\."), 0, out);
+		return out;
+	}
+
+	private static void collect(JsonNode node, String[] path, int depth, List<String> out) {
+		if (node == null || node.isNull() || node.isMissingNode()) {
+			return;
+		}
+		if (node.isArray()) {
+			for (Iterator<JsonNode> it = node.elements(); it.hasNext();) {
+				collect(it.next(), path, depth, out);
+			}
+		} else if (depth == path.length) {
+			if (node.isValueNode()) {
+				out.add(node.asText());
+			}
+		} else if (node.isObject()) {
+			collect(node.get(path[depth]), path, depth + 1, out);
+		}
+	}
+
+	private static String suffix(String key) {
+		int dot = key.lastIndexOf('.');
+		return dot < 0 ? "" : key.substring(dot + 1);
+	}
+
+	static String newId(String resourceName) {
+		return newId(resourceName, UUID.randomUUID());
+	}
+
+	/**
+	 * @return a DOME style id, e.g. urn:ngsi-ld:customer-bill:uuid for the customerBill resource
+	 */
+	static String newId(String resourceName, UUID uuid) {
+		return "urn:ngsi-ld:" + resourceName.replaceAll("([a-z])([A-Z])", "$1-$2").toLowerCase() + ":" + uuid;
+	}
+}
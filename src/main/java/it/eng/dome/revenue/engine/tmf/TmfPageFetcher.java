@@ -0,0 +1,148 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import it.eng.dome.revenue.engine.utils.TMFApiUtils;
+import it.eng.dome.revenue.engine.utils.TMFApiUtils.TMFFetcher;
+
+/**
+ * Fetches TMF lists keeping several pages in flight at once (see {@link TMFApiUtils#fetchByBatchParallel}).
+ * The number of concurrent page requests is also capped per TMF API, across all the scans running at the same time,
+ * so that parallel paging does not overload a single TMF component.
+ */
+@Component(value = "tmfPageFetcher")
+public class TmfPageFetcher implements InitializingBean, DisposableBean {
+
+	private static final Logger log = LoggerFactory.getLogger(TmfPageFetcher.class);
+
+	/**
+	 * The TMF APIs whose list requests are capped independently.
+	 */
+	public enum TmfApi {
+		TMF620, TMF629, TMF632, TMF637, TMF651, TMF678
+	}
+
+	// max number of pages in flight for a single scan
+	@Value("${tmforumapi.paging.windows:4}")
+	private int windows;
+
+	@Value("${tmforumapi.paging.max_concurrency.tmf620:4}")
+	private int tmf620MaxConcurrency;
+
+	@Value("${tmforumapi.paging.max_concurrency.tmf629:4}")
+	private int tmf629MaxConcurrency;
+
+	@Value("${tmforumapi.paging.max_concurrency.tmf632:4}")
+	private int tmf632MaxConcurrency;
+
+	@Value("${tmforumapi.paging.max_concurrency.tmf637:4}")
+	private int tmf637MaxConcurrency;
+
+	@Value("${tmforumapi.paging.max_concurrency.tmf651:4}")
+	private int tmf651MaxConcurrency;
+
+	@Value("${tmforumapi.paging.max_concurrency.tmf678:8}")
+	private int tmf678MaxConcurrency;
+
+	// threads fetching the pages ahead, shared by all the scans
+	@Value("${tmforumapi.paging.threads:16}")
+	private int threads;
+
+	private final Map<TmfApi, Semaphore> permits = new EnumMap<>(TmfApi.class);
+
+	private ExecutorService executor;
+
+	@Override
+	public void afterPropertiesSet() throws Exception {
+		permits.put(TmfApi.TMF620, new Semaphore(Math.max(1, tmf620MaxConcurrency), true));
+		permits.put(TmfApi.TMF629, new Semaphore(Math.max(1, tmf629MaxConcurrency), true));
+		permits.put(TmfApi.TMF632, new Semaphore(Math.max(1, tmf632MaxConcurrency), true));
+		permits.put(TmfApi.TMF637, new Semaphore(Math.max(1, tmf637MaxConcurrency), true));
+		permits.put(TmfApi.TMF651, new Semaphore(Math.max(1, tmf651MaxConcurrency), true));
+		permits.put(TmfApi.TMF678, new Semaphore(Math.max(1, tmf678MaxConcurrency), true));
+
+		// bounded: when all the threads are busy and the queue is full, the scan fetches the page itself
+		int size = Math.max(1, threads);
+		AtomicInteger threadCount = new AtomicInteger();
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(size, size, 60, TimeUnit.SECONDS, new ArrayBlockingQueue<>(size * 4), r -> {
+			Thread t = new Thread(r, "tmf-page-" + threadCount.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		}, new ThreadPoolExecutor.CallerRunsPolicy());
+		pool.allowCoreThreadTimeOut(true);
+		this.executor = pool;
+		log.info("TMF parallel paging with {} windows on {} threads, max concurrency {}", windows, size, permits);
+	}
+
+	@Override
+	public void destroy() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Fetches all the items of a TMF list, returned in offset order.
+	 *
+	 * @param api      the TMF API being called, used to cap its concurrent requests
+	 * @param fetcher  the list method of the API
+	 * @param fields   optional fields to fetch
+	 * @param filter   optional map of query filters
+	 * @param pageSize max items per page
+	 * @return all the items fetched
+	 * @throws Exception if any API call fails
+	 */
+	public <T> List<T> fetchAll(TmfApi api, TMFFetcher<T> fetcher, String fields, Map<String, String> filter, int pageSize) throws Exception {
+		return TMFApiUtils.fetchAllParallel(this.capped(api, fetcher), fields, pageSize, filter, windows, executor);
+	}
+
+	/**
+	 * Fetches the items of a TMF list passing them, in offset order, to the consumer.
+	 *
+	 * @param api      the TMF API being called, used to cap its concurrent requests
+	 * @param fetcher  the list method of the API
+	 * @param fields   optional fields to fetch
+	 * @param filter   optional map of query filters
+	 * @param pageSize max items per page
+	 * @param consumer consumer of each item
+	 * @throws Exception if any API call or the consumer fails
+	 */
+	public <T> void fetchByBatch(TmfApi api, TMFFetcher<T> fetcher, String fields, Map<String, String> filter, int pageSize,
+			Consumer<T> consumer) throws Exception {
+		TMFApiUtils.fetchByBatchParallel(this.capped(api, fetcher), fields, pageSize, filter, windows, executor, batch -> {
+			batch.forEach(consumer);
+			return true;
+		});
+	}
+
+	private <T> TMFFetcher<T> capped(TmfApi api, TMFFetcher<T> fetcher) {
+		Semaphore semaphore = permits.get(api);
+		// the pages are fetched by the pool, as calls of the class of the caller
+		TmfTrafficClass traffic = TmfTrafficClass.current();
+		return (fields, offset, limit, filter) -> {
+			semaphore.acquire();
+			try {
+				return traffic.call(() -> fetcher.fetch(fields, offset, limit, filter));
+			} finally {
+				semaphore.release();
+			}
+		};
+	}
+
+}
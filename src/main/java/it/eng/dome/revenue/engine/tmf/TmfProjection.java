@@ -0,0 +1,49 @@
+package it.eng.dome.revenue.engine.tmf;
+
+/**
+ * The attributes requested to TMF (the {@code fields} parameter of the list APIs) by each kind of caller,
+ * so that TMF returns, and we deserialize and cache, only what the caller reads.
+ * Projected entities are partial: they must not be cached together with the full ones.
+ */
+public enum TmfProjection {
+
+	/**
+	 * The whole entity.
+	 */
+	FULL(null),
+
+	/**
+	 * CustomerBill attributes read by the revenue metrics and by the customer bill index (see BillSummary).
+	 */
+	BILL_METRICS("id,billDate,lastUpdate,relatedParty,taxExcludedAmount,taxIncludedAmount"),
+
+	/**
+	 * Organization attributes read to label an organization.
+	 */
+	ORGANIZATION_LABEL("id,name,tradingName"),
+
+	/**
+	 * Only the id, e.g. to scan the product offerings of a category.
+	 */
+	ID_ONLY("id");
+
+	private final String fields;
+
+	TmfProjection(String fields) {
+		this.fields = fields;
+	}
+
+	/**
+	 * @return the value of the fields parameter, null for all the attributes
+	 */
+	public String getFields() {
+		return fields;
+	}
+
+	/**
+	 * @return the suffix identifying the projection in a cache key, empty for the full entity
+	 */
+	public String getKeySuffix() {
+		return fields != null ? "|fields=" + fields : "";
+	}
+}
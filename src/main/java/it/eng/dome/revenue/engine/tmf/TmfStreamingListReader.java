@@ -0,0 +1,159 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import okhttp3.HttpUrl;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+/**
+ * Reads TMF lists element by element: each page is parsed incrementally from the HTTP response, and each element
+ * is handed to the consumer as soon as it is parsed, so that a scan holds one element at a time instead of a page.
+ * <p>
+ * The requests go through the same HTTP client (and pooled transport) of the TMF SDK clients built by the
+ * {@link TmfApiFactory}. Pages are read one after the other; the scan stops at the first short page or as soon as
+ * the consumer returns false, without reading the rest of the page. Null elements are skipped, any other non-object
+ * element fails the scan.
+ * </p>
+ */
+@Component(value = "tmfStreamingListReader")
+public class TmfStreamingListReader {
+
+	private static final Logger log = LoggerFactory.getLogger(TmfStreamingListReader.class);
+
+	/**
+	 * Parses a list element, with the parser on its START_OBJECT token.
+	 */
+	@FunctionalInterface
+	public interface ElementParser<T> {
+		T parse(JsonParser parser) throws IOException;
+	}
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final JsonFactory JSON_FACTORY = MAPPER.getFactory();
+
+	@Autowired
+	private TmfApiFactory tmfApiFactory;
+
+	/**
+	 * Parses each element as a JSON tree (e.g. to read a few attributes of a projected list).
+	 */
+	public static ElementParser<JsonNode> tree() {
+		return parser -> parser.readValueAsTree();
+	}
+
+	/**
+	 * Streams the TMF678 customer bills.
+	 *
+	 * @see #stream(OkHttpClient, String, String, Map, int, ElementParser, Predicate)
+	 */
+	public <T> void streamCustomerBills(String fields, Map<String, String> filter, int pageSize, ElementParser<T> parser,
+			Predicate<? super T> consumer) throws IOException {
+		it.eng.dome.tmforum.tmf678.v4.ApiClient client = tmfApiFactory.getTMF678CustomerBillApiClient();
+		this.stream(client.getHttpClient(), client.getBasePath() + "/customerBill", fields, filter, pageSize, parser, consumer);
+	}
+
+	/**
+	 * Streams the elements of a TMF list, page by page.
+	 *
+	 * @param client   the HTTP client of the TMF API
+	 * @param listUrl  the URL of the list
+	 * @param fields   optional fields to fetch
+	 * @param filter   optional map of query filters
+	 * @param pageSize max items per page
+	 * @param parser   the parser of each element
+	 * @param consumer consumer of each element, returns false to stop the scan
+	 * @throws IOException if a request fails or a page cannot be parsed
+	 */
+	public <T> void stream(OkHttpClient client, String listUrl, String fields, Map<String, String> filter, int pageSize,
+			ElementParser<T> parser, Predicate<? super T> consumer) throws IOException {
+		int offset = 0;
+		int total = 0;
+		PageResult page;
+		do {
+			page = this.streamPage(client, this.pageUrl(listUrl, fields, filter, offset, pageSize), parser, consumer);
+			total += page.count;
+			offset += pageSize;
+		} while (!page.stopped && page.count == pageSize);
+		log.debug("Streamed {} elements from {}", total, listUrl);
+	}
+
+	private static final class PageResult {
+		final int count;
+		final boolean stopped;
+
+		PageResult(int count, boolean stopped) {
+			this.count = count;
+			this.stopped = stopped;
+		}
+	}
+
+	private <T> PageResult streamPage(OkHttpClient client, HttpUrl url, ElementParser<T> parser, Predicate<? super T> consumer)
+			throws IOException {
+		Request request = new Request.Builder().url(url).header("Accept", "application/json").get().build();
+		try (Response response = client.newCall(request).execute()) {
+			ResponseBody body = response.body();
+			if (!response.isSuccessful() || body == null) {
+				throw new IOException("TMF list request " + url.encodedPath() + " failed with HTTP " + response.code());
+			}
+			try (JsonParser json = JSON_FACTORY.createParser(body.byteStream())) {
+				if (json.nextToken() != JsonToken.START_ARRAY) {
+					throw new IOException("TMF list response " + url.encodedPath() + " is not a JSON array");
+				}
+				int count = 0;
+				JsonToken token;
+				while ((token = json.nextToken()) != JsonToken.END_ARRAY) {
+					if (token == null) {
+						throw new IOException("TMF list response " + url.encodedPath() + " is truncated");
+					}
+					// null elements still fill the page
+					count++;
+					if (token == JsonToken.VALUE_NULL) {
+						continue;
+					}
+					if (token != JsonToken.START_OBJECT) {
+						throw new IOException("TMF list response " + url.encodedPath() + " element " + count
+								+ " is not a JSON object: " + token);
+					}
+					if (!consumer.test(parser.parse(json))) {
+						return new PageResult(count, true);
+					}
+				}
+				return new PageResult(count, false);
+			}
+		}
+	}
+
+	private HttpUrl pageUrl(String listUrl, String fields, Map<String, String> filter, int offset, int limit) {
+		HttpUrl base = HttpUrl.parse(listUrl);
+		if (base == null) {
+			throw new IllegalArgumentException("Invalid TMF list URL " + listUrl);
+		}
+		HttpUrl.Builder builder = base.newBuilder();
+		if (fields != null) {
+			builder.addQueryParameter("fields", fields);
+		}
+		builder.addQueryParameter("offset", String.valueOf(offset));
+		builder.addQueryParameter("limit", String.valueOf(limit));
+		if (filter != null) {
+			filter.forEach(builder::addQueryParameter);
+		}
+		return builder.build();
+	}
+}
@@ -0,0 +1,144 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Generates a synthetic, reproducible TMF dataset into a {@link TmfOfflineStore}: the DOME operator, the provider
+ * organizations, a "DOME OPERATOR Plan" offering with its price (linking the plan {@code planLink}), an active
+ * subscription (product) for each of the first providers, and the customer bills of the sales of each subscriber.
+ * <p>
+ * The same seed and plan start always generate the same dataset.
+ * </p>
+ */
+public class TmfSyntheticDataGenerator {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private final Random random;
+
+	private final TmfOfflineStore store;
+
+	public TmfSyntheticDataGenerator(TmfOfflineStore store, long seed) {
+		this.store = store;
+		this.random = new Random(seed);
+	}
+
+	/**
+	 * @param organizations       number of provider organizations
+	 * @param subscriptions       number of providers with an active subscription (at most organizations)
+	 * @param billsPerSubscription number of sales bills of each subscriber, spread over the subscription year
+	 * @param planStart           start of the plan validity, and earliest subscription start
+	 * @param planLink            the link to the revenue plan, in the description of the offering price
+	 */
+	public void generate(int organizations, int subscriptions, int billsPerSubscription, OffsetDateTime planStart, String planLink) {
+		ObjectNode operator = this.organization("DOME Operator");
+		List<ObjectNode> providers = new ArrayList<>();
+		for (int i = 1; i <= organizations; i++) {
+			providers.add(this.organization(String.format("Synthetic Provider %05d", i)));
+		}
+
+		ObjectNode price = MAPPER.createObjectNode();
+		price.put("id", this.id("productOfferingPrice"));
+		price.put("name", "Synthetic plan price");
+		price.put("description", "Synthetic plan: " + planLink);
+		price.put("lifecycleStatus", "launched");
+		store.put("productOfferingPrice", price);
+
+		ObjectNode offering = MAPPER.createObjectNode();
+		offering.put("id", this.id("productOffering"));
+		offering.put("name", "Synthetic DOME plan");
+		offering.put("description", "Synthetic DOME operator plan");
+		offering.put("lifecycleStatus", "launched");
+		offering.putArray("category").addObject().put("id", this.id("category")).put("name", "DOME OPERATOR Plan");
+		offering.putArray("productOfferingPrice").add(ref(price));
+		offering.putArray("relatedParty").add(party(operator, "Seller"));
+		store.put("productOffering", offering);
+
+		for (int i = 0; i < Math.min(subscriptions, providers.size()); i++) {
+			ObjectNode provider = providers.get(i);
+			OffsetDateTime start = planStart.plusDays(random.nextInt(180));
+			this.subscription(provider, operator, offering, price, start);
+			for (int b = 0; b < billsPerSubscription; b++) {
+				ObjectNode buyer = providers.get(random.nextInt(providers.size()));
+				OffsetDateTime billDate = start.plusDays((long) b * 365 / Math.max(1, billsPerSubscription) + random.nextInt(10));
+				this.bill(provider, buyer, billDate);
+			}
+		}
+	}
+
+	private ObjectNode organization(String name) {
+		ObjectNode org = MAPPER.createObjectNode();
+		org.put("id", this.id("organization"));
+		org.put("tradingName", name);
+		org.put("name", name);
+		return store.put("organization", org);
+	}
+
+	private void subscription(ObjectNode provider, ObjectNode operator, ObjectNode offering, ObjectNode price, OffsetDateTime start) {
+		ObjectNode product = MAPPER.createObjectNode();
+		product.put("id", this.id("product"));
+		product.put("name", "Subscription of " + provider.get("tradingName").asText());
+		product.put("status", "active");
+		product.put("startDate", start.toString());
+		product.set("productOffering", ref(offering));
+		product.putArray("productPrice").addObject().set("productOfferingPrice", ref(price));
+		product.putObject("billingAccount").put("id", this.id("billingAccount")).put("name", "Billing account");
+		ArrayNode characteristics = product.putArray("productCharacteristic");
+		characteristics.addObject().put("name", "marketplaceSubscription").put("value", random.nextInt(10) == 0);
+		ArrayNode parties = product.putArray("relatedParty");
+		parties.add(party(provider, "Buyer"));
+		parties.add(party(operator, "Seller"));
+		store.put("product", product);
+	}
+
+	private void bill(ObjectNode seller, ObjectNode buyer, OffsetDateTime billDate) {
+		BigDecimal net = BigDecimal.valueOf(100 + random.nextInt(50_000), 2).setScale(2, RoundingMode.HALF_UP);
+		BigDecimal gross = net.multiply(BigDecimal.valueOf(1.22)).setScale(2, RoundingMode.HALF_UP);
+
+		ObjectNode bill = MAPPER.createObjectNode();
+		bill.put("id", this.id("customerBill"));
+		bill.put("billDate", billDate.toString());
+		bill.put("lastUpdate", billDate.toString());
+		bill.put("state", "settled");
+		bill.putObject("billingPeriod")
+				.put("startDateTime", billDate.minusMonths(1).toString())
+				.put("endDateTime", billDate.toString());
+		bill.putObject("taxExcludedAmount").put("unit", "EUR").put("value", net);
+		bill.putObject("taxIncludedAmount").put("unit", "EUR").put("value", gross);
+		ArrayNode parties = bill.putArray("relatedParty");
+		parties.add(party(seller, "Seller"));
+		parties.add(party(buyer, "Buyer"));
+		store.put("customerBill", bill);
+	}
+
+	private String id(String resourceName) {
+		return TmfOfflineStore.newId(resourceName, new UUID(random.nextLong(), random.nextLong()));
+	}
+
+	private static ObjectNode ref(ObjectNode entity) {
+		ObjectNode ref = MAPPER.createObjectNode();
+		ref.put("id", entity.get("id").asText());
+		ref.put("href", entity.get("id").asText());
+		if (entity.has("name")) {
+			ref.put("name", entity.get("name").asText());
+		}
+		return ref;
+	}
+
+	private static ObjectNode party(ObjectNode organization, String role) {
+		ObjectNode party = ref(organization);
+		party.put("role", role);
+		party.put("@referredType", "Organization");
+		return party;
+	}
+}
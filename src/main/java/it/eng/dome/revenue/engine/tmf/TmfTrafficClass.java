@@ -0,0 +1,47 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import java.util.concurrent.Callable;
+
+/**
+ * The class of the TMF calls made by the current thread, so that background work (scheduler, cache refreshes)
+ * and interactive requests use separate bulkheads (see {@link TmfCallGuard}). Calls are interactive by default.
+ */
+public enum TmfTrafficClass {
+
+	INTERACTIVE, BACKGROUND;
+
+	private static final ThreadLocal<TmfTrafficClass> CURRENT = ThreadLocal.withInitial(() -> INTERACTIVE);
+
+	/**
+	 * @return the class of the calls made by the current thread
+	 */
+	public static TmfTrafficClass current() {
+		return CURRENT.get();
+	}
+
+	/**
+	 * Runs the task with this class of calls.
+	 */
+	public <T> T call(Callable<T> task) throws Exception {
+		TmfTrafficClass previous = CURRENT.get();
+		CURRENT.set(this);
+		try {
+			return task.call();
+		} finally {
+			CURRENT.set(previous);
+		}
+	}
+
+	/**
+	 * Runs the task with this class of calls.
+	 */
+	public void run(Runnable task) {
+		TmfTrafficClass previous = CURRENT.get();
+		CURRENT.set(this);
+		try {
+			task.run();
+		} finally {
+			CURRENT.set(previous);
+		}
+	}
+}
@@ -0,0 +1,29 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import java.io.IOException;
+
+/**
+ * Thrown, without calling TMF, for the calls rejected by the {@link TmfCallGuard} (circuit open, concurrency limit
+ * or bulkhead full) or by the {@link TmfHttpTransport} (no connection to the host available in time). Being an
+ * IOException, it reaches the callers as any other TMF connection failure.
+ */
+public class TmfUnavailableException extends IOException {
+
+	private static final long serialVersionUID = 1L;
+
+	public TmfUnavailableException(String message) {
+		super(message);
+	}
+
+	/**
+	 * @return true if the failure was caused by a TMF call not attempted (e.g. wrapped by the TMF SDK)
+	 */
+	public static boolean isCauseOf(Throwable t) {
+		for (Throwable cause = t; cause != null; cause = cause.getCause() != cause ? cause.getCause() : null) {
+			if (cause instanceof TmfUnavailableException) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
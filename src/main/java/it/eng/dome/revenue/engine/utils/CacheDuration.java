@@ -5,6 +5,7 @@ import java.util.Map;
 
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
 
 @Component
 @ConfigurationProperties(prefix = "caching")
@@ -13,6 +14,13 @@ public class CacheDuration {
     private ServiceCache tmf;
     private ServiceCache revenue;
     private HealthCache health;
+    private BillIndexCache billIndex;
+    private SnapshotCache snapshot;
+    private WarmupCache warmup;
+    // size of the caches, by cache name ('default' for the caches not listed)
+    private Map<String, CacheSizing> sizing;
+    // directory of the disk tiers
+    private String diskPath;
 
     public ServiceCache getTmf() { return tmf; }
     public void setTmf(ServiceCache tmf) { this.tmf = tmf; }
@@ -23,9 +31,42 @@ public class CacheDuration {
     public HealthCache getHealth() { return health; }
     public void setHealth(HealthCache health) { this.health = health; }
 
+    public BillIndexCache getBillIndex() { return billIndex; }
+    public void setBillIndex(BillIndexCache billIndex) { this.billIndex = billIndex; }
+
+    public SnapshotCache getSnapshot() { return snapshot; }
+    public void setSnapshot(SnapshotCache snapshot) { this.snapshot = snapshot; }
+
+    public WarmupCache getWarmup() { return warmup; }
+    public void setWarmup(WarmupCache warmup) { this.warmup = warmup; }
+
+    public Map<String, CacheSizing> getSizing() { return sizing; }
+    public void setSizing(Map<String, CacheSizing> sizing) { this.sizing = sizing; }
+
+    public String getDiskPath() { return diskPath; }
+    public void setDiskPath(String diskPath) { this.diskPath = diskPath; }
+
+    /**
+     * @return the sizing of the given cache, or the default one if not configured
+     */
+    public CacheSizing getSizing(String cacheName) {
+        if (sizing == null) {
+            return null;
+        }
+        CacheSizing value = sizing.get(cacheName);
+        return value != null ? value : sizing.get("default");
+    }
+
     public static class ServiceCache {
         private boolean enabled;
         private Map<String, Duration> duration;
+        // optional soft TTLs: after them, entries are served stale and refreshed in background
+        private Map<String, Duration> softDuration;
+        // optional TTLs of the keys not found (negative caching)
+        private Map<String, Duration> negativeDuration;
+        // optional TTLs of the last values, served when TMF is unavailable
+        private Map<String, Duration> staleDuration;
+        private RefreshAhead refreshAhead;
 
         public boolean isEnabled() { return enabled; }
         public void setEnabled(boolean enabled) { this.enabled = enabled; }
@@ -33,6 +74,39 @@ public class CacheDuration {
         public Map<String, Duration> getDuration() { return duration; }
         public void setDuration(Map<String, Duration> duration) { this.duration = duration; }
 
+        public Map<String, Duration> getSoftDuration() { return softDuration; }
+        public void setSoftDuration(Map<String, Duration> softDuration) { this.softDuration = softDuration; }
+
+        public Map<String, Duration> getNegativeDuration() { return negativeDuration; }
+        public void setNegativeDuration(Map<String, Duration> negativeDuration) { this.negativeDuration = negativeDuration; }
+
+        public Map<String, Duration> getStaleDuration() { return staleDuration; }
+        public void setStaleDuration(Map<String, Duration> staleDuration) { this.staleDuration = staleDuration; }
+
+        public RefreshAhead getRefreshAhead() { return refreshAhead; }
+        public void setRefreshAhead(RefreshAhead refreshAhead) { this.refreshAhead = refreshAhead; }
+
+        /**
+         * @return the soft TTL of the given cache key, or null if not configured
+         */
+        public Duration getSoft(String key) {
+            return softDuration != null ? softDuration.get(key) : null;
+        }
+
+        /**
+         * @return the TTL of the keys not found for the given cache key, or null if not configured
+         */
+        public Duration getNegative(String key) {
+            return negativeDuration != null ? negativeDuration.get(key) : null;
+        }
+
+        /**
+         * @return how long the last values of the given cache key are kept for TMF outages, or null if not configured
+         */
+        public Duration getStale(String key) {
+            return staleDuration != null ? staleDuration.get(key) : null;
+        }
+
         public Duration get(String key) {
             Duration value = duration.get(key);
             if (value == null) {
@@ -42,6 +116,42 @@ public class CacheDuration {
         }
     }
 
+    public static class RefreshAhead {
+        // fraction of the soft TTL after which hot entries are refreshed
+        private double ratio;
+        // min reads for an entry to be considered hot
+        private int minHits;
+
+        public double getRatio() { return ratio; }
+        public void setRatio(double ratio) { this.ratio = ratio; }
+
+        public int getMinHits() { return minHits; }
+        public void setMinHits(int minHits) { this.minHits = minHits; }
+    }
+
+    public static class CacheSizing {
+        // heap tier by number of entries
+        private Long heapEntries;
+        // optional off-heap tier
+        private DataSize offheap;
+        // optional disk tier, requires the disk path
+        private DataSize disk;
+
+        public Long getHeapEntries() { return heapEntries; }
+        public void setHeapEntries(Long heapEntries) { this.heapEntries = heapEntries; }
+
+        public DataSize getOffheap() { return offheap; }
+        public void setOffheap(DataSize offheap) { this.offheap = offheap; }
+
+        public DataSize getDisk() { return disk; }
+        public void setDisk(DataSize disk) { this.disk = disk; }
+
+        @Override
+        public String toString() {
+            return String.format("heap=%s entries, offheap=%s, disk=%s", heapEntries, offheap, disk);
+        }
+    }
+
     public static class HealthCache {
         private boolean enabled;
         private Duration duration;
@@ -52,4 +162,60 @@ public class CacheDuration {
         public Duration getDuration() { return duration; }
         public void setDuration(Duration duration) { this.duration = duration; }
     }
+
+    public static class BillIndexCache {
+        private boolean enabled;
+        // max age of the index before an incremental refresh
+        private Duration refresh;
+        // max age of the index before a full reload
+        private Duration fullRefresh;
+        // how far back before the previous refresh the incremental refreshes read the bills again
+        private Duration overlap;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public Duration getRefresh() { return refresh; }
+        public void setRefresh(Duration refresh) { this.refresh = refresh; }
+
+        public Duration getFullRefresh() { return fullRefresh; }
+        public void setFullRefresh(Duration fullRefresh) { this.fullRefresh = fullRefresh; }
+
+        public Duration getOverlap() { return overlap; }
+        public void setOverlap(Duration overlap) { this.overlap = overlap; }
+    }
+
+    public static class SnapshotCache {
+        private boolean enabled;
+        // directory of the snapshot files, one per cache
+        private String path;
+        // interval between two checkpoints (a checkpoint is also taken on shutdown)
+        private Duration interval;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public String getPath() { return path; }
+        public void setPath(String path) { this.path = path; }
+
+        public Duration getInterval() { return interval; }
+        public void setInterval(Duration interval) { this.interval = interval; }
+    }
+
+    public static class WarmupCache {
+        private boolean enabled;
+        // also compute the statements of the active subscriptions
+        private boolean statements;
+        // the application is reported ready after this time even if the warm-up is still running
+        private Duration maxDuration;
+
+        public boolean isEnabled() { return enabled; }
+        public void setEnabled(boolean enabled) { this.enabled = enabled; }
+
+        public boolean isStatements() { return statements; }
+        public void setStatements(boolean statements) { this.statements = statements; }
+
+        public Duration getMaxDuration() { return maxDuration; }
+        public void setMaxDuration(Duration maxDuration) { this.maxDuration = maxDuration; }
+    }
 }
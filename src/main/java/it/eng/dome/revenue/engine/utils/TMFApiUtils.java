@@ -7,9 +7,15 @@ import it.eng.dome.tmforum.tmf678.v4.api.CustomerBillApi;
 import it.eng.dome.tmforum.tmf678.v4.model.AppliedCustomerBillingRate;
 import it.eng.dome.tmforum.tmf678.v4.model.CustomerBill;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 
 /**
  * Utility class to handle TMF API calls with pagination.
@@ -92,6 +98,110 @@ public class TMFApiUtils {
         } while (continueFetching && !batch.isEmpty() && batch.size() == pageSize);
     }
 
+    /**
+     * Fetches all items keeping up to {@code windows} pages in flight at once.
+     * Results are returned in offset order, as with {@link #fetchAll}.
+     *
+     * @param fetcher  TMFFetcher function to fetch a batch from the API
+     * @param fields   optional fields to fetch
+     * @param pageSize maximum number of items per batch
+     * @param filter   optional map of query filters
+     * @param windows  maximum number of pages requested concurrently
+     * @param executor executor running the page requests
+     * @param <T> type of objects being fetched
+     * @return a list containing all items fetched
+     * @throws Exception if any API call or processing fails
+     */
+    public static <T> List<T> fetchAllParallel(TMFFetcher<T> fetcher, String fields, int pageSize, Map<String, String> filter,
+                                               int windows, Executor executor) throws Exception {
+        List<T> allItems = new ArrayList<>();
+        fetchByBatchParallel(fetcher, fields, pageSize, filter, windows, executor, batch -> {
+            allItems.addAll(batch);
+            return true; // always continue
+        });
+        return allItems;
+    }
+
+    /**
+     * Fetches items batch by batch keeping up to {@code windows} pages in flight at once.
+     * <p>
+     * The first page is fetched alone, on the calling thread: short lists (the most common case) cost a single
+     * request. Only if it is full, the next pages are requested ahead on consecutive offsets, and handed to the
+     * consumer strictly in offset order. As soon as a short (or empty) page is consumed, or the consumer returns
+     * false, the pages requested beyond it are cancelled (interrupting their requests while waiting to be sent)
+     * and no further page is requested.
+     * </p>
+     *
+     * @param fetcher  TMFFetcher function to fetch a batch from the API
+     * @param fields   optional fields to fetch
+     * @param pageSize max items per page
+     * @param filter   optional map of query filters
+     * @param windows  maximum number of pages requested concurrently
+     * @param executor executor running the page requests
+     * @param consumer function that consumes a batch and returns true to continue, false to stop
+     * @param <T> type of objects being fetched
+     * @throws Exception if any API call or processing fails
+     */
+    public static <T> void fetchByBatchParallel(TMFFetcher<T> fetcher, String fields, int pageSize, Map<String, String> filter,
+                                                int windows, Executor executor, BatchProcessor<T> consumer) throws Exception {
+        if (windows <= 1) {
+            fetchByBatch(fetcher, fields, pageSize, filter, consumer);
+            return;
+        }
+
+        List<T> first = fetcher.fetch(fields, 0, pageSize, filter);
+        if (first == null) {
+            first = List.of();
+        }
+        if (!consumer.consume(first) || first.size() != pageSize) {
+            return;
+        }
+
+        Deque<FutureTask<List<T>>> pending = new ArrayDeque<>();
+        int nextOffset = pageSize;
+        try {
+            for (int i = 0; i < windows; i++) {
+                pending.add(fetchPage(fetcher, fields, nextOffset, pageSize, filter, executor));
+                nextOffset += pageSize;
+            }
+
+            boolean continueFetching;
+            do {
+                List<T> batch = join(pending.poll());
+                continueFetching = consumer.consume(batch) && batch.size() == pageSize;
+                if (continueFetching) {
+                    pending.add(fetchPage(fetcher, fields, nextOffset, pageSize, filter, executor));
+                    nextOffset += pageSize;
+                }
+            } while (continueFetching);
+        } finally {
+            // pages requested beyond the last one are not needed
+            pending.forEach(f -> f.cancel(true));
+        }
+    }
+
+    private static <T> FutureTask<List<T>> fetchPage(TMFFetcher<T> fetcher, String fields, int offset, int limit,
+                                                     Map<String, String> filter, Executor executor) {
+        FutureTask<List<T>> page = new FutureTask<>(() -> {
+            List<T> items = fetcher.fetch(fields, offset, limit, filter);
+            return items != null ? items : List.of();
+        });
+        executor.execute(page);
+        return page;
+    }
+
+    private static <T> List<T> join(Future<List<T>> page) throws Exception {
+        try {
+            return page.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception ex) {
+                throw ex;
+            }
+            throw e;
+        }
+    }
+
     // ================= Specific TMF API methods =================
 
     // =================== Organization ====================
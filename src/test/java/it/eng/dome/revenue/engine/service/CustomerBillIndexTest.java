@@ -0,0 +1,201 @@
+package it.eng.dome.revenue.engine.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.model.BillSummary;
+import it.eng.dome.revenue.engine.model.Role;
+import it.eng.dome.revenue.engine.utils.CacheDuration;
+import it.eng.dome.tmforum.tmf678.v4.model.CustomerBill;
+import it.eng.dome.tmforum.tmf678.v4.model.RelatedParty;
+import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
+
+public class CustomerBillIndexTest {
+
+    private static final OffsetDateTime NOW = OffsetDateTime.now();
+
+    private final List<CustomerBill> tmfBills = new CopyOnWriteArrayList<>();
+
+    private final List<Map<String, String>> filters = new CopyOnWriteArrayList<>();
+
+    private TmfDataRetriever tmfDataRetriever;
+
+    private CacheDuration.BillIndexCache config;
+
+    private CustomerBillIndex index;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        tmfDataRetriever = mock(TmfDataRetriever.class);
+        // TMF answers with all its bills: the filters are only recorded
+        doAnswer(inv -> {
+            filters.add(inv.getArgument(1));
+            tmfBills.forEach(((Consumer<CustomerBill>) inv.getArgument(3))::accept);
+            return null;
+        }).when(tmfDataRetriever).fetchCustomerBills(anyString(), any(), anyInt(), any());
+
+        config = new CacheDuration.BillIndexCache();
+        config.setEnabled(true);
+        config.setRefresh(Duration.ofHours(1));
+        config.setFullRefresh(Duration.ofHours(6));
+        config.setOverlap(Duration.ofMinutes(15));
+        CacheDuration cacheDuration = new CacheDuration();
+        cacheDuration.setBillIndex(config);
+
+        index = new CustomerBillIndex();
+        ReflectionTestUtils.setField(index, "tmfDataRetriever", tmfDataRetriever);
+        ReflectionTestUtils.setField(index, "cacheDuration", cacheDuration);
+        index.afterPropertiesSet();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        index.destroy();
+    }
+
+    @Test
+    public void loadsInBackgroundWithoutBlockingTheQueries() throws Exception {
+        tmfBills.add(bill("b1", NOW.minusDays(1), NOW.minusDays(1), "seller1", "buyer1"));
+
+        assertThatThrownBy(() -> index.findBills("seller1", Role.SELLER, period()))
+                .isInstanceOf(ExternalServiceException.class);
+
+        awaitAvailable();
+        assertThat(ids(index.findBills("seller1", Role.SELLER, period()))).containsExactly("b1");
+        assertThat(ids(index.findBills("seller1", "buyer1", period()))).containsExactly("b1");
+        assertThat(index.findBills("seller1", "buyer2", period())).isEmpty();
+    }
+
+    @Test
+    public void disabledIndexIsNeverAvailable() throws Exception {
+        config.setEnabled(false);
+        assertThat(index.isAvailable()).isFalse();
+        Thread.sleep(50);
+        assertThat(filters).isEmpty();
+    }
+
+    @Test
+    public void incrementalRefreshOverlapsTheWatermark() throws Exception {
+        OffsetDateTime lastUpdate = NOW.minusHours(2);
+        tmfBills.add(bill("b1", NOW.minusDays(1), lastUpdate, "seller1", "buyer1"));
+        index.load();
+
+        // written late, with a lastUpdate older than the one already indexed
+        tmfBills.add(bill("b2", NOW.minusDays(1), lastUpdate.minusMinutes(5), "seller1", "buyer2"));
+        // without lastUpdate
+        tmfBills.add(bill("b3", NOW.minusMinutes(1), null, "seller1", "buyer3"));
+        config.setRefresh(Duration.ZERO);
+        Thread.sleep(5);
+        filters.clear();
+        index.load();
+
+        assertThat(filters).extracting(f -> f.get("lastUpdate.gt")).contains(lastUpdate.minusMinutes(15).toString());
+        assertThat(filters).anySatisfy(f -> assertThat(f).containsKey("billDate.gt"));
+        assertThat(ids(index.findBills("seller1", Role.SELLER, period()))).containsExactlyInAnyOrder("b1", "b2", "b3");
+        assertThat(index.size()).isEqualTo(3);
+    }
+
+    @Test
+    public void failedRefreshKeepsServingTheIndex() throws Exception {
+        tmfBills.add(bill("b1", NOW.minusDays(1), NOW.minusDays(1), "seller1", "buyer1"));
+        index.load();
+
+        doThrow(new ExternalServiceException("TMF down", null))
+                .when(tmfDataRetriever).fetchCustomerBills(anyString(), any(), anyInt(), any());
+        config.setRefresh(Duration.ZERO);
+        Thread.sleep(5);
+        index.load();
+
+        assertThat(ids(index.findBills("seller1", Role.SELLER, period()))).containsExactly("b1");
+    }
+
+    @Test
+    public void eventsUpdateTheLoadedIndex() throws Exception {
+        tmfBills.add(bill("b1", NOW.minusDays(1), NOW.minusDays(1), "seller1", "buyer1"));
+        index.load();
+
+        index.update(BillSummary.of(bill("b2", NOW.minusDays(2), NOW, "seller1", "buyer2")));
+        awaitBills("seller1", "b2", "b1");
+        assertThat(ids(index.findBills("seller2", "buyer2", period()))).isEmpty();
+
+        // moved to another seller
+        index.update(BillSummary.of(bill("b2", NOW.minusDays(2), NOW, "seller2", "buyer2")));
+        awaitBills("seller1", "b1");
+        assertThat(ids(index.findBills("seller2", "buyer2", period()))).containsExactly("b2");
+
+        index.remove("b1");
+        awaitBills("seller1");
+        assertThat(index.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void partialEventsReadTheBillAgain() throws Exception {
+        tmfBills.add(bill("b1", NOW.minusDays(1), NOW.minusDays(1), "seller1", "buyer1"));
+        index.load();
+
+        when(tmfDataRetriever.getCustomerBill("b1")).thenReturn(bill("b1", NOW.minusDays(3), NOW, "seller1", "buyer1"));
+        index.refreshBill("b1");
+        for (int i = 0; i < 200 && !NOW.minusDays(3).equals(index.get("b1").getBillDate()); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(index.get("b1").getBillDate()).isEqualTo(NOW.minusDays(3));
+        assertThat(index.get("b1").getParties()).extracting(BillSummary.Party::getId).containsExactly("seller1", "buyer1");
+    }
+
+    private void awaitBills(String sellerId, String... expected) throws Exception {
+        for (int i = 0; i < 200 && !ids(index.findBills(sellerId, Role.SELLER, period())).equals(List.of(expected)); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(ids(index.findBills(sellerId, Role.SELLER, period()))).containsExactly(expected);
+    }
+
+    private void awaitAvailable() throws InterruptedException {
+        for (int i = 0; i < 200 && !index.isAvailable(); i++) {
+            Thread.sleep(10);
+        }
+        assertThat(index.isAvailable()).isTrue();
+    }
+
+    private static TimePeriod period() {
+        TimePeriod tp = new TimePeriod();
+        tp.setStartDateTime(NOW.minusDays(30));
+        tp.setEndDateTime(NOW.plusDays(1));
+        return tp;
+    }
+
+    private static List<String> ids(List<BillSummary> bills) {
+        List<String> ids = new ArrayList<>();
+        bills.forEach(b -> ids.add(b.getId()));
+        return ids;
+    }
+
+    private static CustomerBill bill(String id, OffsetDateTime billDate, OffsetDateTime lastUpdate, String seller, String buyer) {
+        List<RelatedParty> parties = new ArrayList<>();
+        parties.add(new RelatedParty().id(seller).role(Role.SELLER.getValue()));
+        parties.add(new RelatedParty().id(buyer).role(Role.BUYER.getValue()));
+        return new CustomerBill().id(id).billDate(billDate).lastUpdate(lastUpdate).relatedParty(Collections.unmodifiableList(parties));
+    }
+}
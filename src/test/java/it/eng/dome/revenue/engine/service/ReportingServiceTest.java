@@ -0,0 +1,155 @@
+package it.eng.dome.revenue.engine.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.model.Report;
+import it.eng.dome.revenue.engine.model.Role;
+import it.eng.dome.revenue.engine.model.Subscription;
+import it.eng.dome.revenue.engine.service.cached.CachedSubscriptionService;
+import it.eng.dome.revenue.engine.service.cached.TmfCachedDataRetriever;
+import it.eng.dome.tmforum.tmf632.v4.model.Organization;
+import it.eng.dome.tmforum.tmf637.v4.model.Product;
+import it.eng.dome.tmforum.tmf637.v4.model.RelatedParty;
+import it.eng.dome.tmforum.tmf678.v4.model.CustomerBill;
+import it.eng.dome.tmforum.tmf678.v4.model.Money;
+
+public class ReportingServiceTest {
+
+    private final CachedSubscriptionService subscriptionService = mock(CachedSubscriptionService.class);
+
+    private final TmfCachedDataRetriever tmfDataRetriever = mock(TmfCachedDataRetriever.class);
+
+    private ReportingService reportingService;
+
+    @BeforeEach
+    public void setUp() {
+        reportingService = new ReportingService();
+        ReflectionTestUtils.setField(reportingService, "subscriptionService", subscriptionService);
+        ReflectionTestUtils.setField(reportingService, "tmfDataRetriever", tmfDataRetriever);
+    }
+
+    @Test
+    public void failedProviderIsSkippedAndTheOthersAreReported() throws Exception {
+        this.subscriptions("s1", "s2", "s3");
+        this.provider("s1", "buyer-1", "Provider 1", 100f);
+        this.provider("s2", "buyer-2", "Provider 2", 50f);
+        this.provider("s3", "buyer-3", "Provider 3", 20f);
+        // the bills of the second provider cannot be read
+        when(tmfDataRetriever.retrieveCustomerBillsAsync(eq("buyer-2"), eq(Role.BUYER), any()))
+                .thenReturn(CompletableFuture.failedFuture(new ExternalServiceException("TMF unavailable")));
+
+        List<Report> reports = reportingService.totalSubscriptionRevenueSection();
+
+        Report total = reports.get(0);
+        assertThat(total.getLabel()).startsWith("Total Cloud Service Providers").endsWith("EUR120.00");
+        assertThat(total.getItems()).extracting(Report::getLabel).containsExactly("Provider 1", "Provider 3");
+    }
+
+    @Test
+    public void failedProductLookupSkipsTheBuyerReads() throws Exception {
+        this.subscriptions("s1", "s2");
+        this.provider("s1", "buyer-1", "Provider 1", 100f);
+        when(tmfDataRetriever.getProductAsync(eq("s2"), isNull()))
+                .thenReturn(CompletableFuture.failedFuture(new ExternalServiceException("TMF unavailable")));
+
+        List<Report> reports = reportingService.totalSubscriptionRevenueSection();
+
+        assertThat(reports.get(0).getItems()).extracting(Report::getLabel).containsExactly("Provider 1");
+        verify(tmfDataRetriever, never()).getOrganizationAsync(eq("buyer-2"));
+    }
+
+    @Test
+    public void productWithoutRelatedPartiesIsSkipped() throws Exception {
+        this.subscriptions("s1", "s2", "s3");
+        this.provider("s1", "buyer-1", "Provider 1", 100f);
+        Product noParties = new Product();
+        noParties.setId("s2");
+        when(tmfDataRetriever.getProductAsync(eq("s2"), isNull())).thenReturn(CompletableFuture.completedFuture(noParties));
+        Product sellerOnly = new Product();
+        sellerOnly.setId("s3");
+        sellerOnly.setRelatedParty(List.of(new RelatedParty().id("operator").role(Role.SELLER.getValue())));
+        when(tmfDataRetriever.getProductAsync(eq("s3"), isNull())).thenReturn(CompletableFuture.completedFuture(sellerOnly));
+
+        List<Report> reports = reportingService.totalSubscriptionRevenueSection();
+
+        assertThat(reports.get(0).getItems()).extracting(Report::getLabel).containsExactly("Provider 1");
+        // only the buyer of the first product is read
+        verify(tmfDataRetriever).getOrganizationAsync(anyString());
+        verify(tmfDataRetriever).retrieveCustomerBillsAsync(anyString(), eq(Role.BUYER), any());
+    }
+
+    @Test
+    public void providersAreReadTogether() throws Exception {
+        this.subscriptions("s1", "s2");
+        // the product of the first subscription is completed only after both the products have been requested
+        CompletableFuture<Product> first = new CompletableFuture<>();
+        when(tmfDataRetriever.getProductAsync(eq("s1"), isNull())).thenAnswer(invocation -> first);
+        this.provider("s2", "buyer-2", "Provider 2", 50f);
+        when(tmfDataRetriever.getProductAsync(eq("s2"), isNull())).thenAnswer(invocation -> {
+            first.complete(this.product("s1", "buyer-1"));
+            return CompletableFuture.completedFuture(this.product("s2", "buyer-2"));
+        });
+        this.buyer("buyer-1", "Provider 1", 100f);
+
+        // read one after the other, the first product would never complete
+        List<Report> reports = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> reportingService.totalSubscriptionRevenueSection());
+
+        assertThat(reports.get(0).getItems()).extracting(Report::getLabel).containsExactly("Provider 1", "Provider 2");
+    }
+
+    private void subscriptions(String... ids) throws Exception {
+        List<Subscription> subscriptions = new ArrayList<>();
+        for (String id : ids) {
+            Subscription subscription = new Subscription();
+            subscription.setId(id);
+            subscriptions.add(subscription);
+        }
+        when(subscriptionService.getAllSubscriptions()).thenReturn(subscriptions);
+    }
+
+    private void provider(String subscriptionId, String buyerId, String name, float billed) {
+        when(tmfDataRetriever.getProductAsync(eq(subscriptionId), isNull()))
+                .thenReturn(CompletableFuture.completedFuture(this.product(subscriptionId, buyerId)));
+        this.buyer(buyerId, name, billed);
+    }
+
+    private void buyer(String buyerId, String name, float billed) {
+        CustomerBill bill = new CustomerBill();
+        bill.setCategory("created by the revenue engine");
+        bill.setBillDate(OffsetDateTime.now().minusMonths(1));
+        bill.setTaxIncludedAmount(new Money().unit("EUR").value(billed));
+        when(tmfDataRetriever.retrieveCustomerBillsAsync(eq(buyerId), eq(Role.BUYER), any()))
+                .thenReturn(CompletableFuture.completedFuture(List.of(bill)));
+        when(tmfDataRetriever.getOrganizationAsync(buyerId))
+                .thenReturn(CompletableFuture.completedFuture(new Organization().tradingName(name)));
+    }
+
+    private Product product(String subscriptionId, String buyerId) {
+        Product product = new Product();
+        product.setId(subscriptionId);
+        product.setRelatedParty(List.of(
+                new RelatedParty().id("operator").role(Role.SELLER.getValue()),
+                new RelatedParty().id(buyerId).role(Role.BUYER.getValue())));
+        return product;
+    }
+}
@@ -0,0 +1,163 @@
+package it.eng.dome.revenue.engine.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import it.eng.dome.revenue.engine.model.RevenueStatement;
+import it.eng.dome.revenue.engine.service.compute.RevenueStatementBuilder;
+import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
+
+public class StatementsServiceTest {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2026, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private StatementsService service;
+
+    // the thread that built the statement of each period
+    private final Map<TimePeriod, Thread> builtBy = new ConcurrentHashMap<>();
+
+    @AfterEach
+    public void tearDown() {
+        if (service != null) {
+            service.destroy();
+        }
+    }
+
+    @Test
+    public void statementsAreInThePeriodOrderAndFailedPeriodsAreNull() throws Exception {
+        service = this.service(4);
+        List<TimePeriod> periods = periods(4);
+        RevenueStatementBuilder rsb = mock(RevenueStatementBuilder.class);
+        when(rsb.buildStatement(any())).thenAnswer(inv -> {
+            TimePeriod period = inv.getArgument(0);
+            int index = periods.indexOf(period);
+            if (index == 1) {
+                throw new IllegalStateException("bad plan");
+            }
+            // the first periods finish last
+            Thread.sleep(40L * (periods.size() - index));
+            builtBy.put(period, Thread.currentThread());
+            return new RevenueStatement(null, period);
+        });
+
+        List<RevenueStatement> statements = this.buildStatements(rsb, periods);
+
+        assertThat(statements).hasSize(4);
+        assertThat(statements.get(1)).isNull();
+        assertThat(statements.get(0).getPeriod()).isSameAs(periods.get(0));
+        assertThat(statements.get(2).getPeriod()).isSameAs(periods.get(2));
+        assertThat(statements.get(3).getPeriod()).isSameAs(periods.get(3));
+        assertThat(builtBy.values()).allSatisfy(thread -> assertThat(thread.getName()).startsWith("statements-"));
+    }
+
+    @Test
+    public void periodsAreComputedSeriallyWithParallelismOne() throws Exception {
+        service = this.service(1);
+        List<TimePeriod> periods = periods(3);
+
+        assertThat(this.buildStatements(this.recordingBuilder(), periods)).hasSize(3).doesNotContainNull();
+        assertThat(builtBy).hasSize(3);
+        assertThat(builtBy.values()).containsOnly(Thread.currentThread());
+    }
+
+    @Test
+    public void nestedStatementsAreComputedSeriallyOnThePoolThread() throws Exception {
+        service = this.service(4);
+        List<TimePeriod> inner = periods(3);
+        RevenueStatementBuilder innerRsb = this.recordingBuilder();
+        Map<TimePeriod, Thread> outerThreads = new ConcurrentHashMap<>();
+        RevenueStatementBuilder outerRsb = mock(RevenueStatementBuilder.class);
+        when(outerRsb.buildStatement(any())).thenAnswer(inv -> {
+            TimePeriod period = inv.getArgument(0);
+            outerThreads.put(period, Thread.currentThread());
+            // e.g. a metric reading the statements of another subscription
+            assertThat(this.buildStatements(innerRsb, inner)).hasSize(3).doesNotContainNull();
+            return new RevenueStatement(null, period);
+        });
+        List<TimePeriod> outer = new ArrayList<>();
+        outer.add(period(10));
+        outer.add(period(11));
+
+        assertThat(this.buildStatements(outerRsb, outer)).hasSize(2).doesNotContainNull();
+        // each inner period on the thread of the outer period that requested it
+        assertThat(outerThreads.values()).allSatisfy(thread -> assertThat(thread.getName()).startsWith("statements-"));
+        assertThat(outerThreads.values()).containsAll(builtBy.values());
+    }
+
+    @Test
+    public void callerComputesThePeriodsWhenThePoolIsSaturated() throws Exception {
+        service = this.service(2);
+        // 2 running, 2 queued: the 5th and 6th periods are computed by the caller, which releases the others
+        List<TimePeriod> periods = periods(6);
+        Thread caller = Thread.currentThread();
+        CountDownLatch callerRan = new CountDownLatch(1);
+        RevenueStatementBuilder rsb = mock(RevenueStatementBuilder.class);
+        when(rsb.buildStatement(any())).thenAnswer(inv -> {
+            TimePeriod period = inv.getArgument(0);
+            builtBy.put(period, Thread.currentThread());
+            if (Thread.currentThread() == caller) {
+                callerRan.countDown();
+            } else {
+                assertThat(callerRan.await(5, TimeUnit.SECONDS)).isTrue();
+            }
+            return new RevenueStatement(null, period);
+        });
+
+        List<RevenueStatement> statements = this.buildStatements(rsb, periods);
+
+        assertThat(statements).extracting(RevenueStatement::getPeriod).containsExactlyElementsOf(periods);
+        assertThat(builtBy.get(periods.get(4))).isSameAs(caller);
+        assertThat(builtBy.get(periods.get(0)).getName()).startsWith("statements-");
+    }
+
+    private StatementsService service(int parallelism) throws Exception {
+        StatementsService statementsService = new StatementsService();
+        ReflectionTestUtils.setField(statementsService, "periodsParallelism", parallelism);
+        statementsService.afterPropertiesSet();
+        return statementsService;
+    }
+
+    private RevenueStatementBuilder recordingBuilder() {
+        RevenueStatementBuilder rsb = mock(RevenueStatementBuilder.class);
+        when(rsb.buildStatement(any())).thenAnswer(inv -> {
+            TimePeriod period = inv.getArgument(0);
+            builtBy.put(period, Thread.currentThread());
+            return new RevenueStatement(null, period);
+        });
+        return rsb;
+    }
+
+    private List<RevenueStatement> buildStatements(RevenueStatementBuilder rsb, List<TimePeriod> periods) {
+        return ReflectionTestUtils.invokeMethod(service, "buildStatements", rsb, periods, "sub-1");
+    }
+
+    private static List<TimePeriod> periods(int count) {
+        List<TimePeriod> periods = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            periods.add(period(i));
+        }
+        return periods;
+    }
+
+    private static TimePeriod period(int month) {
+        TimePeriod period = new TimePeriod();
+        period.setStartDateTime(T0.plusMonths(month));
+        period.setEndDateTime(T0.plusMonths(month + 1));
+        return period;
+    }
+}
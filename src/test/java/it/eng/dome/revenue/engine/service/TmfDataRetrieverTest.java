@@ -0,0 +1,93 @@
+package it.eng.dome.revenue.engine.service;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import it.eng.dome.tmforum.tmf620.v4.model.ProductOffering;
+import it.eng.dome.tmforum.tmf637.v4.model.Product;
+import it.eng.dome.tmforum.tmf637.v4.model.ProductOfferingRef;
+import it.eng.dome.tmforum.tmf637.v4.model.ProductStatusType;
+
+public class TmfDataRetrieverTest {
+
+    private static final List<String> OFFERINGS = List.of("po-1", "po-2", "po-3");
+
+    private TmfDataRetriever retriever;
+
+    // the 'productOffering.id' filters of the product queries
+    private final List<String> queries = new ArrayList<>();
+
+    // whether TMF applies the id list filter, or returns nothing for it
+    private boolean listFilterSupported;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() throws Exception {
+        retriever = spy(new TmfDataRetriever(null, null, null, null, null));
+        doAnswer(inv -> {
+            Consumer<ProductOffering> consumer = inv.getArgument(3);
+            OFFERINGS.forEach(id -> consumer.accept(new ProductOffering().id(id)));
+            return null;
+        }).when(retriever).fetchProductOfferings(any(), any(), anyInt(), any());
+        doAnswer(inv -> {
+            String ids = ((Map<String, String>) inv.getArgument(1)).get("productOffering.id");
+            queries.add(ids);
+            Consumer<Product> consumer = inv.getArgument(3);
+            if (ids.contains(",") && !listFilterSupported) {
+                return null;
+            }
+            // po-2 has no active products
+            for (String id : ids.split(",")) {
+                if (!id.equals("po-2")) {
+                    consumer.accept(this.product(id));
+                }
+            }
+            return null;
+        }).when(retriever).fetchProducts(any(), any(), anyInt(), any());
+    }
+
+    @Test
+    public void offeringsWithoutProductsAreNotQueriedAgain() throws Exception {
+        listFilterSupported = true;
+
+        assertThat(this.activeOfferings()).containsExactly("po-1", "po-3");
+        assertThat(queries).containsExactly("po-1,po-2,po-3");
+    }
+
+    @Test
+    public void offeringsAreQueriedOneByOneWhenTheListFilterIsNotApplied() throws Exception {
+        listFilterSupported = false;
+
+        assertThat(this.activeOfferings()).containsExactly("po-1", "po-3");
+        assertThat(queries).containsExactly("po-1,po-2,po-3", "po-1", "po-2", "po-3");
+
+        // remembered: no batch query any more
+        queries.clear();
+        assertThat(this.activeOfferings()).containsExactly("po-1", "po-3");
+        assertThat(queries).containsExactly("po-1", "po-2", "po-3");
+    }
+
+    private List<String> activeOfferings() throws Exception {
+        List<String> offerings = new ArrayList<>();
+        retriever.fetchActiveProducts(10, product -> offerings.add(product.getProductOffering().getId()));
+        return offerings;
+    }
+
+    private Product product(String offeringId) {
+        Product product = new Product().id("p-" + offeringId);
+        product.setStatus(ProductStatusType.ACTIVE);
+        product.setProductOffering(new ProductOfferingRef().id(offeringId));
+        return product;
+    }
+}
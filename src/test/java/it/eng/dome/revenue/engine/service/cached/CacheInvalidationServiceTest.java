@@ -0,0 +1,142 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.time.OffsetDateTime;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.MediaType;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.eng.dome.revenue.engine.controller.TmfEventListenerController;
+import it.eng.dome.revenue.engine.model.BillSummary;
+import it.eng.dome.revenue.engine.service.CustomerBillIndex;
+
+public class CacheInvalidationServiceTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private TmfCachedDataRetriever tmfDataRetriever;
+
+    private CachedStatementsService statementsService;
+
+    private CachedReportingService reportingService;
+
+    private CustomerBillIndex customerBillIndex;
+
+    private CacheInvalidationService service;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        tmfDataRetriever = mock(TmfCachedDataRetriever.class);
+        statementsService = mock(CachedStatementsService.class);
+        reportingService = mock(CachedReportingService.class);
+        customerBillIndex = mock(CustomerBillIndex.class);
+        // the cached bill had no other parties
+        when(tmfDataRetriever.evictCustomerBill(anyString(), anyCollection(), anyBoolean()))
+                .thenAnswer(inv -> new LinkedHashSet<>((Collection<String>) inv.getArgument(1)));
+
+        service = new CacheInvalidationService();
+        ReflectionTestUtils.setField(service, "tmfDataRetriever", tmfDataRetriever);
+        ReflectionTestUtils.setField(service, "statementsService", statementsService);
+        ReflectionTestUtils.setField(service, "reportingService", reportingService);
+        ReflectionTestUtils.setField(service, "subscriptionService", mock(CachedSubscriptionService.class));
+        ReflectionTestUtils.setField(service, "planService", mock(CachedPlanService.class));
+        ReflectionTestUtils.setField(service, "customerBillIndex", customerBillIndex);
+    }
+
+    @Test
+    public void createdBillIsIndexedAndItsPartiesEvicted() throws Exception {
+        service.handle("listener", event("CustomerBillCreateEvent", "{\"id\": \"cb1\", \"billDate\": \"2026-01-10T00:00:00Z\","
+                + " \"taxIncludedAmount\": {\"unit\": \"EUR\", \"value\": 12.5},"
+                + " \"relatedParty\": [{\"id\": \"seller1\", \"role\": \"Seller\"}, {\"id\": \"buyer1\", \"role\": \"Buyer\"}]}"));
+
+        ArgumentCaptor<BillSummary> indexed = ArgumentCaptor.forClass(BillSummary.class);
+        verify(customerBillIndex).update(indexed.capture());
+        assertThat(indexed.getValue().getId()).isEqualTo("cb1");
+        assertThat(indexed.getValue().getTaxIncludedAmount()).isEqualTo(12.5);
+        verify(tmfDataRetriever).evictCustomerBill("cb1", Set.of("seller1", "buyer1"), true);
+        verify(reportingService).evictReport("seller1");
+        verify(reportingService).evictReport("buyer1");
+        verify(statementsService).evictStatementsOfParties(Set.of("seller1", "buyer1"));
+    }
+
+    @Test
+    public void partialChangeDoesNotReplaceTheIndexedBill() throws Exception {
+        BillSummary indexed = new BillSummary("cb1", OffsetDateTime.parse("2026-01-10T00:00:00Z"), null, 10.0, 12.2, "EUR",
+                List.of(new BillSummary.Party("seller1", "Seller"), new BillSummary.Party("buyer1", "Buyer")));
+        when(customerBillIndex.get("cb1")).thenReturn(indexed);
+
+        service.handle("listener", event("CustomerBillStateChangeEvent", "{\"id\": \"cb1\", \"state\": \"settled\"}"));
+
+        verify(customerBillIndex, never()).update(any());
+        verify(customerBillIndex).refreshBill("cb1");
+        // the parties of the indexed bill, missing from the event
+        verify(tmfDataRetriever).evictCustomerBill("cb1", Set.of("seller1", "buyer1"), true);
+        verify(statementsService).evictStatementsOfParties(Set.of("seller1", "buyer1"));
+    }
+
+    @Test
+    public void changeOfAnUnknownBillDoesNotTrustTheEventParties() throws Exception {
+        service.handle("listener", event("CustomerBillAttributeValueChangeEvent",
+                "{\"id\": \"cb2\", \"relatedParty\": [{\"id\": \"seller2\", \"role\": \"Seller\"}]}"));
+
+        verify(tmfDataRetriever).evictCustomerBill("cb2", Set.of("seller2"), false);
+        verify(customerBillIndex).refreshBill("cb2");
+    }
+
+    @Test
+    public void deletedBillIsRemovedFromTheIndex() throws Exception {
+        service.handle("listener", event("CustomerBillDeleteEvent", "{\"id\": \"cb3\"}"));
+
+        verify(customerBillIndex).remove("cb3");
+        verify(customerBillIndex, never()).refreshBill(anyString());
+    }
+
+    @Test
+    public void listenerAcceptsTmfEvents() throws Exception {
+        TmfEventListenerController controller = new TmfEventListenerController();
+        ReflectionTestUtils.setField(controller, "cacheInvalidationService", service);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller).build();
+
+        mockMvc.perform(post("/revenue/listener/productChange").contentType(MediaType.APPLICATION_JSON)
+                .content(event("ProductAttributeValueChangeEvent", "{\"id\": \"p1\"}").toString()))
+                .andExpect(status().isCreated());
+        verify(tmfDataRetriever).evictProduct("p1");
+
+        mockMvc.perform(post("/revenue/listener/unknown").contentType(MediaType.APPLICATION_JSON)
+                .content(event("ServiceCreateEvent", "{\"id\": \"s1\"}").toString()))
+                .andExpect(status().isBadRequest());
+        verify(tmfDataRetriever, never()).evictCustomerBill(anyString(), anyCollection(), anyBoolean());
+    }
+
+    /*
+     * A TMF hub notification, with the entity under event.<resource>.
+     */
+    private static JsonNode event(String eventType, String entity) throws Exception {
+        String resource = eventType.startsWith("CustomerBill") ? "customerBill" : eventType.startsWith("Product") ? "product" : "service";
+        return MAPPER.readTree("{\"eventId\": \"e1\", \"eventType\": \"" + eventType + "\", \"event\": {\"" + resource + "\": " + entity + "}}");
+    }
+}
@@ -0,0 +1,225 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.ehcache.CacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.tmf.TmfUnavailableException;
+
+public class CoalescingCacheTest {
+
+    private CacheManager cacheManager;
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() {
+        cacheManager = CacheManagerBuilder.newCacheManagerBuilder().build(true);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cacheManager.close();
+    }
+
+    @Test
+    public void concurrentMissesShareOneLoad() throws Exception {
+        CoalescingCache<String, String> cache = this.cache(null, null);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(() -> this.get(cache, "k", () -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new ExternalServiceException("Interrupted", e);
+            }
+            return "v" + loads.incrementAndGet();
+        }));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> this.get(cache, "k", () -> "v" + loads.incrementAndGet()));
+        while (cache.getCoalesced() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("v1");
+        assertThat(second.get(5, TimeUnit.SECONDS)).isEqualTo("v1");
+        assertThat(loads).hasValue(1);
+        assertThat(cache.getInFlight()).isZero();
+    }
+
+    @Test
+    public void loadRunningWhenTheKeyChangesIsNotCached() throws Exception {
+        CoalescingCache<String, String> cache = this.cache(null, null);
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<String> load = CompletableFuture.supplyAsync(() -> this.get(cache, "k", () -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new ExternalServiceException("Interrupted", e);
+            }
+            return "old";
+        }));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        // a TMF event evicts the key while the load is blocked
+        cache.invalidate("k");
+        release.countDown();
+
+        assertThat(load.get(5, TimeUnit.SECONDS)).isEqualTo("old");
+        assertThat(cache.getCache().get("k")).isNull();
+        assertThat(cache.getOrLoad("k", true, () -> "new")).isEqualTo("new");
+        assertThat(cache.getOrLoad("k", true, () -> "newer")).isEqualTo("new");
+    }
+
+    @Test
+    public void refreshRunningWhenAllTheKeysChangeIsNotCached() throws Exception {
+        AtomicReference<CoalescingCache<String, String>> holder = new AtomicReference<>();
+        CoalescingCache<String, String> cache = this.cache(new RefreshPolicy(Duration.ZERO, 0, 0), Runnable::run);
+        holder.set(cache);
+
+        cache.getOrLoad("k", true, () -> "v1");
+        // the refresh (run inline) is overtaken by an eviction of all the keys
+        assertThat(cache.getOrLoad("k", true, () -> {
+            holder.get().invalidateAll();
+            return "v2";
+        })).isEqualTo("v1");
+        assertThat(cache.getCache().get("k")).isNull();
+    }
+
+    @Test
+    public void failedLoadIsNotCached() throws Exception {
+        CoalescingCache<String, String> cache = this.cache(null, null);
+
+        assertThatThrownBy(() -> cache.getOrLoad("k", true, () -> {
+            throw new ExternalServiceException("TMF down");
+        })).isInstanceOf(ExternalServiceException.class);
+        assertThat(cache.getFailures()).isEqualTo(1);
+
+        assertThat(cache.getOrLoad("k", true, () -> "v")).isEqualTo("v");
+        assertThat(cache.getInFlight()).isZero();
+    }
+
+    @Test
+    public void rejectedRefreshIsNeverJoinedByAMiss() throws Exception {
+        AtomicReference<CoalescingCache<String, String>> holder = new AtomicReference<>();
+        String[] missed = new String[1];
+        Executor busy = task -> {
+            // a miss while the refresh is being submitted must load by itself, not join a refresh never run
+            try {
+                missed[0] = holder.get().getOrLoad("k", false, () -> "fresh");
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            throw new RejectedExecutionException("busy");
+        };
+        CoalescingCache<String, String> cache = this.cache(new RefreshPolicy(Duration.ZERO, 0, 0), busy);
+        holder.set(cache);
+
+        cache.getOrLoad("k", true, () -> "v");
+        // stale hit: served while the refresh is rejected
+        assertThat(cache.getOrLoad("k", true, () -> "v2")).isNotNull();
+        assertThat(missed[0]).isEqualTo("fresh");
+        assertThat(cache.getInFlight()).isZero();
+        assertThat(cache.getRefreshes()).isZero();
+    }
+
+    @Test
+    public void staleValueIsServedAndRefreshedInBackground() throws Exception {
+        CoalescingCache<String, String> cache = this.cache(new RefreshPolicy(Duration.ZERO, 0, 0), Runnable::run);
+
+        cache.getOrLoad("k", true, () -> "v1");
+        assertThat(cache.getOrLoad("k", true, () -> "v2")).isEqualTo("v1");
+        assertThat(cache.getRefreshes()).isEqualTo(1);
+        assertThat(cache.getCache().get("k")).isEqualTo("v2");
+    }
+
+    @Test
+    public void onlyTheLookupsByKeyAreCachedAsNotFound() throws Exception {
+        CoalescingCache<String, String> cache = this.cache(null, null);
+        cache.enableNegativeCaching(cacheManager.createCache("negative",
+                CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, CoalescingCache.NotFound.class, ResourcePoolsBuilder.heap(100))));
+
+        assertThat(cache.getOrLoad("gone", true, () -> { loads.incrementAndGet(); return null; })).isNull();
+        assertThat(cache.getOrLoad("gone", true, () -> { loads.incrementAndGet(); return null; })).isNull();
+        assertThat(loads).hasValue(1);
+        assertThat(cache.getNegativeHits()).isEqualTo(1);
+
+        // keys missing from a bulk result are tried again
+        Map<String, Set<String>> requested = new HashMap<>();
+        CoalescingCache.BulkLoader<String, String> bulk = keys -> {
+            requested.put("call" + requested.size(), Set.copyOf(keys));
+            return Map.of("a", "A");
+        };
+        assertThat(cache.getAllOrLoad(Set.of("a", "b"), true, bulk)).containsOnlyKeys("a");
+        assertThat(cache.getAllOrLoad(Set.of("a", "b"), true, bulk)).containsOnlyKeys("a");
+        assertThat(requested).containsEntry("call0", Set.of("a", "b")).containsEntry("call1", Set.of("b"));
+    }
+
+    @Test
+    public void lastValueIsServedOnlyWhileTmfIsUnavailable() throws Exception {
+        CoalescingCache<String, String> cache = this.cache(null, null);
+        cache.enableStaleFallback(cacheManager.createCache("stale",
+                CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, String.class, ResourcePoolsBuilder.heap(100))));
+        CoalescingCache.Loader<String> unavailable = () -> {
+            throw new ExternalServiceException("TMF call failed", new TmfUnavailableException("circuit open"));
+        };
+
+        cache.getOrLoad("k", true, () -> "v1");
+        // expired
+        cache.getCache().remove("k");
+        assertThat(cache.getOrLoad("k", true, unavailable)).isEqualTo("v1");
+        assertThat(cache.getStaleServed()).isEqualTo(1);
+        assertThat(cache.getAllOrLoad(Set.of("k"), true, keys -> {
+            throw new ExternalServiceException("TMF call failed", new TmfUnavailableException("circuit open"));
+        })).containsEntry("k", "v1");
+
+        // other failures are not hidden
+        assertThatThrownBy(() -> cache.getOrLoad("k", true, () -> {
+            throw new ExternalServiceException("TMF returned 500");
+        })).isInstanceOf(ExternalServiceException.class);
+
+        // a changed value is not served
+        cache.invalidate("k");
+        assertThatThrownBy(() -> cache.getOrLoad("k", true, unavailable)).isInstanceOf(ExternalServiceException.class);
+        assertThat(cache.getStaleServed()).isEqualTo(2);
+    }
+
+    private CoalescingCache<String, String> cache(RefreshPolicy refreshPolicy, Executor refreshExecutor) {
+        return new CoalescingCache<>("test", cacheManager.createCache("values",
+                CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, String.class, ResourcePoolsBuilder.heap(100))),
+                refreshPolicy, refreshExecutor);
+    }
+
+    private String get(CoalescingCache<String, String> cache, String key, CoalescingCache.Loader<String> loader) {
+        try {
+            return cache.getOrLoad(key, true, loader);
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ehcache.CacheManager;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.CacheManagerBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.tmf.TmfUnavailableException;
+import it.eng.dome.revenue.engine.utils.CacheDuration;
+
+public class PeriodCacheTest {
+
+    private static final OffsetDateTime T0 = OffsetDateTime.of(2026, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private static final Duration TTL = Duration.ofMinutes(60);
+
+    private CacheService cacheService;
+
+    private PeriodCache<OffsetDateTime> cache;
+
+    // the time of the segment ages, moved by the tests
+    private final AtomicLong now = new AtomicLong(1_000_000L);
+
+    // the periods requested to the loader
+    private final List<OffsetDateTime[]> loads = new ArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        cacheService = new CacheService(new CacheDuration());
+        cache = cacheService.getOrCreatePeriodCache("testPeriodCache", TTL, d -> d, d -> d.toString());
+        cache.setClock(now::get);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        cacheService.shutdown();
+    }
+
+    @Test
+    public void containedPeriodIsAnsweredFromTheCache() throws Exception {
+        assertThat(this.get(0, 30)).hasSize(29);
+        assertThat(this.get(10, 20)).extracting(OffsetDateTime::getDayOfYear).containsExactly(12, 13, 14, 15, 16, 17, 18, 19, 20);
+        assertThat(loads).hasSize(1);
+    }
+
+    @Test
+    public void onlyTheGapsAreLoaded() throws Exception {
+        this.get(0, 10);
+        this.get(20, 30);
+        loads.clear();
+
+        List<OffsetDateTime> days = this.get(5, 25);
+        assertThat(days).hasSize(19).doesNotHaveDuplicates().isSorted();
+        assertThat(loads).hasSize(1);
+        // the gap, slightly overlapping the cached segments
+        assertThat(loads.get(0)[0]).isBefore(day(10)).isAfter(day(9));
+        assertThat(loads.get(0)[1]).isAfter(day(20)).isBefore(day(21));
+
+        loads.clear();
+        assertThat(this.get(0, 30)).hasSize(29);
+        assertThat(loads).isEmpty();
+    }
+
+    @Test
+    public void segmentsOfDifferentAgesExpireApart() throws Exception {
+        this.get(0, 10);
+        now.addAndGet(TTL.toMillis() / 2);
+        // loaded later: not merged with the older segment
+        this.get(5, 20);
+        now.addAndGet(TTL.toMillis() / 2 + 1);
+        loads.clear();
+
+        // the older segment expired, the newer one is still valid
+        assertThat(this.get(12, 18)).hasSize(5);
+        assertThat(loads).isEmpty();
+        assertThat(this.get(1, 9)).hasSize(7);
+        assertThat(loads).hasSize(1);
+    }
+
+    @Test
+    public void unboundedPeriodIsAlwaysLoaded() throws Exception {
+        cache.getOrLoad("k", null, null, true, this::load);
+        cache.getOrLoad("k", null, null, true, this::load);
+        assertThat(loads).hasSize(2);
+        // but it covers the bounded ones
+        assertThat(this.get(3, 6)).hasSize(2);
+        assertThat(loads).hasSize(2);
+    }
+
+    @Test
+    public void segmentLoadedWhenTheKeyChangesIsNotCached() throws Exception {
+        // a TMF event evicts the key while the gap is being loaded
+        assertThat(cache.getOrLoad("k", day(0), day(10), true, (start, end) -> {
+            cache.invalidate("k");
+            return this.load(start, end);
+        })).hasSize(9);
+        now.addAndGet(1);
+        assertThat(this.get(2, 8)).hasSize(5);
+        assertThat(loads).hasSize(2);
+
+        // loaded after the eviction: cached
+        assertThat(this.get(3, 7)).hasSize(3);
+        assertThat(loads).hasSize(2);
+
+        cache.invalidateAll();
+        now.addAndGet(1);
+        this.get(3, 7);
+        assertThat(loads).hasSize(3);
+    }
+
+    @Test
+    public void concurrentQueriesOfTheSameGapShareOneLoad() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PeriodCache.PeriodLoader<OffsetDateTime> blocked = (start, end) -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new ExternalServiceException("Interrupted", e);
+            }
+            return this.load(start, end);
+        };
+
+        CompletableFuture<List<OffsetDateTime>> first = CompletableFuture.supplyAsync(() -> this.get(0, 10, blocked));
+        assertThat(loading.await(5, TimeUnit.SECONDS)).isTrue();
+        CompletableFuture<List<OffsetDateTime>> second = CompletableFuture.supplyAsync(() -> this.get(0, 10, this::load));
+        while (cache.getCoalesced() == 0) {
+            Thread.sleep(5);
+        }
+        release.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).hasSize(9);
+        assertThat(second.get(5, TimeUnit.SECONDS)).hasSize(9);
+        assertThat(loads).hasSize(1);
+        assertThat(cache.getInFlight()).isZero();
+    }
+
+    @Test
+    public void staleSegmentIsServedAndRefreshedInBackground() throws Exception {
+        CacheManager cacheManager = CacheManagerBuilder.newCacheManagerBuilder().build(true);
+        try {
+            @SuppressWarnings("unchecked")
+            Class<PeriodCache.Coverage<OffsetDateTime>> coverage = (Class<PeriodCache.Coverage<OffsetDateTime>>) (Class<?>) PeriodCache.Coverage.class;
+            PeriodCache<OffsetDateTime> refreshed = new PeriodCache<>("refreshed", cacheManager.createCache("segments",
+                    CacheConfigurationBuilder.newCacheConfigurationBuilder(String.class, coverage, ResourcePoolsBuilder.heap(100))),
+                    TTL, d -> d, d -> d.toString(), (name, nanos) -> { }, new RefreshPolicy(TTL.dividedBy(2), 0, 0), Runnable::run);
+            refreshed.setClock(now::get);
+
+            refreshed.getOrLoad("k", day(0), day(30), true, this::load);
+            now.addAndGet(TTL.toMillis() / 2);
+            // served, then reloaded (inline) as a whole
+            assertThat(refreshed.getOrLoad("k", day(10), day(20), true, this::load)).hasSize(9);
+            assertThat(refreshed.getStaleHits()).isEqualTo(1);
+            assertThat(refreshed.getRefreshes()).isEqualTo(1);
+            assertThat(loads).hasSize(2);
+            assertThat(loads.get(1)[0]).isEqualTo(day(0));
+            assertThat(loads.get(1)[1]).isEqualTo(day(30));
+
+            // the refreshed segment replaced the stale one, and lives a TTL from the refresh: served (stale again)
+            now.addAndGet(TTL.toMillis() / 2 + 1);
+            assertThat(refreshed.getOrLoad("k", day(1), day(29), true, this::load)).hasSize(27);
+            assertThat(refreshed.getStaleHits()).isEqualTo(2);
+            assertThat(loads).hasSize(3);
+            assertThat(loads.get(2)[0]).isEqualTo(day(0));
+        } finally {
+            cacheManager.close();
+        }
+    }
+
+    @Test
+    public void expiredSegmentsAreServedWhileTmfIsUnavailable() throws Exception {
+        cacheService.enableStaleFallback(cache, TTL.multipliedBy(24));
+        PeriodCache.PeriodLoader<OffsetDateTime> unavailable = (start, end) -> {
+            throw new ExternalServiceException("TMF call failed", new TmfUnavailableException("circuit open"));
+        };
+        this.get(0, 10);
+        this.get(5, 20);
+        now.addAndGet(TTL.toMillis() + 1);
+
+        assertThat(this.get(2, 18, unavailable)).hasSize(15);
+        assertThat(cache.getStaleServed()).isEqualTo(1);
+        // not covered by the stale segments
+        assertThatThrownBy(() -> cache.getOrLoad("k", day(5), day(25), true, unavailable))
+                .isInstanceOf(ExternalServiceException.class);
+
+        cache.invalidate("k");
+        assertThatThrownBy(() -> cache.getOrLoad("k", day(2), day(8), true, unavailable))
+                .isInstanceOf(ExternalServiceException.class);
+    }
+
+    private List<OffsetDateTime> get(int from, int to, PeriodCache.PeriodLoader<OffsetDateTime> loader) {
+        try {
+            return cache.getOrLoad("k", day(from), day(to), true, loader);
+        } catch (ExternalServiceException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<OffsetDateTime> get(int from, int to) throws Exception {
+        return cache.getOrLoad("k", day(from), day(to), true, this::load);
+    }
+
+    /*
+     * One item at midnight of each day of the first 100 days of the year, in the period (exclusive bounds).
+     */
+    private List<OffsetDateTime> load(OffsetDateTime start, OffsetDateTime end) {
+        loads.add(new OffsetDateTime[] { start, end });
+        List<OffsetDateTime> items = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            OffsetDateTime d = day(i);
+            if ((start == null || d.isAfter(start)) && (end == null || d.isBefore(end))) {
+                items.add(d);
+            }
+        }
+        return items;
+    }
+
+    private static OffsetDateTime day(int n) {
+        return T0.plusDays(n);
+    }
+}
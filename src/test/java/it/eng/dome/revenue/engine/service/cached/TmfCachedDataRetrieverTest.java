@@ -0,0 +1,22 @@
+package it.eng.dome.revenue.engine.service.cached;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+public class TmfCachedDataRetrieverTest {
+
+    @Test
+    public void billListsAreMatchedOnTheExactParty() {
+        String byParty = TmfCachedDataRetriever.billListKey("all-bills", "org-10", "BuyerOperator", "");
+        String byPair = TmfCachedDataRetriever.billListKey("all-customer-bills", "org-2", "org-10", "|fields=id,billDate");
+
+        assertThat(TmfCachedDataRetriever.isBillListOf(byParty, Set.of("org-1"))).isFalse();
+        assertThat(TmfCachedDataRetriever.isBillListOf(byPair, Set.of("org-1"))).isFalse();
+        assertThat(TmfCachedDataRetriever.isBillListOf(byParty, Set.of("org-1", "org-10"))).isTrue();
+        assertThat(TmfCachedDataRetriever.isBillListOf(byPair, Set.of("org-10"))).isTrue();
+        assertThat(TmfCachedDataRetriever.isBillListOf(byPair, Set.of("org-2"))).isTrue();
+    }
+}
@@ -0,0 +1,172 @@
+package it.eng.dome.revenue.engine.service.compute;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import it.eng.dome.revenue.engine.exception.BadTmfDataException;
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.model.Price;
+import it.eng.dome.revenue.engine.model.RevenueItem;
+import it.eng.dome.revenue.engine.model.Subscription;
+
+public class ForEachExecutorTest {
+
+    private static final List<String> SELLERS = List.of("seller-1", "seller-2", "seller-3", "seller-4");
+
+    private ForEachExecutor executor;
+
+    // the thread that ran the iteration of each value
+    private final Map<String, Thread> ranBy = new ConcurrentHashMap<>();
+
+    @AfterEach
+    public void tearDown() {
+        if (executor != null) {
+            executor.destroy();
+        }
+    }
+
+    @Test
+    public void resultsAreMergedInTheSellerOrder() throws Exception {
+        executor = this.executor(4);
+
+        // the first sellers finish last
+        List<String> results = executor.invokeAll(SELLERS, seller -> {
+            sleep(40L * (SELLERS.size() - SELLERS.indexOf(seller)));
+            ranBy.put(seller, Thread.currentThread());
+            return "items of " + seller;
+        });
+
+        assertThat(results).containsExactly("items of seller-1", "items of seller-2", "items of seller-3", "items of seller-4");
+        assertThat(ranBy.values()).allSatisfy(thread -> assertThat(thread.getName()).startsWith("foreach-"));
+    }
+
+    @Test
+    public void childItemsOfTheForEachBundleAreInTheSellerOrder() throws Exception {
+        executor = this.executor(4);
+        Price bundle = new Price();
+        bundle.setName("per seller");
+        bundle.setCurrency("EUR");
+        ForEachCalculator calculator = new ForEachCalculator(new Subscription(), PlanGraph.compile(bundle).getRoot());
+        calculator.setForEachExecutor(executor);
+
+        ForEachExecutor.Iteration<String, List<RevenueItem>> iteration = seller -> {
+            sleep(40L * (SELLERS.size() - SELLERS.indexOf(seller)));
+            return List.of(new RevenueItem(seller + "/fee", 1.0, "EUR"), new RevenueItem(seller + "/discount", -0.5, "EUR"));
+        };
+        List<List<RevenueItem>> sellersItems = ReflectionTestUtils.invokeMethod(calculator, "forEach", SELLERS, iteration);
+        RevenueItem output = new RevenueItem("per seller", "EUR");
+        ReflectionTestUtils.invokeMethod(calculator, "addAll", output, sellersItems);
+
+        assertThat(output.getItems()).extracting(RevenueItem::getName).containsExactly(
+                "seller-1/fee", "seller-1/discount", "seller-2/fee", "seller-2/discount",
+                "seller-3/fee", "seller-3/discount", "seller-4/fee", "seller-4/discount");
+    }
+
+    @Test
+    public void nestedIterationsRunSeriallyOnTheOuterThread() throws Exception {
+        executor = this.executor(4);
+        Map<String, Thread> outerThreads = new ConcurrentHashMap<>();
+
+        List<List<String>> results = executor.invokeAll(List.of("marketplace-1", "marketplace-2"), marketplace -> {
+            outerThreads.put(marketplace, Thread.currentThread());
+            return executor.invokeAll(SELLERS, seller -> {
+                ranBy.put(marketplace + "/" + seller, Thread.currentThread());
+                return seller;
+            });
+        });
+
+        assertThat(results).hasSize(2).allSatisfy(sellers -> assertThat(sellers).isEqualTo(SELLERS));
+        assertThat(ranBy).hasSize(8);
+        ranBy.forEach((key, thread) -> assertThat(thread).isSameAs(outerThreads.get(key.substring(0, key.indexOf('/')))));
+    }
+
+    @Test
+    public void callerRunsTheIterationsWhenThePoolIsSaturated() throws Exception {
+        executor = this.executor(2);
+        // 2 running, 2 queued: the 5th and 6th sellers run on the caller, which releases the others
+        List<String> sellers = List.of("s1", "s2", "s3", "s4", "s5", "s6");
+        Thread caller = Thread.currentThread();
+        CountDownLatch callerRan = new CountDownLatch(1);
+
+        List<String> results = executor.invokeAll(sellers, seller -> {
+            ranBy.put(seller, Thread.currentThread());
+            if (Thread.currentThread() == caller) {
+                callerRan.countDown();
+            } else {
+                await(callerRan);
+            }
+            return seller;
+        });
+
+        assertThat(results).isEqualTo(sellers);
+        assertThat(ranBy.get("s5")).isSameAs(caller);
+        assertThat(ranBy.get("s1").getName()).startsWith("foreach-");
+    }
+
+    @Test
+    public void firstFailureInTheSellerOrderIsThrown() throws Exception {
+        executor = this.executor(4);
+        CountDownLatch secondStarted = new CountDownLatch(1);
+
+        // the third seller fails first, the second one is reported
+        assertThatThrownBy(() -> executor.invokeAll(SELLERS, seller -> {
+            if (seller.equals("seller-2")) {
+                secondStarted.countDown();
+                sleep(100);
+                throw new ExternalServiceException("TMF down");
+            }
+            if (seller.equals("seller-3")) {
+                await(secondStarted);
+                throw new BadTmfDataException("Organization", seller, "no name");
+            }
+            return seller;
+        })).isInstanceOf(ExternalServiceException.class).hasMessage("TMF down");
+
+        // the pool is still usable
+        assertThat(executor.invokeAll(SELLERS, seller -> seller)).isEqualTo(SELLERS);
+    }
+
+    @Test
+    public void iterationsRunSeriallyWithParallelismOne() throws Exception {
+        executor = this.executor(1);
+
+        assertThat(executor.invokeAll(SELLERS, seller -> {
+            ranBy.put(seller, Thread.currentThread());
+            return seller;
+        })).isEqualTo(SELLERS);
+        assertThat(ranBy.values()).containsOnly(Thread.currentThread());
+    }
+
+    private ForEachExecutor executor(int parallelism) throws Exception {
+        ForEachExecutor forEachExecutor = new ForEachExecutor();
+        ReflectionTestUtils.setField(forEachExecutor, "parallelism", parallelism);
+        forEachExecutor.afterPropertiesSet();
+        return forEachExecutor;
+    }
+
+    private static void sleep(long millis) throws ExternalServiceException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            throw new ExternalServiceException("Interrupted", e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws ExternalServiceException {
+        try {
+            assertThat(latch.await(5, TimeUnit.SECONDS)).isTrue();
+        } catch (InterruptedException e) {
+            throw new ExternalServiceException("Interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package it.eng.dome.revenue.engine.service.compute;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+import it.eng.dome.revenue.engine.service.MetricsRetriever;
+import it.eng.dome.tmforum.tmf678.v4.model.TimePeriod;
+
+public class MetricsMemoTest {
+
+    private static final OffsetDateTime JANUARY = OffsetDateTime.of(2025, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    private final MetricsRetriever metricsRetriever = mock(MetricsRetriever.class);
+
+    private final MetricsMemo memo = new MetricsMemo(metricsRetriever);
+
+    @Test
+    public void valueIsComputedOncePerMetricSellerBuyerAndPeriod() throws Exception {
+        when(metricsRetriever.computeValueForKey(anyString(), anyString(), any(), any())).thenReturn(10.0);
+
+        memo.computeValueForKey("bills-no-taxes", "seller", "buyer", this.month(0));
+        memo.computeValueForKey("bills-no-taxes", "seller", "buyer", this.month(0));
+        memo.computeValueForKey("bills-no-taxes", "other-seller", "buyer", this.month(0));
+        memo.computeValueForKey("bills-no-taxes", "seller", null, this.month(0));
+        memo.computeValueForKey("bills-no-taxes", "seller", "buyer", this.month(1));
+        memo.computeValueForKey("active-sellers", "seller", "buyer", this.month(0));
+
+        verify(metricsRetriever, times(5)).computeValueForKey(anyString(), anyString(), any(), any());
+        assertThat(memo.getMisses()).isEqualTo(5);
+        assertThat(memo.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void concurrentRequestsOfTheSameValueShareOneComputation() throws Exception {
+        int threads = 8;
+        CountDownLatch started = new CountDownLatch(1);
+        AtomicInteger computations = new AtomicInteger();
+        when(metricsRetriever.computeValueForKey(anyString(), anyString(), any(), any())).thenAnswer(invocation -> {
+            computations.incrementAndGet();
+            started.countDown();
+            // keep the computation running while the other threads ask for the value
+            Thread.sleep(200);
+            return 42.0;
+        });
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Double>> results = new ArrayList<>();
+            results.add(pool.submit(() -> memo.computeValueForKey("bills-no-taxes", "seller", "buyer", this.month(0))));
+            assertThat(started.await(5, TimeUnit.SECONDS)).isTrue();
+            for (int i = 1; i < threads; i++) {
+                results.add(pool.submit(() -> memo.computeValueForKey("bills-no-taxes", "seller", "buyer", this.month(0))));
+            }
+            for (Future<Double> result : results) {
+                assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo(42.0);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        assertThat(computations.get()).isEqualTo(1);
+        assertThat(memo.getMisses()).isEqualTo(1);
+        assertThat(memo.getHits()).isEqualTo(threads - 1);
+    }
+
+    @Test
+    public void failedComputationIsNotKept() throws Exception {
+        when(metricsRetriever.computeValueForKey(anyString(), anyString(), any(), any()))
+                .thenThrow(new ExternalServiceException("TMF unavailable"))
+                .thenReturn(7.0);
+
+        assertThatThrownBy(() -> memo.computeValueForKey("bills-no-taxes", "seller", "buyer", this.month(0)))
+                .isInstanceOf(ExternalServiceException.class)
+                .hasMessage("TMF unavailable");
+
+        // retried, and then reused
+        assertThat(memo.computeValueForKey("bills-no-taxes", "seller", "buyer", this.month(0))).isEqualTo(7.0);
+        assertThat(memo.computeValueForKey("bills-no-taxes", "seller", "buyer", this.month(0))).isEqualTo(7.0);
+        verify(metricsRetriever, times(2)).computeValueForKey(anyString(), anyString(), any(), any());
+    }
+
+    @Test
+    public void failedDistinctValuesAreRetried() throws Exception {
+        when(metricsRetriever.getDistinctValuesForKey(anyString(), anyString(), any()))
+                .thenThrow(new IllegalStateException("bad data"))
+                .thenReturn(List.of("seller-1", "seller-2"));
+
+        assertThatThrownBy(() -> memo.getDistinctValuesForKey("active-sellers", "subscriber", this.month(0)))
+                .isInstanceOf(IllegalStateException.class);
+
+        assertThat(memo.getDistinctValuesForKey("active-sellers", "subscriber", this.month(0))).containsExactly("seller-1", "seller-2");
+        assertThat(memo.getDistinctValuesForKey("active-sellers", "subscriber", this.month(0))).containsExactly("seller-1", "seller-2");
+        verify(metricsRetriever, times(2)).getDistinctValuesForKey(anyString(), anyString(), any());
+    }
+
+    private TimePeriod month(int offset) {
+        return new TimePeriod().startDateTime(JANUARY.plusMonths(offset)).endDateTime(JANUARY.plusMonths(offset + 1));
+    }
+}
@@ -0,0 +1,88 @@
+package it.eng.dome.revenue.engine.service.compute;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.expression.EvaluationException;
+import org.springframework.expression.ParseException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import it.eng.dome.revenue.engine.model.Price;
+
+public class PlanExpressionsTest {
+
+    @Test
+    public void literalAndPropertyComparisons() {
+        Price fee = this.price("fee", null);
+
+        assertThat(PlanExpressions.isTrue("1 > 0", fee)).isTrue();
+        assertThat(PlanExpressions.isTrue("'a' == 'b'", fee)).isFalse();
+        assertThat(PlanExpressions.isTrue("true and !false", fee)).isTrue();
+        // the plan item is the root object
+        assertThat(PlanExpressions.isTrue("name == 'fee'", fee)).isTrue();
+        assertThat(PlanExpressions.isTrue("name != 'fee'", fee)).isFalse();
+    }
+
+    @Test
+    public void nullResultIsFalse() {
+        Price fee = this.price("fee", null);
+
+        assertThat(PlanExpressions.isTrue("null", fee)).isFalse();
+        assertThat(PlanExpressions.isTrue("currency", fee)).isFalse();
+    }
+
+    @Test
+    public void methodCallsAndTypesAreRejected() {
+        Price fee = this.price("fee", null);
+
+        assertThatThrownBy(() -> PlanExpressions.isTrue("name.isEmpty()", fee)).isInstanceOf(EvaluationException.class);
+        assertThatThrownBy(() -> PlanExpressions.isTrue("T(java.lang.System).exit(1) == null", fee))
+                .isInstanceOf(EvaluationException.class);
+        assertThatThrownBy(() -> PlanExpressions.isTrue("(name = 'changed') == 'changed'", fee))
+                .isInstanceOf(EvaluationException.class);
+        assertThat(fee.getName()).isEqualTo("fee");
+    }
+
+    @Test
+    public void invalidExpressionIsReportedAtLoadAndFailsWhenEvaluated() {
+        Price plan = this.price("plan", null);
+        Price broken = this.price("broken", "1 >");
+        plan.setPrices(List.of(broken));
+
+        assertThatThrownBy(() -> PlanExpressions.parse("1 >")).isInstanceOf(ParseException.class);
+        // logged, the plan is still loaded
+        assertThatCode(() -> PlanExpressions.parseAll(plan)).doesNotThrowAnyException();
+        assertThat(this.cached()).doesNotContainKey("1 >");
+        // the item is not computed silently
+        PlanGraph.Node node = PlanGraph.compile(plan).getRoot().getBundleItems().get(0);
+        assertThatThrownBy(node::isIgnored).isInstanceOf(ParseException.class);
+    }
+
+    @Test
+    public void placeholdersAreParsedOnlyOnceResolved() {
+        Price plan = this.price("plan", "${chargePeriod.nr} > 2");
+        Price valid = this.price("valid", "name == 'valid'");
+        plan.setPrices(List.of(valid));
+
+        PlanExpressions.parseAll(plan);
+
+        assertThat(this.cached()).doesNotContainKey("${chargePeriod.nr} > 2").containsKey("name == 'valid'");
+    }
+
+    private Price price(String name, String ignore) {
+        Price price = new Price();
+        price.setName(name);
+        price.setIgnore(ignore);
+        return price;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ?> cached() {
+        return (Map<String, ?>) ReflectionTestUtils.getField(PlanExpressions.class, "CACHE");
+    }
+}
@@ -0,0 +1,86 @@
+package it.eng.dome.revenue.engine.service.compute;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import it.eng.dome.revenue.engine.model.Discount;
+import it.eng.dome.revenue.engine.model.Plan;
+import it.eng.dome.revenue.engine.model.Price;
+import it.eng.dome.revenue.engine.model.Subscription;
+
+public class PlanGraphTest {
+
+    @Test
+    public void nodesFollowThePlanItems() {
+        Price first = this.price("first");
+        Price second = this.price("second");
+        Discount discount = new Discount();
+        discount.setName("discount");
+        discount.setPercent(5.0);
+        second.setDiscount(discount);
+        Price bundle = this.price("bundle");
+        bundle.setIsBundle(true);
+        bundle.setPrices(List.of(first, second));
+
+        PlanGraph.Node root = PlanGraph.compile(bundle).getRoot();
+
+        assertThat(root.getItem()).isSameAs(bundle);
+        assertThat(root.getBundleItems()).extracting(PlanGraph.Node::getItem).containsExactly(first, second);
+        assertThat(root.getBundleItems().get(0).getDiscount()).isNull();
+        assertThat(root.getBundleItems().get(1).getDiscount().getItem()).isSameAs(discount);
+        assertThat(PlanGraph.compile(null).getRoot()).isNull();
+    }
+
+    @Test
+    public void graphIsCompiledOncePerPlanPrice() {
+        Subscription subscription = this.subscription(this.price("plan price"));
+        RevenueStatementBuilder builder = new RevenueStatementBuilder(subscription);
+
+        PlanGraph first = this.graphOf(builder, subscription);
+        PlanGraph second = this.graphOf(builder, subscription);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.getRoot().getItem()).isSameAs(subscription.getPlan().getPrice());
+    }
+
+    @Test
+    public void graphIsRebuiltWhenThePlanPriceChanges() {
+        Subscription subscription = this.subscription(this.price("plan price"));
+        RevenueStatementBuilder builder = new RevenueStatementBuilder(subscription);
+        PlanGraph before = this.graphOf(builder, subscription);
+
+        // e.g. the plan re-resolved: an equal, but new, price instance
+        Price resolved = this.price("plan price");
+        subscription.getPlan().setPrice(resolved);
+        PlanGraph after = this.graphOf(builder, subscription);
+
+        assertThat(after).isNotSameAs(before);
+        assertThat(after.getRoot().getItem()).isSameAs(resolved);
+        assertThat(this.graphOf(builder, subscription)).isSameAs(after);
+    }
+
+    private PlanGraph graphOf(RevenueStatementBuilder builder, Subscription subscription) {
+        return ReflectionTestUtils.invokeMethod(builder, "getGraph", subscription.getPlan().getPrice());
+    }
+
+    private Subscription subscription(Price price) {
+        Plan plan = new Plan();
+        plan.setName("plan");
+        plan.setPrice(price);
+        Subscription subscription = new Subscription();
+        subscription.setPlan(plan);
+        return subscription;
+    }
+
+    private Price price(String name) {
+        Price price = new Price();
+        price.setName(name);
+        price.setCurrency("EUR");
+        price.setAmount(10.0);
+        return price;
+    }
+}
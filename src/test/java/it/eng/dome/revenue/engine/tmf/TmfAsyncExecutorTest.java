@@ -0,0 +1,135 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import it.eng.dome.revenue.engine.exception.BadTmfDataException;
+import it.eng.dome.revenue.engine.exception.ExternalServiceException;
+
+public class TmfAsyncExecutorTest {
+
+    private TmfAsyncExecutor executor;
+
+    @AfterEach
+    public void tearDown() {
+        if (executor != null) {
+            executor.destroy();
+        }
+    }
+
+    @Test
+    public void readsRunConcurrentlyUpToTheMaxConcurrency() throws Exception {
+        this.assertMaxConcurrency(false);
+    }
+
+    @Test
+    public void readsOnVirtualThreadsAreCappedToo() throws Exception {
+        // falls back to the platform pool when virtual threads are not available
+        this.assertMaxConcurrency(true);
+    }
+
+    @Test
+    public void joinRethrowsTheExceptionOfTheRead() throws Exception {
+        executor = this.executor(2, false);
+
+        ExternalServiceException unavailable = new ExternalServiceException("TMF unavailable");
+        assertThatThrownBy(() -> TmfAsyncExecutor.join(executor.supply(() -> {
+            throw unavailable;
+        }))).isSameAs(unavailable);
+
+        BadTmfDataException badData = new BadTmfDataException("Product", "p1", "no price");
+        assertThatThrownBy(() -> TmfAsyncExecutor.join(executor.supply(() -> {
+            throw badData;
+        }))).isSameAs(badData);
+
+        IllegalStateException bug = new IllegalStateException("bug");
+        assertThatThrownBy(() -> TmfAsyncExecutor.join(executor.supply(() -> {
+            throw bug;
+        }))).isSameAs(bug);
+
+        // other checked exceptions are wrapped
+        IOException io = new IOException("connection reset");
+        assertThatThrownBy(() -> TmfAsyncExecutor.join(executor.supply(() -> {
+            throw io;
+        }))).isInstanceOf(ExternalServiceException.class).hasCause(io);
+    }
+
+    @Test
+    public void joinUnwrapsTheDependentStages() throws Exception {
+        executor = this.executor(2, false);
+        ExternalServiceException unavailable = new ExternalServiceException("TMF unavailable");
+
+        CompletableFuture<String> composed = executor.supply(() -> "p1")
+                .thenCompose(id -> executor.<String>supply(() -> {
+                    throw unavailable;
+                }))
+                .thenCombine(executor.supply(() -> "other"), (a, b) -> a + b);
+
+        assertThatThrownBy(() -> TmfAsyncExecutor.join(composed)).isSameAs(unavailable);
+        assertThat(TmfAsyncExecutor.join(executor.supply(() -> "p1").thenCombine(executor.supply(() -> "p2"), String::concat))).isEqualTo("p1p2");
+    }
+
+    @Test
+    public void readsRunInTheTrafficClassOfTheCaller() throws Exception {
+        executor = this.executor(2, false);
+
+        assertThat(TmfAsyncExecutor.join(executor.supply(TmfTrafficClass::current))).isEqualTo(TmfTrafficClass.INTERACTIVE);
+        CompletableFuture<TmfTrafficClass> background = TmfTrafficClass.BACKGROUND.call(() -> executor.supply(TmfTrafficClass::current));
+        assertThat(TmfAsyncExecutor.join(background)).isEqualTo(TmfTrafficClass.BACKGROUND);
+        // the pool threads are not left in the class of the previous read
+        assertThat(TmfAsyncExecutor.join(executor.supply(TmfTrafficClass::current))).isEqualTo(TmfTrafficClass.INTERACTIVE);
+    }
+
+    @Test
+    public void readsAfterShutdownFail() throws Exception {
+        executor = this.executor(2, false);
+        executor.destroy();
+
+        assertThatThrownBy(() -> TmfAsyncExecutor.join(executor.supply(() -> "p1")))
+                .isInstanceOf(ExternalServiceException.class)
+                .hasMessageContaining("shut down");
+    }
+
+    private void assertMaxConcurrency(boolean virtualThreads) throws Exception {
+        executor = this.executor(3, virtualThreads);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+
+        List<CompletableFuture<Integer>> reads = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            int n = i;
+            reads.add(executor.supply(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(30);
+                } finally {
+                    running.decrementAndGet();
+                }
+                return n;
+            }));
+        }
+
+        for (int i = 0; i < reads.size(); i++) {
+            assertThat(TmfAsyncExecutor.join(reads.get(i))).isEqualTo(i);
+        }
+        assertThat(maxRunning.get()).isEqualTo(3);
+    }
+
+    private TmfAsyncExecutor executor(int maxConcurrency, boolean virtualThreads) throws Exception {
+        TmfAsyncExecutor executor = new TmfAsyncExecutor();
+        ReflectionTestUtils.setField(executor, "maxConcurrency", maxConcurrency);
+        ReflectionTestUtils.setField(executor, "virtualThreads", virtualThreads);
+        executor.afterPropertiesSet();
+        return executor;
+    }
+}
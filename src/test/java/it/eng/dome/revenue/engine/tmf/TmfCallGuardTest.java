@@ -0,0 +1,176 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import it.eng.dome.revenue.engine.tmf.TmfPageFetcher.TmfApi;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+public class TmfCallGuardTest {
+
+    private static final long LATENCY_MS = 200;
+
+    private TmfCallGuard guard;
+
+    private OkHttpClient client;
+
+    private ExecutorService callers;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        guard = new TmfCallGuard();
+        ReflectionTestUtils.setField(guard, "enabled", true);
+        ReflectionTestUtils.setField(guard, "maxWaitMillis", 50L);
+        ReflectionTestUtils.setField(guard, "backgroundMaxWaitMillis", 0L);
+        ReflectionTestUtils.setField(guard, "initialLimit", 16);
+        ReflectionTestUtils.setField(guard, "minLimit", 2);
+        ReflectionTestUtils.setField(guard, "maxLimit", 64);
+        ReflectionTestUtils.setField(guard, "latencyTolerance", 2.0);
+        ReflectionTestUtils.setField(guard, "circuitWindow", 20);
+        ReflectionTestUtils.setField(guard, "circuitMinCalls", 10);
+        ReflectionTestUtils.setField(guard, "circuitFailureRate", 0.5);
+        ReflectionTestUtils.setField(guard, "slowCallMillis", 10000L);
+        ReflectionTestUtils.setField(guard, "openMillis", 30000L);
+        ReflectionTestUtils.setField(guard, "halfOpenCalls", 3);
+        ReflectionTestUtils.setField(guard, "interactiveBulkhead", 1);
+        ReflectionTestUtils.setField(guard, "backgroundBulkhead", 1);
+        guard.afterPropertiesSet();
+
+        // offline TMF answering after a fixed latency
+        TmfOfflineBackend backend = new TmfOfflineBackend();
+        ReflectionTestUtils.setField(backend, "latencyMillis", LATENCY_MS);
+        ObjectNode org = new ObjectMapper().createObjectNode().put("id", "o1").put("tradingName", "Org 1");
+        backend.getStore().put("organization", org);
+
+        client = new OkHttpClient.Builder()
+                .addInterceptor(guard.interceptor(TmfApi.TMF632))
+                .addInterceptor(backend)
+                .build();
+        callers = Executors.newFixedThreadPool(3);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        callers.shutdownNow();
+    }
+
+    @Test
+    public void backgroundCallsQueueBehindTheBulkhead() throws Exception {
+        List<Future<Integer>> calls = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            calls.add(callers.submit(() -> TmfTrafficClass.BACKGROUND.call(this::getOrganization)));
+        }
+        // each call waits for the previous ones, far longer than max_wait_ms, and none is rejected
+        for (Future<Integer> call : calls) {
+            assertThat(call.get(5, TimeUnit.SECONDS)).isEqualTo(200);
+        }
+    }
+
+    @Test
+    public void interactiveCallsAreRejectedWhenTheBulkheadIsFull() throws Exception {
+        Future<Integer> first = callers.submit(this::getOrganization);
+        Thread.sleep(LATENCY_MS / 4);
+
+        assertThatThrownBy(this::getOrganization).isInstanceOf(TmfUnavailableException.class);
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo(200);
+    }
+
+    @Test
+    public void circuitOpensOnFailuresAndClosesAfterTheTrialCalls() {
+        TmfCallGuard.CircuitBreaker circuit = new TmfCallGuard.CircuitBreaker("test", 10, 4, 0.5, 1000, 2);
+        long now = 0;
+        for (int i = 0; i < 3; i++) {
+            assertThat(circuit.tryAcquire(now)).isTrue();
+            circuit.onResult(i == 0, now);
+        }
+        assertThat(circuit.isOpen(now)).isFalse();
+        circuit.onResult(false, now);
+        assertThat(circuit.isOpen(now)).isTrue();
+        assertThat(circuit.tryAcquire(now + 999)).isFalse();
+
+        // half open: only the trial calls go through
+        now += 1000;
+        assertThat(circuit.tryAcquire(now)).isTrue();
+        assertThat(circuit.tryAcquire(now)).isTrue();
+        assertThat(circuit.tryAcquire(now)).isFalse();
+        assertThat(circuit.getState()).isEqualTo(TmfCallGuard.CircuitBreaker.State.HALF_OPEN);
+        circuit.onResult(true, now);
+        circuit.onResult(true, now);
+        assertThat(circuit.getState()).isEqualTo(TmfCallGuard.CircuitBreaker.State.CLOSED);
+    }
+
+    @Test
+    public void circuitOpensAgainWhenATrialCallFails() {
+        TmfCallGuard.CircuitBreaker circuit = new TmfCallGuard.CircuitBreaker("test", 2, 2, 0.5, 1000, 2);
+        circuit.onResult(false, 0);
+        circuit.onResult(false, 0);
+        assertThat(circuit.tryAcquire(1000)).isTrue();
+        circuit.onResult(false, 1000);
+        assertThat(circuit.isOpen(1000)).isTrue();
+        assertThat(circuit.isOpen(2000)).isFalse();
+    }
+
+    @Test
+    public void limitBacksOffOnSlowCallsAndGrowsWhileInUse() throws Exception {
+        TmfCallGuard.AdaptiveLimit limit = new TmfCallGuard.AdaptiveLimit(4, 2, 8, 2.0);
+        long usual = TimeUnit.MILLISECONDS.toNanos(10);
+        for (int i = 0; i < 4; i++) {
+            assertThat(limit.acquire(10)).isTrue();
+        }
+        // full: further calls wait, then are rejected
+        assertThat(limit.acquire(10)).isFalse();
+        for (int i = 0; i < 4; i++) {
+            limit.release(usual, true, true);
+        }
+        int grown = limit.getLimit();
+        assertThat(grown).isGreaterThanOrEqualTo(4);
+
+        for (int i = 0; i < 3; i++) {
+            assertThat(limit.acquire(10)).isTrue();
+            limit.release(usual * 10, true, true);
+        }
+        assertThat(limit.getLimit()).isLessThan(grown);
+        assertThat(limit.getInFlight()).isZero();
+
+        for (int i = 0; i < 50; i++) {
+            assertThat(limit.acquire(10)).isTrue();
+            limit.release(0, false, true);
+        }
+        assertThat(limit.getLimit()).isEqualTo(2);
+    }
+
+    @Test
+    public void limitWithoutMaxWaitWaitsForARelease() throws Exception {
+        TmfCallGuard.AdaptiveLimit limit = new TmfCallGuard.AdaptiveLimit(1, 1, 1, 2.0);
+        assertThat(limit.acquire(0)).isTrue();
+        Future<Boolean> waiting = callers.submit(() -> limit.acquire(0));
+        Thread.sleep(100);
+        assertThat(waiting.isDone()).isFalse();
+        limit.release(0, true, false);
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private int getOrganization() throws Exception {
+        Request request = new Request.Builder().url("http://tmf.local/tmf-api/party/v4/organization/o1").build();
+        try (Response response = client.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import okhttp3.Call;
+import okhttp3.Interceptor;
+import okhttp3.Request;
+
+public class TmfHedgerTest {
+
+    private static final String OPERATION = "TMF637.getProduct";
+
+    private TmfHedger hedger;
+
+    private Thread caller;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        hedger = new TmfHedger();
+        ReflectionTestUtils.setField(hedger, "enabled", true);
+        ReflectionTestUtils.setField(hedger, "percentile", 0.95);
+        ReflectionTestUtils.setField(hedger, "minDelayMillis", 50L);
+        ReflectionTestUtils.setField(hedger, "window", 10);
+        ReflectionTestUtils.setField(hedger, "minSamples", 1);
+        ReflectionTestUtils.setField(hedger, "budgetRatio", 1.0);
+        ReflectionTestUtils.setField(hedger, "budgetBurst", 10);
+        ReflectionTestUtils.setField(hedger, "threads", 2);
+        hedger.afterPropertiesSet();
+        caller = Thread.currentThread();
+        // a first fast lookup sets the hedge delay to the minimum
+        hedger.call(OPERATION, () -> "warm");
+    }
+
+    @AfterEach
+    public void tearDown() {
+        hedger.destroy();
+    }
+
+    @Test
+    public void slowLookupIsAnsweredByTheHedgeAndCancelled() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        Interceptor.Chain chain = this.blockedChain(cancelled);
+        AtomicReference<String> hedgeThread = new AtomicReference<>();
+
+        long start = System.currentTimeMillis();
+        String result = hedger.call(OPERATION, () -> {
+            if (Thread.currentThread() == caller) {
+                // the primary request: blocked on TMF until its HTTP call is cancelled
+                hedger.interceptor().intercept(chain);
+                return "primary";
+            }
+            hedgeThread.set(Thread.currentThread().getName());
+            return "hedge";
+        });
+
+        assertThat(result).isEqualTo("hedge");
+        assertThat(cancelled.getCount()).isZero();
+        assertThat(hedgeThread.get()).startsWith("tmf-hedge-");
+        assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+    }
+
+    @Test
+    public void hedgedLookupRecordsOneCallerSeenLatency() throws Exception {
+        CountDownLatch cancelled = new CountDownLatch(1);
+        Interceptor.Chain chain = this.blockedChain(cancelled);
+
+        long start = System.nanoTime();
+        hedger.call(OPERATION, () -> {
+            if (Thread.currentThread() == caller) {
+                hedger.interceptor().intercept(chain);
+                return "primary";
+            }
+            return "hedge";
+        });
+        long elapsed = System.nanoTime() - start;
+
+        // the warm-up lookup and this one: from the primary start to the hedge answer
+        long[] samples = this.latency().getSamples();
+        assertThat(samples).hasSize(2);
+        assertThat(samples[1]).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50)).isLessThanOrEqualTo(elapsed);
+    }
+
+    @Test
+    public void slowHedgeIsInterruptedWhenTheLookupAnswers() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+
+        String result = hedger.call(OPERATION, () -> {
+            if (Thread.currentThread() == caller) {
+                Thread.sleep(300);
+                return "primary";
+            }
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "hedge";
+        });
+
+        assertThat(result).isEqualTo("primary");
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void lookupFailingBeforeTheDelayIsNotHedged() throws Exception {
+        AtomicInteger requests = new AtomicInteger();
+
+        assertThatThrownBy(() -> hedger.call(OPERATION, () -> {
+            requests.incrementAndGet();
+            throw new IOException("not found");
+        })).isInstanceOf(IOException.class);
+        Thread.sleep(200);
+        assertThat(requests).hasValue(1);
+    }
+
+    @SuppressWarnings("unchecked")
+    private TmfHedger.LatencyWindow latency() {
+        return ((Map<String, TmfHedger.LatencyWindow>) ReflectionTestUtils.getField(hedger, "latencies")).get(OPERATION);
+    }
+
+    /*
+     * A chain whose HTTP call blocks until cancelled.
+     */
+    private Interceptor.Chain blockedChain(CountDownLatch cancelled) throws IOException {
+        Call call = mock(Call.class);
+        doAnswer(inv -> {
+            cancelled.countDown();
+            return null;
+        }).when(call).cancel();
+        Interceptor.Chain chain = mock(Interceptor.Chain.class);
+        when(chain.call()).thenReturn(call);
+        when(chain.request()).thenReturn(new Request.Builder().url("http://tmf.local/tmf-api/product/p1").build());
+        when(chain.proceed(any())).thenAnswer(inv -> {
+            cancelled.await(10, TimeUnit.SECONDS);
+            throw new IOException("Canceled");
+        });
+        return chain;
+    }
+}
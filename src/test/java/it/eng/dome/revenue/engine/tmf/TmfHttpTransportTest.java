@@ -0,0 +1,70 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import it.eng.dome.revenue.engine.tmf.TmfPageFetcher.TmfApi;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+
+public class TmfHttpTransportTest {
+
+    private static final Request REQUEST = new Request.Builder().url("http://tmf.local/tmf-api/party/v4/organization/o1").build();
+
+    private OkHttpClient client;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        TmfCallGuard guard = new TmfCallGuard();
+        ReflectionTestUtils.setField(guard, "enabled", false);
+        guard.afterPropertiesSet();
+
+        TmfOfflineBackend backend = new TmfOfflineBackend();
+        ReflectionTestUtils.setField(backend, "enabled", true);
+        backend.getStore().put("organization", new ObjectMapper().createObjectNode().put("id", "o1"));
+
+        TmfHttpTransport transport = new TmfHttpTransport();
+        ReflectionTestUtils.setField(transport, "connectTimeout", 1);
+        ReflectionTestUtils.setField(transport, "idleTimeout", 1);
+        ReflectionTestUtils.setField(transport, "maxIdleConnections", 1);
+        ReflectionTestUtils.setField(transport, "maxConnectionsPerHost", 1);
+        ReflectionTestUtils.setField(transport, "compression", true);
+        ReflectionTestUtils.setField(transport, "callGuard", guard);
+        ReflectionTestUtils.setField(transport, "offlineBackend", backend);
+        ReflectionTestUtils.setField(transport, "hedger", new TmfHedger());
+        transport.afterPropertiesSet();
+        client = transport.configure(null, TmfApi.TMF632, 1);
+    }
+
+    @Test
+    public void closedBodiesReleaseTheHostConnection() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            try (Response response = client.newCall(REQUEST).execute()) {
+                assertThat(response.code()).isEqualTo(200);
+            }
+        }
+    }
+
+    @Test
+    public void leakedBodyDoesNotBlockTheHostForever() throws Exception {
+        // never closed: its connection is never released
+        Response leaked = client.newCall(REQUEST).execute();
+        assertThat(leaked.code()).isEqualTo(200);
+
+        long start = System.currentTimeMillis();
+        assertThatThrownBy(() -> client.newCall(REQUEST).execute()).isInstanceOf(TmfUnavailableException.class);
+        assertThat(System.currentTimeMillis() - start).isLessThan(5000);
+
+        leaked.close();
+        try (Response response = client.newCall(REQUEST).execute()) {
+            assertThat(response.code()).isEqualTo(200);
+        }
+    }
+}
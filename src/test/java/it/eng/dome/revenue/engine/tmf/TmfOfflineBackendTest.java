@@ -0,0 +1,130 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+public class TmfOfflineBackendTest {
+
+    private static final String ORGANIZATIONS = "http://tmf.local/tmf-api/party/v4/organization";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private TmfOfflineBackend backend;
+
+    private OkHttpClient client;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        backend = new TmfOfflineBackend();
+        ReflectionTestUtils.setField(backend, "enabled", true);
+        for (int i = 1; i <= 5; i++) {
+            backend.getStore().put("organization", MAPPER.createObjectNode()
+                    .put("id", "o" + i)
+                    .put("@type", "Organization")
+                    .put("tradingName", "Provider " + i)
+                    .put("status", i % 2 == 0 ? "validated" : "initialized"));
+        }
+        client = new OkHttpClient.Builder().addInterceptor(backend).build();
+    }
+
+    @Test
+    public void listIsPagedWithOffsetAndLimit() throws Exception {
+        JsonNode page = this.get(ORGANIZATIONS + "?offset=1&limit=2", 200);
+        assertThat(this.ids(page)).containsExactly("o2", "o3");
+
+        assertThat(this.ids(this.get(ORGANIZATIONS + "?offset=4&limit=2", 200))).containsExactly("o5");
+        assertThat(this.ids(this.get(ORGANIZATIONS + "?offset=10&limit=2", 200))).isEmpty();
+        assertThat(this.ids(this.get(ORGANIZATIONS, 200))).containsExactly("o1", "o2", "o3", "o4", "o5");
+    }
+
+    @Test
+    public void listHeadersCountTheMatchingAndReturnedEntities() throws Exception {
+        Request request = new Request.Builder().url(ORGANIZATIONS + "?status=validated&offset=0&limit=1").build();
+        try (Response response = client.newCall(request).execute()) {
+            assertThat(response.header("X-Total-Count")).isEqualTo("2");
+            assertThat(response.header("X-Result-Count")).isEqualTo("1");
+            assertThat(this.ids(MAPPER.readTree(response.body().string()))).containsExactly("o2");
+        }
+    }
+
+    @Test
+    public void fieldsProjectTheEntities() throws Exception {
+        JsonNode page = this.get(ORGANIZATIONS + "?fields=tradingName&limit=1", 200);
+
+        List<String> names = new ArrayList<>();
+        page.get(0).fieldNames().forEachRemaining(names::add);
+        assertThat(names).containsExactlyInAnyOrder("id", "href", "@type", "tradingName");
+
+        JsonNode organization = this.get(ORGANIZATIONS + "/o3?fields=status", 200);
+        assertThat(organization.has("tradingName")).isFalse();
+        assertThat(organization.get("status").asText()).isEqualTo("initialized");
+        assertThat(this.get(ORGANIZATIONS + "/o3", 200).get("tradingName").asText()).isEqualTo("Provider 3");
+    }
+
+    @Test
+    public void otherParametersAreFilters() throws Exception {
+        assertThat(this.ids(this.get(ORGANIZATIONS + "?status=validated", 200))).containsExactly("o2", "o4");
+        assertThat(this.ids(this.get(ORGANIZATIONS + "?status=validated&limit=1&offset=1", 200))).containsExactly("o4");
+        assertThat(this.ids(this.get(ORGANIZATIONS + "?tradingName=Provider%201,Provider%205", 200))).containsExactly("o1", "o5");
+    }
+
+    @Test
+    public void writesChangeTheDataset() throws Exception {
+        JsonNode created = this.send("POST", ORGANIZATIONS, "{\"tradingName\":\"New provider\",\"status\":\"validated\"}", 201);
+        String id = created.get("id").asText();
+        assertThat(id).startsWith("urn:ngsi-ld:organization:");
+        assertThat(this.ids(this.get(ORGANIZATIONS + "?status=validated", 200))).containsExactly("o2", "o4", id);
+
+        JsonNode updated = this.send("PATCH", ORGANIZATIONS + "/o2", "{\"status\":\"initialized\"}", 200);
+        assertThat(updated.get("tradingName").asText()).isEqualTo("Provider 2");
+        assertThat(backend.getStore().get("organization", "o2").get("status").asText()).isEqualTo("initialized");
+        assertThat(this.ids(this.get(ORGANIZATIONS + "?status=validated", 200))).containsExactly("o4", id);
+
+        this.send("DELETE", ORGANIZATIONS + "/o4", null, 204);
+        assertThat(backend.getStore().get("organization", "o4")).isNull();
+        assertThat(this.ids(this.get(ORGANIZATIONS + "?status=validated", 200))).containsExactly(id);
+    }
+
+    @Test
+    public void unknownEntitiesAreNotFound() throws Exception {
+        assertThat(this.get(ORGANIZATIONS + "/missing", 404).get("code").asText()).isEqualTo("404");
+        this.send("PATCH", ORGANIZATIONS + "/missing", "{}", 404);
+        this.send("DELETE", ORGANIZATIONS + "/missing", null, 404);
+        this.get("http://tmf.local/tmf-api/party/organization", 404);
+    }
+
+    private JsonNode get(String url, int expectedCode) throws Exception {
+        return this.send("GET", url, null, expectedCode);
+    }
+
+    private JsonNode send(String method, String url, String body, int expectedCode) throws Exception {
+        RequestBody requestBody = body != null ? RequestBody.create(body, MediaType.get("application/json")) : null;
+        Request request = new Request.Builder().url(url).method(method, requestBody).build();
+        try (Response response = client.newCall(request).execute()) {
+            assertThat(response.code()).isEqualTo(expectedCode);
+            String json = response.body().string();
+            return json.isEmpty() ? null : MAPPER.readTree(json);
+        }
+    }
+
+    private List<String> ids(JsonNode page) {
+        List<String> ids = new ArrayList<>();
+        page.forEach(entity -> ids.add(entity.get("id").asText()));
+        return ids;
+    }
+}
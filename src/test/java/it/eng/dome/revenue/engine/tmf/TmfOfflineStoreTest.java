@@ -0,0 +1,134 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class TmfOfflineStoreTest {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private TmfOfflineStore store;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        store = new TmfOfflineStore();
+        store.put("customerBill", this.bill("b1", "settled", "2025-01-10T00:00:00Z", "100", "seller-1", "buyer-1"));
+        store.put("customerBill", this.bill("b2", "new", "2025-02-10T00:00:00Z", "250.5", "seller-1", "buyer-2"));
+        store.put("customerBill", this.bill("b3", "sent", "2025-03-10T00:00:00+01:00", "9", "seller-2", "buyer-1"));
+    }
+
+    @Test
+    public void commaSeparatedValuesAreAlternatives() {
+        assertThat(this.ids(store.find("customerBill", Map.of("state", "new,sent")))).containsExactly("b2", "b3");
+        assertThat(this.ids(store.find("customerBill", Map.of("state", "sent,new,unknown")))).containsExactly("b2", "b3");
+        assertThat(this.ids(store.find("customerBill", Map.of("state", "unknown")))).isEmpty();
+    }
+
+    @Test
+    public void dottedPathsLookIntoArrays() {
+        assertThat(this.ids(store.find("customerBill", Map.of("relatedParty.id", "buyer-1")))).containsExactly("b1", "b3");
+        assertThat(this.ids(store.find("customerBill", Map.of("relatedParty.id", "seller-2,buyer-2")))).containsExactly("b2", "b3");
+        assertThat(this.ids(store.find("customerBill", Map.of("taxExcludedAmount.value", "9")))).containsExactly("b3");
+        assertThat(TmfOfflineStore.values(store.get("customerBill", "b1"), "relatedParty.role")).containsExactly("Seller", "Buyer");
+        assertThat(TmfOfflineStore.values(store.get("customerBill", "b1"), "relatedParty.missing")).isEmpty();
+    }
+
+    @Test
+    public void allTheFiltersMustMatch() {
+        Map<String, String> filter = Map.of("relatedParty.id", "seller-1", "state", "settled,sent");
+        assertThat(this.ids(store.find("customerBill", filter))).containsExactly("b1");
+        assertThat(this.ids(store.find("customerBill", Map.of()))).containsExactly("b1", "b2", "b3");
+    }
+
+    @Test
+    public void datesAreComparedAsInstants() {
+        assertThat(this.ids(store.find("customerBill", Map.of("billDate.gt", "2025-02-10T00:00:00Z")))).containsExactly("b3");
+        assertThat(this.ids(store.find("customerBill", Map.of("billDate.gte", "2025-02-10T00:00:00Z")))).containsExactly("b2", "b3");
+        // b3 is at 23:00Z of the day before
+        assertThat(this.ids(store.find("customerBill", Map.of("billDate.lt", "2025-03-09T23:30:00Z")))).containsExactly("b1", "b2", "b3");
+        assertThat(this.ids(store.find("customerBill", Map.of("billDate.lte", "2025-01-10T00:00:00Z")))).containsExactly("b1");
+        assertThat(this.ids(store.find("customerBill", Map.of("billDate.gt", "2025-01-01T00:00:00Z", "billDate.lt", "2025-03-01T00:00:00Z"))))
+                .containsExactly("b1", "b2");
+    }
+
+    @Test
+    public void numbersAreComparedByValue() {
+        // as strings, "9" would be greater than "100"
+        assertThat(this.ids(store.find("customerBill", Map.of("taxExcludedAmount.value.lt", "10")))).containsExactly("b3");
+        assertThat(this.ids(store.find("customerBill", Map.of("taxExcludedAmount.value.gt", "100")))).containsExactly("b2");
+        assertThat(this.ids(store.find("customerBill", Map.of("taxExcludedAmount.value.gte", "100.00")))).containsExactly("b1", "b2");
+    }
+
+    @Test
+    public void indexIsDroppedAfterEachWrite() {
+        assertThat(this.ids(store.find("customerBill", Map.of("state", "new")))).containsExactly("b2");
+        assertThat(this.indexes("customerBill").containsKey("state")).isTrue();
+
+        store.put("customerBill", this.bill("b4", "new", "2025-04-10T00:00:00Z", "1", "seller-2", "buyer-2"));
+        assertThat(this.indexes("customerBill")).isEmpty();
+        assertThat(this.ids(store.find("customerBill", Map.of("state", "new")))).containsExactly("b2", "b4");
+
+        store.patch("customerBill", "b2", MAPPER.createObjectNode().put("state", "settled"));
+        assertThat(this.ids(store.find("customerBill", Map.of("state", "new")))).containsExactly("b4");
+        assertThat(this.ids(store.find("customerBill", Map.of("state", "settled")))).containsExactly("b1", "b2");
+
+        assertThat(store.remove("customerBill", "b4")).isTrue();
+        assertThat(this.ids(store.find("customerBill", Map.of("state", "new")))).isEmpty();
+        assertThat(store.remove("customerBill", "b4")).isFalse();
+    }
+
+    @Test
+    public void entitiesGetADomeIdWhenTheyHaveNone() {
+        ObjectNode stored = store.put("customerBill", MAPPER.createObjectNode().put("state", "new"));
+
+        assertThat(stored.get("id").asText()).startsWith("urn:ngsi-ld:customer-bill:");
+        assertThat(stored.get("href").asText()).isEqualTo(stored.get("id").asText());
+        assertThat(store.get("customerBill", stored.get("id").asText())).isSameAs(stored);
+        assertThat(store.getSizes()).containsEntry("customerBill", 4);
+        assertThat(TmfOfflineStore.newId("productOfferingPrice", new UUID(0, 1)))
+                .isEqualTo("urn:ngsi-ld:product-offering-price:00000000-0000-0000-0000-000000000001");
+    }
+
+    @Test
+    public void patchMergesTheTopLevelAttributes() {
+        ObjectNode updated = store.patch("customerBill", "b1", MAPPER.createObjectNode().put("state", "sent").put("id", "other"));
+
+        assertThat(updated.get("id").asText()).isEqualTo("b1");
+        assertThat(updated.get("state").asText()).isEqualTo("sent");
+        assertThat(updated.get("billDate").asText()).isEqualTo("2025-01-10T00:00:00Z");
+        assertThat(store.get("customerBill", "b1")).isSameAs(updated);
+        assertThat(store.patch("customerBill", "missing", MAPPER.createObjectNode())).isNull();
+    }
+
+    private Map<?, ?> indexes(String resourceName) {
+        Map<?, ?> resources = (Map<?, ?>) ReflectionTestUtils.getField(store, "resources");
+        return (Map<?, ?>) ReflectionTestUtils.getField(resources.get(resourceName), "indexes");
+    }
+
+    private List<String> ids(List<ObjectNode> entities) {
+        return entities.stream().map(entity -> entity.get("id").asText()).toList();
+    }
+
+    private ObjectNode bill(String id, String state, String billDate, String amount, String seller, String buyer) {
+        ObjectNode bill = MAPPER.createObjectNode();
+        bill.put("id", id);
+        bill.put("state", state);
+        bill.put("billDate", billDate);
+        bill.putObject("taxExcludedAmount").put("unit", "EUR").put("value", new BigDecimal(amount));
+        bill.putArray("relatedParty")
+                .add(MAPPER.createObjectNode().put("id", seller).put("role", "Seller"))
+                .add(MAPPER.createObjectNode().put("id", buyer).put("role", "Buyer"));
+        return bill;
+    }
+}
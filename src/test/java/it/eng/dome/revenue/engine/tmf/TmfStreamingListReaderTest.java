@@ -0,0 +1,147 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
+public class TmfStreamingListReaderTest {
+
+    private static final String LIST_URL = "http://tmf.local/tmf-api/customerBillManagement/v4/customerBill";
+
+    private final TmfStreamingListReader reader = new TmfStreamingListReader();
+
+    // the requested pages
+    private final List<HttpUrl> requests = new ArrayList<>();
+
+    @Test
+    public void pagesAreReadUntilTheFirstShortPage() throws Exception {
+        OkHttpClient client = this.client("[{\"id\":\"b1\"},{\"id\":\"b2\"}]", "[{\"id\":\"b3\"},{\"id\":\"b4\"}]", "[{\"id\":\"b5\"}]");
+        List<String> ids = new ArrayList<>();
+
+        reader.stream(client, LIST_URL, "billNo", Map.of("state", "new"), 2, TmfStreamingListReader.tree(), bill -> ids.add(bill.get("id").asText()));
+
+        assertThat(ids).containsExactly("b1", "b2", "b3", "b4", "b5");
+        assertThat(requests).extracting(url -> url.queryParameter("offset")).containsExactly("0", "2", "4");
+        assertThat(requests).allSatisfy(url -> {
+            assertThat(url.queryParameter("limit")).isEqualTo("2");
+            assertThat(url.queryParameter("fields")).isEqualTo("billNo");
+            assertThat(url.queryParameter("state")).isEqualTo("new");
+        });
+    }
+
+    @Test
+    public void fullLastPageIsFollowedByAnEmptyOne() throws Exception {
+        OkHttpClient client = this.client("[{\"id\":\"b1\"},{\"id\":\"b2\"}]", "[]");
+        List<String> ids = new ArrayList<>();
+
+        reader.stream(client, LIST_URL, null, null, 2, TmfStreamingListReader.tree(), bill -> ids.add(bill.get("id").asText()));
+
+        assertThat(ids).containsExactly("b1", "b2");
+        assertThat(requests).hasSize(2);
+        assertThat(requests.get(0).queryParameter("fields")).isNull();
+    }
+
+    @Test
+    public void scanStopsWhenTheConsumerReturnsFalse() throws Exception {
+        OkHttpClient client = this.client("[{\"id\":\"b1\"},{\"id\":\"b2\"}]", "[{\"id\":\"b3\"},{\"id\":\"b4\"}]", "[]");
+        List<String> ids = new ArrayList<>();
+
+        reader.stream(client, LIST_URL, null, null, 2, TmfStreamingListReader.tree(), bill -> {
+            ids.add(bill.get("id").asText());
+            return !"b3".equals(bill.get("id").asText());
+        });
+
+        assertThat(ids).containsExactly("b1", "b2", "b3");
+        assertThat(requests).hasSize(2);
+    }
+
+    @Test
+    public void nullElementsAreSkippedButFillThePage() throws Exception {
+        OkHttpClient client = this.client("[{\"id\":\"b1\"},null]", "[{\"id\":\"b3\"}]");
+        List<JsonNode> bills = new ArrayList<>();
+
+        reader.stream(client, LIST_URL, null, null, 2, TmfStreamingListReader.tree(), bills::add);
+
+        assertThat(bills).extracting(bill -> bill.get("id").asText()).containsExactly("b1", "b3");
+        assertThat(requests).hasSize(2);
+    }
+
+    @Test
+    public void nonObjectElementFailsTheScan() throws Exception {
+        OkHttpClient client = this.client("[{\"id\":\"b1\"},\"b2\",{\"id\":\"b3\"}]");
+        List<JsonNode> bills = new ArrayList<>();
+
+        assertThatThrownBy(() -> reader.stream(client, LIST_URL, null, null, 3, TmfStreamingListReader.tree(), bills::add))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("element 2 is not a JSON object");
+        assertThat(bills).hasSize(1);
+    }
+
+    @Test
+    public void malformedPagesFailTheScan() throws Exception {
+        assertThatThrownBy(() -> reader.stream(this.client("{\"id\":\"b1\"}"), LIST_URL, null, null, 2, TmfStreamingListReader.tree(), bill -> true))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("is not a JSON array");
+        assertThatThrownBy(() -> reader.stream(this.client("[{\"id\":\"b1\"}"), LIST_URL, null, null, 2, TmfStreamingListReader.tree(), bill -> true))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("end-of-input");
+        assertThatThrownBy(() -> reader.stream(this.client("[{\"id\":\"b1\"},{\"id\":"), LIST_URL, null, null, 2, TmfStreamingListReader.tree(), bill -> true))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("end-of-input");
+    }
+
+    @Test
+    public void failedRequestFailsTheScan() throws Exception {
+        OkHttpClient client = new OkHttpClient.Builder()
+                .addInterceptor(chain -> this.response(chain.request(), 503, "{\"message\":\"unavailable\"}"))
+                .build();
+
+        assertThatThrownBy(() -> reader.stream(client, LIST_URL, null, null, 2, TmfStreamingListReader.tree(), bill -> true))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("failed with HTTP 503");
+    }
+
+    /**
+     * A client answering the page requests with the given pages, in order, without any network call.
+     */
+    private OkHttpClient client(String... pages) {
+        AtomicInteger served = new AtomicInteger();
+        return new OkHttpClient.Builder()
+                .addInterceptor(chain -> {
+                    requests.add(chain.request().url());
+                    int page = served.getAndIncrement();
+                    if (page >= pages.length) {
+                        throw new IOException("Unexpected request of page " + page);
+                    }
+                    return this.response(chain.request(), 200, pages[page]);
+                })
+                .build();
+    }
+
+    private Response response(Request request, int code, String body) {
+        return new Response.Builder()
+                .request(request)
+                .protocol(Protocol.HTTP_1_1)
+                .code(code)
+                .message(code == 200 ? "OK" : "Error")
+                .body(ResponseBody.create(body, MediaType.get("application/json")))
+                .build();
+    }
+}
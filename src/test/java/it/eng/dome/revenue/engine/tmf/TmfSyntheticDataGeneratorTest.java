@@ -0,0 +1,56 @@
+package it.eng.dome.revenue.engine.tmf;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.OffsetDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class TmfSyntheticDataGeneratorTest {
+
+    private static final OffsetDateTime PLAN_START = OffsetDateTime.parse("2025-01-01T00:00:00Z");
+
+    private static final String PLAN_LINK = "https://example.org/plans/basic.json";
+
+    private static final List<String> RESOURCES = List.of("organization", "productOfferingPrice", "productOffering", "product", "customerBill");
+
+    @Test
+    public void sameSeedGeneratesTheSameDataset() {
+        Map<String, List<ObjectNode>> first = this.generate(42);
+        Map<String, List<ObjectNode>> second = this.generate(42);
+
+        assertThat(second).isEqualTo(first);
+        assertThat(this.generate(43).get("customerBill")).isNotEqualTo(first.get("customerBill"));
+    }
+
+    @Test
+    public void datasetHasTheRequestedSize() {
+        TmfOfflineStore store = new TmfOfflineStore();
+        new TmfSyntheticDataGenerator(store, 42).generate(10, 3, 4, PLAN_START, PLAN_LINK);
+
+        // the operator, and the providers
+        assertThat(store.getSizes()).containsEntry("organization", 11)
+                .containsEntry("productOffering", 1)
+                .containsEntry("productOfferingPrice", 1)
+                .containsEntry("product", 3)
+                .containsEntry("customerBill", 12);
+        assertThat(store.find("productOfferingPrice", Map.of()).get(0).get("description").asText()).endsWith(PLAN_LINK);
+        assertThat(store.find("product", Map.of("relatedParty.role", "Seller"))).hasSize(3);
+        assertThat(store.find("customerBill", Map.of("billDate.lt", PLAN_START.toString()))).isEmpty();
+    }
+
+    private Map<String, List<ObjectNode>> generate(long seed) {
+        TmfOfflineStore store = new TmfOfflineStore();
+        new TmfSyntheticDataGenerator(store, seed).generate(20, 5, 6, PLAN_START, PLAN_LINK);
+        Map<String, List<ObjectNode>> dataset = new LinkedHashMap<>();
+        for (String resource : RESOURCES) {
+            dataset.put(resource, store.find(resource, Map.of()));
+        }
+        return dataset;
+    }
+}
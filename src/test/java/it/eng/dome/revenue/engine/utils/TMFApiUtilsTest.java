@@ -0,0 +1,79 @@
+package it.eng.dome.revenue.engine.utils;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import it.eng.dome.revenue.engine.utils.TMFApiUtils.TMFFetcher;
+
+public class TMFApiUtilsTest {
+
+    private ExecutorService executor;
+
+    private final List<Integer> offsets = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void shortListCostsASingleRequest() throws Exception {
+        List<Integer> items = TMFApiUtils.fetchAllParallel(this.list(7), null, 10, null, 4, executor);
+
+        assertThat(items).hasSize(7);
+        assertThat(offsets).containsExactly(0);
+    }
+
+    @Test
+    public void longListIsReturnedInOffsetOrder() throws Exception {
+        List<Integer> items = TMFApiUtils.fetchAllParallel(this.list(95), null, 10, null, 4, executor);
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 95; i++) {
+            expected.add(i);
+        }
+        assertThat(items).isEqualTo(expected);
+        assertThat(offsets.get(0)).isZero();
+    }
+
+    @Test
+    public void consumerStopsTheScan() throws Exception {
+        List<Integer> consumed = new ArrayList<>();
+        TMFApiUtils.fetchByBatchParallel(this.list(1000), null, 10, null, 4, executor, batch -> {
+            consumed.addAll(batch);
+            return consumed.size() < 30;
+        });
+
+        assertThat(consumed).hasSize(30);
+        // the first page, then at most the window beyond the last consumed page
+        assertThat(offsets.size()).isLessThanOrEqualTo(3 + 4);
+    }
+
+    /*
+     * A TMF list of the given size, whose items are their positions.
+     */
+    private TMFFetcher<Integer> list(int size) {
+        return (fields, offset, limit, filter) -> {
+            offsets.add(offset);
+            List<Integer> page = new ArrayList<>();
+            for (int i = offset; i < Math.min(size, offset + limit); i++) {
+                page.add(i);
+            }
+            return page;
+        };
+    }
+}